@@ -0,0 +1,78 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.drugis.addis.ExampleData;
+import org.drugis.mtc.DefaultModelFactory;
+import org.drugis.mtc.model.Network;
+import org.drugis.mtc.parameterization.BasicParameter;
+import org.junit.Test;
+
+/**
+ * Compares the cost of the network queries made when the analysis view is (re)built, with and without the cached
+ * network and split parameters.
+ */
+public class NetworkMetaAnalysisBenchmarkIT {
+	private static final int REPAINTS = 200;
+
+	@Test
+	public void benchmarkHamD() {
+		benchmark("HAM-D", ExampleData.buildNetworkMetaAnalysisHamD());
+	}
+
+	@Test
+	public void benchmarkCgi() {
+		benchmark("CGI", ExampleData.buildNetworkMetaAnalysisCgi());
+	}
+
+	private void benchmark(String name, NetworkMetaAnalysis analysis) {
+		long before = System.nanoTime();
+		List<BasicParameter> uncached = null;
+		for (int i = 0; i < REPAINTS; ++i) {
+			Network network = analysis.getBuilder().buildNetwork();
+			uncached = DefaultModelFactory.instance().getSplittableNodes(network);
+		}
+		long uncachedTime = System.nanoTime() - before;
+
+		before = System.nanoTime();
+		List<BasicParameter> cached = null;
+		for (int i = 0; i < REPAINTS; ++i) {
+			analysis.getNetwork();
+			cached = analysis.getSplitParameters();
+		}
+		long cachedTime = System.nanoTime() - before;
+
+		System.out.println(name + ": " + REPAINTS + " repaints, " + cached.size() + " split nodes, uncached " +
+				uncachedTime / 1000000 + " ms, cached " + cachedTime / 1000000 + " ms");
+		assertEquals(uncached, cached);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drugis.addis.entities.BasicContinuousMeasurement;
+import org.drugis.addis.entities.BasicRateMeasurement;
+import org.drugis.addis.entities.ContinuousMeasurement;
+import org.drugis.addis.entities.RateMeasurement;
+import org.drugis.common.threading.TaskUtil;
+import org.drugis.mtc.MCMCModel.ExtendSimulation;
+import org.junit.Test;
+
+/**
+ * Compares the analytic baseline approximation against the simulated baseline, on the data used in
+ * {@link BaselineOddsModelIT} and {@link BaselineMeanDifferenceModelIT}.
+ */
+public class AnalyticBaselineIT {
+	private static final double MAX_STANDARDIZED_ERROR = 0.5;
+
+	@Test
+	public void testOddsModel() throws InterruptedException {
+		int[] n = {47, 144, 120, 101, 73, 161, 54, 92, 45, 119, 103, 52, 120, 121, 170};
+		int[] r = {30, 63, 61, 67, 27, 95, 31, 57, 27, 84, 51, 9, 76, 77, 58};
+		List<RateMeasurement> measurements = new ArrayList<RateMeasurement>();
+		for (int i = 0; i < n.length; ++i) {
+			measurements.add(new BasicRateMeasurement(r[i], n[i]));
+		}
+		assertAccurate(new BaselineOddsModel(measurements));
+	}
+
+	@Test
+	public void testMeanDifferenceModel() throws InterruptedException {
+		double[] m = {-1.52, -2.1, -2.3, -0.69, -2.5};
+		double[] s = {1.18, 0.1, 1.4, 0.16, 1.6};
+		int[] n = {30, 86, 178, 102, 177};
+		List<ContinuousMeasurement> measurements = new ArrayList<ContinuousMeasurement>();
+		for (int i = 0; i < n.length; ++i) {
+			measurements.add(new BasicContinuousMeasurement(m[i], s[i], n[i]));
+		}
+		assertAccurate(new BaselineMeanDifferenceModel(measurements));
+	}
+
+	private static void assertAccurate(AbstractBaselineModel<?> model) throws InterruptedException {
+		assertTrue(model.isAnalyticSummaryAdequate());
+		model.setExtendSimulation(ExtendSimulation.FINISH);
+		TaskUtil.run(model.getActivityTask());
+		SummaryHelper.waitUntilDefined(model.getSummary());
+
+		String diagnostic = "analytic N(" + model.getAnalyticSummary().getMean() + ", " + model.getAnalyticSummary().getStandardDeviation() +
+				"), simulated N(" + model.getSummary().getMean() + ", " + model.getSummary().getStandardDeviation() + ")";
+		assertTrue(diagnostic, model.getAnalyticError() < MAX_STANDARDIZED_ERROR);
+	}
+}
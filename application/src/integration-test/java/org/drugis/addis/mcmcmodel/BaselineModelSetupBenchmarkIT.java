@@ -0,0 +1,94 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.drugis.addis.entities.BasicRateMeasurement;
+import org.drugis.addis.entities.RateMeasurement;
+import org.junit.Test;
+
+/**
+ * Compares the cost of the baseline model's set-up computations (the standard deviation prior, which is needed
+ * three times per chain) with the pairwise scan over the study estimates that they replace.
+ */
+public class BaselineModelSetupBenchmarkIT {
+	private static final int CHAINS = AbstractBaselineModel.NUMBER_OF_CHAINS;
+
+	@Test
+	public void benchmarkSetup() {
+		for (int studies : new int[] { 100, 500, 2000 }) {
+			benchmark(studies);
+		}
+	}
+
+	private void benchmark(int studies) {
+		List<RateMeasurement> measurements = new ArrayList<RateMeasurement>();
+		Random random = new Random(studies);
+		for (int i = 0; i < studies; ++i) {
+			int n = 20 + random.nextInt(200);
+			measurements.add(new BasicRateMeasurement(1 + random.nextInt(n - 1), n));
+		}
+
+		long before = System.nanoTime();
+		BaselineOddsModel pairwiseModel = new BaselineOddsModel(measurements);
+		double pairwise = 0.0;
+		for (int k = 0; k < 3 * CHAINS; ++k) {
+			pairwise = pairwisePrior(pairwiseModel);
+		}
+		long pairwiseTime = System.nanoTime() - before;
+
+		before = System.nanoTime();
+		BaselineOddsModel model = new BaselineOddsModel(measurements);
+		double prior = 0.0;
+		for (int k = 0; k < 3 * CHAINS; ++k) {
+			prior = model.getStandardDeviationPrior();
+		}
+		model.getAnalyticSummary();
+		long setupTime = System.nanoTime() - before;
+
+		System.out.println(studies + " studies: pairwise prior " + pairwiseTime / 1000000 + " ms, precomputed set-up " +
+				setupTime / 1000000 + " ms");
+		assertEquals(pairwise, prior, 1e-12);
+	}
+
+	private static double pairwisePrior(AbstractBaselineModel<?> model) {
+		double maxDev = 0.0;
+		for (int i = 0; i < model.d_measurements.size() - 1; ++i) {
+			double e1 = model.estimateTreatmentEffect(i).getPointEstimate();
+			for (int j = i + 1; j < model.d_measurements.size(); ++j) {
+				maxDev = Math.max(maxDev, Math.abs(model.estimateTreatmentEffect(j).getPointEstimate() - e1));
+			}
+		}
+		return 2 * maxDev;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.drugis.addis.entities.data.AddisData;
+import org.junit.Test;
+
+/**
+ * Checks that converting AddisData to a Domain scales (roughly) linearly in the number of studies, i.e. that
+ * name references are not resolved by linear scans of the domain.
+ */
+public class DomainConversionScalingIT {
+	private static final String EXAMPLE = "depressionExample.addis";
+	private static final int SMALL = 2500;
+	private static final int LARGE = 10000;
+
+	@Test
+	public void testConversionScalesLinearly() throws Exception {
+		AddisData small = scaledExample(SMALL);
+		AddisData large = scaledExample(LARGE);
+
+		convert(small); // warm-up
+		long smallTime = convert(small);
+		long largeTime = convert(large);
+
+		double ratio = (double) largeTime / smallTime;
+		System.out.println("Converted " + small.getStudies().getStudy().size() + " studies in " + smallTime / 1000000 +
+				" ms, " + large.getStudies().getStudy().size() + " studies in " + largeTime / 1000000 + " ms (ratio " + ratio + ")");
+		// 4x as many studies: linear scaling gives a ratio near 4, quadratic near 16.
+		assertTrue("Conversion time ratio " + ratio + " suggests super-linear scaling", ratio < 8.0);
+	}
+
+	/**
+	 * @return The example, scaled up to at least the given number of studies.
+	 */
+	private static AddisData scaledExample(int nStudies) throws Exception {
+		int exampleStudies = JAXBHandler.unmarshallAddisData(
+				JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + EXAMPLE)).getStudies().getStudy().size();
+		int factor = (nStudies + exampleStudies - 1) / exampleStudies;
+		return JAXBHandler.unmarshallAddisData(new ByteArrayInputStream(DomainLoadBenchmarkIT.scaledExample(EXAMPLE, factor)));
+	}
+
+	private static long convert(AddisData data) throws Exception {
+		System.gc();
+		long before = System.nanoTime();
+		JAXBConvertor.convertAddisDataToDomain(data);
+		return System.nanoTime() - before;
+	}
+}
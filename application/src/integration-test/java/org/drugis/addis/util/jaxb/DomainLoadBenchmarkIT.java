@@ -0,0 +1,124 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.drugis.addis.entities.AssertEntityEquals.assertDomainEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.DomainManager;
+import org.drugis.addis.entities.Study;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+import org.junit.Test;
+
+/**
+ * Compares load time and peak heap usage of the unmarshalling and the streaming load paths.
+ */
+public class DomainLoadBenchmarkIT {
+	private static final int SCALE = 100;
+
+	@Test
+	public void benchmarkDepressionExample() throws Exception {
+		benchmark("depressionExample.addis");
+	}
+
+	@Test
+	public void benchmarkHypertensionExample() throws Exception {
+		benchmark("hypertensionExample.addis");
+	}
+
+	private void benchmark(String example) throws Exception {
+		byte[] xml = scaledExample(example, SCALE);
+
+		Domain unmarshalled = load(example, xml, false);
+		Domain streamed = load(example, xml, true);
+
+		assertDomainEquals(unmarshalled, streamed);
+	}
+
+	private static Domain load(String example, byte[] xml, boolean streaming) throws Exception {
+		DomainManager manager = new DomainManager();
+		manager.setStreamingLoad(streaming);
+
+		System.gc();
+		resetPeakUsage();
+		long before = System.nanoTime();
+		manager.loadXMLDomain(new ByteArrayInputStream(xml), XmlFormatType.CURRENT_VERSION);
+		long after = System.nanoTime();
+
+		System.out.println(example + " x" + SCALE + (streaming ? " (streaming)" : " (unmarshalling)") + ": " +
+				manager.getDomain().getStudies().size() + " studies in " + (after - before) / 1000000 + " ms, peak heap " +
+				getPeakUsage() / (1024 * 1024) + " MiB");
+		return manager.getDomain();
+	}
+
+	/**
+	 * Load an example and add (factor - 1) renamed copies of each of its studies, then serialize it in the current format.
+	 */
+	public static byte[] scaledExample(String example, int factor) throws Exception {
+		DomainManager manager = new DomainManager();
+		InputStream is = JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + example);
+		manager.loadXMLDomain(is, XmlFormatType.CURRENT_VERSION);
+
+		Domain domain = manager.getDomain();
+		for (Study s : new ArrayList<Study>(domain.getStudies())) {
+			for (int i = 1; i < factor; ++i) {
+				Study copy = s.clone();
+				copy.setName(s.getName() + " (" + i + ")");
+				domain.getStudies().add(copy);
+			}
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		manager.saveXMLDomain(bos);
+		return bos.toByteArray();
+	}
+
+	private static void resetPeakUsage() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+	}
+
+	private static long getPeakUsage() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
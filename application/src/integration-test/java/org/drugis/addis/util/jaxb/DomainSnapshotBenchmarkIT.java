@@ -0,0 +1,90 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.drugis.addis.entities.AssertEntityEquals.assertDomainEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+
+import org.drugis.addis.entities.DomainManager;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+import org.junit.Test;
+
+/**
+ * Compares a cold load from XML with a load from the binary snapshot.
+ */
+public class DomainSnapshotBenchmarkIT {
+	private static final int SCALE = 100;
+
+	@Test
+	public void benchmarkDepressionExample() throws Exception {
+		benchmark("depressionExample.addis");
+	}
+
+	@Test
+	public void benchmarkHypertensionExample() throws Exception {
+		benchmark("hypertensionExample.addis");
+	}
+
+	private void benchmark(String example) throws Exception {
+		File file = File.createTempFile("benchmark", ".addis");
+		File snapshotDir = File.createTempFile("snapshots", "");
+		snapshotDir.delete();
+		File snapshot = DomainSnapshot.getSnapshotFile(snapshotDir, file);
+		try {
+			FileOutputStream os = new FileOutputStream(file);
+			os.write(DomainLoadBenchmarkIT.scaledExample(example, SCALE));
+			os.close();
+
+			DomainManager xml = new DomainManager();
+			xml.setSnapshotDirectory(snapshotDir);
+			long before = System.nanoTime();
+			xml.loadXMLDomain(new FileInputStream(file), XmlFormatType.CURRENT_VERSION);
+			long xmlTime = System.nanoTime() - before;
+			xml.saveSnapshot(file, XmlFormatType.CURRENT_VERSION);
+
+			DomainManager binary = new DomainManager();
+			binary.setSnapshotDirectory(snapshotDir);
+			before = System.nanoTime();
+			assertNotNull(binary.loadSnapshot(file));
+			long snapshotTime = System.nanoTime() - before;
+
+			System.out.println(example + " x" + SCALE + ": " + xml.getDomain().getStudies().size() + " studies, XML " +
+					file.length() / 1024 + " KiB in " + xmlTime / 1000000 + " ms, snapshot " +
+					snapshot.length() / 1024 + " KiB in " + snapshotTime / 1000000 + " ms");
+			assertDomainEquals(xml.getDomain(), binary.getDomain());
+		} finally {
+			snapshot.delete();
+			snapshotDir.delete();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+import org.junit.Test;
+
+/**
+ * Compares the chained single-pass schema migration with the previous approach of compiling each stylesheet on
+ * every load and serializing the complete document between versions.
+ */
+public class SchemaMigrationBenchmarkIT {
+	private static final int REPETITIONS = 20;
+
+	@Test
+	public void benchmarkVersion0() throws Exception {
+		benchmark(legacyToVersion1("../../testDataA-0.xml"), 1, "testDataA-0.xml");
+	}
+
+	@Test
+	public void benchmarkVersion1() throws Exception {
+		benchmark(read("../../testDataA-1.addis"), 1, "testDataA-1.addis");
+	}
+
+	@Test
+	public void benchmarkVersion5() throws Exception {
+		benchmark(read("../../testData-5.addis"), 5, "testData-5.addis");
+	}
+
+	private void benchmark(byte[] xml, int version, String name) throws Exception {
+		assertEquals(
+				JAXBHandler.unmarshallAddisData(transformBuffered(new ByteArrayInputStream(xml), version)),
+				JAXBHandler.unmarshallAddisData(new ByteArrayInputStream(xml), version));
+
+		long before = System.nanoTime();
+		for (int i = 0; i < REPETITIONS; ++i) {
+			JAXBHandler.unmarshallAddisData(transformBuffered(new ByteArrayInputStream(xml), version));
+		}
+		long buffered = System.nanoTime() - before;
+
+		before = System.nanoTime();
+		for (int i = 0; i < REPETITIONS; ++i) {
+			JAXBHandler.unmarshallAddisData(new ByteArrayInputStream(xml), version);
+		}
+		long chained = System.nanoTime() - before;
+
+		System.out.println(name + " (version " + version + "): buffered " + buffered / REPETITIONS / 1000000 +
+				" ms, chained " + chained / REPETITIONS / 1000000 + " ms per load");
+	}
+
+	/**
+	 * The migration as it used to be: a fresh factory and stylesheet compilation per step, and a full
+	 * serialize/parse cycle between versions.
+	 */
+	private static InputStream transformBuffered(InputStream xml, int sourceVersion) throws Exception {
+		TransformerFactory factory = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
+		for (int v = sourceVersion; v < XmlFormatType.CURRENT_VERSION; ++v) {
+			InputStream xsltFile = JAXBConvertor.class.getResourceAsStream("transform-" + v + "-" + (v + 1) + ".xslt");
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			factory.newTransformer(new StreamSource(xsltFile)).transform(new StreamSource(xml), new StreamResult(os));
+			os.close();
+			xml = new ByteArrayInputStream(os.toByteArray());
+		}
+		return xml;
+	}
+
+	private static byte[] legacyToVersion1(String fileName) throws Exception {
+		return toBytes(JAXBConvertor.transformLegacyXML(SchemaMigrationBenchmarkIT.class.getResourceAsStream(fileName)));
+	}
+
+	private static byte[] read(String fileName) throws IOException {
+		return toBytes(SchemaMigrationBenchmarkIT.class.getResourceAsStream(fileName));
+	}
+
+	private static byte[] toBytes(InputStream is) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = is.read(buffer)) >= 0) {
+			os.write(buffer, 0, n);
+		}
+		is.close();
+		return os.toByteArray();
+	}
+}
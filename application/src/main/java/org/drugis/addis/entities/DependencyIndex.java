@@ -0,0 +1,132 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse dependency graph: for each entity, the dependers (studies and analyses) in the domain that depend on it.
+ * A depender's edges are recomputed from {@link Entity#getDependencies()} when it is added or reported as changed,
+ * so that looking up the dependents of an entity does not require visiting all dependers.
+ */
+class DependencyIndex {
+	private Map<Entity, Set<Entity>> d_dependents = new HashMap<Entity, Set<Entity>>();
+	private final Map<Entity, Set<Entity>> d_dependencies = new IdentityHashMap<Entity, Set<Entity>>();
+
+	public void add(Entity depender) {
+		if (!d_dependencies.containsKey(depender)) {
+			d_dependencies.put(depender, Collections.<Entity>emptySet());
+			update(depender);
+		}
+	}
+
+	public void remove(Entity depender) {
+		Set<Entity> dependencies = d_dependencies.remove(depender);
+		if (dependencies != null) {
+			for (Entity e : dependencies) {
+				removeEdge(e, depender);
+			}
+		}
+	}
+
+	/**
+	 * Recompute the dependencies of the given depender, and of the dependers that depend on it (their dependencies
+	 * may include some of its dependencies, e.g. a StudyBenefitRiskAnalysis).
+	 */
+	public void changed(Entity depender) {
+		if (d_dependencies.containsKey(depender)) {
+			update(depender);
+			for (Entity e : getDependents(depender)) {
+				update(e);
+			}
+		}
+	}
+
+	/**
+	 * @return The dependers that depend on the given entity. The set is a copy.
+	 */
+	public Set<Entity> getDependents(Entity e) {
+		Set<Entity> dependents = d_dependents.get(e);
+		return dependents == null ? new HashSet<Entity>() : new HashSet<Entity>(dependents);
+	}
+
+	public boolean hasDependents(Entity e) {
+		return d_dependents.containsKey(e);
+	}
+
+	/**
+	 * Rebuild the hash structures. Must be called when an entity changes its name, since that changes its hash code.
+	 */
+	public void rehash() {
+		Map<Entity, Set<Entity>> dependents = new HashMap<Entity, Set<Entity>>();
+		for (Map.Entry<Entity, Set<Entity>> entry : d_dependents.entrySet()) {
+			dependents.put(entry.getKey(), new HashSet<Entity>(entry.getValue()));
+		}
+		d_dependents = dependents;
+		for (Map.Entry<Entity, Set<Entity>> entry : d_dependencies.entrySet()) {
+			entry.setValue(new HashSet<Entity>(entry.getValue()));
+		}
+	}
+
+	private void update(Entity depender) {
+		Set<Entity> oldDependencies = d_dependencies.get(depender);
+		Set<Entity> newDependencies = new HashSet<Entity>(depender.getDependencies());
+		newDependencies.remove(null);
+		for (Entity e : oldDependencies) {
+			if (!newDependencies.contains(e)) {
+				removeEdge(e, depender);
+			}
+		}
+		for (Entity e : newDependencies) {
+			if (!oldDependencies.contains(e)) {
+				Set<Entity> dependents = d_dependents.get(e);
+				if (dependents == null) {
+					dependents = new HashSet<Entity>();
+					d_dependents.put(e, dependents);
+				}
+				dependents.add(depender);
+			}
+		}
+		d_dependencies.put(depender, newDependencies);
+	}
+
+	private void removeEdge(Entity e, Entity depender) {
+		Set<Entity> dependents = d_dependents.get(e);
+		if (dependents != null) {
+			dependents.remove(depender);
+			if (dependents.isEmpty()) {
+				d_dependents.remove(e);
+			}
+		}
+	}
+}
@@ -27,6 +27,7 @@
 
 package org.drugis.addis.entities;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
@@ -92,6 +93,14 @@ public abstract class Domain {
 	 * @throws DependentEntitiesException if the entity is used by other top-level entities.
 	 */
 	public abstract void deleteEntity(Entity entity) throws DependentEntitiesException;
+
+	/**
+	 * Delete a set of top-level entities from the domain. Entities in the set may depend on each other.
+	 * Dependencies are checked before anything is deleted.
+	 * @param entities The entities to remove.
+	 * @throws DependentEntitiesException if any of the entities is used by top-level entities not in the set.
+	 */
+	public abstract void deleteEntities(Collection<? extends Entity> entities) throws DependentEntitiesException;
 	
 	/**
 	 * Return whether any entities depend on this entity.
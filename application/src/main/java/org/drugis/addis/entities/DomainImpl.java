@@ -28,14 +28,25 @@
 package org.drugis.addis.entities;
 
 import java.beans.IntrospectionException;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.beans.PropertyDescriptor;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
 import org.apache.commons.collections15.Predicate;
+import org.drugis.addis.entities.analysis.BaselineModelRegistry;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
 import org.drugis.addis.entities.analysis.MetaAnalysis;
 import org.drugis.addis.entities.analysis.MetaBenefitRiskAnalysis;
@@ -92,7 +103,33 @@ public class DomainImpl extends Domain {
 			CATEGORY_BENEFIT_RISK_ANALYSES
 		});
 	
-	private class DomainSortedSetModel<E extends Entity> extends SortedSetModel<E> {
+	private class DomainSortedSetModel<E extends Entity> extends SortedSetModel<E> implements IndexedByName<E> {
+		private final boolean d_dependers;
+		private final Map<String, E> d_nameIndex = new HashMap<String, E>();
+		private final PropertyChangeListener d_nameListener = new PropertyChangeListener() {
+			@SuppressWarnings("unchecked")
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (TypeWithName.PROPERTY_NAME.equals(evt.getPropertyName())) {
+					E element = (E) evt.getSource();
+					unindexName(element, (String) evt.getOldValue());
+					index(element);
+					d_dependencyIndex.rehash();
+					d_studyIndex.rehash();
+				}
+			}
+		};
+
+		public DomainSortedSetModel() {
+			this(false);
+		}
+
+		/**
+		 * @param dependers Whether the elements' dependencies should be tracked by the dependency index.
+		 */
+		public DomainSortedSetModel(boolean dependers) {
+			d_dependers = dependers;
+		}
+
 		@Override
 		public void add(int index, E element) {
 			if (element == null) {
@@ -104,26 +141,214 @@ public class DomainImpl extends Domain {
 			checkDependencies(element);
 		
 			super.add(index, element);
+			index(element);
+			element.addPropertyChangeListener(d_nameListener);
+			if (d_dependers) {
+				d_dependencyIndex.add(element);
+			}
+			added(element);
 		};
 		
 		@Override
 		public E remove(int index) {
 			checkDependents(get(index));
-			return super.remove(index);
+			E removed = super.remove(index);
+			unindex(removed);
+			return removed;
 		}
 		
+		@SuppressWarnings("unchecked")
 		@Override
 		public boolean remove(Object o) {
 			if (o instanceof Entity) {
 				checkDependents((Entity)o);
 			}
-			return super.remove(o);
+			boolean removed = super.remove(o);
+			if (removed) {
+				unindex((E) o);
+			}
+			return removed;
+		}
+
+		/**
+		 * Remove the given entities in a single pass, without checking their dependents.
+		 */
+		public void removeUnchecked(Set<? extends Entity> entities) {
+			for (int i = size() - 1; i >= 0; --i) {
+				if (entities.contains(get(i))) {
+					unindex(super.remove(i));
+				}
+			}
+		}
+
+		/**
+		 * Called after an element has been added.
+		 */
+		protected void added(E element) {
+		}
+
+		/**
+		 * Called after an element has been removed.
+		 */
+		protected void removed(E element) {
+		}
+
+		public E findByName(String name) {
+			return d_nameIndex.get(name);
+		}
+
+		/**
+		 * Index the element by name. If several elements share a name, the first in the set is indexed, as a linear
+		 * {@link org.drugis.addis.util.EntityUtil#findByName(Collection, String)} would find.
+		 */
+		private void index(E element) {
+			String name = getName(element);
+			if (name != null) {
+				E indexed = d_nameIndex.get(name);
+				if (indexed == null || (indexed != element && indexOf(element) < indexOf(indexed))) {
+					d_nameIndex.put(name, element);
+				}
+			}
+		}
+
+		/**
+		 * Remove the element from the name index under the given name, and index the next element with that name.
+		 */
+		private void unindexName(Entity element, String name) {
+			if (name != null && d_nameIndex.get(name) == element) {
+				d_nameIndex.remove(name);
+				for (E other : this) {
+					if (other != element && name.equals(getName(other))) {
+						d_nameIndex.put(name, other);
+						break;
+					}
+				}
+			}
 		}
+
+		private void unindex(E element) {
+			if (d_dependers) {
+				d_dependencyIndex.remove(element);
+			}
+			element.removePropertyChangeListener(d_nameListener);
+			unindexName(element, getName(element));
+			removed(element);
+		}
+	}
+
+	private static String getName(Object entity) {
+		return entity instanceof TypeWithName ? ((TypeWithName) entity).getName() : null;
 	}
 	
+	/**
+	 * Keeps the study index up to date with the set of studies.
+	 */
+	private class StudySetModel extends DomainSortedSetModel<Study> {
+		public StudySetModel() {
+			super(true);
+		}
+
+		@Override
+		protected void added(Study element) {
+			d_studyIndex.add(element);
+		}
+
+		@Override
+		protected void removed(Study element) {
+			d_studyIndex.remove(element);
+		}
+	}
+
+	/**
+	 * Updates the dependency index when an analysis, or the list of alternatives of a benefit-risk analysis, changes.
+	 */
+	private class AnalysisSetModel<E extends Entity> extends DomainSortedSetModel<E> {
+		private final Map<E, AnalysisListener> d_listeners = new IdentityHashMap<E, AnalysisListener>();
+
+		public AnalysisSetModel() {
+			super(true);
+		}
+
+		@Override
+		protected void added(E element) {
+			AnalysisListener listener = new AnalysisListener(element);
+			element.addPropertyChangeListener(listener);
+			if (element instanceof BenefitRiskAnalysis) {
+				((BenefitRiskAnalysis<?>) element).getAlternatives().addListDataListener(listener);
+			}
+			d_listeners.put(element, listener);
+		}
+
+		@Override
+		protected void removed(E element) {
+			AnalysisListener listener = d_listeners.remove(element);
+			if (listener != null) {
+				element.removePropertyChangeListener(listener);
+				if (element instanceof BenefitRiskAnalysis) {
+					((BenefitRiskAnalysis<?>) element).getAlternatives().removeListDataListener(listener);
+				}
+			}
+		}
+	}
+
+	private class AnalysisListener implements PropertyChangeListener, ListDataListener {
+		private final Entity d_analysis;
+
+		public AnalysisListener(Entity analysis) {
+			d_analysis = analysis;
+		}
+
+		public void propertyChange(PropertyChangeEvent evt) {
+			// Renaming is handled by the name listener, which rehashes the index.
+			if (!TypeWithName.PROPERTY_NAME.equals(evt.getPropertyName())) {
+				d_dependencyIndex.changed(d_analysis);
+			}
+		}
+
+		public void intervalAdded(ListDataEvent e) {
+			d_dependencyIndex.changed(d_analysis);
+		}
+
+		public void intervalRemoved(ListDataEvent e) {
+			d_dependencyIndex.changed(d_analysis);
+		}
+
+		public void contentsChanged(ListDataEvent e) {
+			d_dependencyIndex.changed(d_analysis);
+		}
+	}
+
+	/**
+	 * Lets the meta benefit-risk analyses in the domain share their baseline models.
+	 */
+	private class BenefitRiskSetModel extends AnalysisSetModel<BenefitRiskAnalysis<?>> {
+		@Override
+		protected void added(BenefitRiskAnalysis<?> element) {
+			super.added(element);
+			if (element instanceof MetaBenefitRiskAnalysis) {
+				((MetaBenefitRiskAnalysis) element).setBaselineModelRegistry(d_baselineModels);
+			}
+		}
+
+		@Override
+		protected void removed(BenefitRiskAnalysis<?> element) {
+			super.removed(element);
+			if (element instanceof MetaBenefitRiskAnalysis) {
+				((MetaBenefitRiskAnalysis) element).setBaselineModelRegistry(null);
+			}
+		}
+	}
+
+	private final BaselineModelRegistry d_baselineModels = new BaselineModelRegistry();
+	private final DependencyIndex d_dependencyIndex = new DependencyIndex();
+	private final StudyIndex d_studyIndex = new StudyIndex(new StudyIndex.ChangeListener() {
+		public void studyChanged(Study s) {
+			d_dependencyIndex.changed(s);
+		}
+	});
 	private SortedSetModel<Endpoint> d_endpoints = new DomainSortedSetModel<Endpoint>();
-	private SortedSetModel<Study> d_studies = new DomainSortedSetModel<Study>();
-	private SortedSetModel<MetaAnalysis> d_metaAnalyses = new DomainSortedSetModel<MetaAnalysis>();		
+	private SortedSetModel<Study> d_studies = new StudySetModel();
+	private SortedSetModel<MetaAnalysis> d_metaAnalyses = new AnalysisSetModel<MetaAnalysis>();		
 	private SortedSetModel<Drug> d_drugs = new DomainSortedSetModel<Drug>();
 	private ObservableList<TreatmentCategorization> d_treatments = new ArrayListModel<TreatmentCategorization>();
 
@@ -131,7 +356,7 @@ public class DomainImpl extends Domain {
 	private SortedSetModel<Unit> d_units = new DomainSortedSetModel<Unit>();
 	private SortedSetModel<PopulationCharacteristic> d_populationCharacteristics = new DomainSortedSetModel<PopulationCharacteristic>();
 	private SortedSetModel<AdverseEvent> d_adverseEvents = new DomainSortedSetModel<AdverseEvent>();
-	private SortedSetModel<BenefitRiskAnalysis<?>> d_benefitRiskAnalyses = new DomainSortedSetModel<BenefitRiskAnalysis<?>>();
+	private SortedSetModel<BenefitRiskAnalysis<?>> d_benefitRiskAnalyses = new BenefitRiskSetModel();
 	private FilteredObservableList<MetaAnalysis> d_networkMetaAnalyses;
 	private FilteredObservableList<MetaAnalysis> d_pairWiseMetaAnalyses;
 	
@@ -166,13 +391,13 @@ public class DomainImpl extends Domain {
 			throw new NullPointerException("Variable must not be null");
 		}
 		if (e instanceof Endpoint) {
-			return new FilteredObservableList<Study>(getStudies(), new EndpointFilter((Endpoint)e));
+			return d_studyIndex.getStudies((Endpoint)e);
 		}
 		if (e instanceof AdverseEvent) {
-			return new FilteredObservableList<Study>(getStudies(), new AdverseEventFilter((AdverseEvent)e));
+			return d_studyIndex.getStudies((AdverseEvent)e);
 		}
 		if (e instanceof PopulationCharacteristic) {
-			return new FilteredObservableList<Study>(getStudies(), new PopulationCharacteristicFilter((PopulationCharacteristic)e));
+			return d_studyIndex.getStudies((PopulationCharacteristic)e);
 		}
 		throw new RuntimeException(e.getClass() + " not supported");
 	}
@@ -182,11 +407,11 @@ public class DomainImpl extends Domain {
 	 * @param the drug to create a list for
 	 */
 	public ObservableList<Study> getStudies(Drug d) {
-		return new FilteredObservableList<Study>(getStudies(), new TreatmentDefinitionFilter(TreatmentDefinition.createTrivial(d)));
+		return d_studyIndex.getStudies(d);
 	}
 	
 	public ObservableList<Study> getStudies(Indication i) {
-		return new FilteredObservableList<Study>(getStudies(), new IndicationFilter(i));
+		return d_studyIndex.getStudies(i);
 	}
 	
 	public ObservableList<TreatmentCategorization> getCategorizations(final Drug drug) {
@@ -226,62 +451,107 @@ public class DomainImpl extends Domain {
 	}
 	
 	public Set<Entity> getDependents(Entity e) {
-		Set<Entity> deps = new HashSet<Entity>();
-		for (Study s : getStudies().getSet()) {
-			if (s.getDependencies().contains(e)) {
-				deps.add(s);
+		return d_dependencyIndex.getDependents(e);
+	}
+	
+	public void deleteEntity(Entity entity) throws DependentEntitiesException {
+		getStore(entity).remove(entity);
+	}
+	
+	public void deleteEntities(Collection<? extends Entity> entities) throws DependentEntitiesException {
+		Set<Entity> toDelete = new HashSet<Entity>(entities);
+		Set<Entity> outside = new HashSet<Entity>();
+		for (Entity e : toDelete) {
+			for (Entity dep : getDependents(e)) {
+				if (!toDelete.contains(dep)) {
+					outside.add(dep);
+				}
+			}
+		}
+		if (!outside.isEmpty()) {
+			throw new DependentEntitiesException(outside);
+		}
+
+		// Group the entities by the list they are stored in, and remove each group in one pass. The dependents were
+		// checked above, so they are not checked again per entity.
+		Map<List<? extends Entity>, Set<Entity>> byStore = new IdentityHashMap<List<? extends Entity>, Set<Entity>>();
+		for (Entity e : toDelete) {
+			List<? extends Entity> store = getStore(e);
+			if (!byStore.containsKey(store)) {
+				byStore.put(store, new HashSet<Entity>());
 			}
+			byStore.get(store).add(e);
 		}
-		for (MetaAnalysis s : getMetaAnalyses().getSet()) {
-			if (s.getDependencies().contains(e)) {
-				deps.add(s);
+		// Delete dependers before the entities they depend on: the stores are listed in order of dependency.
+		List<List<? extends Entity>> stores = getStores();
+		Collections.reverse(stores);
+		for (List<? extends Entity> store : stores) {
+			Set<Entity> group = byStore.get(store);
+			if (group == null) {
+				continue;
 			}
-		}		
-		for (BenefitRiskAnalysis<?> s : getBenefitRiskAnalyses().getSet()) {
-			if (s.getDependencies().contains(e)) {
-				deps.add(s);
+			if (store instanceof DomainSortedSetModel) {
+				((DomainSortedSetModel<?>) store).removeUnchecked(group);
+			} else {
+				store.removeAll(group);
 			}
-		}		
-		return deps;
+		}
 	}
-	
-	public void deleteEntity(Entity entity) throws DependentEntitiesException {
+
+	/**
+	 * @return The list the given entity is stored in.
+	 */
+	private List<? extends Entity> getStore(Entity entity) {
 		if (entity instanceof Drug) {
-			getDrugs().remove(((Drug) entity));
+			return getDrugs();
 		} else if (entity instanceof TreatmentCategorization) {
-			getTreatmentCategorizations().remove(((TreatmentCategorization) entity));
+			return getTreatmentCategorizations();
 		} else if (entity instanceof Endpoint) {
-			getEndpoints().remove(((Endpoint) entity));
+			return getEndpoints();
 		} else if (entity instanceof AdverseEvent) {
-			getAdverseEvents().remove(((OutcomeMeasure) entity));
+			return getAdverseEvents();
 		} else if (entity instanceof PopulationCharacteristic) {
-			getPopulationCharacteristics().remove(((PopulationCharacteristic) entity));
+			return getPopulationCharacteristics();
 		} else if (entity instanceof Study) {
-			getStudies().remove(((Study) entity));
+			return getStudies();
 		} else if (entity instanceof MetaAnalysis) {
-			getMetaAnalyses().remove(((MetaAnalysis) entity));
-		} else if (entity instanceof MetaBenefitRiskAnalysis) {
-			getBenefitRiskAnalyses().remove(((MetaBenefitRiskAnalysis) entity));
-		} else if (entity instanceof StudyBenefitRiskAnalysis) {
-			getBenefitRiskAnalyses().remove(((StudyBenefitRiskAnalysis) entity));
+			return getMetaAnalyses();
+		} else if (entity instanceof MetaBenefitRiskAnalysis || entity instanceof StudyBenefitRiskAnalysis) {
+			return getBenefitRiskAnalyses();
 		} else if (entity instanceof Indication) {
-			getIndications().remove(((Indication) entity));
+			return getIndications();
 		} else if (entity instanceof Unit) {
-			getUnits().remove(((Unit) entity));
-		} else {
-			throw new RuntimeException("Unhandled entity type " + entity.getClass().getSimpleName());
+			return getUnits();
 		}
+		throw new RuntimeException("Unhandled entity type " + entity.getClass().getSimpleName());
 	}
-	
+
+	/**
+	 * @return The lists entities are stored in, such that entities only depend on entities in earlier lists.
+	 */
+	private List<List<? extends Entity>> getStores() {
+		List<List<? extends Entity>> stores = new ArrayList<List<? extends Entity>>();
+		stores.add(getUnits());
+		stores.add(getIndications());
+		stores.add(getDrugs());
+		stores.add(getTreatmentCategorizations());
+		stores.add(getEndpoints());
+		stores.add(getAdverseEvents());
+		stores.add(getPopulationCharacteristics());
+		stores.add(getStudies());
+		stores.add(getMetaAnalyses());
+		stores.add(getBenefitRiskAnalyses());
+		return stores;
+	}
+
 	/**
 	 * Checks whether an entity is being depended upon by other entities currently in the Domain.
 	 * @param d The entity to check for.
 	 * @throws DependentEntitiesException if the entity is being depended upon.
 	 */
 	private void checkDependents(Entity d) throws DependentEntitiesException {
-		Set<Entity> deps = getDependents(d);
-		if (!deps.isEmpty()) {
-			throw new DependentEntitiesException(deps);
+		if (d_dependencyIndex.hasDependents(d)) {
+			throw new DependentEntitiesException(getDependents(d));
 		}
 	}
 
@@ -304,7 +574,7 @@ public class DomainImpl extends Domain {
 	}
 	
 	public boolean hasDependents(Entity entity) {
-		return !getDependents(entity).isEmpty();
+		return d_dependencyIndex.hasDependents(entity);
 	}
 
 	public List<EntityCategory> getCategories() {
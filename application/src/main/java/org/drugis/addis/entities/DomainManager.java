@@ -27,8 +27,11 @@
 
 package org.drugis.addis.entities;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -36,18 +39,30 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
 
 import org.drugis.addis.entities.data.AddisData;
 import org.drugis.addis.gui.Main.XMLStreamFilter;
+import org.drugis.addis.util.jaxb.DomainSnapshot;
+import org.drugis.addis.util.jaxb.IncrementalDomainWriter;
 import org.drugis.addis.util.jaxb.JAXBConvertor;
 import org.drugis.addis.util.jaxb.JAXBHandler;
+import org.drugis.addis.util.jaxb.StreamingDomainLoader;
 import org.drugis.addis.util.jaxb.JAXBConvertor.ConversionException;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
 
 
 
 public class DomainManager {
 	private Domain d_domain = new DomainImpl();
+	private boolean d_streamingLoad = false;
+	private boolean d_parallelConversion = false;
+	private boolean d_incrementalSave = false;
+	private File d_snapshotDir = null;
+	private File d_hashedFile;
+	private byte[] d_hash;
+	private IncrementalDomainWriter d_writer;
 
 	public Domain getDomain() {
 		return d_domain;
@@ -55,6 +70,171 @@ public class DomainManager {
 
 	public void resetDomain() {
 		d_domain = new DomainImpl();
+		releaseWriter();
+	}
+
+	/**
+	 * Whether to read XML section by section, converting entities as they are parsed, instead of
+	 * unmarshalling the complete document before conversion.
+	 * @see StreamingDomainLoader
+	 */
+	public void setStreamingLoad(boolean streaming) {
+		d_streamingLoad = streaming;
+	}
+
+	public boolean isStreamingLoad() {
+		return d_streamingLoad;
+	}
+
+	/**
+	 * Whether to convert studies on all available processors when loading.
+	 * With streaming load, studies are converted in batches as they are read.
+	 */
+	public void setParallelConversion(boolean parallel) {
+		d_parallelConversion = parallel;
+	}
+
+	public boolean isParallelConversion() {
+		return d_parallelConversion;
+	}
+
+	private int getConversionThreads() {
+		return d_parallelConversion ? Runtime.getRuntime().availableProcessors() : 1;
+	}
+
+	/**
+	 * Whether to keep the XML of saved studies and analyses in memory, and only convert the ones that changed on
+	 * the next save.
+	 * @see IncrementalDomainWriter
+	 */
+	public void setIncrementalSave(boolean incremental) {
+		d_incrementalSave = incremental;
+		if (!incremental) {
+			releaseWriter();
+		}
+	}
+
+	public boolean isIncrementalSave() {
+		return d_incrementalSave;
+	}
+
+	/**
+	 * Directory in which to keep binary snapshots of opened .addis files, to speed up re-opening them.
+	 * @param dir The snapshot directory, or null to disable snapshots.
+	 * @see DomainSnapshot
+	 */
+	public void setSnapshotDirectory(File dir) {
+		d_snapshotDir = dir;
+	}
+
+	public File getSnapshotDirectory() {
+		return d_snapshotDir;
+	}
+
+	/**
+	 * Replace the Domain by the one stored in the snapshot of the given file, if snapshots are enabled and there is
+	 * a snapshot that matches the file's current contents. If the snapshot is out of date, the file's hash is
+	 * remembered for {@link #saveSnapshot(File, int)}.
+	 * @param file The .addis file.
+	 * @return The format of the file the snapshot was made from, or null if no valid snapshot was found (in which
+	 * case the Domain was not changed).
+	 * @throws IOException If the snapshot could not be read. It is then deleted, so the file can be loaded from XML.
+	 */
+	public XmlFormatType loadSnapshot(File file) throws IOException {
+		if (d_snapshotDir == null) {
+			return null;
+		}
+		File snapshotFile = DomainSnapshot.getSnapshotFile(d_snapshotDir, file);
+		if (!snapshotFile.isFile()) {
+			return null;
+		}
+		try {
+			InputStream is = new FileInputStream(snapshotFile);
+			try {
+				byte[] hash = DomainSnapshot.hash(file);
+				DomainSnapshot snapshot = DomainSnapshot.read(is, hash);
+				if (snapshot == null) {
+					rememberHash(file, hash);
+					return null;
+				}
+				d_domain = (Domain) JAXBConvertor.convertAddisDataToDomain(snapshot.getData(), getConversionThreads());
+				releaseWriter();
+				return snapshot.getSourceType();
+			} finally {
+				is.close();
+			}
+		} catch (Exception e) {
+			snapshotFile.delete();
+			throw wrapSnapshotException("Could not read snapshot " + snapshotFile, e);
+		}
+	}
+
+	/**
+	 * Write a snapshot of the given file, if snapshots are enabled.
+	 * The snapshot is made from the file, not from the Domain, so this can run in the background while the Domain is
+	 * in use. If the file's hash was computed by {@link #loadSnapshot(File)}, it is not computed again.
+	 * Saving a file does not update its snapshot, to keep saving fast; the snapshot is re-created when the file is
+	 * next opened from XML.
+	 * @param file The .addis file.
+	 * @param version Schema version of the file.
+	 * @throws IOException If the snapshot could not be written. No partial snapshot is left behind.
+	 */
+	public void saveSnapshot(File file, int version) throws IOException {
+		if (d_snapshotDir == null) {
+			return;
+		}
+		File snapshotFile = DomainSnapshot.getSnapshotFile(d_snapshotDir, file);
+		File tmpFile = new File(snapshotFile.getPath() + ".tmp");
+		try {
+			if (!d_snapshotDir.isDirectory() && !d_snapshotDir.mkdirs()) {
+				throw new IOException("Could not create directory " + d_snapshotDir);
+			}
+			byte[] hash = takeHash(file);
+			if (hash == null) {
+				hash = DomainSnapshot.hash(file);
+			}
+			InputStream is = new BufferedInputStream(new FileInputStream(file));
+			try {
+				OutputStream os = new FileOutputStream(tmpFile);
+				try {
+					DomainSnapshot.write(is, hash, version, os);
+				} finally {
+					os.close();
+				}
+			} finally {
+				is.close();
+			}
+			// Replace the snapshot only once it is complete, so that it is never read half-written.
+			snapshotFile.delete();
+			if (!tmpFile.renameTo(snapshotFile)) {
+				throw new IOException("Could not rename " + tmpFile + " to " + snapshotFile);
+			}
+		} catch (Exception e) {
+			tmpFile.delete();
+			throw wrapSnapshotException("Could not write snapshot " + snapshotFile, e);
+		}
+	}
+
+	private synchronized void rememberHash(File file, byte[] hash) {
+		d_hashedFile = file.getAbsoluteFile();
+		d_hash = hash;
+	}
+
+	/**
+	 * @return The remembered hash of the given file, or null. It is forgotten, as the file may change.
+	 */
+	private synchronized byte[] takeHash(File file) {
+		byte[] hash = file.getAbsoluteFile().equals(d_hashedFile) ? d_hash : null;
+		d_hashedFile = null;
+		d_hash = null;
+		return hash;
+	}
+
+	private static IOException wrapSnapshotException(String message, Exception e) {
+		if (e instanceof IOException) {
+			return (IOException) e;
+		}
+		return new IOException(message + ": " + e.getMessage(), e);
 	}
 
 	/**
@@ -82,8 +262,13 @@ public class DomainManager {
 	 */
 	public void loadXMLDomain(InputStream is, int version) throws IOException {
 		try {
-			AddisData data = JAXBHandler.unmarshallAddisData(JAXBConvertor.transformToLatest(is, version));
-			d_domain = (Domain) JAXBConvertor.convertAddisDataToDomain(data);
+			if (d_streamingLoad) {
+				d_domain = StreamingDomainLoader.load(is, version, getConversionThreads());
+			} else {
+				AddisData data = JAXBHandler.unmarshallAddisData(is, version);
+				d_domain = (Domain) JAXBConvertor.convertAddisDataToDomain(data, getConversionThreads());
+			}
+			releaseWriter();
 			is.close();
 		} catch (JAXBException e) {
 			throw new RuntimeException(e);
@@ -91,6 +276,8 @@ public class DomainManager {
 			throw new RuntimeException(e);
 		} catch (TransformerException e) {
 			throw new RuntimeException(e);
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
@@ -99,6 +286,16 @@ public class DomainManager {
 	 * @param file File to write the domain to.
 	 */
 	public void saveXMLDomain(File file) throws IOException {
+		if (d_incrementalSave) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			saveIncremental(bos);
+
+			// Open stream *after* conversion so we don't clear the file if it can't be saved.
+			FileOutputStream os = new FileOutputStream(file);
+			bos.writeTo(os);
+			os.close();
+			return;
+		}
 		try {
 			AddisData addisData = JAXBConvertor.convertDomainToAddisData(d_domain);
 
@@ -116,6 +313,10 @@ public class DomainManager {
 	 * @param os Stream to write domain to.
 	 */
 	public void saveXMLDomain(OutputStream os) throws IOException {
+		if (d_incrementalSave) {
+			saveIncremental(os);
+			return;
+		}
 		try {
 			AddisData addisData = JAXBConvertor.convertDomainToAddisData(d_domain);
 			saveAddisData(addisData, os);
@@ -124,6 +325,31 @@ public class DomainManager {
 		}
 	}
 
+	private void saveIncremental(OutputStream os) throws IOException {
+		try {
+			if (d_writer == null || d_writer.getDomain() != d_domain) {
+				releaseWriter();
+				d_writer = new IncrementalDomainWriter(d_domain);
+			}
+			BufferedOutputStream buf = new BufferedOutputStream(os);
+			FilterOutputStream fos = new XMLStreamFilter(buf);
+			d_writer.write(fos);
+			buf.flush();
+			fos.close();
+		} catch (JAXBException e) {
+			throw new RuntimeException(e);
+		} catch (ConversionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void releaseWriter() {
+		if (d_writer != null) {
+			d_writer.invalidate();
+			d_writer = null;
+		}
+	}
+
 	private void saveAddisData(AddisData data, OutputStream os) throws IOException {
 		try {
 			BufferedOutputStream buf = new BufferedOutputStream(os);
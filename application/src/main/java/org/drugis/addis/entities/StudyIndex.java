@@ -0,0 +1,346 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.apache.commons.collections15.Predicate;
+import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.common.beans.FilteredObservableList;
+import org.drugis.common.beans.SortedSetModel;
+
+import com.jgoodies.binding.beans.Observable;
+import com.jgoodies.binding.list.ObservableList;
+
+/**
+ * Inverted indexes from indications, drugs and variables to the studies that include them.
+ * A study is re-indexed whenever it, its arms, activities (including their drug treatments) or outcome measures
+ * change, so that the lists returned by {@link #getStudies(Indication)} etc. stay up to date without scanning all
+ * studies.
+ * The lists have the same contents as filtering the domain's studies by {@link DomainImpl.IndicationFilter},
+ * {@link DomainImpl.TreatmentDefinitionFilter} (with a trivial definition), {@link DomainImpl.EndpointFilter}, etc.
+ */
+class StudyIndex {
+	/**
+	 * Notified after a study in the index has been re-indexed because it, or one of its parts, changed.
+	 */
+	public interface ChangeListener {
+		public void studyChanged(Study s);
+	}
+
+	private static final Predicate<Study> s_all = new Predicate<Study>() {
+		public boolean evaluate(Study s) {
+			return true;
+		}
+	};
+
+	private static class Inverted<K> {
+		private Map<K, SortedSetModel<Study>> d_map = new HashMap<K, SortedSetModel<Study>>();
+		private Map<K, ObservableList<Study>> d_views = new HashMap<K, ObservableList<Study>>();
+
+		/**
+		 * @return A read-only view of the studies for the given key.
+		 */
+		public ObservableList<Study> get(K key) {
+			ObservableList<Study> view = d_views.get(key);
+			if (view == null) {
+				view = new FilteredObservableList<Study>(getSet(key), s_all);
+				d_views.put(key, view);
+			}
+			return view;
+		}
+
+		public void update(Study s, Set<K> oldKeys, Set<K> newKeys) {
+			for (K key : oldKeys) {
+				if (!newKeys.contains(key)) {
+					SortedSetModel<Study> studies = d_map.get(key);
+					studies.remove(s);
+					// Drop keys that no longer have studies, unless a view of them is in use
+					if (studies.isEmpty() && !d_views.containsKey(key)) {
+						d_map.remove(key);
+					}
+				}
+			}
+			for (K key : newKeys) {
+				if (!oldKeys.contains(key)) {
+					getSet(key).add(s);
+				}
+			}
+		}
+
+		/**
+		 * @return The keys that have studies, or for which a view was handed out.
+		 */
+		public Set<K> getKeys() {
+			return Collections.unmodifiableSet(d_map.keySet());
+		}
+
+		public void rehash() {
+			d_map = new HashMap<K, SortedSetModel<Study>>(d_map);
+			d_views = new HashMap<K, ObservableList<Study>>(d_views);
+		}
+
+		private SortedSetModel<Study> getSet(K key) {
+			SortedSetModel<Study> studies = d_map.get(key);
+			if (studies == null) {
+				studies = new SortedSetModel<Study>();
+				d_map.put(key, studies);
+			}
+			return studies;
+		}
+	}
+
+	/**
+	 * The keys a study is currently indexed under, and the listeners that trigger re-indexing.
+	 */
+	private class Entry implements PropertyChangeListener, ListDataListener {
+		private final Study d_study;
+		private Set<Indication> d_indications = Collections.emptySet();
+		private Set<Drug> d_drugs = Collections.emptySet();
+		private Set<Variable> d_endpoints = Collections.emptySet();
+		private Set<Variable> d_adverseEvents = Collections.emptySet();
+		private Set<Variable> d_populationChars = Collections.emptySet();
+		private final List<Observable> d_beans = new ArrayList<Observable>();
+		private final List<ObservableList<?>> d_lists = new ArrayList<ObservableList<?>>();
+
+		public Entry(Study study) {
+			d_study = study;
+			d_study.addPropertyChangeListener(this);
+			d_study.getArms().addListDataListener(this);
+			d_study.getEpochs().addListDataListener(this);
+			d_study.getStudyActivities().addListDataListener(this);
+			d_study.getStudyOutcomeMeasures().addListDataListener(this);
+		}
+
+		public void update() {
+			Set<Indication> indications = d_study.getIndication() == null ?
+					Collections.<Indication>emptySet() : Collections.singleton(d_study.getIndication());
+			Set<Drug> drugs = trivialDrugs(d_study);
+			Set<Variable> endpoints = new HashSet<Variable>(Study.extractVariables(d_study.getEndpoints()));
+			Set<Variable> adverseEvents = new HashSet<Variable>(Study.extractVariables(d_study.getAdverseEvents()));
+			Set<Variable> populationChars = new HashSet<Variable>(Study.extractVariables(d_study.getPopulationChars()));
+
+			d_byIndication.update(d_study, d_indications, indications);
+			d_byDrug.update(d_study, d_drugs, drugs);
+			d_byEndpoint.update(d_study, d_endpoints, endpoints);
+			d_byAdverseEvent.update(d_study, d_adverseEvents, adverseEvents);
+			d_byPopulationChar.update(d_study, d_populationChars, populationChars);
+
+			d_indications = indications;
+			d_drugs = drugs;
+			d_endpoints = endpoints;
+			d_adverseEvents = adverseEvents;
+			d_populationChars = populationChars;
+
+			unwatchChildren();
+			for (StudyActivity sa : d_study.getStudyActivities()) {
+				watch(sa);
+				if (sa.getActivity() instanceof TreatmentActivity) {
+					TreatmentActivity ta = (TreatmentActivity) sa.getActivity();
+					watch(ta);
+					ta.getTreatments().addListDataListener(this);
+					d_lists.add(ta.getTreatments());
+					for (DrugTreatment dt : ta.getTreatments()) {
+						watch(dt);
+					}
+				}
+			}
+			for (StudyOutcomeMeasure<?> som : d_study.getStudyOutcomeMeasures()) {
+				watch(som);
+			}
+		}
+
+		public void release() {
+			Set<Indication> noIndications = Collections.emptySet();
+			Set<Drug> noDrugs = Collections.emptySet();
+			Set<Variable> noVariables = Collections.emptySet();
+			d_byIndication.update(d_study, d_indications, noIndications);
+			d_byDrug.update(d_study, d_drugs, noDrugs);
+			d_byEndpoint.update(d_study, d_endpoints, noVariables);
+			d_byAdverseEvent.update(d_study, d_adverseEvents, noVariables);
+			d_byPopulationChar.update(d_study, d_populationChars, noVariables);
+
+			unwatchChildren();
+			d_study.removePropertyChangeListener(this);
+			d_study.getArms().removeListDataListener(this);
+			d_study.getEpochs().removeListDataListener(this);
+			d_study.getStudyActivities().removeListDataListener(this);
+			d_study.getStudyOutcomeMeasures().removeListDataListener(this);
+		}
+
+		private void watch(Object bean) {
+			if (bean instanceof Observable) {
+				((Observable) bean).addPropertyChangeListener(this);
+				d_beans.add((Observable) bean);
+			}
+		}
+
+		private void unwatchChildren() {
+			for (Observable bean : d_beans) {
+				bean.removePropertyChangeListener(this);
+			}
+			d_beans.clear();
+			for (ObservableList<?> list : d_lists) {
+				list.removeListDataListener(this);
+			}
+			d_lists.clear();
+		}
+
+		public void rehash() {
+			d_indications = new HashSet<Indication>(d_indications);
+			d_drugs = new HashSet<Drug>(d_drugs);
+			d_endpoints = new HashSet<Variable>(d_endpoints);
+			d_adverseEvents = new HashSet<Variable>(d_adverseEvents);
+			d_populationChars = new HashSet<Variable>(d_populationChars);
+		}
+
+		public void propertyChange(PropertyChangeEvent evt) {
+			changed();
+		}
+
+		public void intervalAdded(ListDataEvent e) {
+			changed();
+		}
+
+		public void intervalRemoved(ListDataEvent e) {
+			changed();
+		}
+
+		public void contentsChanged(ListDataEvent e) {
+			changed();
+		}
+
+		private void changed() {
+			update();
+			if (d_listener != null) {
+				d_listener.studyChanged(d_study);
+			}
+		}
+	}
+
+	private final Inverted<Indication> d_byIndication = new Inverted<Indication>();
+	private final Inverted<Drug> d_byDrug = new Inverted<Drug>();
+	private final Inverted<Variable> d_byEndpoint = new Inverted<Variable>();
+	private final Inverted<Variable> d_byAdverseEvent = new Inverted<Variable>();
+	private final Inverted<Variable> d_byPopulationChar = new Inverted<Variable>();
+	private final Map<Study, Entry> d_entries = new IdentityHashMap<Study, Entry>();
+	private final ChangeListener d_listener;
+
+	public StudyIndex() {
+		this(null);
+	}
+
+	public StudyIndex(ChangeListener listener) {
+		d_listener = listener;
+	}
+
+	public void add(Study s) {
+		if (!d_entries.containsKey(s)) {
+			Entry entry = new Entry(s);
+			d_entries.put(s, entry);
+			entry.update();
+		}
+	}
+
+	public void remove(Study s) {
+		Entry entry = d_entries.remove(s);
+		if (entry != null) {
+			entry.release();
+		}
+	}
+
+	/**
+	 * Rebuild the hash structures. Must be called when an entity changes its name, since that changes its hash code.
+	 */
+	public void rehash() {
+		d_byIndication.rehash();
+		d_byDrug.rehash();
+		d_byEndpoint.rehash();
+		d_byAdverseEvent.rehash();
+		d_byPopulationChar.rehash();
+		for (Entry entry : d_entries.values()) {
+			entry.rehash();
+		}
+	}
+
+	public ObservableList<Study> getStudies(Indication i) {
+		return d_byIndication.get(i);
+	}
+
+	public ObservableList<Study> getStudies(Drug d) {
+		return d_byDrug.get(d);
+	}
+
+	public ObservableList<Study> getStudies(Endpoint e) {
+		return d_byEndpoint.get(e);
+	}
+
+	public ObservableList<Study> getStudies(AdverseEvent ae) {
+		return d_byAdverseEvent.get(ae);
+	}
+
+	public ObservableList<Study> getStudies(PopulationCharacteristic pc) {
+		return d_byPopulationChar.get(pc);
+	}
+
+	/**
+	 * @return The drugs currently in the index.
+	 */
+	Set<Drug> getIndexedDrugs() {
+		return d_byDrug.getKeys();
+	}
+
+	/**
+	 * The drugs d for which some arm of the study matches the trivial TreatmentDefinition {d}.
+	 */
+	private static Set<Drug> trivialDrugs(Study s) {
+		Set<Drug> drugs = new HashSet<Drug>();
+		for (Arm a : s.getArms()) {
+			TreatmentActivity act = s.getTreatment(a);
+			if (act != null && act.getTreatments().size() == 1) {
+				Drug drug = act.getTreatments().get(0).getDrug();
+				if (drug != null && !drugs.contains(drug) && TreatmentDefinition.createTrivial(drug).match(act)) {
+					drugs.add(drug);
+				}
+			}
+		}
+		return drugs;
+	}
+}
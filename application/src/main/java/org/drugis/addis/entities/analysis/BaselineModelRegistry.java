@@ -0,0 +1,163 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drugis.addis.entities.Measurement;
+import org.drugis.addis.entities.OutcomeMeasure;
+import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.mtc.presentation.MCMCModelWrapper;
+
+/**
+ * Shares baseline models between benefit-risk analyses, so that analyses with the same baseline on the same
+ * criterion and studies run the simulation only once.
+ * Models are keyed by the outcome measure, the baseline TreatmentDefinition and the measurements of the baseline
+ * (the outcome measure and measurements by identity). Each analysis that uses a model holds a reference to it until
+ * it is released; a model that is no longer referenced is dropped from the registry.
+ */
+public class BaselineModelRegistry {
+	private static class Key {
+		private final OutcomeMeasure d_om;
+		private final TreatmentDefinition d_baseline;
+		private final List<Measurement> d_measurements;
+
+		public Key(OutcomeMeasure om, TreatmentDefinition baseline, List<Measurement> measurements) {
+			d_om = om;
+			d_baseline = baseline;
+			d_measurements = new ArrayList<Measurement>(measurements);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			if (d_om != other.d_om || !d_baseline.equals(other.d_baseline) || d_measurements.size() != other.d_measurements.size()) {
+				return false;
+			}
+			for (int i = 0; i < d_measurements.size(); ++i) {
+				if (d_measurements.get(i) != other.d_measurements.get(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 31 * System.identityHashCode(d_om) + d_baseline.hashCode();
+			for (Measurement m : d_measurements) {
+				hash = 31 * hash + System.identityHashCode(m);
+			}
+			return hash;
+		}
+	}
+
+	private static class Entry {
+		private final MCMCModelWrapper d_model;
+		private final Set<MetaBenefitRiskAnalysis> d_users =
+			Collections.newSetFromMap(new IdentityHashMap<MetaBenefitRiskAnalysis, Boolean>());
+
+		public Entry(MCMCModelWrapper model) {
+			d_model = model;
+		}
+	}
+
+	private final Map<Key, Entry> d_entries = new HashMap<Key, Entry>();
+
+	/**
+	 * Get the shared baseline model of the given analysis for om, creating it if there is none (or it was
+	 * destroyed). The analysis holds a reference to the model until {@link #release(MetaBenefitRiskAnalysis)}.
+	 * The model is created without holding the registry's lock, so that other analyses are not blocked meanwhile; if
+	 * another analysis registers a model for the same key first, that model is used instead.
+	 */
+	MCMCModelWrapper acquire(MetaBenefitRiskAnalysis analysis, OutcomeMeasure om) {
+		Key key = new Key(om, analysis.getBaseline(), analysis.getBaselineMeasurements(om));
+		synchronized (this) {
+			Entry entry = d_entries.get(key);
+			if (entry != null && !entry.d_model.isDestroyed()) {
+				entry.d_users.add(analysis);
+				return entry.d_model;
+			}
+		}
+		MCMCModelWrapper model = analysis.createBaselineModel(om);
+		synchronized (this) {
+			Entry entry = d_entries.get(key);
+			if (entry == null || entry.d_model.isDestroyed()) {
+				Entry replaced = entry;
+				entry = new Entry(model);
+				if (replaced != null) {
+					entry.d_users.addAll(replaced.d_users);
+				}
+				d_entries.put(key, entry);
+			}
+			entry.d_users.add(analysis);
+			return entry.d_model;
+		}
+	}
+
+	/**
+	 * Release all references held by the given analysis.
+	 */
+	synchronized void release(MetaBenefitRiskAnalysis analysis) {
+		for (Iterator<Entry> it = d_entries.values().iterator(); it.hasNext(); ) {
+			Entry entry = it.next();
+			if (entry.d_users.remove(analysis) && entry.d_users.isEmpty()) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of analyses that hold a reference to the given model.
+	 */
+	public synchronized int getReferenceCount(MCMCModelWrapper model) {
+		for (Entry entry : d_entries.values()) {
+			if (entry.d_model == model) {
+				return entry.d_users.size();
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return The number of models in the registry.
+	 */
+	public synchronized int getModelCount() {
+		return d_entries.size();
+	}
+}
@@ -44,6 +44,16 @@ public abstract class BenefitRiskAnalysis<Alternative> extends AbstractNamedEnti
 	public static String PROPERTY_ANALYSIS_TYPE = "analysisType";
 	public static String PROPERTY_BASELINE = "baseline";
 	public static String PROPERTY_DECISION_CONTEXT = "decisionContext";
+	public static String PROPERTY_SIMULATION_SEED = "simulationSeed";
+	public static String PROPERTY_SIMULATION_ITERATIONS = "simulationIterations";
+	public static String PROPERTY_SIMULATION_TARGET_ERROR = "simulationTargetError";
+
+	public static final long DEFAULT_SIMULATION_SEED = 20090101L;
+	public static final int DEFAULT_SIMULATION_ITERATIONS = 10000;
+
+	private long d_simulationSeed = DEFAULT_SIMULATION_SEED;
+	private int d_simulationIterations = DEFAULT_SIMULATION_ITERATIONS;
+	private Double d_simulationTargetError = null;
 
 	public BenefitRiskAnalysis(String name) {
 		super(name);
@@ -74,6 +84,52 @@ public abstract class BenefitRiskAnalysis<Alternative> extends AbstractNamedEnti
 	
 	public abstract DecisionContext getDecisionContext();
 
+	/**
+	 * @return The seed of the SMAA simulation. A given seed and number of iterations always give the same results.
+	 */
+	public long getSimulationSeed() {
+		return d_simulationSeed;
+	}
+
+	public void setSimulationSeed(long seed) {
+		long oldVal = d_simulationSeed;
+		d_simulationSeed = seed;
+		firePropertyChange(PROPERTY_SIMULATION_SEED, oldVal, d_simulationSeed);
+	}
+
+	/**
+	 * @return The number of iterations of the SMAA simulation, or the maximum number if a target error is set.
+	 */
+	public int getSimulationIterations() {
+		return d_simulationIterations;
+	}
+
+	public void setSimulationIterations(int iterations) {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("The number of iterations must be positive, got " + iterations);
+		}
+		int oldVal = d_simulationIterations;
+		d_simulationIterations = iterations;
+		firePropertyChange(PROPERTY_SIMULATION_ITERATIONS, oldVal, d_simulationIterations);
+	}
+
+	/**
+	 * @return The Monte Carlo standard error the rank acceptabilities and central weights of the SMAA simulation
+	 * should reach before it stops, or null to run the full number of iterations.
+	 */
+	public Double getSimulationTargetError() {
+		return d_simulationTargetError;
+	}
+
+	public void setSimulationTargetError(Double targetError) {
+		if (targetError != null && !(targetError > 0.0)) {
+			throw new IllegalArgumentException("The target error must be positive, got " + targetError);
+		}
+		Double oldVal = d_simulationTargetError;
+		d_simulationTargetError = targetError;
+		firePropertyChange(PROPERTY_SIMULATION_TARGET_ERROR, oldVal, d_simulationTargetError);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj != null && obj instanceof BenefitRiskAnalysis) {
@@ -33,11 +33,15 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
 import org.drugis.addis.entities.Arm;
 import org.drugis.addis.entities.ContinuousMeasurement;
@@ -58,8 +62,10 @@ import org.drugis.addis.entities.treatment.TreatmentDefinition;
 import org.drugis.addis.mcmcmodel.AbstractBaselineModel;
 import org.drugis.addis.mcmcmodel.BaselineMeanDifferenceModel;
 import org.drugis.addis.mcmcmodel.BaselineOddsModel;
+import org.drugis.addis.mcmcmodel.MCMCResultCache;
 import org.drugis.addis.util.EntityUtil;
 import org.drugis.addis.util.comparator.AlphabeticalComparator;
+import org.drugis.common.EqualsUtil;
 import org.drugis.common.beans.SortedSetModel;
 import org.drugis.common.threading.Task;
 import org.drugis.common.threading.ThreadHandler;
@@ -72,6 +78,7 @@ import org.drugis.mtc.summary.NormalSummary;
 import org.drugis.mtc.summary.Summary;
 import org.drugis.mtc.summary.TransformedMultivariateNormalSummary;
 
+import com.jgoodies.binding.beans.Observable;
 import com.jgoodies.binding.list.ObservableList;
 
 public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefinition> {
@@ -105,8 +112,41 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 	private Map<OutcomeMeasure, MCMCModelWrapper> d_baselineModelMap;
 	private AnalysisType d_analysisType;
 	private DecisionContext d_decisionContext;
+	private boolean d_analyticBaseline = false;
+	private BaselineModelRegistry d_baselineModelRegistry;
 	private Map<MetaAnalysis, TransformedMultivariateNormalSummary> d_relativeEffects =
 		new HashMap<MetaAnalysis, TransformedMultivariateNormalSummary>();
+
+	// Cached views, rebuilt lazily: the criteria and meta-analyses (invalidated when the meta-analyses or their
+	// outcome measures change), the non-baseline alternatives (invalidated when the alternatives change) and the
+	// distributions by criterion and alternative (invalidated when the underlying summaries change).
+	// Invalidation only bumps a version, so listeners never wait for the lock held while the caches are rebuilt.
+	private final AtomicInteger d_structureVersion = new AtomicInteger();
+	private final AtomicInteger d_alternativesVersion = new AtomicInteger();
+	private final AtomicInteger d_distributionsVersion = new AtomicInteger();
+	private int d_validStructureVersion;
+	private int d_validAlternativesVersion;
+	private int d_validDistributionsVersion;
+	private List<OutcomeMeasure> d_criteria;
+	private List<MetaAnalysis> d_sortedMetaAnalyses;
+	private Map<OutcomeMeasure, MetaAnalysis> d_metaAnalysisMap;
+	private List<TreatmentDefinition> d_nonBaselineAlternatives;
+	private Map<TreatmentDefinition, Integer> d_nonBaselineIndex;
+	private final Map<OutcomeMeasure, Map<TreatmentDefinition, GaussianBase>> d_relativeEffectDistributions =
+		new HashMap<OutcomeMeasure, Map<TreatmentDefinition, GaussianBase>>();
+	private final Map<OutcomeMeasure, Map<TreatmentDefinition, Distribution>> d_measurements =
+		new HashMap<OutcomeMeasure, Map<TreatmentDefinition, Distribution>>();
+	private final Set<Object> d_observed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+	private final PropertyChangeListener d_structureListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			invalidateStructure();
+		}
+	};
+	private final PropertyChangeListener d_summaryListener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			invalidateDistributions();
+		}
+	};
 	
 	public static String PROPERTY_ALTERNATIVES = "alternatives";
 	public static String PROPERTY_BASELINE = "baseline";
@@ -126,6 +166,17 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		d_alternatives = new SortedSetModel<TreatmentDefinition>(alternatives);
 		d_baseline = baseline;
 		d_alternatives.add(baseline);
+		d_alternatives.addListDataListener(new ListDataListener() {
+			public void intervalRemoved(ListDataEvent e) {
+				invalidateAlternatives();
+			}
+			public void intervalAdded(ListDataEvent e) {
+				invalidateAlternatives();
+			}
+			public void contentsChanged(ListDataEvent e) {
+				invalidateAlternatives();
+			}
+		});
 
 		d_baselineModelMap = new HashMap<OutcomeMeasure, MCMCModelWrapper>();
 		d_analysisType = analysisType;
@@ -135,7 +186,9 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		d_decisionContext = context;
 		for (MetaAnalysis ma : d_metaAnalyses) {
 			double[][] transformation = createTransform(ma);
-			d_relativeEffects.put(ma, new TransformedMultivariateNormalSummary(ma.getRelativeEffectsSummary(), transformation));
+			TransformedMultivariateNormalSummary summary = new TransformedMultivariateNormalSummary(ma.getRelativeEffectsSummary(), transformation);
+			summary.addPropertyChangeListener(d_summaryListener);
+			d_relativeEffects.put(ma, summary);
 		}
 	}
 
@@ -180,28 +233,41 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		return d_indication;
 	}
 
-	public List<OutcomeMeasure> getCriteria() {
-		List<OutcomeMeasure> sortedList = findOutcomeMeasures();
-		Collections.sort(sortedList);
-		return sortedList;
-	}
-
-	private List<OutcomeMeasure> findOutcomeMeasures() {
-		List<OutcomeMeasure> list = new ArrayList<OutcomeMeasure>();
-		for (MetaAnalysis a : d_metaAnalyses) {
-			list.add(a.getOutcomeMeasure());
+	/**
+	 * @return The criteria (the outcome measures of the meta-analyses), sorted. The list is unmodifiable.
+	 */
+	public synchronized List<OutcomeMeasure> getCriteria() {
+		validateCaches();
+		if (d_criteria == null) {
+			List<OutcomeMeasure> list = new ArrayList<OutcomeMeasure>();
+			for (MetaAnalysis ma : getMetaAnalyses()) {
+				list.add(ma.getOutcomeMeasure());
+			}
+			Collections.sort(list);
+			d_criteria = Collections.unmodifiableList(list);
 		}
-		return list;
+		return d_criteria;
 	}
 
-	public List<MetaAnalysis> getMetaAnalyses() {
-		ArrayList<MetaAnalysis> analyses = new ArrayList<MetaAnalysis>(d_metaAnalyses);
-		Collections.sort(analyses, new AlphabeticalComparator());
-		return Collections.unmodifiableList(analyses);
+	public synchronized List<MetaAnalysis> getMetaAnalyses() {
+		validateCaches();
+		if (d_sortedMetaAnalyses == null) {
+			List<MetaAnalysis> analyses = new ArrayList<MetaAnalysis>(d_metaAnalyses);
+			for (MetaAnalysis ma : analyses) {
+				observe(ma, d_structureListener);
+				observe(ma.getOutcomeMeasure(), d_structureListener);
+			}
+			Collections.sort(analyses, new AlphabeticalComparator());
+			d_sortedMetaAnalyses = Collections.unmodifiableList(analyses);
+		}
+		return d_sortedMetaAnalyses;
 	}
 
 	void setMetaAnalyses(List<MetaAnalysis> metaAnalysis) {
+		List<MetaAnalysis> oldValue = d_metaAnalyses;
 		d_metaAnalyses = metaAnalysis;
+		invalidateStructure();
+		firePropertyChange(PROPERTY_METAANALYSES, oldValue, d_metaAnalyses);
 	}
 	
 	public ObservableList<TreatmentDefinition> getAlternatives() {
@@ -229,7 +295,8 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 			EntityUtil.deepEqual(getIndication(), o.getIndication()) &&
 			EntityUtil.deepEqual(getMetaAnalyses(), o.getMetaAnalyses()) &&
 			EntityUtil.deepEqual(getAlternatives(), o.getAlternatives()) &&
-			EntityUtil.deepEqual(getDecisionContext(), o.getDecisionContext());
+			EntityUtil.deepEqual(getDecisionContext(), o.getDecisionContext()) &&
+			EqualsUtil.equal(getSimulationTargetError(), o.getSimulationTargetError());
 	}
 
 	@Override
@@ -241,16 +308,29 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		return d_baseline;
 	}
 
-	private MetaAnalysis findMetaAnalysis(OutcomeMeasure om) {
-		for(MetaAnalysis ma : getMetaAnalyses()){
-			if(ma.getOutcomeMeasure().equals(om)) {
-				return ma;
+	private synchronized MetaAnalysis findMetaAnalysis(OutcomeMeasure om) {
+		validateCaches();
+		if (d_metaAnalysisMap == null) {
+			d_metaAnalysisMap = new HashMap<OutcomeMeasure, MetaAnalysis>();
+			for (MetaAnalysis ma : getMetaAnalyses()) {
+				if (!d_metaAnalysisMap.containsKey(ma.getOutcomeMeasure())) {
+					d_metaAnalysisMap.put(ma.getOutcomeMeasure(), ma);
+				}
 			}
 		}
-		return null;
+		return d_metaAnalysisMap.get(om);
 	}
 	
-	public GaussianBase getRelativeEffectDistribution(OutcomeMeasure om, TreatmentDefinition subject) {
+	public synchronized GaussianBase getRelativeEffectDistribution(OutcomeMeasure om, TreatmentDefinition subject) {
+		validateCaches();
+		Map<TreatmentDefinition, GaussianBase> cache = getCache(d_relativeEffectDistributions, om);
+		if (!cache.containsKey(subject)) {
+			cache.put(subject, createRelativeEffectDistribution(om, subject));
+		}
+		return cache.get(subject);
+	}
+
+	private GaussianBase createRelativeEffectDistribution(OutcomeMeasure om, TreatmentDefinition subject) {
 		if (subject.equals(d_baseline)) {
 			return createDistribution(om, 0.0, 0.0); 
 		}
@@ -260,7 +340,7 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		}
 		MultivariateNormalSummary summary = d_relativeEffects.get(ma);
 		if (summary.getDefined()) {
-			int index = getNonBaselineAlternatives().indexOf(subject);
+			int index = getNonBaselineIndex(subject);
 			return createDistribution(om, summary.getMeanVector()[index], Math.sqrt(summary.getCovarianceMatrix()[index][index]));
 		} else {
 			return null;
@@ -285,7 +365,16 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 	/**
 	 * Get the measurement to be used in the BenefitRisk simulation.
 	 */
-	public Distribution getMeasurement(OutcomeMeasure om, TreatmentDefinition d) {
+	public synchronized Distribution getMeasurement(OutcomeMeasure om, TreatmentDefinition d) {
+		validateCaches();
+		Map<TreatmentDefinition, Distribution> cache = getCache(d_measurements, om);
+		if (!cache.containsKey(d)) {
+			cache.put(d, createMeasurement(om, d));
+		}
+		return cache.get(d);
+	}
+
+	private Distribution createMeasurement(OutcomeMeasure om, TreatmentDefinition d) {
 		if (om.getVariableType() instanceof RateVariableType) {
 			GaussianBase logOdds = getAbsoluteEffectDistribution(d, om);
 			return logOdds == null ? null : new LogitGaussian(logOdds.getMu(), logOdds.getSigma());
@@ -297,31 +386,110 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 	 * Get the assumed distribution for the baseline odds.
 	 */
 	public GaussianBase getBaselineDistribution(OutcomeMeasure om) {
-		AbstractBaselineModel<?> model = (AbstractBaselineModel<?>) getBaselineModel(om).getModel();
-
-		NormalSummary summary = model.getSummary();
+		NormalSummary summary = getBaselineSummary(om);
 		if (summary == null || !summary.getDefined()) {
 			return null;
 		}
 		return createDistribution(om, summary.getMean(), summary.getStandardDeviation());
 	}
+
+	/**
+	 * In analytic baseline mode, the baseline distribution is approximated without simulation where the
+	 * approximation is adequate (see {@link AbstractBaselineModel#isAnalyticSummaryAdequate()}), until the baseline
+	 * model has been simulated. Should be set before the baseline models are run.
+	 */
+	public void setAnalyticBaseline(boolean analytic) {
+		d_analyticBaseline = analytic;
+		invalidateDistributions();
+	}
+
+	public boolean isAnalyticBaseline() {
+		return d_analyticBaseline;
+	}
+
+	/**
+	 * @return Whether the baseline model for om needs to be simulated to obtain the baseline distribution. It does
+	 * not if its results were cached, or if the analytic approximation is used.
+	 */
+	public boolean isBaselineSimulationRequired(OutcomeMeasure om) {
+		AbstractBaselineModel<?> model = getBaselineModelImpl(om);
+		return model.getCachedSummary() == null && (!d_analyticBaseline || !model.isAnalyticSummaryAdequate());
+	}
+
+	/**
+	 * @return Whether the consistency model for om needs to be simulated to obtain the relative effects. It does not
+	 * if the relative effects come from a pair-wise meta-analysis, or if they were cached.
+	 */
+	public boolean isRelativeEffectsSimulationRequired(OutcomeMeasure om) {
+		MetaAnalysis ma = findMetaAnalysis(om);
+		return ma instanceof NetworkMetaAnalysis && !((NetworkMetaAnalysis) ma).isRelativeEffectsCached();
+	}
+
+	private NormalSummary getBaselineSummary(OutcomeMeasure om) {
+		AbstractBaselineModel<?> model = getBaselineModelImpl(om);
+		if (!model.getSummary().getDefined()) {
+			if (model.getCachedSummary() != null) {
+				return model.getCachedSummary();
+			}
+			if (!isBaselineSimulationRequired(om)) {
+				return model.getAnalyticSummary();
+			}
+		}
+		return model.getSummary();
+	}
+
+	private AbstractBaselineModel<?> getBaselineModelImpl(OutcomeMeasure om) {
+		return (AbstractBaselineModel<?>) getBaselineModel(om).getModel();
+	}
 	
-	public MCMCModelWrapper getBaselineModel(OutcomeMeasure om) {
+	public synchronized MCMCModelWrapper getBaselineModel(OutcomeMeasure om) {
 		MCMCModelWrapper model = d_baselineModelMap.get(om);
 		if (model == null || model.isDestroyed()) {
-			model = createBaselineModel(om);
+			if (model != null) {
+				unobserveSummary(model);
+			}
+			model = d_baselineModelRegistry == null ? createBaselineModel(om) : d_baselineModelRegistry.acquire(this, om);
 			d_baselineModelMap.put(om, model);
+			observe(((AbstractBaselineModel<?>) model.getModel()).getSummary(), d_summaryListener);
+			invalidateDistributions();
 		}
 		return model;
 	}
-	
-	private MCMCModelWrapper createBaselineModel(OutcomeMeasure om) {
+
+	/**
+	 * Share baseline models with other analyses through the given registry. Should be set before the baseline models
+	 * are used. Releases the models obtained from the previous registry.
+	 * @param registry The registry, or null to use models private to this analysis.
+	 */
+	public synchronized void setBaselineModelRegistry(BaselineModelRegistry registry) {
+		if (d_baselineModelRegistry != null) {
+			d_baselineModelRegistry.release(this);
+		}
+		d_baselineModelRegistry = registry;
+		for (MCMCModelWrapper model : d_baselineModelMap.values()) {
+			unobserveSummary(model);
+		}
+		d_baselineModelMap.clear();
+		invalidateDistributions();
+	}
+
+	public BaselineModelRegistry getBaselineModelRegistry() {
+		return d_baselineModelRegistry;
+	}
+
+	MCMCModelWrapper createBaselineModel(OutcomeMeasure om) {
 		AbstractBaselineModel<?> model = (AbstractBaselineModel<?>) ((om.getVariableType() instanceof RateVariableType) ? 
-				new BaselineOddsModel(getBaselineMeasurements(om, RateMeasurement.class)) : 
-				new BaselineMeanDifferenceModel(getBaselineMeasurements(om, ContinuousMeasurement.class)));
+				new BaselineOddsModel(getBaselineMeasurements(om, RateMeasurement.class), true) : 
+				new BaselineMeanDifferenceModel(getBaselineMeasurements(om, ContinuousMeasurement.class), true));
+		model.setAdaptive(true);
+		model.setResultCache(MCMCResultCache.getInstance());
 		return new MCMCSimulationWrapper<MCMCModel>(model, "Baseline Model");
 	}
 	
+	List<Measurement> getBaselineMeasurements(OutcomeMeasure om) {
+		return getBaselineMeasurements(om, Measurement.class);
+	}
+
 	@SuppressWarnings("unchecked")
 	private <M extends Measurement> List<M> getBaselineMeasurements(OutcomeMeasure om, Class<M> cls) {
 		List<M> result = new ArrayList<M>(); 
@@ -355,7 +523,7 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		for (MetaAnalysis ma : getMetaAnalyses() ){
 			if (ma instanceof NetworkMetaAnalysis) {
 				ConsistencyWrapper<TreatmentDefinition> wrapper = ((NetworkMetaAnalysis) ma).getConsistencyModel();
-				if (!wrapper.isSaved()) {
+				if (!wrapper.isSaved() && !((NetworkMetaAnalysis) ma).isRelativeEffectsCached()) {
 					tasks.add((Task) wrapper.getModel().getActivityTask());
 				}
 			}
@@ -375,10 +543,97 @@ public class MetaBenefitRiskAnalysis extends BenefitRiskAnalysis<TreatmentDefini
 		return summaryList;
 	}
 
-	public List<TreatmentDefinition> getNonBaselineAlternatives() {
-		List<TreatmentDefinition> alternatives = new ArrayList<TreatmentDefinition>(getAlternatives());
-		alternatives.remove(getBaseline());
-		return alternatives;
+	/**
+	 * @return The alternatives other than the baseline, in order. The list is unmodifiable.
+	 */
+	public synchronized List<TreatmentDefinition> getNonBaselineAlternatives() {
+		validateCaches();
+		if (d_nonBaselineAlternatives == null) {
+			List<TreatmentDefinition> alternatives = new ArrayList<TreatmentDefinition>(getAlternatives());
+			alternatives.remove(getBaseline());
+			d_nonBaselineAlternatives = Collections.unmodifiableList(alternatives);
+		}
+		return d_nonBaselineAlternatives;
+	}
+
+	private int getNonBaselineIndex(TreatmentDefinition alternative) {
+		if (d_nonBaselineIndex == null) {
+			d_nonBaselineIndex = new HashMap<TreatmentDefinition, Integer>();
+			List<TreatmentDefinition> alternatives = getNonBaselineAlternatives();
+			for (int i = 0; i < alternatives.size(); ++i) {
+				d_nonBaselineIndex.put(alternatives.get(i), i);
+			}
+		}
+		Integer index = d_nonBaselineIndex.get(alternative);
+		return index == null ? -1 : index;
+	}
+
+	private static <V> Map<TreatmentDefinition, V> getCache(Map<OutcomeMeasure, Map<TreatmentDefinition, V>> caches, OutcomeMeasure om) {
+		Map<TreatmentDefinition, V> cache = caches.get(om);
+		if (cache == null) {
+			cache = new HashMap<TreatmentDefinition, V>();
+			caches.put(om, cache);
+		}
+		return cache;
+	}
+
+	private void observe(Observable source, PropertyChangeListener listener) {
+		if (d_observed.add(source)) {
+			source.addPropertyChangeListener(listener);
+		}
+	}
+
+	private void unobserve(Observable source, PropertyChangeListener listener) {
+		if (d_observed.remove(source)) {
+			source.removePropertyChangeListener(listener);
+		}
+	}
+
+	/**
+	 * Stop listening to the summary of a baseline model that is no longer used by this analysis.
+	 */
+	private void unobserveSummary(MCMCModelWrapper model) {
+		unobserve(((AbstractBaselineModel<?>) model.getModel()).getSummary(), d_summaryListener);
+	}
+
+	private void invalidateStructure() {
+		d_structureVersion.incrementAndGet();
+	}
+
+	private void invalidateAlternatives() {
+		d_alternativesVersion.incrementAndGet();
+	}
+
+	private void invalidateDistributions() {
+		d_distributionsVersion.incrementAndGet();
+	}
+
+	/**
+	 * Drop the cached views that were invalidated since they were built. Must hold the lock.
+	 */
+	private void validateCaches() {
+		boolean valid = true;
+		int structure = d_structureVersion.get();
+		if (structure != d_validStructureVersion) {
+			d_criteria = null;
+			d_sortedMetaAnalyses = null;
+			d_metaAnalysisMap = null;
+			d_validStructureVersion = structure;
+			valid = false;
+		}
+		int alternatives = d_alternativesVersion.get();
+		if (alternatives != d_validAlternativesVersion) {
+			d_nonBaselineAlternatives = null;
+			d_nonBaselineIndex = null;
+			d_validAlternativesVersion = alternatives;
+			valid = false;
+		}
+		int distributions = d_distributionsVersion.get();
+		if (!valid || distributions != d_validDistributionsVersion) {
+			d_relativeEffectDistributions.clear();
+			d_measurements.clear();
+			d_validDistributionsVersion = distributions;
+		}
 	}
 
 	public MeasurementSource<TreatmentDefinition> getMeasurementSource() {
@@ -44,6 +44,7 @@ import org.drugis.addis.entities.Indication;
 import org.drugis.addis.entities.OutcomeMeasure;
 import org.drugis.addis.entities.Study;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.addis.mcmcmodel.MCMCResultCache;
 import org.drugis.addis.util.EntityUtil;
 import org.drugis.common.threading.status.TaskTerminatedModel;
 import org.drugis.common.validation.BooleanAndModel;
@@ -75,6 +76,7 @@ import org.drugis.mtc.summary.NodeSplitPValueSummary;
 import org.drugis.mtc.summary.ProxyMultivariateNormalSummary;
 import org.drugis.mtc.summary.QuantileSummary;
 import org.drugis.mtc.summary.RankProbabilitySummary;
+import org.drugis.mtc.summary.SimpleMultivariateNormalSummary;
 import org.drugis.mtc.util.MCMCResultsAvailableModel;
 
 import com.jgoodies.binding.value.ValueModel;
@@ -92,6 +94,12 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 	private final Map<BasicParameter, NodeSplitWrapper<TreatmentDefinition>> d_nodeSplitModels = new TreeMap<BasicParameter, NodeSplitWrapper<TreatmentDefinition>>(new ParameterComparator());
 	private final ProxyMultivariateNormalSummary d_relativeEffectsSummary =  new ProxyMultivariateNormalSummary();
 
+	// derived from the arm map: see invalidateNetwork()
+	private Network d_network;
+	private List<BasicParameter> d_splitParameters;
+	private NodeSplitBatch d_nodeSplitBatch;
+	private boolean d_relativeEffectsCached = false;
+
 
 	public NetworkMetaAnalysis(final String name, final Indication indication,
 			final OutcomeMeasure om, final List<Study> studies, final Collection<TreatmentDefinition> alternatives,
@@ -112,21 +120,28 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 	}
 
 	private InconsistencyWrapper<TreatmentDefinition> createInconsistencyModel() {
-		final InconsistencyModel inconsistencyModel = (DefaultModelFactory.instance()).getInconsistencyModel(getBuilder().buildNetwork());
+		final InconsistencyModel inconsistencyModel = (DefaultModelFactory.instance()).getInconsistencyModel(getNetwork());
 		attachModelSavableListener(inconsistencyModel);
 		return new SimulationInconsistencyWrapper<TreatmentDefinition>(inconsistencyModel, getBuilder().getTreatmentMap());
 	}
 
 	private ConsistencyWrapper<TreatmentDefinition> createConsistencyModel() {
-		final ConsistencyModel consistencyModel = (DefaultModelFactory.instance()).getConsistencyModel(getBuilder().buildNetwork());
+		final ConsistencyModel consistencyModel = (DefaultModelFactory.instance()).getConsistencyModel(getNetwork());
 		final SimulationConsistencyWrapper<TreatmentDefinition> model = new SimulationConsistencyWrapper<TreatmentDefinition>(consistencyModel, getAlternatives(), getBuilder().getTreatmentMap());
-		d_relativeEffectsSummary.setNested(model.getRelativeEffectsSummary());
+		final MCMCResultCache cache = MCMCResultCache.getInstance();
+		final String key = cache == null ? null : getConsistencyCacheKey(model);
+		final MultivariateNormalSummary cached = cache == null ? null : decodeRelativeEffects(cache.get(key));
+		d_relativeEffectsCached = cached != null;
+		d_relativeEffectsSummary.setNested(d_relativeEffectsCached ? cached : model.getRelativeEffectsSummary());
 		attachModelSavableListener(consistencyModel);
+		if (cache != null) {
+			attachResultCacheListener(consistencyModel, model, cache, key);
+		}
 		return model;
 	}
 
 	private NodeSplitWrapper<TreatmentDefinition> createNodeSplitModel(final BasicParameter node) {
-		final NodeSplitModel nodeSplitModel = (DefaultModelFactory.instance()).getNodeSplitModel(getBuilder().buildNetwork(), node);
+		final NodeSplitModel nodeSplitModel = (DefaultModelFactory.instance()).getNodeSplitModel(getNetwork(), node);
 		d_nodeSplitPValueSummaries.put(node, new NodeSplitPValueSummary(nodeSplitModel.getResults(),
 				nodeSplitModel.getDirectEffect(), nodeSplitModel.getIndirectEffect()));
 		attachModelSavableListener(nodeSplitModel);
@@ -149,6 +164,98 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 		});
 	}
 
+	/**
+	 * Store the relative effects in the cache once the consistency model has finished (not if it was aborted or failed).
+	 */
+	private void attachResultCacheListener(final MixedTreatmentComparison mtc, final ConsistencyWrapper<TreatmentDefinition> wrapper,
+			final MCMCResultCache cache, final String key) {
+		final MCMCResultsAvailableModel resultsAvailableModel = new MCMCResultsAvailableModel(mtc.getResults());
+		final TaskTerminatedModel modelTerminated = new TaskTerminatedModel(mtc.getActivityTask());
+		final BooleanAndModel modelFinishedAndResults = new BooleanAndModel(Arrays.<ValueModel>asList(modelTerminated, resultsAvailableModel));
+		modelFinishedAndResults.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(final PropertyChangeEvent evt) {
+				if (Boolean.TRUE.equals(evt.getNewValue()) && mtc.getActivityTask().isFinished()) {
+					relativeEffectsFinished(wrapper, cache, key);
+				}
+			}
+		});
+	}
+
+	private synchronized void relativeEffectsFinished(final ConsistencyWrapper<TreatmentDefinition> wrapper, final MCMCResultCache cache, final String key) {
+		final MultivariateNormalSummary summary = wrapper.getRelativeEffectsSummary();
+		if (!summary.getDefined()) {
+			return;
+		}
+		cache.put(key, encodeRelativeEffects(summary));
+		if (wrapper == d_consistencyModel && d_relativeEffectsCached) {
+			d_relativeEffectsCached = false;
+			d_relativeEffectsSummary.setNested(summary);
+		}
+	}
+
+	/**
+	 * The key consists of the MCMC settings and the measurements of each included study for each alternative.
+	 */
+	private String getConsistencyCacheKey(final ConsistencyWrapper<TreatmentDefinition> model) {
+		final MCMCResultCache.Key key = new MCMCResultCache.Key(ConsistencyModel.class.getName());
+		key.add(model.getSettings().getTuningIterations());
+		key.add(model.getSettings().getSimulationIterations());
+		key.add(model.getSettings().getThinningInterval());
+		key.add(model.getSettings().getInferenceSamples());
+		key.add(model.getSettings().getVarianceScalingFactor());
+		key.add(model.getSettings().getNumberOfChains());
+		key.add(getAlternatives().size());
+		key.add(getIncludedStudies().size());
+		for (final Study s : getIncludedStudies()) {
+			for (final TreatmentDefinition t : getAlternatives()) {
+				final Arm arm = getArm(s, t);
+				key.add(arm == null ? null : s.getMeasurement(d_outcome, arm));
+			}
+		}
+		return key.getHash();
+	}
+
+	/**
+	 * @return The relative effects as an array: their number n, the n means and the n x n covariance matrix (by row).
+	 */
+	private static double[] encodeRelativeEffects(final MultivariateNormalSummary summary) {
+		final double[] mean = summary.getMeanVector();
+		final double[][] cov = summary.getCovarianceMatrix();
+		final int n = mean.length;
+		final double[] values = new double[1 + n + n * n];
+		values[0] = n;
+		System.arraycopy(mean, 0, values, 1, n);
+		for (int i = 0; i < n; ++i) {
+			System.arraycopy(cov[i], 0, values, 1 + n + i * n, n);
+		}
+		return values;
+	}
+
+	private static MultivariateNormalSummary decodeRelativeEffects(final double[] values) {
+		if (values == null || values.length == 0) {
+			return null;
+		}
+		final int n = (int) values[0];
+		if (values.length != 1 + n + n * n) {
+			return null;
+		}
+		final double[] mean = Arrays.copyOfRange(values, 1, 1 + n);
+		final double[][] cov = new double[n][];
+		for (int i = 0; i < n; ++i) {
+			cov[i] = Arrays.copyOfRange(values, 1 + n + i * n, 1 + n + (i + 1) * n);
+		}
+		return new SimpleMultivariateNormalSummary(mean, cov);
+	}
+
+	/**
+	 * @return Whether the relative effects summary currently holds cached results, obtained before the consistency
+	 * model was run (see {@link MCMCResultCache}).
+	 */
+	public synchronized boolean isRelativeEffectsCached() {
+		return d_relativeEffectsCached;
+	}
+
 	public synchronized InconsistencyWrapper<TreatmentDefinition> getInconsistencyModel() {
 		if (d_inconsistencyModel == null || d_inconsistencyModel.isDestroyed()) {
 			d_inconsistencyModel = createInconsistencyModel();
@@ -188,6 +295,7 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 				rankProbabilitySummary,
 				getAlternatives(),
 				getBuilder().getTreatmentMap());
+		d_relativeEffectsCached = false;
 		d_relativeEffectsSummary.setNested(d_consistencyModel.getRelativeEffectsSummary());
 	}
 
@@ -206,21 +314,44 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 	}
 
 	public void resetNodeSplitModels() {
+		synchronized (this) {
+			if (d_nodeSplitBatch != null) {
+				d_nodeSplitBatch.dispose();
+				d_nodeSplitBatch = null;
+			}
+		}
 		d_nodeSplitModels.clear();
 		for(final BasicParameter p : getSplitParameters()) {
 			getNodeSplitModel(p);
 		}
 	}
 
-	public NetworkBuilder<TreatmentDefinition> getBuilder() {
+	/**
+	 * @return The batch that runs all node-split models. It is created once, and replaced when the node-split
+	 * models are reset (see {@link #resetNodeSplitModels()}).
+	 */
+	public synchronized NodeSplitBatch getNodeSplitBatch() {
+		if (d_nodeSplitBatch == null) {
+			d_nodeSplitBatch = new NodeSplitBatch(this);
+		}
+		return d_nodeSplitBatch;
+	}
+
+	public synchronized NetworkBuilder<TreatmentDefinition> getBuilder() {
 		if (d_builder == null) {
 			d_builder = createBuilder(d_outcome, d_studies, getAlternatives(), d_armMap);
 		}
 		return d_builder;
 	}
 
-	public Network getNetwork() {
-		return getBuilder().buildNetwork();
+	/**
+	 * @return The network, built once and shared by all models of this analysis. It should not be modified.
+	 */
+	public synchronized Network getNetwork() {
+		if (d_network == null) {
+			d_network = getBuilder().buildNetwork();
+		}
+		return d_network;
 	}
 
 
@@ -241,8 +372,25 @@ public class NetworkMetaAnalysis extends AbstractMetaAnalysis implements MetaAna
 		return getBuilder().getTreatmentMap().getKey(t);
 	}
 
-	public List<BasicParameter> getSplitParameters() {
-		return DefaultModelFactory.instance().getSplittableNodes(getBuilder().buildNetwork());
+	/**
+	 * @return The parameters that can be split in a node-splitting analysis. Computed once.
+	 */
+	public synchronized List<BasicParameter> getSplitParameters() {
+		if (d_splitParameters == null) {
+			d_splitParameters = Collections.unmodifiableList(new ArrayList<BasicParameter>(
+					DefaultModelFactory.instance().getSplittableNodes(getNetwork())));
+		}
+		return d_splitParameters;
+	}
+
+	/**
+	 * Discard the network, treatment map and split parameters derived from the arm map.
+	 * Must be called if the arm map changes; models that were already created are not affected.
+	 */
+	protected synchronized void invalidateNetwork() {
+		d_builder = null;
+		d_network = null;
+		d_splitParameters = null;
 	}
 
 	public Collection<NodeSplitWrapper<TreatmentDefinition>> getNodeSplitModels() {
@@ -0,0 +1,219 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.analysis;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.common.beans.AbstractObservable;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.ThreadHandler;
+import org.drugis.common.threading.status.TaskTerminatedModel;
+import org.drugis.mtc.parameterization.BasicParameter;
+import org.drugis.mtc.presentation.NodeSplitWrapper;
+
+/**
+ * Runs all node-split models of a network meta-analysis as a group. The models share the analysis' network
+ * (see {@link NetworkMetaAnalysis#getNetwork()}), and are scheduled in order of decreasing {@link NodeSplitPreScreen}
+ * score, so that the comparisons that look most inconsistent are assessed first.
+ * Once all tasks have terminated, the batch stops listening to them (see {@link #dispose()}).
+ */
+public class NodeSplitBatch extends AbstractObservable {
+	public static final String PROPERTY_FINISHED = "finished";
+	public static final String PROPERTY_STARTED = "started";
+
+	private final List<BasicParameter> d_parameters;
+	private final List<Task> d_tasks = new ArrayList<Task>();
+	private final List<TaskTerminatedModel> d_terminated = new ArrayList<TaskTerminatedModel>();
+	private final Map<BasicParameter, Double> d_scores = new HashMap<BasicParameter, Double>();
+	private final PropertyChangeListener d_listener = new PropertyChangeListener() {
+		public void propertyChange(PropertyChangeEvent evt) {
+			updateFinished();
+		}
+	};
+	private int d_finished = 0;
+	private boolean d_started = false;
+	private boolean d_disposed = false;
+
+	public NodeSplitBatch(NetworkMetaAnalysis analysis) {
+		d_parameters = new ArrayList<BasicParameter>(analysis.getSplitParameters());
+
+		NodeSplitPreScreen screen = new NodeSplitPreScreen(analysis);
+		for (BasicParameter p : d_parameters) {
+			d_scores.put(p, screen.getScore(p));
+		}
+		Collections.sort(d_parameters, new Comparator<BasicParameter>() {
+			public int compare(BasicParameter o1, BasicParameter o2) {
+				return Double.compare(d_scores.get(o2), d_scores.get(o1));
+			}
+		});
+
+		for (BasicParameter p : d_parameters) {
+			NodeSplitWrapper<TreatmentDefinition> wrapper = analysis.getNodeSplitModel(p);
+			if (!wrapper.isSaved()) {
+				Task task = wrapper.getModel().getActivityTask();
+				TaskTerminatedModel terminated = new TaskTerminatedModel(task);
+				terminated.addValueChangeListener(d_listener);
+				d_tasks.add(task);
+				d_terminated.add(terminated);
+			}
+		}
+		d_finished = countFinished();
+		if (d_finished == d_tasks.size()) {
+			dispose();
+		}
+	}
+
+	/**
+	 * @return The split parameters, in order of priority.
+	 */
+	public List<BasicParameter> getParameters() {
+		return Collections.unmodifiableList(d_parameters);
+	}
+
+	/**
+	 * @see NodeSplitPreScreen#getScore(BasicParameter)
+	 */
+	public double getScore(BasicParameter p) {
+		return d_scores.get(p);
+	}
+
+	/**
+	 * @return The tasks of the node-split models that still have to be simulated, in order of priority.
+	 */
+	public List<Task> getTasks() {
+		return Collections.unmodifiableList(d_tasks);
+	}
+
+	/**
+	 * @return The number of tasks that have terminated (finished, failed or aborted).
+	 */
+	public synchronized int getFinished() {
+		return d_finished;
+	}
+
+	/**
+	 * @return True if all tasks have terminated.
+	 */
+	public synchronized boolean isFinished() {
+		return d_finished == d_tasks.size();
+	}
+
+	/**
+	 * @return True if {@link #start()} was called.
+	 */
+	public synchronized boolean isStarted() {
+		return d_started;
+	}
+
+	/**
+	 * @return The fraction of the tasks that have terminated, 1.0 if there are none.
+	 */
+	public double getProgress() {
+		return d_tasks.isEmpty() ? 1.0 : (double) getFinished() / d_tasks.size();
+	}
+
+	/**
+	 * Schedule all tasks that have not terminated yet.
+	 */
+	public void start() {
+		synchronized (this) {
+			if (d_started) {
+				return;
+			}
+			d_started = true;
+		}
+		ThreadHandler.getInstance().scheduleTasks(getPendingTasks());
+		firePropertyChange(PROPERTY_STARTED, false, true);
+	}
+
+	/**
+	 * Abort all tasks that have not terminated yet.
+	 */
+	public void cancel() {
+		for (Task task : getPendingTasks()) {
+			ThreadHandler.getInstance().abortTask(task);
+		}
+	}
+
+	/**
+	 * Stop listening to the tasks. Called when all tasks have terminated, or when the batch is replaced.
+	 */
+	public void dispose() {
+		synchronized (this) {
+			if (d_disposed) {
+				return;
+			}
+			d_disposed = true;
+		}
+		for (TaskTerminatedModel terminated : d_terminated) {
+			terminated.removeValueChangeListener(d_listener);
+		}
+	}
+
+	private List<Task> getPendingTasks() {
+		List<Task> pending = new ArrayList<Task>();
+		for (int i = 0; i < d_tasks.size(); ++i) {
+			if (!Boolean.TRUE.equals(d_terminated.get(i).getValue())) {
+				pending.add(d_tasks.get(i));
+			}
+		}
+		return pending;
+	}
+
+	private int countFinished() {
+		int finished = 0;
+		for (TaskTerminatedModel terminated : d_terminated) {
+			if (Boolean.TRUE.equals(terminated.getValue())) {
+				++finished;
+			}
+		}
+		return finished;
+	}
+
+	private void updateFinished() {
+		int oldValue;
+		int newValue;
+		synchronized (this) {
+			oldValue = d_finished;
+			d_finished = countFinished();
+			newValue = d_finished;
+		}
+		firePropertyChange(PROPERTY_FINISHED, oldValue, newValue);
+		if (newValue == d_tasks.size()) {
+			dispose();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drugis.addis.entities.Arm;
+import org.drugis.addis.entities.BasicContinuousMeasurement;
+import org.drugis.addis.entities.BasicRateMeasurement;
+import org.drugis.addis.entities.Study;
+import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.common.stat.DichotomousDescriptives;
+import org.drugis.common.stat.EstimateWithPrecision;
+import org.drugis.mtc.parameterization.BasicParameter;
+import org.drugis.mtc.util.DerSimonianLairdPooling;
+
+/**
+ * Cheap screen for inconsistency, used to decide which node-split models to run first. For each comparison, the
+ * DerSimonian-Laird pooled direct evidence is compared to the indirect evidence through common comparators
+ * (Bucher's method, first-order loops only). Multi-arm studies are treated as independent comparisons.
+ */
+public class NodeSplitPreScreen {
+	private final NetworkMetaAnalysis d_analysis;
+	private final DichotomousDescriptives d_descriptives = new DichotomousDescriptives(true);
+	private final Map<TreatmentDefinition, Map<TreatmentDefinition, EstimateWithPrecision>> d_direct =
+		new HashMap<TreatmentDefinition, Map<TreatmentDefinition, EstimateWithPrecision>>();
+
+	public NodeSplitPreScreen(NetworkMetaAnalysis analysis) {
+		d_analysis = analysis;
+	}
+
+	/**
+	 * @return The absolute difference between the direct and indirect estimates for the parameter, divided by its
+	 * standard error. Zero if there is no direct or no (first-order) indirect evidence.
+	 */
+	public double getScore(BasicParameter p) {
+		TreatmentDefinition base = d_analysis.getTreatmentDefinition(p.getBaseline());
+		TreatmentDefinition subj = d_analysis.getTreatmentDefinition(p.getSubject());
+		EstimateWithPrecision direct = getDirect(base, subj);
+		if (direct == null) {
+			return 0.0;
+		}
+
+		double weights = 0.0;
+		double weighted = 0.0;
+		for (TreatmentDefinition via : d_analysis.getAlternatives()) {
+			if (via.equals(base) || via.equals(subj)) {
+				continue;
+			}
+			EstimateWithPrecision first = getDirect(base, via);
+			EstimateWithPrecision second = getDirect(via, subj);
+			if (first != null && second != null) {
+				double var = square(first.getStandardError()) + square(second.getStandardError());
+				weighted += (first.getPointEstimate() + second.getPointEstimate()) / var;
+				weights += 1 / var;
+			}
+		}
+		if (weights == 0.0) {
+			return 0.0;
+		}
+		double indirect = weighted / weights;
+		return Math.abs(direct.getPointEstimate() - indirect) / Math.sqrt(square(direct.getStandardError()) + 1 / weights);
+	}
+
+	/**
+	 * @return The pooled direct estimate of subj relative to base, or null if no study compares them.
+	 */
+	EstimateWithPrecision getDirect(TreatmentDefinition base, TreatmentDefinition subj) {
+		Map<TreatmentDefinition, EstimateWithPrecision> fromBase = d_direct.get(base);
+		if (fromBase == null) {
+			fromBase = new HashMap<TreatmentDefinition, EstimateWithPrecision>();
+			d_direct.put(base, fromBase);
+		}
+		if (!fromBase.containsKey(subj)) {
+			fromBase.put(subj, pool(base, subj));
+		}
+		return fromBase.get(subj);
+	}
+
+	private EstimateWithPrecision pool(TreatmentDefinition base, TreatmentDefinition subj) {
+		List<EstimateWithPrecision> estimates = new ArrayList<EstimateWithPrecision>();
+		for (Study s : d_analysis.getIncludedStudies()) {
+			Arm baseArm = d_analysis.getArm(s, base);
+			Arm subjArm = d_analysis.getArm(s, subj);
+			if (baseArm != null && subjArm != null) {
+				EstimateWithPrecision b = estimate(s, baseArm);
+				EstimateWithPrecision e = estimate(s, subjArm);
+				estimates.add(new EstimateWithPrecision(e.getPointEstimate() - b.getPointEstimate(),
+						Math.sqrt(square(b.getStandardError()) + square(e.getStandardError()))));
+			}
+		}
+		return estimates.isEmpty() ? null : new DerSimonianLairdPooling(estimates).getPooled();
+	}
+
+	/**
+	 * @return The log-odds (dichotomous) or mean (continuous) in the arm, on the scale of the network model.
+	 */
+	private EstimateWithPrecision estimate(Study s, Arm a) {
+		if (d_analysis.isContinuous()) {
+			BasicContinuousMeasurement m = (BasicContinuousMeasurement) s.getMeasurement(d_analysis.getOutcomeMeasure(), a);
+			return new EstimateWithPrecision(m.getMean(), m.getStdDev() / Math.sqrt(m.getSampleSize()));
+		}
+		BasicRateMeasurement m = (BasicRateMeasurement) s.getMeasurement(d_analysis.getOutcomeMeasure(), a);
+		return new EstimateWithPrecision(d_descriptives.logOdds(m.getRate(), m.getSampleSize()),
+				d_descriptives.logOddsError(m.getRate(), m.getSampleSize()));
+	}
+
+	private static double square(double x) {
+		return x * x;
+	}
+}
@@ -50,6 +50,7 @@ import org.drugis.addis.entities.relativeeffect.Beta;
 import org.drugis.addis.entities.relativeeffect.Distribution;
 import org.drugis.addis.entities.relativeeffect.TransformedStudentT;
 import org.drugis.addis.util.EntityUtil;
+import org.drugis.common.EqualsUtil;
 
 import com.jgoodies.binding.list.ArrayListModel;
 import com.jgoodies.binding.list.ObservableList;
@@ -176,7 +177,8 @@ public class StudyBenefitRiskAnalysis extends BenefitRiskAnalysis<Arm> {
 			EntityUtil.deepEqual(getBaseline(), o.getBaseline()) &&
 			EntityUtil.deepEqual(getAlternatives(), o.getAlternatives()) &&
 			EntityUtil.deepEqual(getCriteria(), o.getCriteria()) &&
-			EntityUtil.deepEqual(getDecisionContext(), o.getDecisionContext());
+			EntityUtil.deepEqual(getDecisionContext(), o.getDecisionContext()) &&
+			EqualsUtil.equal(getSimulationTargetError(), o.getSimulationTargetError());
 	}
 
 	public Arm getBaseline() {
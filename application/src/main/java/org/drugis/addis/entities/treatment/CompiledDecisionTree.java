@@ -0,0 +1,278 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.treatment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drugis.addis.entities.AbstractDose;
+import org.drugis.addis.entities.DoseUnit;
+import org.drugis.addis.entities.FixedDose;
+import org.drugis.addis.entities.FlexibleDose;
+
+/**
+ * Snapshot of a {@link DecisionTree} that classifies objects without reflection. Class choices become a hash lookup
+ * on the object's class, range choices a binary search over the sorted lower bounds, and the dose properties are
+ * read directly. Choice nodes that do not fit these patterns fall back to the behaviour of
+ * {@link DecisionTree#decide(Object)}.
+ * A compiled tree does not follow changes to the DecisionTree it was compiled from.
+ */
+public class CompiledDecisionTree {
+	private static abstract class Node {
+		public abstract LeafNode decide(Object obj);
+	}
+
+	private static class Leaf extends Node {
+		private final LeafNode d_leaf;
+
+		public Leaf(LeafNode leaf) {
+			d_leaf = leaf;
+		}
+
+		@Override
+		public LeafNode decide(Object obj) {
+			return d_leaf;
+		}
+	}
+
+	/**
+	 * Choice on the (exact) class of the object, with only {@link TypeEdge}s.
+	 */
+	private static class TypeSwitch extends Node {
+		private final Map<Class<?>, Node> d_children = new HashMap<Class<?>, Node>();
+
+		@Override
+		public LeafNode decide(Object obj) {
+			Node child = d_children.get(obj.getClass());
+			if (child == null) {
+				throw unclassifiable(obj);
+			}
+			return child.decide(obj);
+		}
+	}
+
+	/**
+	 * Choice on a dose quantity, with only {@link RangeEdge}s.
+	 */
+	private static class RangeSwitch extends Node {
+		private final Quantity d_quantity;
+		private final RangeEdge[] d_edges;
+		private final double[] d_lowerBounds;
+		private final Node[] d_children;
+
+		public RangeSwitch(Quantity quantity, List<RangeEdge> edges, List<Node> children) {
+			d_quantity = quantity;
+			d_edges = edges.toArray(new RangeEdge[edges.size()]);
+			d_children = children.toArray(new Node[children.size()]);
+			d_lowerBounds = new double[d_edges.length];
+			for (int i = 0; i < d_edges.length; ++i) {
+				d_lowerBounds[i] = d_edges[i].getLowerBound();
+			}
+		}
+
+		@Override
+		public LeafNode decide(Object obj) {
+			double value = d_quantity.get(obj);
+			int i = lastAtMost(value);
+			// The ranges are normally disjoint, so only the range with the largest lower bound at most the value, or
+			// the one before it (if that lower bound is open), can contain the value.
+			for (int j = i; j >= 0 && j >= i - 1; --j) {
+				if (d_edges[j].decide(value)) {
+					return d_children[j].decide(obj);
+				}
+			}
+			for (int j = 0; j < d_edges.length; ++j) {
+				if (d_edges[j].decide(value)) {
+					return d_children[j].decide(obj);
+				}
+			}
+			throw unclassifiable(obj);
+		}
+
+		/**
+		 * @return The last index i such that d_lowerBounds[i] <= value, or -1.
+		 */
+		private int lastAtMost(double value) {
+			int lo = 0;
+			int hi = d_lowerBounds.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (d_lowerBounds[mid] <= value) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo - 1;
+		}
+	}
+
+	/**
+	 * Any other choice: evaluated as in {@link DecisionTree#decide(Object)}.
+	 */
+	private static class GenericChoice extends Node {
+		private final ChoiceNode d_choice;
+		private final List<DecisionTreeEdge> d_edges;
+		private final List<Node> d_children;
+
+		public GenericChoice(ChoiceNode choice, List<DecisionTreeEdge> edges, List<Node> children) {
+			d_choice = choice;
+			d_edges = edges;
+			d_children = children;
+		}
+
+		@Override
+		public LeafNode decide(Object obj) {
+			Object value = d_choice.getValue(obj);
+			for (int i = 0; i < d_edges.size(); ++i) {
+				if (d_edges.get(i).decide(value)) {
+					return d_children.get(i).decide(obj);
+				}
+			}
+			throw unclassifiable(obj);
+		}
+	}
+
+	/**
+	 * Reflection-free equivalent of a {@link DoseQuantityChoiceNode}.
+	 */
+	private static abstract class Quantity {
+		private final DoseUnit d_doseUnit;
+
+		public Quantity(DoseUnit doseUnit) {
+			d_doseUnit = doseUnit;
+		}
+
+		public double get(Object obj) {
+			AbstractDose dose = (AbstractDose) obj;
+			return DoseUnit.convert(getRaw(dose), dose.getDoseUnit(), d_doseUnit);
+		}
+
+		protected abstract double getRaw(AbstractDose dose);
+
+		public static Quantity create(DoseQuantityChoiceNode node) {
+			String property = node.getPropertyName();
+			if (FixedDose.class.equals(node.getBeanClass()) && FixedDose.PROPERTY_QUANTITY.equals(property)) {
+				return new Quantity(node.getDoseUnit()) {
+					@Override
+					protected double getRaw(AbstractDose dose) {
+						return ((FixedDose) dose).getQuantity();
+					}
+				};
+			} else if (FlexibleDose.class.equals(node.getBeanClass()) && FlexibleDose.PROPERTY_MIN_DOSE.equals(property)) {
+				return new Quantity(node.getDoseUnit()) {
+					@Override
+					protected double getRaw(AbstractDose dose) {
+						return ((FlexibleDose) dose).getMinDose();
+					}
+				};
+			} else if (FlexibleDose.class.equals(node.getBeanClass()) && FlexibleDose.PROPERTY_MAX_DOSE.equals(property)) {
+				return new Quantity(node.getDoseUnit()) {
+					@Override
+					protected double getRaw(AbstractDose dose) {
+						return ((FlexibleDose) dose).getMaxDose();
+					}
+				};
+			}
+			return null;
+		}
+	}
+
+	private final Node d_root;
+
+	public CompiledDecisionTree(DecisionTree tree) {
+		d_root = compile(tree, tree.getRoot());
+	}
+
+	/**
+	 * Classify the given object. Equivalent to {@link DecisionTree#decide(Object)} on the tree at the time of compilation.
+	 * @throws IllegalStateException If the tree is incomplete, or the obj is of an incompatible type.
+	 */
+	public LeafNode decide(Object obj) {
+		return d_root.decide(obj);
+	}
+
+	private static Node compile(DecisionTree tree, DecisionTreeNode node) {
+		if (!(node instanceof ChoiceNode)) {
+			return new Leaf((LeafNode) node);
+		}
+		ChoiceNode choice = (ChoiceNode) node;
+		List<DecisionTreeEdge> edges = new ArrayList<DecisionTreeEdge>(tree.getOutEdges(choice));
+
+		if (isClassChoice(choice) && allInstancesOf(edges, TypeEdge.class)) {
+			TypeSwitch typeSwitch = new TypeSwitch();
+			for (DecisionTreeEdge edge : edges) {
+				Class<?> type = ((TypeEdge) edge).getType();
+				if (!typeSwitch.d_children.containsKey(type)) {
+					typeSwitch.d_children.put(type, compile(tree, tree.getEdgeTarget(edge)));
+				}
+			}
+			return typeSwitch;
+		}
+
+		Quantity quantity = choice instanceof DoseQuantityChoiceNode ? Quantity.create((DoseQuantityChoiceNode) choice) : null;
+		if (quantity != null && allInstancesOf(edges, RangeEdge.class)) {
+			List<RangeEdge> ranges = new ArrayList<RangeEdge>();
+			for (DecisionTreeEdge edge : edges) {
+				ranges.add((RangeEdge) edge);
+			}
+			Collections.sort(ranges);
+			List<Node> children = new ArrayList<Node>();
+			for (RangeEdge range : ranges) {
+				children.add(compile(tree, tree.getEdgeTarget(range)));
+			}
+			return new RangeSwitch(quantity, ranges, children);
+		}
+
+		List<Node> children = new ArrayList<Node>();
+		for (DecisionTreeEdge edge : edges) {
+			children.add(compile(tree, tree.getEdgeTarget(edge)));
+		}
+		return new GenericChoice(choice, edges, children);
+	}
+
+	private static boolean isClassChoice(ChoiceNode choice) {
+		return "class".equals(choice.getPropertyName()) && !(choice instanceof DoseQuantityChoiceNode);
+	}
+
+	private static boolean allInstancesOf(List<DecisionTreeEdge> edges, Class<?> type) {
+		for (DecisionTreeEdge edge : edges) {
+			if (!type.isInstance(edge)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static IllegalStateException unclassifiable(Object obj) {
+		return new IllegalStateException("Object " + obj + " could not be classified");
+	}
+}
@@ -27,8 +27,12 @@
 
 package org.drugis.addis.entities.treatment;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.drugis.addis.entities.AbstractDose;
@@ -45,6 +49,8 @@ import org.drugis.common.EqualsUtil;
 import com.jgoodies.binding.list.ArrayListModel;
 import com.jgoodies.binding.list.ObservableList;
 
+import edu.uci.ics.jung.graph.event.GraphEvent;
+import edu.uci.ics.jung.graph.event.GraphEventListener;
 import edu.uci.ics.jung.graph.util.Pair;
 
 public class TreatmentCategorization extends AbstractEntity implements Comparable<TreatmentCategorization>, TypeWithName {
@@ -52,10 +58,69 @@ public class TreatmentCategorization extends AbstractEntity implements Comparabl
 	public static final String PROPERTY_DOSE_UNIT = "doseUnit";
 	public static final String PROPERTY_DRUG = "drug";
 	public static final String PROPERTY_CATEGORIES = "categories";
+	private static final int CACHE_SIZE = 1024;
+
+	/**
+	 * Exact (class, unit, quantities) key for caching the category of a dose. Doses themselves are mutable, and
+	 * their equals() is approximate, so they are not suitable as keys.
+	 */
+	private static class DoseKey {
+		private final Class<?> d_type;
+		private final DoseUnit d_unit;
+		private final double d_q1;
+		private final double d_q2;
+
+		private DoseKey(Class<?> type, DoseUnit unit, double q1, double q2) {
+			d_type = type;
+			d_unit = unit == null ? null : unit.clone();
+			d_q1 = q1;
+			d_q2 = q2;
+		}
+
+		/**
+		 * @return The key for the dose, or null if it can not be cached.
+		 */
+		public static DoseKey create(AbstractDose dose) {
+			if (dose instanceof FixedDose && ((FixedDose) dose).getQuantity() != null) {
+				return new DoseKey(FixedDose.class, dose.getDoseUnit(), ((FixedDose) dose).getQuantity(), 0.0);
+			} else if (dose instanceof FlexibleDose && ((FlexibleDose) dose).getFlexibleDose() != null) {
+				FlexibleDose flex = (FlexibleDose) dose;
+				return new DoseKey(FlexibleDose.class, dose.getDoseUnit(), flex.getMinDose(), flex.getMaxDose());
+			} else if (dose instanceof UnknownDose) {
+				return new DoseKey(UnknownDose.class, dose.getDoseUnit(), 0.0, 0.0);
+			}
+			return null;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof DoseKey) {
+				DoseKey other = (DoseKey) obj;
+				return d_type.equals(other.d_type) && EqualsUtil.equal(d_unit, other.d_unit)
+						&& Double.compare(d_q1, other.d_q1) == 0 && Double.compare(d_q2, other.d_q2) == 0;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			long bits = Double.doubleToLongBits(d_q1) * 31 + Double.doubleToLongBits(d_q2);
+			return (d_type.hashCode() * 31 + EqualsUtil.hashCode(d_unit)) * 31 + (int) (bits ^ (bits >>> 32));
+		}
+	}
 
 	private final ObservableList<Category> d_categories = new ArrayListModel<Category>();
 	private Drug d_drug;
 	private DecisionTree d_decisionTree;
+	private CompiledDecisionTree d_compiledTree;
+	private final Map<DoseKey, LeafNode> d_cache = new LinkedHashMap<DoseKey, LeafNode>(16, 0.75f, true) {
+		private static final long serialVersionUID = 2946012738616328711L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<DoseKey, LeafNode> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
 
 	private final DoseUnit d_doseUnit;
 	private String d_name;
@@ -99,7 +164,7 @@ public class TreatmentCategorization extends AbstractEntity implements Comparabl
 		TreatmentCategorization categorization = new TreatmentCategorization("", drug, DoseUnit.createMilliGramsPerDay(), false);
 		Category category = new Category(categorization);
 		categorization.addCategory(category);
-		categorization.d_decisionTree = new DecisionTree(new LeafNode(category));
+		categorization.setDecisionTree(new DecisionTree(new LeafNode(category)));
 		return categorization;
 	}
 	
@@ -107,12 +172,34 @@ public class TreatmentCategorization extends AbstractEntity implements Comparabl
 		d_name = name;
 		d_drug = drug;
 		d_doseUnit = unit;
-		d_decisionTree = new DecisionTree(ROOT_NODE);
+		// the dose unit is edited in place, and the decisions depend on it
+		d_doseUnit.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				invalidate();
+			}
+		});
+		setDecisionTree(new DecisionTree(ROOT_NODE));
 		if (withDefault) { 
 			addDefaultEdges(d_decisionTree);
 		}
 	}
 
+	private void setDecisionTree(DecisionTree tree) {
+		d_decisionTree = tree;
+		invalidate();
+		d_decisionTree.getObservableGraph().addGraphEventListener(new GraphEventListener<DecisionTreeNode, DecisionTreeEdge>() {
+			@Override
+			public void handleGraphEvent(GraphEvent<DecisionTreeNode, DecisionTreeEdge> evt) {
+				invalidate();
+			}
+		});
+	}
+
+	private synchronized void invalidate() {
+		d_compiledTree = null;
+		d_cache.clear();
+	}
+
 	private static void addDefaultEdges(final DecisionTree tree) {
 		final DecisionTreeNode root = tree.getRoot();
 		tree.addEdge(new TypeEdge(UnknownDose.class), root, new LeafNode());
@@ -159,8 +246,22 @@ public class TreatmentCategorization extends AbstractEntity implements Comparabl
 		return d_categories;
 	}
 
-	public Category getCategory(final AbstractDose dose) {
-		return d_decisionTree.decide(dose).getCategory();
+	/**
+	 * Classify the dose using the decision tree. Results are cached until the tree or the dose unit changes.
+	 */
+	public synchronized Category getCategory(final AbstractDose dose) {
+		if (d_compiledTree == null) {
+			d_compiledTree = new CompiledDecisionTree(d_decisionTree);
+		}
+		final DoseKey key = DoseKey.create(dose);
+		LeafNode leaf = key == null ? null : d_cache.get(key);
+		if (leaf == null) {
+			leaf = d_compiledTree.decide(dose);
+			if (key != null) {
+				d_cache.put(key, leaf);
+			}
+		}
+		return leaf.getCategory();
 	}
 
 	@Override
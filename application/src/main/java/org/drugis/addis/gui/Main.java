@@ -37,6 +37,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.swing.AbstractAction;
@@ -44,12 +45,15 @@ import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import javax.swing.ToolTipManager;
 import javax.swing.UIManager;
 
 import org.drugis.addis.entities.Domain;
 import org.drugis.addis.entities.DomainManager;
+import org.drugis.addis.mcmcmodel.MCMCResultCache;
 import org.drugis.addis.presentation.DomainChangedModel;
+import org.drugis.addis.util.BenefitRiskBatchRunner;
 import org.drugis.addis.util.jaxb.JAXBHandler;
 import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
 import org.drugis.common.ImageLoader;
@@ -93,6 +97,8 @@ public class Main extends AbstractObservable {
 	}
 
 	private static final String PRINT_SCREEN = "F12"; // control p ... alt x ... etc
+	private static final String BATCH_OPTION = "--batch";
+	private static final String BATCH_USAGE = "Usage: " + BATCH_OPTION + " <file.addis> <output directory> [threads]";
 	static final String DISPLAY_EXAMPLE = "Example Data";
 	static final String DISPLAY_NEW = "New File";
 	public static final String PROPERTY_DISPLAY_NAME = "displayName";
@@ -123,6 +129,7 @@ public class Main extends AbstractObservable {
 		}
 
 		initializeDomain();
+		initializeResultCache();
 
 		if (args.length > 0) {
 			d_curFilename = args[0];
@@ -202,9 +209,22 @@ public class Main extends AbstractObservable {
 
 	private void initializeDomain() {
 		d_domainMgr = new DomainManager();
+		d_domainMgr.setStreamingLoad(true);
+		d_domainMgr.setParallelConversion(true);
+		d_domainMgr.setIncrementalSave(true);
+		d_domainMgr.setSnapshotDirectory(new File(getUserDataDirectory(), "snapshots"));
 		attachDomainChangedModel();
 	}
 
+	private void initializeResultCache() {
+		File dir = new File(getUserDataDirectory(), "mcmc-cache");
+		MCMCResultCache.setInstance(new MCMCResultCache(dir, MCMCResultCache.DEFAULT_MAX_SIZE));
+	}
+
+	private static File getUserDataDirectory() {
+		return new File(System.getProperty("user.home"), ".addis");
+	}
+
 	public void loadExampleDomain(String exampleFile) {
 		try {
 			loadDomainFromXMLResource(exampleFile);
@@ -223,6 +243,18 @@ public class Main extends AbstractObservable {
 	private boolean loadDomainFromXMLFile(String fileName) {
 		File f = new File(fileName);
 		if (f.exists() && f.isFile()) {
+			XmlFormatType snapshotType = null;
+			try {
+				snapshotType = d_domainMgr.loadSnapshot(f);
+			} catch (IOException e) { // the file itself can still be loaded
+				ErrorDialog.showDialog(e, "Error loading snapshot", "Could not use the snapshot of \"" + fileName + "\"; loading the file itself.", false);
+			}
+			if (snapshotType != null) {
+				d_xmlType = snapshotType;
+				attachDomainChangedModel();
+				setFileNameAndReset(fileName);
+				return true;
+			}
 			try {
 				FileInputStream in = new FileInputStream(f);
 				d_xmlType = loadDomainFromInputStream(in);
@@ -242,6 +274,7 @@ public class Main extends AbstractObservable {
 				askToConvertToNew(fileName);
 				return true;
 			} else {
+				saveSnapshotInBackground(f, d_xmlType.getVersion());
 				setFileNameAndReset(fileName);
 				return true;
 			}
@@ -252,6 +285,27 @@ public class Main extends AbstractObservable {
 		}
 	}
 
+	/**
+	 * Write the snapshot of a file that was just loaded without delaying the load.
+	 */
+	private void saveSnapshotInBackground(final File file, final int version) {
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					d_domainMgr.saveSnapshot(file, version);
+				} catch (final IOException e) {
+					SwingUtilities.invokeLater(new Runnable() {
+						public void run() {
+							ErrorDialog.showDialog(e, "Error saving snapshot", "Could not save a snapshot of \"" + file.getPath() + "\".", false);
+						}
+					});
+				}
+			}
+		}, "Snapshot writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
 	private XmlFormatType loadDomainFromInputStream(InputStream in)	throws IOException {
 		BufferedInputStream fis = new BufferedInputStream(in);
 		XmlFormatType xmlType = JAXBHandler.determineXmlType(fis);
@@ -290,6 +344,26 @@ public class Main extends AbstractObservable {
 		}
 	}
 
+	/**
+	 * Load the domain from the given file without user interaction. Legacy files are loaded, but not converted.
+	 */
+	private void loadDomainHeadless(String fileName) throws IOException {
+		XmlFormatType xmlType;
+		FileInputStream in = new FileInputStream(fileName);
+		try {
+			xmlType = loadDomainFromInputStream(in);
+		} finally {
+			in.close();
+		}
+		if (!xmlType.isValid()) {
+			throw new IOException("\"" + fileName + "\" is not formatted as a valid ADDIS XML file");
+		} else if (xmlType.isFuture()) {
+			throw new IOException("\"" + fileName + "\" was created with a newer version of ADDIS");
+		}
+		d_xmlType = xmlType;
+		d_curFilename = fileName;
+	}
+
 	private void loadDomainFromXMLResource(String fileName) throws IOException, ClassNotFoundException {
 		InputStream fis = Main.class.getResourceAsStream("/org/drugis/addis/" + fileName);
 		d_xmlType = loadDomainFromInputStream(fis);
@@ -360,6 +434,9 @@ public class Main extends AbstractObservable {
 	}
 
 	public static void main(final String[] args) {
+		if (args.length > 0 && args[0].equals(BATCH_OPTION)) {
+			System.exit(runBatch(Arrays.copyOfRange(args, 1, args.length)));
+		}
 		new Thread(new Runnable() {
 			public void run() {
 				JAXBHandler.JAXB.getInstance(); // Initializes JAXBContext
@@ -373,6 +450,45 @@ public class Main extends AbstractObservable {
 		}, BUG_REPORTING_TEXT);
 	}
 
+	/**
+	 * Run all benefit-risk analyses in the given file without a GUI, see {@link BenefitRiskBatchRunner}.
+	 * @return The exit status: 0 if all analyses were run, 1 if some failed, 2 if none could be run.
+	 */
+	private static int runBatch(String[] args) {
+		if (args.length < 2 || args.length > 3) {
+			System.err.println(BATCH_USAGE);
+			return 2;
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 2) {
+			try {
+				threads = Integer.parseInt(args[2]);
+			} catch (NumberFormatException e) {
+				threads = 0;
+			}
+			if (threads < 1) {
+				System.err.println(BATCH_USAGE);
+				return 2;
+			}
+		}
+
+		Main main = new Main(new String[] {}, true);
+		try {
+			main.loadDomainHeadless(args[0]);
+		} catch (IOException e) {
+			System.err.println("Error loading data from \"" + args[0] + "\": " + e.getMessage());
+			return 2;
+		}
+		try {
+			return new BenefitRiskBatchRunner(main.getDomain(), threads).run(new File(args[1])) == 0 ? 0 : 1;
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			return 2;
+		} catch (InterruptedException e) {
+			return 2;
+		}
+	}
+
 	private void startGUI() {
 		if (d_curFilename == null) {
 			showWelcome();
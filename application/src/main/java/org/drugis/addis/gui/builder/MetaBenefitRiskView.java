@@ -29,11 +29,18 @@ package org.drugis.addis.gui.builder;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.JButton;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import org.drugis.addis.entities.analysis.AbstractMetaAnalysis;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
@@ -47,14 +54,19 @@ import org.drugis.addis.gui.CategoryKnowledgeFactory;
 import org.drugis.addis.gui.components.EntityTablePanel;
 import org.drugis.addis.gui.renderer.DistributionParameterCellRenderer;
 import org.drugis.addis.gui.renderer.DistributionQuantileCellRenderer;
+import org.drugis.addis.mcmcmodel.AbstractBaselineModel;
 import org.drugis.addis.presentation.MetaBenefitRiskPresentation;
 import org.drugis.common.gui.ImageExporter;
 import org.drugis.common.gui.LayoutUtil;
 import org.drugis.common.gui.table.EnhancedTable;
 import org.drugis.common.gui.table.TablePanel;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.status.TaskTerminatedModel;
+import org.drugis.common.validation.BooleanAndModel;
 import org.drugis.mtc.gui.MainWindow;
 import org.drugis.mtc.gui.results.SimulationComponentFactory;
 
+import com.jgoodies.binding.value.ValueModel;
 import com.jgoodies.forms.builder.PanelBuilder;
 import com.jgoodies.forms.layout.CellConstraints;
 import com.jgoodies.forms.layout.FormLayout;
@@ -104,11 +116,51 @@ public class MetaBenefitRiskView extends AbstractBenefitRiskView<TreatmentDefini
 			LayoutUtil.addRow(layout);
 			row += 2;
 			builder.add(SimulationComponentFactory.createSimulationControls(mw, d_mainWindow, true, AuxComponentFactory.COLOR_NOTE, d_mainWindow.getReloadRightPanelAction(null)), cc.xyw(1, row, 3));
+			if (mw.getModel() instanceof AbstractBaselineModel && ((AbstractBaselineModel<?>) mw.getModel()).isAdaptive()) {
+				LayoutUtil.addRow(layout);
+				row += 2;
+				builder.add(createConvergenceLabel((AbstractBaselineModel<?>) mw.getModel()), cc.xyw(1, row, 3));
+			}
 		}
 
 		return builder.getPanel();
 	}
 
+	/**
+	 * Label showing whether the adaptive baseline model converged, and how many iterations that saved.
+	 */
+	private static JLabel createConvergenceLabel(final AbstractBaselineModel<?> model) {
+		final JLabel label = new JLabel();
+		final List<ValueModel> terminated = new ArrayList<ValueModel>();
+		for (final Task task : model.getChainTasks()) {
+			terminated.add(new TaskTerminatedModel(task));
+		}
+		final BooleanAndModel allTerminated = new BooleanAndModel(terminated);
+		final Runnable update = new Runnable() {
+			@Override
+			public void run() {
+				if (!Boolean.TRUE.equals(allTerminated.getValue())) {
+					label.setText("Adaptive stopping: the simulation stops once the chains have converged");
+					return;
+				}
+				final int saved = model.getSavedIterations();
+				label.setText("Adaptive stopping: " +
+						(model.isConverged() ? "converged" : "did not converge") +
+						" (PSRF " + new DecimalFormat("0.000").format(model.getScaleReduction()) + "), " +
+						(saved >= 0 ? saved + " iterations saved" : -saved + " extra iterations needed"));
+			}
+		};
+		allTerminated.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChange(final PropertyChangeEvent evt) {
+				// the tasks terminate on a worker thread
+				SwingUtilities.invokeLater(update);
+			}
+		});
+		update.run();
+		return label;
+	}
+
 	private JButton createRunAllButton() {
 		final JButton button = new JButton(MainWindow.IMAGELOADER.getIcon(org.drugis.mtc.gui.FileNames.ICON_RUN));
 		button.setText("Run all required sub-analyses");
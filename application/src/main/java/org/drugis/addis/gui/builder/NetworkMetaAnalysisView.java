@@ -30,31 +30,35 @@ package org.drugis.addis.gui.builder;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
 import javax.swing.AbstractAction;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.SwingUtilities;
 import javax.swing.table.TableColumn;
 
+import org.drugis.addis.FileNames;
 import org.drugis.addis.entities.Study;
 import org.drugis.addis.entities.analysis.NetworkMetaAnalysis;
+import org.drugis.addis.entities.analysis.NodeSplitBatch;
 import org.drugis.addis.entities.treatment.Category;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
 import org.drugis.addis.gui.AddisWindow;
 import org.drugis.addis.gui.AuxComponentFactory;
 import org.drugis.addis.gui.CategoryKnowledgeFactory;
+import org.drugis.addis.gui.Main;
 import org.drugis.addis.gui.StudyGraph;
 import org.drugis.addis.gui.components.AddisTabbedPane;
 import org.drugis.addis.gui.components.ScrollableJPanel;
@@ -65,8 +69,6 @@ import org.drugis.common.gui.ViewBuilder;
 import org.drugis.common.gui.table.EnhancedTable;
 import org.drugis.common.gui.table.TableCopyHandler;
 import org.drugis.common.gui.table.TablePanel;
-import org.drugis.common.threading.Task;
-import org.drugis.common.threading.ThreadHandler;
 import org.drugis.mtc.gui.Help;
 import org.drugis.mtc.gui.MainWindow;
 import org.drugis.mtc.gui.results.NetworkRelativeEffectTableCellRenderer;
@@ -334,7 +336,7 @@ implements ViewBuilder {
 
 	private JComponent buildNodeSplitControls() {
 		final FormLayout layout = new FormLayout(
-				"fill:0:grow, 3dlu, pref",
+				"pref, 3dlu, fill:0:grow, 3dlu, pref, 3dlu, pref",
 				"p");
 		final CellConstraints cc = new CellConstraints();
 		final PanelBuilder panelBuilder = new PanelBuilder(layout);
@@ -351,27 +353,70 @@ implements ViewBuilder {
 			}
 		});
 
+		final NodeSplitBatch batch = d_pm.getBean().getNodeSplitBatch();
+
 		final JButton runAll = new JButton(MainWindow.IMAGELOADER.getIcon(org.drugis.mtc.gui.FileNames.ICON_RUN));
 		runAll.setText("Run all node-split models");
 		runAll.setToolTipText("Run all simulations");
-		final List<Task> tasks = new ArrayList<Task>();
-		for (final BasicParameter p : d_pm.getSplitParameters()) {
-			final NodeSplitWrapper<TreatmentDefinition> wrapper = d_pm.getNodeSplitModel(p);
-			if (!wrapper.isSaved()) {
-				tasks.add(wrapper.getModel().getActivityTask());
-			}
-		}
 		runAll.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(final ActionEvent e) {
-				ThreadHandler.getInstance().scheduleTasks(tasks);
+				batch.start();
+			}
+		});
+
+		final JButton cancelAll = new JButton(Main.IMAGELOADER.getIcon(FileNames.ICON_STOP));
+		cancelAll.setToolTipText("Cancel all simulations");
+		cancelAll.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				batch.cancel();
 			}
 		});
 
-		panelBuilder.add(resetAll, cc.xy(3, 1));
-		panelBuilder.add(runAll,  cc.xy(1, 1));
+		final JProgressBar progress = new JProgressBar(0, batch.getTasks().size());
+		progress.setStringPainted(true);
 
-		return panelBuilder.getPanel();
+		final Runnable update = new Runnable() {
+			@Override
+			public void run() {
+				final int finished = batch.getFinished();
+				progress.setValue(finished);
+				progress.setString(finished + " of " + batch.getTasks().size() + " node-split models done");
+				runAll.setEnabled(!batch.isStarted() && !batch.isFinished());
+				cancelAll.setEnabled(batch.isStarted() && !batch.isFinished());
+			}
+		};
+		final PropertyChangeListener listener = new PropertyChangeListener() {
+			@Override
+			public void propertyChange(final PropertyChangeEvent evt) {
+				// the tasks terminate on a worker thread
+				SwingUtilities.invokeLater(update);
+			}
+		};
+		update.run();
+
+		panelBuilder.add(runAll, cc.xy(1, 1));
+		panelBuilder.add(progress, cc.xy(3, 1));
+		panelBuilder.add(cancelAll, cc.xy(5, 1));
+		panelBuilder.add(resetAll, cc.xy(7, 1));
+
+		// The batch outlives this view: only listen to it while the controls are shown.
+		final JPanel panel = panelBuilder.getPanel();
+		panel.addHierarchyListener(new HierarchyListener() {
+			@Override
+			public void hierarchyChanged(final HierarchyEvent e) {
+				if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+					if (panel.isDisplayable()) {
+						batch.addPropertyChangeListener(listener);
+						update.run();
+					} else {
+						batch.removePropertyChangeListener(listener);
+					}
+				}
+			}
+		});
+		return panel;
 	}
 
 	private JComponent buildNodeSplitResultsTable() {
@@ -29,15 +29,26 @@ package org.drugis.addis.gui.builder;
 
 import java.awt.BorderLayout;
 import java.awt.Component;
+import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 
+import javax.swing.Box;
+import javax.swing.DefaultListCellRenderer;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import org.drugis.addis.entities.Drug;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
@@ -48,6 +59,7 @@ import org.drugis.addis.gui.components.ScrollableJPanel;
 import org.drugis.addis.presentation.AbstractBenefitRiskPresentation;
 import org.drugis.addis.presentation.MetaBenefitRiskPresentation;
 import org.drugis.addis.presentation.SMAAPresentation;
+import org.drugis.addis.presentation.ValueHolder;
 import org.drugis.common.gui.BuildViewWhenReadyComponent;
 import org.drugis.common.gui.FileSaveDialog;
 import org.drugis.common.gui.ImageExporter;
@@ -59,6 +71,7 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.renderer.category.LineAndShapeRenderer;
 
+import com.jgoodies.binding.adapter.BasicComponentFactory;
 import com.jgoodies.forms.builder.ButtonBarBuilder2;
 import com.jgoodies.forms.builder.PanelBuilder;
 import com.jgoodies.forms.layout.CellConstraints;
@@ -73,6 +86,8 @@ import fi.smaa.jsmaa.gui.views.ResultsView;
 
 public class SMAAView implements ViewBuilder  {
 	public static final String WAITING_MESSAGE = "Please wait while the sub-analyses run";
+	private static final Double NO_TARGET_ERROR = 0.0;
+	private static final double[] TARGET_ERRORS = { 0.01, 0.005, 0.0025, 0.001 };
 
 	@SuppressWarnings("rawtypes")
 	private SMAAPresentation d_pm;
@@ -132,7 +147,7 @@ public class SMAAView implements ViewBuilder  {
 	final class PreferencesBuilder implements ViewBuilder {
 
 		public JComponent buildPanel() {
-			FormLayout layout = new FormLayout("center:pref", "p, 3dlu, p");
+			FormLayout layout = new FormLayout("center:pref", "p, 3dlu, p, 3dlu, p");
 			PanelBuilder builder = new PanelBuilder(layout);
 			builder.setOpaque(true);
 
@@ -142,10 +157,16 @@ public class SMAAView implements ViewBuilder  {
 			panel.setLayout(new BorderLayout());
 			builder.add(panel, cc.xy(1, 1));
 
+			JCheckBox fastEditing = BasicComponentFactory.createCheckBox(d_pm.getFastPreferenceEditingModel(),
+					"Fast preference editing (re-use sampled measurements)");
+			fastEditing.setToolTipText("Only re-sample the weights when the preferences change. " +
+					"Turn off to run the complete simulation again.");
+			builder.add(fastEditing, cc.xy(1, 3));
+
 			ButtonBarBuilder2 bbuilder = new ButtonBarBuilder2();
 			bbuilder.addButton(createExportButton());
 			JPanel buttonBar = bbuilder.getPanel();
-			builder.add(buttonBar, cc.xy(1, 3));
+			builder.add(buttonBar, cc.xy(1, 5));
 
 			d_pm.getPreferencePresentationModel().addPropertyChangeListener(
 					PreferencePresentationModel.PREFERENCE_TYPE,
@@ -202,7 +223,7 @@ public class SMAAView implements ViewBuilder  {
 	class RankAcceptabilitiesBuilder implements ViewBuilder {
 
 		public JComponent buildPanel() {
-			FormLayout layout = new FormLayout("pref", "p, 3dlu, p, 3dlu, p");
+			FormLayout layout = new FormLayout("pref", "p, 3dlu, p, 3dlu, p, 3dlu, p");
 			CellConstraints cc = new CellConstraints();
 			PanelBuilder builder = new PanelBuilder(layout);
 			builder.setDefaultDialogBorder();
@@ -221,16 +242,81 @@ public class SMAAView implements ViewBuilder  {
 
 			JComponent smaaRaPanel = view.buildPanel();
 			builder.add(smaaRaPanel, cc.xy(1, 3));
+			JPanel errorPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+			errorPanel.add(createErrorLabel(d_pm.getRankAcceptabilityErrorModel()));
+			errorPanel.add(Box.createHorizontalStrut(10));
+			errorPanel.add(createTargetErrorSelector());
+			builder.add(errorPanel, cc.xy(1, 5));
 
 			ButtonBarBuilder2 bbuilder = new ButtonBarBuilder2();
 			bbuilder.addButton(createSaveImageButton(findChartPanel(smaaRaPanel)));
 
-			builder.add(bbuilder.getPanel(), cc.xy(1, 5));
+			builder.add(bbuilder.getPanel(), cc.xy(1, 7));
 
 			return builder.getPanel();
 		}
 	}
 
+	/**
+	 * Label showing the largest Monte Carlo standard error of the results.
+	 */
+	private static JLabel createErrorLabel(final ValueHolder<Double> errorModel) {
+		final JLabel label = new JLabel();
+		final DecimalFormat format = new DecimalFormat("0.0000");
+		PropertyChangeListener listener = new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				// the error is updated from the simulation thread
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						Double error = errorModel.getValue();
+						label.setText("Monte Carlo standard error: " +
+								(error == null || error.isInfinite() ? "not yet available" : "at most " + format.format(error)));
+					}
+				});
+			}
+		};
+		errorModel.addValueChangeListener(listener);
+		listener.propertyChange(null);
+		return label;
+	}
+
+	/**
+	 * Combo box to choose the standard error at which the simulation stops (see
+	 * {@link BenefitRiskAnalysis#getSimulationTargetError()}), or to run all iterations.
+	 */
+	private JComboBox createTargetErrorSelector() {
+		final DecimalFormat format = new DecimalFormat("0.0000");
+		List<Double> choices = new ArrayList<Double>();
+		choices.add(NO_TARGET_ERROR);
+		for (double error : TARGET_ERRORS) {
+			choices.add(error);
+		}
+		Double current = d_pm.getSimulationTargetError();
+		if (current != null && !choices.contains(current)) {
+			choices.add(current);
+		}
+
+		final JComboBox box = new JComboBox(choices.toArray());
+		box.setRenderer(new DefaultListCellRenderer() {
+			private static final long serialVersionUID = -6471843295018712542L;
+
+			@Override
+			public Component getListCellRendererComponent(JList list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+				super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+				setText(NO_TARGET_ERROR.equals(value) ? "Run all iterations" : "Stop at standard error " + format.format(value));
+				return this;
+			}
+		});
+		box.setSelectedItem(current == null ? NO_TARGET_ERROR : current);
+		box.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				Double selected = (Double) box.getSelectedItem();
+				d_pm.setSimulationTargetError(NO_TARGET_ERROR.equals(selected) ? null : selected);
+			}
+		});
+		return box;
+	}
+
 	private Component getSmaaSimulationProgressBar() {
 		return new TaskProgressBar(d_pm.getTaskProgressModel());
 	}
@@ -259,9 +345,12 @@ public class SMAAView implements ViewBuilder  {
 			JPanel panel = new JPanel(new BorderLayout());
 			panel.add(viewPanel, BorderLayout.CENTER);
 
+			JPanel south = new JPanel(new BorderLayout());
+			south.add(createErrorLabel(d_pm.getCentralWeightErrorModel()), BorderLayout.NORTH);
 			ButtonBarBuilder2 bbuilder = new ButtonBarBuilder2();
 			bbuilder.addButton(createSaveImageButton(findChartPanel(viewPanel)));
-			panel.add(bbuilder.getPanel(), BorderLayout.SOUTH);
+			south.add(bbuilder.getPanel(), BorderLayout.SOUTH);
+			panel.add(south, BorderLayout.SOUTH);
 
 			return panel;
 		}
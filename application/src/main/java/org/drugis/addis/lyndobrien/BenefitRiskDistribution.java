@@ -41,7 +41,11 @@ public interface BenefitRiskDistribution {
 		}
 	}
 	
-	public Sample nextSample(RandomUtil random);
+	/**
+	 * Draw a sample into the given array: benefit at index 0, risk at index 1.
+	 * Implementations should not allocate per sample.
+	 */
+	public void nextSample(RandomUtil random, double[] sample);
 	public String getBenefitAxisName();
 	public String getRiskAxisName();
 }
@@ -115,11 +115,12 @@ public class BenefitRiskDistributionImpl<AltType extends Entity> implements Bene
 	private static final int BASELINE = 0;
 	private static final int SUBJECT = 1;
 	
-	public Sample nextSample(RandomUtil random) {
-		double[][] sample = new double[2][2];
-		d_measurements.sample(random, sample);
-		return new Sample(d_benefitMultiplier * (sample[BENEFIT][SUBJECT] - sample[BENEFIT][BASELINE]),
-				          d_riskMultiplier * (sample[RISK][SUBJECT] - sample[RISK][BASELINE]));
+	private final double[][] d_buffer = new double[2][2];
+
+	public void nextSample(RandomUtil random, double[] sample) {
+		d_measurements.sample(random, d_buffer);
+		sample[BENEFIT] = d_benefitMultiplier * (d_buffer[BENEFIT][SUBJECT] - d_buffer[BENEFIT][BASELINE]);
+		sample[RISK] = d_riskMultiplier * (d_buffer[RISK][SUBJECT] - d_buffer[RISK][BASELINE]);
 	}
 
 }
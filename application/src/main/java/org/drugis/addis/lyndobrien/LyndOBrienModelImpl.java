@@ -28,64 +28,185 @@
 package org.drugis.addis.lyndobrien;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.drugis.addis.lyndobrien.BenefitRiskDistribution.Sample;
 import org.drugis.common.threading.AbstractIterativeComputation;
 import org.drugis.common.threading.IterativeTask;
 import org.drugis.common.threading.Task;
 
+import cern.jet.random.engine.MersenneTwister;
 import fi.smaa.common.RandomUtil;
 
+/**
+ * Lynd & O'Brien simulation. The iterations are divided in blocks of {@link #BLOCK_SIZE} samples, and each block
+ * is drawn from its own random stream, seeded from the model's seed and the block index. When the model is given
+ * several (equivalent) distributions, consecutive blocks are sampled in parallel, one per distribution. The samples
+ * for a given seed are therefore the same regardless of the number of threads.
+ *
+ * Progress is reported per sample as before: a sample is only made available once all blocks up to and including
+ * its own have been drawn.
+ */
 public class LyndOBrienModelImpl extends AbstractIterativeComputation implements LyndOBrienModel {
-	private BenefitRiskDistribution d_brd;
-	private static final int SIMULATION_ITERATIONS = 3000;
+	public static final int SIMULATION_ITERATIONS = 3000;
 	private static final int REPORTING_INTERVAL = 100;
-	private List<Sample> d_data;
+	static final int BLOCK_SIZE = 500;
+
+	private final List<BenefitRiskDistribution> d_brds;
+	private final long d_seed;
+	private final int d_iterations;
+	private final double[] d_benefit;
+	private final double[] d_risk;
+	private int d_size = 0;
+	private int d_sampled = 0;
 	private IterativeTask d_task;
-	private RandomUtil d_random;
+	private ThreadPoolExecutor d_executor;
+
+	/**
+	 * Risk/benefit ratios of the samples with negative and positive benefit, sorted ascending, and the number of
+	 * samples with zero benefit and negative risk. Computed for the first d_sortedSize samples.
+	 */
+	private double[] d_negativeRatios;
+	private double[] d_positiveRatios;
+	private int d_zeroBenefitBelow;
+	private int d_sortedSize = -1;
 
 	public LyndOBrienModelImpl(BenefitRiskDistribution brd) {
-		super(SIMULATION_ITERATIONS);
-		d_brd = brd;
-		d_random = RandomUtil.createWithRandomSeed();
-		d_data = new ArrayList<Sample>();
+		this(brd, SIMULATION_ITERATIONS);
+	}
+
+	public LyndOBrienModelImpl(BenefitRiskDistribution brd, int iterations) {
+		this(Collections.singletonList(brd), iterations, new Random().nextLong());
+	}
+
+	/**
+	 * @param brds Equivalent distributions to sample from, one per thread. Distributions need not be thread-safe.
+	 * @param iterations Number of samples to draw.
+	 * @param seed Seed from which the random streams are derived.
+	 */
+	public LyndOBrienModelImpl(List<? extends BenefitRiskDistribution> brds, int iterations, long seed) {
+		super(iterations);
+		if (brds.isEmpty()) {
+			throw new IllegalArgumentException("At least one distribution is required");
+		}
+		d_brds = new ArrayList<BenefitRiskDistribution>(brds);
+		d_seed = seed;
+		d_iterations = iterations;
+		d_benefit = new double[iterations];
+		d_risk = new double[iterations];
 		d_task = new IterativeTask(this, "Lynd & O'Brien Simulation");
 		d_task.setReportingInterval(REPORTING_INTERVAL);
 	}
 
-	public Sample getData(int arg0) {
-		return d_data.get(arg0);
+	public synchronized Sample getData(int i) {
+		if (i < 0 || i >= d_size) {
+			throw new IndexOutOfBoundsException("Sample " + i + " not available, size: " + d_size);
+		}
+		return new Sample(d_benefit[i], d_risk[i]);
 	}
 	
 	public String getXAxisName() {
-		return d_brd.getBenefitAxisName();
+		return d_brds.get(0).getBenefitAxisName();
 	}
 	
 	public String getYAxisName() {
-		return d_brd.getRiskAxisName();
+		return d_brds.get(0).getRiskAxisName();
 	}
 
-	public Double getPValue(double mu) {
-		double belowMu = 0;
-		final int n = d_data.size();
-		for(int i = 0; i < n; ++i) {
-			Sample s = d_data.get(i);
-			if(s.benefit < 0) {
-				if((s.risk / s.benefit) > mu) {
-					++belowMu;
-				}
-			} else if (s.benefit > 0) {
-				if((s.risk / s.benefit) < mu) {
-					++belowMu;
-				}
+	/**
+	 * The fraction of samples for which the risk/benefit trade-off is acceptable at the given mu: the sample lies
+	 * below the line risk = mu * benefit. Computed by binary search in the sorted risk/benefit ratios.
+	 */
+	public synchronized Double getPValue(double mu) {
+		sortRatios();
+		int belowMu = d_zeroBenefitBelow;
+		belowMu += d_negativeRatios.length - countAtMost(d_negativeRatios, mu); // benefit < 0: ratio > mu
+		belowMu += countLessThan(d_positiveRatios, mu); // benefit > 0: ratio < mu
+		return ((double) belowMu) / d_size;
+	}
+
+	private void sortRatios() {
+		if (d_sortedSize == d_size) {
+			return;
+		}
+		int nNegative = 0;
+		int nPositive = 0;
+		int zeroBelow = 0;
+		for (int i = 0; i < d_size; ++i) {
+			if (d_benefit[i] < 0) {
+				++nNegative;
+			} else if (d_benefit[i] > 0) {
+				++nPositive;
+			} else if (d_risk[i] < 0) {
+				++zeroBelow;
+			}
+		}
+		double[] negative = new double[nNegative];
+		double[] positive = new double[nPositive];
+		nNegative = 0;
+		nPositive = 0;
+		for (int i = 0; i < d_size; ++i) {
+			if (d_benefit[i] < 0) {
+				negative[nNegative++] = d_risk[i] / d_benefit[i];
+			} else if (d_benefit[i] > 0) {
+				positive[nPositive++] = d_risk[i] / d_benefit[i];
+			}
+		}
+		Arrays.sort(negative);
+		Arrays.sort(positive);
+		d_negativeRatios = negative;
+		d_positiveRatios = positive;
+		d_zeroBenefitBelow = zeroBelow;
+		d_sortedSize = d_size;
+	}
+
+	/**
+	 * @return The number of values x in the sorted array with x < mu. NaN values (sorted last) never count.
+	 */
+	private static int countLessThan(double[] sorted, double mu) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] < mu) {
+				lo = mid + 1;
 			} else {
-				if (s.risk < 0) {
-					++belowMu;
-				}
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return The number of values x in the sorted array with x <= mu, or that are NaN (so that the remainder counts
+	 * the x > mu).
+	 */
+	private static int countAtMost(double[] sorted, double mu) {
+		int lo = 0;
+		int hi = sorted.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (sorted[mid] <= mu) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
 			}
 		}
-		return belowMu / n;
+		int nan = 0;
+		for (int i = sorted.length - 1; i >= lo && Double.isNaN(sorted[i]); --i) {
+			++nan;
+		}
+		return lo + nan;
 	}
 
 	public Task getTask() {
@@ -94,10 +215,95 @@ public class LyndOBrienModelImpl extends AbstractIterativeComputation implements
 
 	@Override
 	public void doStep() {
-		d_data.add(d_brd.nextSample(d_random));
+		if (d_size == d_sampled) {
+			sampleBlocks();
+		}
+		synchronized (this) {
+			++d_size;
+		}
+	}
+
+	/**
+	 * Draw the next blocks, one for each distribution, in parallel.
+	 */
+	private void sampleBlocks() {
+		int firstBlock = d_sampled / BLOCK_SIZE;
+		int nBlocks = Math.min(d_brds.size(), (d_iterations - d_sampled + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 1; i < nBlocks; ++i) {
+			futures.add(getExecutor().submit(createBlock(d_brds.get(i), firstBlock + i)));
+		}
+		try {
+			createBlock(d_brds.get(0), firstBlock).call();
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			for (Future<?> f : futures) {
+				f.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		d_sampled = Math.min(d_iterations, (firstBlock + nBlocks) * BLOCK_SIZE);
+	}
+
+	private Callable<Object> createBlock(final BenefitRiskDistribution brd, final int block) {
+		return new Callable<Object>() {
+			public Object call() {
+				RandomUtil random = new RandomUtil(new MersenneTwister(blockSeed(d_seed, block)));
+				double[] sample = new double[2];
+				int end = Math.min(d_iterations, (block + 1) * BLOCK_SIZE);
+				for (int i = block * BLOCK_SIZE; i < end; ++i) {
+					brd.nextSample(random, sample);
+					d_benefit[i] = sample[0];
+					d_risk[i] = sample[1];
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Derive the seed for a block's random stream (SplitMix64 finalizer), so that streams for neighbouring blocks
+	 * are unrelated.
+	 */
+	static int blockSeed(long seed, int block) {
+		long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (int) (z ^ (z >>> 32));
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (d_executor == null) {
+			// Idle worker threads time out, so that no clean-up is needed when the task finishes or is aborted.
+			d_executor = new ThreadPoolExecutor(d_brds.size() - 1, d_brds.size() - 1, 1, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Lynd & O'Brien worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			d_executor.allowCoreThreadTimeOut(true);
+		}
+		return d_executor;
+	}
+
+	/**
+	 * @return The seed from which the random streams are derived.
+	 */
+	public long getSeed() {
+		return d_seed;
 	}
 
 	public int getSimulationIterations() {
-		return SIMULATION_ITERATIONS;
+		return d_iterations;
 	}
 }
@@ -36,6 +36,8 @@ import gov.lanl.yadas.IdentityArgument;
 import gov.lanl.yadas.MCMCParameter;
 import gov.lanl.yadas.Uniform;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -45,13 +47,38 @@ import org.apache.commons.math3.random.JDKRandomGenerator;
 import org.apache.commons.math3.random.RandomGenerator;
 import org.drugis.addis.entities.Measurement;
 import org.drugis.common.stat.EstimateWithPrecision;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.ThreadHandler;
+import org.drugis.common.threading.status.TaskTerminatedModel;
+import org.drugis.common.validation.BooleanAndModel;
+import org.drugis.mtc.MCMCResultsEvent;
+import org.drugis.mtc.MCMCResultsListener;
 import org.drugis.mtc.Parameter;
 import org.drugis.mtc.summary.NormalSummary;
 import org.drugis.mtc.util.DerSimonianLairdPooling;
 import org.drugis.mtc.yadas.AbstractYadasModel;
 import org.drugis.mtc.yadas.YadasSettings;
 
+import com.jgoodies.binding.value.ValueModel;
+
 abstract public class AbstractBaselineModel<T extends Measurement> extends AbstractYadasModel {
+	public static final int TUNING_ITERATIONS = 5000;
+	public static final int SIMULATION_ITERATIONS = 15000;
+	public static final int NUMBER_OF_CHAINS = 4;
+	/**
+	 * In adaptive mode: iterations per simulation phase, and the maximum total number of simulation iterations.
+	 */
+	public static final int ADAPTIVE_SIMULATION_ITERATIONS = 2500;
+	public static final int ADAPTIVE_MAX_SIMULATION_ITERATIONS = 4 * SIMULATION_ITERATIONS;
+	/**
+	 * In adaptive mode, the simulation is finished once the PSRF of all parameters is below this value.
+	 */
+	public static final double ADAPTIVE_PSRF_THRESHOLD = 1.05;
+	/**
+	 * Minimum number of studies for the analytic approximation to be considered adequate.
+	 */
+	public static final int ANALYTIC_MIN_STUDIES = 3;
+
 	protected List<T> d_measurements;
 	protected final RandomGenerator d_rng = new JDKRandomGenerator();
 
@@ -74,20 +101,398 @@ abstract public class AbstractBaselineModel<T extends Measurement> extends Abstr
 	};
 
 	private NormalSummary d_summary;
+	private NormalSummary d_analyticSummary;
+	private EstimateWithPrecision d_pooled;
+	private double[] d_pointEstimates;
+	private double[] d_standardErrors;
+	private boolean d_adaptive = false;
+	private int d_assessedSamples = 0;
+	private double d_scaleReduction = Double.NaN;
+	private List<AbstractBaselineModel<T>> d_chainModels = null;
+	private MCMCResultCache d_cache;
+	private String d_cacheKey;
+	private NormalSummary d_cachedSummary;
 
 	public AbstractBaselineModel(List<T> measurements) {
-		super(new YadasSettings(5000, 15000, 10, 4, 2.5));
-		setTuningIterations(5000);
-		setSimulationIterations(15000);
+		this(measurements, false);
+	}
+
+	/**
+	 * @param chainParallel If true, each chain is simulated by a separate model (with its own task), and the results
+	 * are pooled. See {@link #getChainTasks()}.
+	 */
+	public AbstractBaselineModel(List<T> measurements, boolean chainParallel) {
+		this(measurements, chainParallel ? 1 : NUMBER_OF_CHAINS);
+		if (chainParallel) {
+			d_chainModels = new ArrayList<AbstractBaselineModel<T>>();
+			d_chainModels.add(this);
+			d_summary = new PooledNormalSummary(d_muParam);
+			MCMCResultsListener listener = new MCMCResultsListener() {
+				public void resultsEvent(MCMCResultsEvent event) {
+					chainResultsChanged();
+				}
+			};
+			d_results.addResultsListener(listener);
+			for (int i = 1; i < NUMBER_OF_CHAINS; ++i) {
+				AbstractBaselineModel<T> model = createSingleChainModel();
+				model.d_results.addResultsListener(listener);
+				d_chainModels.add(model);
+			}
+		}
+	}
+
+	/**
+	 * @param chains The number of chains simulated by this model.
+	 */
+	protected AbstractBaselineModel(List<T> measurements, int chains) {
+		super(new YadasSettings(TUNING_ITERATIONS, SIMULATION_ITERATIONS, 10, chains, 2.5));
+		setTuningIterations(TUNING_ITERATIONS);
+		setSimulationIterations(SIMULATION_ITERATIONS);
 		d_results.setDirectParameters(Collections.singletonList(d_muParam));
 		d_summary = new NormalSummary(d_results, d_muParam);
 		d_measurements = measurements;
+		d_results.addResultsListener(new MCMCResultsListener() {
+			public void resultsEvent(MCMCResultsEvent event) {
+				assessConvergence();
+			}
+		});
 	}
 
+	/**
+	 * @return A new model, of the same type and on the same measurements, that simulates a single chain.
+	 * @see #AbstractBaselineModel(List, int)
+	 */
+	protected abstract AbstractBaselineModel<T> createSingleChainModel();
+
 	public NormalSummary getSummary() {
 		return d_summary;
 	}
 
+	/**
+	 * Analytic approximation of {@link #getSummary()}: the DerSimonian-Laird random-effects pooled estimate of the
+	 * baseline, and its standard error. Available without running the simulation.
+	 * @see #isAnalyticSummaryAdequate()
+	 */
+	public synchronized NormalSummary getAnalyticSummary() {
+		if (d_analyticSummary == null) {
+			EstimateWithPrecision pooled = getPooledEstimate();
+			d_analyticSummary = new AnalyticNormalSummary(d_muParam, pooled.getPointEstimate(), pooled.getStandardError());
+		}
+		return d_analyticSummary;
+	}
+
+	/**
+	 * The analytic summary relies on the normal approximation of each study's estimate, and on the moment estimate
+	 * of the heterogeneity. It is flagged as poor if there are fewer than {@link #ANALYTIC_MIN_STUDIES} studies, or
+	 * if the normal approximation is poor for any of them.
+	 */
+	public boolean isAnalyticSummaryAdequate() {
+		if (d_measurements.size() < ANALYTIC_MIN_STUDIES) {
+			return false;
+		}
+		for (int i = 0; i < d_measurements.size(); ++i) {
+			if (!isNormalApproximationAdequate(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Difference between the analytic and simulated mean, relative to the simulated standard deviation.
+	 * @return The standardized difference, or NaN if the simulation results are not yet available.
+	 */
+	public double getAnalyticError() {
+		if (!d_summary.getDefined()) {
+			return Double.NaN;
+		}
+		return Math.abs(getAnalyticSummary().getMean() - d_summary.getMean()) / d_summary.getStandardDeviation();
+	}
+
+	/**
+	 * @return Whether the normal approximation to the estimate of study i is adequate.
+	 */
+	protected boolean isNormalApproximationAdequate(int i) {
+		return true;
+	}
+
+	/**
+	 * Look up the results of this model in the given cache (see {@link #getCachedSummary()}), and store the results
+	 * in the cache once all chains have finished (not if any chain was aborted or failed, nor in adaptive mode if the
+	 * chains did not converge). Must be called before the model is started, and after the settings
+	 * have been changed (e.g. by {@link #setAdaptive(boolean)}).
+	 * @param cache The cache, or null if results should not be cached.
+	 */
+	public synchronized void setResultCache(MCMCResultCache cache) {
+		d_cache = cache;
+		d_cachedSummary = null;
+		if (cache == null) {
+			return;
+		}
+		d_cacheKey = getCacheKey();
+		double[] cached = cache.get(d_cacheKey);
+		if (cached != null && cached.length == 2) {
+			d_cachedSummary = new AnalyticNormalSummary(d_muParam, cached[0], cached[1]);
+		}
+
+		List<ValueModel> terminated = new ArrayList<ValueModel>();
+		for (Task task : getChainTasks()) {
+			terminated.add(new TaskTerminatedModel(task));
+		}
+		new BooleanAndModel(terminated).addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (Boolean.TRUE.equals(evt.getNewValue())) {
+					storeResults();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The summary of an earlier run of this model on the same inputs, or null if it was not found in the
+	 * result cache (or no cache is used).
+	 * @see #setResultCache(MCMCResultCache)
+	 */
+	public synchronized NormalSummary getCachedSummary() {
+		return d_cachedSummary;
+	}
+
+	private synchronized void storeResults() {
+		for (Task task : getChainTasks()) {
+			if (!task.isFinished()) {
+				return;
+			}
+		}
+		if (d_cache != null && d_summary.getDefined() && (!d_adaptive || isConverged())) {
+			d_cache.put(d_cacheKey, new double[] { d_summary.getMean(), d_summary.getStandardDeviation() });
+		}
+	}
+
+	/**
+	 * The key consists of the model type, the settings and the measurements.
+	 */
+	String getCacheKey() {
+		MCMCResultCache.Key key = new MCMCResultCache.Key(getClass().getName());
+		key.add(d_adaptive);
+		key.add(getSettings().getTuningIterations());
+		key.add(getSettings().getSimulationIterations());
+		key.add(getSettings().getThinningInterval());
+		key.add(getSettings().getVarianceScalingFactor());
+		key.add(NUMBER_OF_CHAINS);
+		key.add(d_measurements.size());
+		for (T m : d_measurements) {
+			key.add(m);
+		}
+		return key.getHash();
+	}
+
+	/**
+	 * In adaptive mode, the simulation runs in phases of {@link #ADAPTIVE_SIMULATION_ITERATIONS}. After each phase,
+	 * the simulation is finished if the chains have converged (PSRF below {@link #ADAPTIVE_PSRF_THRESHOLD}) or
+	 * {@link #ADAPTIVE_MAX_SIMULATION_ITERATIONS} has been reached, and extended otherwise. This replaces the
+	 * (user) decision whether to extend the simulation. Must be set before the model is started.
+	 */
+	public void setAdaptive(boolean adaptive) {
+		d_adaptive = adaptive;
+		setSimulationIterations(adaptive ? ADAPTIVE_SIMULATION_ITERATIONS : SIMULATION_ITERATIONS);
+	}
+
+	public boolean isAdaptive() {
+		return d_adaptive;
+	}
+
+	/**
+	 * @return The PSRF (the maximum over all parameters) at the last convergence assessment, or NaN if the
+	 * convergence has not been assessed yet. Only assessed in adaptive mode.
+	 */
+	public double getScaleReduction() {
+		return d_scaleReduction;
+	}
+
+	/**
+	 * @return Whether the chains converged (PSRF below {@link #ADAPTIVE_PSRF_THRESHOLD}) at the last convergence
+	 * assessment. Only assessed in adaptive mode.
+	 */
+	public boolean isConverged() {
+		return d_scaleReduction < ADAPTIVE_PSRF_THRESHOLD;
+	}
+
+	/**
+	 * @return The number of simulation iterations (over all chains) run so far.
+	 */
+	public int getSimulatedIterations() {
+		int iterations = 0;
+		for (AbstractBaselineModel<T> model : getChainModels()) {
+			iterations += model.d_results.getNumberOfSamples() * getSettings().getThinningInterval() * model.d_results.getNumberOfChains();
+		}
+		return iterations;
+	}
+
+	/**
+	 * @return The number of simulation iterations (over all chains) saved compared to the fixed budget of
+	 * {@link #SIMULATION_ITERATIONS} per chain. Negative if more iterations were needed to reach convergence.
+	 */
+	public int getSavedIterations() {
+		return SIMULATION_ITERATIONS * NUMBER_OF_CHAINS - getSimulatedIterations();
+	}
+
+	/**
+	 * In chain-parallel mode, each chain is simulated by a separate model, so that the chains can run concurrently.
+	 * The {@link #getSummary()} pools the chains, and settings and decisions (such as
+	 * {@link #setExtendSimulation(ExtendSimulation)}) are passed on to all chains.
+	 */
+	public boolean isChainParallel() {
+		return d_chainModels != null;
+	}
+
+	/**
+	 * @return The tasks that have to be run to complete the simulation: one for each chain in chain-parallel mode,
+	 * otherwise just {@link #getActivityTask()}.
+	 * If only the activity task of this model is started, it will schedule the others.
+	 */
+	public List<Task> getChainTasks() {
+		List<Task> tasks = new ArrayList<Task>();
+		for (AbstractBaselineModel<T> model : getChainModels()) {
+			tasks.add(model.getActivityTask());
+		}
+		return tasks;
+	}
+
+	private List<AbstractBaselineModel<T>> getChainModels() {
+		return d_chainModels == null ? Collections.singletonList(this) : d_chainModels;
+	}
+
+	@Override
+	public void setTuningIterations(int it) {
+		super.setTuningIterations(it);
+		for (AbstractBaselineModel<T> model : getOtherChainModels()) {
+			model.setTuningIterations(it);
+		}
+	}
+
+	@Override
+	public void setSimulationIterations(int it) {
+		super.setSimulationIterations(it);
+		for (AbstractBaselineModel<T> model : getOtherChainModels()) {
+			model.setSimulationIterations(it);
+		}
+	}
+
+	@Override
+	public void setExtendSimulation(ExtendSimulation s) {
+		super.setExtendSimulation(s);
+		for (AbstractBaselineModel<T> model : getOtherChainModels()) {
+			model.setExtendSimulation(s);
+		}
+	}
+
+	private List<AbstractBaselineModel<T>> getOtherChainModels() {
+		return d_chainModels == null ? Collections.<AbstractBaselineModel<T>>emptyList() : d_chainModels.subList(1, d_chainModels.size());
+	}
+
+	private void chainResultsChanged() {
+		((PooledNormalSummary) d_summary).update(getChainSamples(false));
+		assessConvergence();
+	}
+
+	/**
+	 * @return The samples of mu (or sd) for each chain, truncated to the length of the shortest chain.
+	 */
+	private double[][] getChainSamples(boolean sd) {
+		List<double[]> chains = new ArrayList<double[]>();
+		int length = Integer.MAX_VALUE;
+		for (AbstractBaselineModel<T> model : getChainModels()) {
+			length = Math.min(length, model.d_results.getNumberOfSamples());
+		}
+		for (AbstractBaselineModel<T> model : getChainModels()) {
+			Parameter p = sd ? model.d_sigmaParam : model.d_muParam;
+			for (int c = 0; c < model.d_results.getNumberOfChains(); ++c) {
+				double[] chain = new double[length];
+				for (int i = 0; i < length; ++i) {
+					chain[i] = model.d_results.getSample(p, c, i);
+				}
+				chains.add(chain);
+			}
+		}
+		return chains.toArray(new double[chains.size()][]);
+	}
+
+	private synchronized void assessConvergence() {
+		if (!d_adaptive) {
+			return;
+		}
+		int min = Integer.MAX_VALUE;
+		int max = 0;
+		for (AbstractBaselineModel<T> model : getChainModels()) {
+			min = Math.min(min, model.d_results.getNumberOfSamples());
+			max = Math.max(max, model.d_results.getNumberOfSamples());
+		}
+		// in chain-parallel mode, wait until all chains have completed the simulation phase
+		if (min == 0 || min != max || min == d_assessedSamples) {
+			return;
+		}
+		d_assessedSamples = min;
+		d_scaleReduction = Math.max(calculatePsrf(secondHalf(getChainSamples(false))), calculatePsrf(secondHalf(getChainSamples(true))));
+		int perChain = min * getSettings().getThinningInterval();
+		boolean finished = d_scaleReduction < ADAPTIVE_PSRF_THRESHOLD || perChain >= ADAPTIVE_MAX_SIMULATION_ITERATIONS;
+		setExtendSimulation(finished ? ExtendSimulation.FINISH : ExtendSimulation.EXTEND);
+	}
+
+	private static double[][] secondHalf(double[][] chains) {
+		double[][] halves = new double[chains.length][];
+		for (int c = 0; c < chains.length; ++c) {
+			int n = chains[c].length / 2;
+			halves[c] = Arrays.copyOfRange(chains[c], chains[c].length - n, chains[c].length);
+		}
+		return halves;
+	}
+
+	/**
+	 * Gelman-Rubin potential scale reduction factor for the given chains (of equal length).
+	 * @return The PSRF, or NaN if there are fewer than two chains or fewer than two samples per chain.
+	 */
+	static double calculatePsrf(double[][] chains) {
+		int m = chains.length;
+		int n = m > 0 ? chains[0].length : 0;
+		if (m < 2 || n < 2) {
+			return Double.NaN;
+		}
+		double[] means = new double[m];
+		double within = 0.0;
+		for (int c = 0; c < m; ++c) {
+			double sum = 0.0;
+			for (int i = 0; i < n; ++i) {
+				sum += chains[c][i];
+			}
+			means[c] = sum / n;
+			double ss = 0.0;
+			for (int i = 0; i < n; ++i) {
+				double d = chains[c][i] - means[c];
+				ss += d * d;
+			}
+			within += ss / (n - 1);
+		}
+		within /= m;
+
+		double grandMean = 0.0;
+		for (int c = 0; c < m; ++c) {
+			grandMean += means[c];
+		}
+		grandMean /= m;
+		double between = 0.0; // B / n
+		for (int c = 0; c < m; ++c) {
+			double d = means[c] - grandMean;
+			between += d * d;
+		}
+		between /= (m - 1);
+
+		if (within == 0.0) {
+			return between == 0.0 ? 1.0 : Double.POSITIVE_INFINITY;
+		}
+		double pooled = (n - 1.0) / n * within + (1.0 + 1.0 / m) * between;
+		return Math.sqrt(pooled / within);
+	}
+
 	@Override
 	protected List<Parameter> getParameters() {
 		return Arrays.asList(d_muParam, d_sigmaParam);
@@ -97,15 +502,41 @@ abstract public class AbstractBaselineModel<T extends Measurement> extends Abstr
 		// FIXME: the factor 2 below is rather arbitrary. However, it is required to make
 		// the tests pass for network-br. Until baselines can be specified explicitly, it
 		// should remain there.
-		double maxDev = 0.0;
-		for (int i = 0; i < d_measurements.size() - 1; ++i) {
-			EstimateWithPrecision e1 = estimateTreatmentEffect(i);
-			for (int j = i + 1; j < d_measurements.size(); ++j) {
-				EstimateWithPrecision e2 = estimateTreatmentEffect(j);
-				maxDev = Math.max(maxDev, Math.abs(e2.getPointEstimate() - e1.getPointEstimate()));
+		// The maximum pairwise deviation between the study estimates is their range.
+		double[] estimates = getPointEstimates();
+		if (estimates.length < 2) {
+			return 0.0;
+		}
+		double min = estimates[0];
+		double max = estimates[0];
+		for (int i = 1; i < estimates.length; ++i) {
+			min = Math.min(min, estimates[i]);
+			max = Math.max(max, estimates[i]);
+		}
+		return 2 * (max - min);
+	}
+
+	/**
+	 * The estimates of {@link #estimateTreatmentEffect(int)} for all studies, computed once.
+	 */
+	private synchronized double[] getPointEstimates() {
+		if (d_pointEstimates == null) {
+			double[] estimates = new double[d_measurements.size()];
+			double[] errors = new double[d_measurements.size()];
+			for (int i = 0; i < estimates.length; ++i) {
+				EstimateWithPrecision e = estimateTreatmentEffect(i);
+				estimates[i] = e.getPointEstimate();
+				errors[i] = e.getStandardError();
 			}
+			d_standardErrors = errors;
+			d_pointEstimates = estimates;
 		}
-		return 2 * maxDev;
+		return d_pointEstimates;
+	}
+
+	private synchronized double[] getStandardErrors() {
+		getPointEstimates();
+		return d_standardErrors;
 	}
 
 	protected abstract EstimateWithPrecision estimateTreatmentEffect(int i);
@@ -117,29 +548,51 @@ abstract public class AbstractBaselineModel<T extends Measurement> extends Abstr
 	}
 
 	private double[] initializeMean() {
-		List<EstimateWithPrecision> estimates = new ArrayList<EstimateWithPrecision>();
-		for (int i = 0; i < d_measurements.size(); ++i) {
-			estimates.add(estimateTreatmentEffect(i));
+		return new double[] {generate(getPooledEstimate())};
+	}
+
+	private synchronized EstimateWithPrecision getPooledEstimate() {
+		if (d_pooled == null) {
+			double[] means = getPointEstimates();
+			double[] errors = getStandardErrors();
+			List<EstimateWithPrecision> estimates = new ArrayList<EstimateWithPrecision>();
+			for (int i = 0; i < means.length; ++i) {
+				estimates.add(new EstimateWithPrecision(means[i], errors[i]));
+			}
+			d_pooled = new DerSimonianLairdPooling(estimates).getPooled();
 		}
-		EstimateWithPrecision pooled = new DerSimonianLairdPooling(estimates).getPooled();
-		return new double[] {generate(pooled)};
+		return d_pooled;
 	}
 
 	private double[] initializeStudyMeans() {
-		double[] means = new double[d_measurements.size()];
+		double[] estimates = getPointEstimates();
+		double[] errors = getStandardErrors();
+		double[] means = new double[estimates.length];
 		for (int i = 0; i < means.length; ++i) {
-			final EstimateWithPrecision e = estimateTreatmentEffect(i);
-			means[i] = generate(e);
+			means[i] = generate(estimates[i], errors[i]);
 		}
 		return means;
 	}
 
 	private double generate(final EstimateWithPrecision e) {
-		return e.getPointEstimate() + d_rng.nextGaussian() * getSettings().getVarianceScalingFactor() * e.getStandardError();
+		return generate(e.getPointEstimate(), e.getStandardError());
+	}
+
+	private double generate(double estimate, double error) {
+		return estimate + d_rng.nextGaussian() * getSettings().getVarianceScalingFactor() * error;
 	}
 
 	@Override
 	protected void prepareModel() {
+		List<Task> tasks = new ArrayList<Task>();
+		for (AbstractBaselineModel<T> model : getOtherChainModels()) {
+			if (!model.getActivityTask().isStarted()) {
+				tasks.add(model.getActivityTask());
+			}
+		}
+		if (!tasks.isEmpty()) {
+			ThreadHandler.getInstance().scheduleTasks(tasks);
+		}
 	}
 
 	@Override
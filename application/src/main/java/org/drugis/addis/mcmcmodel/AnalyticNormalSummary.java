@@ -0,0 +1,67 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import org.drugis.mtc.MCMCResultsEvent;
+import org.drugis.mtc.Parameter;
+import org.drugis.mtc.summary.NormalSummary;
+import org.drugis.mtc.yadas.YadasResults;
+
+/**
+ * NormalSummary with a fixed mean and standard deviation, that are known without simulation.
+ * It is defined from construction and never changes.
+ */
+public class AnalyticNormalSummary extends NormalSummary {
+	private final double d_mean;
+	private final double d_stdDev;
+
+	public AnalyticNormalSummary(Parameter parameter, double mean, double stdDev) {
+		super(new YadasResults(), parameter);
+		d_mean = mean;
+		d_stdDev = stdDev;
+	}
+
+	@Override
+	public void resultsEvent(MCMCResultsEvent event) {
+	}
+
+	@Override
+	public boolean getDefined() {
+		return true;
+	}
+
+	@Override
+	public double getMean() {
+		return d_mean;
+	}
+
+	@Override
+	public double getStandardDeviation() {
+		return d_stdDev;
+	}
+}
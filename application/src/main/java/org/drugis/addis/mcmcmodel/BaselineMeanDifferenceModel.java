@@ -43,6 +43,19 @@ public class BaselineMeanDifferenceModel extends AbstractBaselineModel<Continuou
 		super(measurements);
 	}
 
+	public BaselineMeanDifferenceModel(List<ContinuousMeasurement> measurements, boolean chainParallel) {
+		super(measurements, chainParallel);
+	}
+
+	private BaselineMeanDifferenceModel(List<ContinuousMeasurement> measurements, int chains) {
+		super(measurements, chains);
+	}
+
+	@Override
+	protected AbstractBaselineModel<ContinuousMeasurement> createSingleChainModel() {
+		return new BaselineMeanDifferenceModel(d_measurements, 1);
+	}
+
 	@Override
 	protected void createDataBond(MCMCParameter studyMu) {
 		new BasicMCMCBond(new MCMCParameter[] {studyMu},
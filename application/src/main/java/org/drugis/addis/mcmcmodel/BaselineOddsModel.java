@@ -40,12 +40,30 @@ import org.drugis.common.stat.DichotomousDescriptives;
 import org.drugis.common.stat.EstimateWithPrecision;
 
 public class BaselineOddsModel extends AbstractBaselineModel<RateMeasurement> {
+	/**
+	 * Minimum number of events and non-events for the log-odds to be approximately normal.
+	 */
+	public static final int MIN_EVENTS = 5;
+
 	private DichotomousDescriptives d_dichotomousDescriptives = new DichotomousDescriptives(true);
 
 	public BaselineOddsModel(List<RateMeasurement> measurements) {
 		super(measurements);
 	}
 
+	public BaselineOddsModel(List<RateMeasurement> measurements, boolean chainParallel) {
+		super(measurements, chainParallel);
+	}
+
+	private BaselineOddsModel(List<RateMeasurement> measurements, int chains) {
+		super(measurements, chains);
+	}
+
+	@Override
+	protected AbstractBaselineModel<RateMeasurement> createSingleChainModel() {
+		return new BaselineOddsModel(d_measurements, 1);
+	}
+
 	@Override
 	protected void createDataBond(MCMCParameter studyMu) {
 		new BasicMCMCBond(new MCMCParameter[] {studyMu},
@@ -64,6 +82,12 @@ public class BaselineOddsModel extends AbstractBaselineModel<RateMeasurement> {
 		return new EstimateWithPrecision(mean, se);
 	}
 
+	@Override
+	protected boolean isNormalApproximationAdequate(int i) {
+		final RateMeasurement m = d_measurements.get(i);
+		return Math.min(m.getRate(), m.getSampleSize() - m.getRate()) >= MIN_EVENTS;
+	}
+
 	@Override
 	protected double getError(int i) {
 		return getError(d_measurements.get(i));
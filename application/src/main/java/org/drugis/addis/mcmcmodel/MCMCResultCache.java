@@ -0,0 +1,289 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drugis.addis.entities.ContinuousMeasurement;
+import org.drugis.addis.entities.Measurement;
+import org.drugis.addis.entities.RateMeasurement;
+
+/**
+ * Local on-disk cache of MCMC results, so that a model that was run before on the same inputs (in this or an
+ * earlier session, or in another analysis) does not need to be run again.
+ *
+ * Entries are keyed by a SHA-1 hash of the model inputs (see {@link Key}) and hold the summary of the results as an
+ * array of doubles, one file per entry. The least recently used entries are evicted once the total size exceeds the
+ * maximum. A cache that can not be read or written behaves as if it were empty: it never prevents a model from
+ * being run.
+ */
+public class MCMCResultCache {
+	public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+	public static final String EXTENSION = ".mcmc";
+
+	private static final byte[] MAGIC = "ADDISMCR".getBytes();
+	private static final int FORMAT_VERSION = 1;
+
+	private static MCMCResultCache s_instance;
+
+	/**
+	 * Builds the key of a cache entry by hashing the model inputs. The inputs should include the model type, the
+	 * data and the MCMC settings.
+	 */
+	public static class Key {
+		private final MessageDigest d_digest;
+
+		public Key(String modelType) {
+			try {
+				d_digest = MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			add(modelType);
+		}
+
+		public Key add(String str) {
+			try {
+				byte[] bytes = str.getBytes("UTF-8");
+				add(bytes.length);
+				d_digest.update(bytes);
+			} catch (UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			return this;
+		}
+
+		public Key add(int x) {
+			for (int shift = 24; shift >= 0; shift -= 8) {
+				d_digest.update((byte) (x >>> shift));
+			}
+			return this;
+		}
+
+		public Key add(double x) {
+			long bits = Double.doubleToLongBits(x);
+			add((int) (bits >>> 32));
+			add((int) bits);
+			return this;
+		}
+
+		public Key add(boolean x) {
+			return add(x ? 1 : 0);
+		}
+
+		/**
+		 * Add the measured values of a measurement, or a marker for a missing (null) measurement.
+		 */
+		public Key add(Measurement m) {
+			if (m == null) {
+				return add(-1);
+			}
+			add(m.getSampleSize() == null ? -1 : m.getSampleSize());
+			if (m instanceof RateMeasurement) {
+				Integer rate = ((RateMeasurement) m).getRate();
+				add(rate == null ? -1 : rate);
+			}
+			if (m instanceof ContinuousMeasurement) {
+				ContinuousMeasurement cm = (ContinuousMeasurement) m;
+				add(cm.getMean() == null ? Double.NaN : cm.getMean());
+				add(cm.getStdDev() == null ? Double.NaN : cm.getStdDev());
+			}
+			return this;
+		}
+
+		/**
+		 * @return The hash of everything added so far, as a hexadecimal string. The Key can not be used afterwards.
+		 */
+		public String getHash() {
+			StringBuilder builder = new StringBuilder();
+			for (byte b : d_digest.digest()) {
+				builder.append(String.format("%02x", b & 0xff));
+			}
+			return builder.toString();
+		}
+	}
+
+	private final File d_dir;
+	private final long d_maxSize;
+	/**
+	 * Size of each entry, in access order (least recently used first).
+	 */
+	private final LinkedHashMap<String, Long> d_entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+	private long d_size = 0;
+
+	/**
+	 * @param dir The directory to keep the cache in. Created if it does not exist. Entries already in it are kept.
+	 * @param maxSize Maximum total size of the entries, in bytes.
+	 */
+	public MCMCResultCache(File dir, long maxSize) {
+		d_dir = dir;
+		d_maxSize = maxSize;
+		d_dir.mkdirs();
+		File[] files = d_dir.listFiles();
+		if (files != null) {
+			List<File> list = new ArrayList<File>(Arrays.asList(files));
+			Collections.sort(list, new Comparator<File>() {
+				public int compare(File f1, File f2) {
+					return Long.valueOf(f1.lastModified()).compareTo(f2.lastModified());
+				}
+			});
+			for (File file : list) {
+				String name = file.getName();
+				if (file.isFile() && name.endsWith(EXTENSION)) {
+					d_entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+					d_size += file.length();
+				}
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * @return The cache shared by all analyses, or null if results are not cached.
+	 */
+	public static synchronized MCMCResultCache getInstance() {
+		return s_instance;
+	}
+
+	public static synchronized void setInstance(MCMCResultCache cache) {
+		s_instance = cache;
+	}
+
+	/**
+	 * @return The cached results for the given key (see {@link Key#getHash()}), or null if there are none.
+	 */
+	public synchronized double[] get(String key) {
+		if (d_entries.get(key) == null) { // get() marks the entry as most recently used
+			return null;
+		}
+		File file = getFile(key);
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				byte[] magic = new byte[MAGIC.length];
+				in.readFully(magic);
+				if (!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT_VERSION) {
+					remove(key);
+					return null;
+				}
+				double[] values = new double[in.readInt()];
+				for (int i = 0; i < values.length; ++i) {
+					values[i] = in.readDouble();
+				}
+				file.setLastModified(System.currentTimeMillis());
+				return values;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Ignoring cached MCMC results " + file + ": " + e);
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Store results for the given key, replacing any existing entry, and evict the least recently used entries if
+	 * the cache has grown too large.
+	 */
+	public synchronized void put(String key, double[] values) {
+		remove(key);
+		File file = getFile(key);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.write(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(values.length);
+				for (double x : values) {
+					out.writeDouble(x);
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Could not cache MCMC results " + file + ": " + e);
+			file.delete();
+			return;
+		}
+		d_entries.put(key, file.length());
+		d_size += file.length();
+		evict();
+	}
+
+	/**
+	 * @return The total size of the entries, in bytes.
+	 */
+	public synchronized long getSize() {
+		return d_size;
+	}
+
+	public synchronized int getEntryCount() {
+		return d_entries.size();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = d_entries.entrySet().iterator();
+		while (d_size > d_maxSize && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			getFile(eldest.getKey()).delete();
+			d_size -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	private void remove(String key) {
+		Long size = d_entries.remove(key);
+		if (size != null) {
+			getFile(key).delete();
+			d_size -= size;
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(d_dir, key + EXTENSION);
+	}
+}
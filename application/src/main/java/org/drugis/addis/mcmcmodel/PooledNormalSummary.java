@@ -0,0 +1,102 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import org.drugis.mtc.MCMCResultsEvent;
+import org.drugis.mtc.Parameter;
+import org.drugis.mtc.summary.NormalSummary;
+import org.drugis.mtc.yadas.YadasResults;
+
+/**
+ * NormalSummary of the second half of a set of chains that are simulated separately (each by its own model).
+ * @see AbstractBaselineModel#isChainParallel()
+ */
+class PooledNormalSummary extends NormalSummary {
+	private double d_mean;
+	private double d_stdDev;
+	private boolean d_defined = false;
+
+	public PooledNormalSummary(Parameter parameter) {
+		super(new YadasResults(), parameter);
+	}
+
+	@Override
+	public void resultsEvent(MCMCResultsEvent event) {
+	}
+
+	/**
+	 * Update the summary from the given chains. The second half of the shortest chain's length is used of each.
+	 */
+	public void update(double[][] chains) {
+		int length = Integer.MAX_VALUE;
+		for (double[] chain : chains) {
+			length = Math.min(length, chain.length);
+		}
+		int n = length / 2;
+		if (chains.length == 0 || n < 1) {
+			return;
+		}
+		double sum = 0.0;
+		for (double[] chain : chains) {
+			for (int i = length - n; i < length; ++i) {
+				sum += chain[i];
+			}
+		}
+		int total = n * chains.length;
+		double mean = sum / total;
+		double ss = 0.0;
+		for (double[] chain : chains) {
+			for (int i = length - n; i < length; ++i) {
+				ss += (chain[i] - mean) * (chain[i] - mean);
+			}
+		}
+		synchronized (this) {
+			d_mean = mean;
+			d_stdDev = total > 1 ? Math.sqrt(ss / (total - 1)) : 0.0;
+			d_defined = true;
+		}
+		firePropertyChange(PROPERTY_MEAN, null, d_mean);
+		firePropertyChange(PROPERTY_STANDARD_DEVIATION, null, d_stdDev);
+		firePropertyChange(PROPERTY_DEFINED, null, true);
+	}
+
+	@Override
+	public synchronized boolean getDefined() {
+		return d_defined;
+	}
+
+	@Override
+	public synchronized double getMean() {
+		return d_mean;
+	}
+
+	@Override
+	public synchronized double getStandardDeviation() {
+		return d_stdDev;
+	}
+}
@@ -27,9 +27,13 @@
 
 package org.drugis.addis.presentation;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.drugis.addis.entities.Entity;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
 import org.drugis.addis.entities.analysis.StudyBenefitRiskAnalysis;
+import org.drugis.addis.lyndobrien.BenefitRiskDistribution;
 import org.drugis.addis.lyndobrien.BenefitRiskDistributionImpl;
 import org.drugis.addis.lyndobrien.LyndOBrienModel;
 import org.drugis.addis.lyndobrien.LyndOBrienModelImpl;
@@ -57,7 +61,11 @@ public class LyndOBrienPresentation<Alternative extends Entity, AnalysisType ext
 	}
 
 	public void startLyndOBrien() {
-		d_model = new LyndOBrienModelImpl(new BenefitRiskDistributionImpl<Alternative>(d_brAnalysis));
+		List<BenefitRiskDistribution> brds = new ArrayList<BenefitRiskDistribution>();
+		for (int i = 0; i < Runtime.getRuntime().availableProcessors(); ++i) {
+			brds.add(new BenefitRiskDistributionImpl<Alternative>(d_brAnalysis));
+		}
+		d_model = new LyndOBrienModelImpl(brds, LyndOBrienModelImpl.SIMULATION_ITERATIONS, d_brAnalysis.getSimulationSeed());
 		d_tpm = new TaskProgressModel(d_model.getTask());
 		d_initializedModel.setValue(true);
 		ThreadHandler.getInstance().scheduleTask(d_model.getTask());
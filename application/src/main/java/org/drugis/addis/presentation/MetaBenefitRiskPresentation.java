@@ -31,8 +31,10 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 
 import org.drugis.addis.entities.OutcomeMeasure;
@@ -67,6 +69,8 @@ public class MetaBenefitRiskPresentation extends AbstractBenefitRiskPresentation
 	@Override
 	protected void initSimulations() {
 		d_models = new HashMap<MCMCModelWrapper, AddisMCMCPresentation>();
+		// Where the analytic approximation is adequate, show results without waiting for the baseline models
+		getBean().setAnalyticBaseline(true);
 		initAllBaselineModels();
 		initNetworkMetaAnalysisModels();
 	}
@@ -111,12 +115,16 @@ public class MetaBenefitRiskPresentation extends AbstractBenefitRiskPresentation
 		}
 
 		final List<ValueModel> models = new ArrayList<ValueModel>();
-		for (final MCMCModelWrapper wrapper : d_models.keySet()) {
-			if (!wrapper.isSaved()) {
-				models.add(new TaskTerminatedModel(wrapper.getModel().getActivityTask()));
+		for (final Map.Entry<MCMCModelWrapper, AddisMCMCPresentation> entry : d_models.entrySet()) {
+			final MCMCModelWrapper wrapper = entry.getKey();
+			if (!wrapper.isSaved() && isSimulationRequired(entry.getValue())) {
+				for (final Task task : getTasks(wrapper)) {
+					models.add(new TaskTerminatedModel(task));
+				}
 			}
 		}
-		d_measurementsReadyModel = new ValueModelWrapper<Boolean>(new BooleanAndModel(models));
+		d_measurementsReadyModel = new ValueModelWrapper<Boolean>(models.isEmpty() ?
+				(ValueModel) new com.jgoodies.binding.value.ValueHolder(true) : new BooleanAndModel(models));
 
 		return d_measurementsReadyModel;
 	}
@@ -131,13 +139,34 @@ public class MetaBenefitRiskPresentation extends AbstractBenefitRiskPresentation
 	private List<Task> getBaselineTasks() {
 		final List<Task> tasks = new ArrayList<Task>();
 		for (final AddisMCMCPresentation model : d_models.values()) {
-			if(model.getModel() instanceof AbstractBaselineModel) {
-				tasks.add(model.getModel().getActivityTask());
+			if(model.getModel() instanceof AbstractBaselineModel && isSimulationRequired(model)) {
+				tasks.addAll(((AbstractBaselineModel<?>) model.getModel()).getChainTasks());
 			}
 		}
 		return tasks;
 	}
 
+	/**
+	 * The tasks to run for the wrapped model: the chain tasks of a (chain-parallel) baseline model, otherwise the activity task.
+	 */
+	private static List<Task> getTasks(final MCMCModelWrapper wrapper) {
+		if (wrapper.getModel() instanceof AbstractBaselineModel) {
+			return ((AbstractBaselineModel<?>) wrapper.getModel()).getChainTasks();
+		}
+		return Collections.<Task>singletonList(wrapper.getModel().getActivityTask());
+	}
+
+	/**
+	 * Models need not be run if their results were cached, and baseline models need not be run if the analytic
+	 * approximation is used (they can still be run on request).
+	 */
+	private boolean isSimulationRequired(final AddisMCMCPresentation model) {
+		if (model.getModel() instanceof AbstractBaselineModel) {
+			return getBean().isBaselineSimulationRequired(model.getOutcomeMeasure());
+		}
+		return getBean().isRelativeEffectsSimulationRequired(model.getOutcomeMeasure());
+	}
+
 	private void initAllBaselineModels() {
 		for (final OutcomeMeasure om : getBean().getCriteria()) {
 			addBaselineModel(om);
@@ -27,6 +27,8 @@
 
 package org.drugis.addis.presentation;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.FileOutputStream;
 
 import org.codehaus.jackson.JsonNode;
@@ -50,7 +52,6 @@ import fi.smaa.jsmaa.model.CardinalCriterion;
 import fi.smaa.jsmaa.model.ModelChangeEvent;
 import fi.smaa.jsmaa.model.SMAAModel;
 import fi.smaa.jsmaa.model.SMAAModelListener;
-import fi.smaa.jsmaa.simulator.BuildQueue;
 import fi.smaa.jsmaa.simulator.SMAA2Results;
 
 public class SMAAPresentation<Alternative extends Entity, AnalysisType extends BenefitRiskAnalysis<Alternative>>
@@ -60,7 +61,6 @@ public class SMAAPresentation<Alternative extends Entity, AnalysisType extends B
 
 	protected RankAcceptabilityTableModel d_rankAccepTM;
 	protected RankAcceptabilitiesDataset d_rankAccepDS;
-	protected BuildQueue d_buildQueue;
 	protected CentralWeightsDataset d_cwDS;
 	protected CentralWeightTableModel d_cwTM;
 	protected PreferencePresentationModel d_prefPresModel;
@@ -69,13 +69,15 @@ public class SMAAPresentation<Alternative extends Entity, AnalysisType extends B
 	private ValueHolder<Boolean> d_initializedModel= new ModifiableHolder<Boolean>(false);
 
 	private TaskProgressModel d_progressModel = new TaskProgressModel(new NullTask());
+	private ModifiableHolder<Double> d_rankAcceptabilityError = new ModifiableHolder<Double>(Double.POSITIVE_INFINITY);
+	private ModifiableHolder<Double> d_centralWeightError = new ModifiableHolder<Double>(Double.POSITIVE_INFINITY);
+	private ModifiableHolder<Boolean> d_fastPreferenceEditing = new ModifiableHolder<Boolean>(false);
 
 	private BRSMAASimulationBuilder d_simBuilder;
 
 	public SMAAPresentation(AnalysisType a) {
 		d_a = a;
 		d_smaaf = SMAAEntityFactory.createFactory(d_a);
-		d_buildQueue = new BuildQueue();
 	}
 
 	public void startSMAA() {
@@ -87,8 +89,23 @@ public class SMAAPresentation<Alternative extends Entity, AnalysisType extends B
 		d_cwDS = new CentralWeightsDataset(emptyResults);
 		d_prefPresModel = new PreferencePresentationModel(d_smaaModel, false);
 		d_initializedModel.setValue(true);
-		d_simBuilder = new BRSMAASimulationBuilder(d_smaaModel, d_rankAccepTM, d_rankAccepDS, d_cwTM, d_cwDS, d_progressModel);
+		d_simBuilder = new BRSMAASimulationBuilder(d_smaaModel, d_a.getSimulationSeed(), d_a.getSimulationIterations(), d_a.getSimulationTargetError(),
+				d_rankAccepTM, d_rankAccepDS, d_cwTM, d_cwDS, d_progressModel, d_rankAcceptabilityError, d_centralWeightError);
+		d_fastPreferenceEditing.addValueChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				d_simBuilder.setReuseMeasurementSamples(d_fastPreferenceEditing.getValue());
+				startSimulation();
+			}
+		});
 
+		d_a.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (BenefitRiskAnalysis.PROPERTY_SIMULATION_TARGET_ERROR.equals(evt.getPropertyName())) {
+					d_simBuilder.setTargetError(d_a.getSimulationTargetError());
+					startSimulation();
+				}
+			}
+		});
 		d_smaaModel.addModelListener(new SMAAModelListener() {
 			public void modelChanged(ModelChangeEvent type) {
 				startSimulation();
@@ -107,7 +124,7 @@ public class SMAAPresentation<Alternative extends Entity, AnalysisType extends B
 
 	protected void startSimulation() {
 		getBuilder().resetModel();
-		d_buildQueue.add(getBuilder());
+		getBuilder().run();
 	}
 
 	public PreferencePresentationModel getSmaaPreferenceModel() {
@@ -138,6 +155,44 @@ public class SMAAPresentation<Alternative extends Entity, AnalysisType extends B
 		return d_progressModel;
 	}
 
+	/**
+	 * @return The largest Monte Carlo standard error of the rank acceptabilities so far.
+	 */
+	public ValueHolder<Double> getRankAcceptabilityErrorModel() {
+		return d_rankAcceptabilityError;
+	}
+
+	/**
+	 * @return The largest Monte Carlo standard error of the central weights so far (infinite until it can be estimated).
+	 */
+	public ValueHolder<Double> getCentralWeightErrorModel() {
+		return d_centralWeightError;
+	}
+
+	/**
+	 * Whether preference changes only re-rank the measurements sampled by the previous simulation (see
+	 * {@link BRSMAASimulationBuilder#setReuseMeasurementSamples(boolean)}), for quick feedback while editing the
+	 * preferences. Off by default; turning it off runs the complete simulation again.
+	 */
+	public ValueHolder<Boolean> getFastPreferenceEditingModel() {
+		return d_fastPreferenceEditing;
+	}
+
+	/**
+	 * @see BenefitRiskAnalysis#getSimulationTargetError()
+	 */
+	public Double getSimulationTargetError() {
+		return d_a.getSimulationTargetError();
+	}
+
+	/**
+	 * Set the target error of the analysis, which re-runs the simulation.
+	 * @see BenefitRiskAnalysis#setSimulationTargetError(Double)
+	 */
+	public void setSimulationTargetError(Double targetError) {
+		d_a.setSimulationTargetError(targetError);
+	}
+
 	public OutcomeMeasure getOutcomeMeasureForCriterion(CardinalCriterion crit) {
 		return d_smaaf.getOutcomeMeasure(crit);
 	}
@@ -0,0 +1,383 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.ObjectNode;
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.Entity;
+import org.drugis.addis.entities.OutcomeMeasure;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis.AnalysisType;
+import org.drugis.addis.entities.analysis.MetaAnalysis;
+import org.drugis.addis.entities.analysis.MetaBenefitRiskAnalysis;
+import org.drugis.addis.entities.analysis.NetworkMetaAnalysis;
+import org.drugis.addis.entities.analysis.StudyBenefitRiskAnalysis;
+import org.drugis.addis.entities.relativeeffect.Distribution;
+import org.drugis.addis.lyndobrien.BenefitRiskDistributionImpl;
+import org.drugis.addis.lyndobrien.LyndOBrienModelImpl;
+import org.drugis.addis.mcmcmodel.AbstractBaselineModel;
+import org.drugis.addis.presentation.SMAASerializer;
+import org.drugis.addis.util.JSMAAintegration.AbstractBenefitRiskSMAAFactory;
+import org.drugis.addis.util.JSMAAintegration.ParallelSMAA2Simulation;
+import org.drugis.addis.util.JSMAAintegration.SMAAEntityFactory;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.TaskUtil;
+import org.drugis.common.threading.status.TaskTerminatedModel;
+import org.drugis.common.validation.BooleanAndModel;
+import org.drugis.mtc.MCMCModel;
+import org.drugis.mtc.MCMCModel.ExtendSimulation;
+import org.drugis.mtc.presentation.MCMCModelWrapper;
+import org.drugis.mtc.summary.Summary;
+
+import com.jgoodies.binding.value.ValueModel;
+
+import fi.smaa.jsmaa.model.Alternative;
+import fi.smaa.jsmaa.model.Criterion;
+import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.simulator.SMAA2Results;
+
+/**
+ * Runs all benefit-risk analyses of a domain without user interaction, and writes the results of each analysis to
+ * a JSON file. For each analysis, the MCMC models that its measurements depend on are run first (models shared with
+ * other analyses only once), followed by the SMAA-2 or Lynd &amp; O'Brien simulation. Analyses are run concurrently
+ * on a fixed number of worker threads; each worker runs one analysis at a time, and its simulations on a single thread.
+ *
+ * The JSON holds the SMAA problem (see {@link SMAASerializer}), the measurements by criterion and alternative (median
+ * and 95% interval) and the simulation results. Criteria and alternatives are identified by their slug.
+ */
+public class BenefitRiskBatchRunner {
+	public static final String EXTENSION = ".json";
+	public static final long DEFAULT_MODEL_TIMEOUT = 60 * 60 * 1000;
+	private static final double ACCEPTABILITY_STEP = 0.01;
+	private static final int ACCEPTABILITY_POINTS = 399;
+
+	private final Domain d_domain;
+	private final int d_threads;
+	private final ObjectMapper d_mapper = new ObjectMapper();
+	private long d_modelTimeout = DEFAULT_MODEL_TIMEOUT;
+
+	/**
+	 * @param domain The domain whose benefit-risk analyses are run.
+	 * @param threads The number of analyses to run concurrently.
+	 */
+	public BenefitRiskBatchRunner(Domain domain, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be positive, got " + threads);
+		}
+		d_domain = domain;
+		d_threads = threads;
+	}
+
+	/**
+	 * @param timeout The maximum time, in milliseconds, to wait for an MCMC model. If a model takes longer, the
+	 * analyses that depend on it fail.
+	 */
+	public void setModelTimeout(long timeout) {
+		d_modelTimeout = timeout;
+	}
+
+	public long getModelTimeout() {
+		return d_modelTimeout;
+	}
+
+	/**
+	 * Run all analyses, writing the results of each to a file in dir named after the analysis (see
+	 * {@link #getFiles(File, List)}). Analyses that fail are reported on standard error and skipped.
+	 * @return The number of analyses that failed.
+	 */
+	public int run(File dir) throws InterruptedException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalArgumentException("Could not create output directory " + dir);
+		}
+
+		List<BenefitRiskAnalysis<?>> analyses = new ArrayList<BenefitRiskAnalysis<?>>(d_domain.getBenefitRiskAnalyses());
+		List<File> files = getFiles(dir, analyses);
+		List<Future<JsonNode>> results = new ArrayList<Future<JsonNode>>();
+		ExecutorService executor = Executors.newFixedThreadPool(d_threads);
+		try {
+			for (final BenefitRiskAnalysis<?> analysis : analyses) {
+				results.add(executor.submit(new Callable<JsonNode>() {
+					public JsonNode call() throws InterruptedException {
+						return analyze(analysis);
+					}
+				}));
+			}
+
+			int failed = 0;
+			for (int i = 0; i < analyses.size(); ++i) {
+				BenefitRiskAnalysis<?> analysis = analyses.get(i);
+				File file = files.get(i);
+				try {
+					d_mapper.writerWithDefaultPrettyPrinter().writeValue(file, results.get(i).get());
+					System.out.println("Wrote " + analysis.getName() + " to " + file);
+				} catch (ExecutionException e) {
+					System.err.println("Could not run " + analysis.getName() + ": " + e.getCause());
+					++failed;
+				} catch (IOException e) {
+					System.err.println("Could not write " + file + ": " + e);
+					++failed;
+				}
+			}
+			return failed;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return The files the results of the given analyses are written to, in the same order. Each file is named after
+	 * the slug of the analysis name; if that name was already taken by an earlier analysis, a number is appended.
+	 */
+	public static List<File> getFiles(File dir, List<BenefitRiskAnalysis<?>> analyses) {
+		Set<String> used = new HashSet<String>();
+		List<File> files = new ArrayList<File>();
+		for (BenefitRiskAnalysis<?> analysis : analyses) {
+			String slug = SMAASerializer.toSlug(analysis.getName());
+			String name = slug;
+			for (int i = 2; !used.add(name); ++i) {
+				name = slug + "-" + i;
+			}
+			files.add(new File(dir, name + EXTENSION));
+		}
+		return files;
+	}
+
+	/**
+	 * Run the given analysis, and its MCMC models, on the current thread.
+	 * @return The JSON representation of the analysis and its results.
+	 */
+	public JsonNode analyze(BenefitRiskAnalysis<?> analysis) throws InterruptedException {
+		if (analysis instanceof MetaBenefitRiskAnalysis) {
+			runMeasurementModels((MetaBenefitRiskAnalysis) analysis);
+			return runAnalysis((MetaBenefitRiskAnalysis) analysis);
+		} else if (analysis instanceof StudyBenefitRiskAnalysis) {
+			return runAnalysis((StudyBenefitRiskAnalysis) analysis);
+		}
+		throw new IllegalArgumentException("Unknown benefit-risk analysis type: " + analysis.getClass());
+	}
+
+	private <Alt extends Entity> JsonNode runAnalysis(BenefitRiskAnalysis<Alt> analysis) throws InterruptedException {
+		AbstractBenefitRiskSMAAFactory<Alt> factory = SMAAEntityFactory.createFactory(analysis);
+		SMAAModel model = factory.createSMAAModel();
+
+		ObjectNode root = d_mapper.createObjectNode();
+		root.put("title", analysis.getName());
+		root.put("analysisType", analysis.getAnalysisType().toString());
+		root.put("problem", new SMAASerializer<Alt, BenefitRiskAnalysis<Alt>>(model, analysis, factory).getRootNode());
+		root.put("measurements", getMeasurements(analysis, factory));
+		if (analysis.getAnalysisType() == AnalysisType.SMAA) {
+			root.put("results", runSMAA(analysis, model));
+		} else {
+			root.put("results", runLyndOBrien(analysis));
+		}
+		return root;
+	}
+
+	private <Alt extends Entity> ArrayNode getMeasurements(BenefitRiskAnalysis<Alt> analysis, AbstractBenefitRiskSMAAFactory<Alt> factory) {
+		ArrayNode measurements = d_mapper.createArrayNode();
+		for (OutcomeMeasure om : analysis.getCriteria()) {
+			for (Alt alt : analysis.getAlternatives()) {
+				Distribution dist = analysis.getMeasurement(om, alt);
+				if (dist == null) {
+					continue;
+				}
+				ObjectNode node = d_mapper.createObjectNode();
+				node.put("criterion", SMAASerializer.toSlug(om.getName()));
+				node.put("alternative", SMAASerializer.toSlug(factory.getAlternative(alt).getName()));
+				node.put("median", dist.getQuantile(0.5));
+				node.put("lower", dist.getQuantile(0.025));
+				node.put("upper", dist.getQuantile(0.975));
+				measurements.add(node);
+			}
+		}
+		return measurements;
+	}
+
+	private ObjectNode runSMAA(BenefitRiskAnalysis<?> analysis, SMAAModel model) throws InterruptedException {
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(model, analysis.getSimulationSeed(),
+				analysis.getSimulationIterations(), 1);
+		if (analysis.getSimulationTargetError() != null) {
+			simulation.setTargetError(analysis.getSimulationTargetError());
+		}
+		TaskUtil.run(simulation.getTask());
+		SMAA2Results results = simulation.getResults();
+
+		ObjectNode node = d_mapper.createObjectNode();
+		node.put("seed", simulation.getSeed());
+		node.put("iterations", simulation.getIterationsDone());
+		node.put("rankAcceptabilityError", simulation.getRankAcceptabilityError());
+
+		ObjectNode rankAcceptabilities = d_mapper.createObjectNode();
+		for (Map.Entry<Alternative, List<Double>> entry : results.getRankAcceptabilities().entrySet()) {
+			ArrayNode ranks = d_mapper.createArrayNode();
+			for (Double ra : entry.getValue()) {
+				ranks.add(ra);
+			}
+			rankAcceptabilities.put(SMAASerializer.toSlug(entry.getKey().getName()), ranks);
+		}
+		node.put("rankAcceptabilities", rankAcceptabilities);
+
+		ObjectNode centralWeights = d_mapper.createObjectNode();
+		for (Map.Entry<Alternative, Map<Criterion, Double>> entry : results.getCentralWeightVectors().entrySet()) {
+			ObjectNode weights = d_mapper.createObjectNode();
+			for (Map.Entry<Criterion, Double> weight : entry.getValue().entrySet()) {
+				putNumber(weights, SMAASerializer.toSlug(weight.getKey().getName()), weight.getValue());
+			}
+			centralWeights.put(SMAASerializer.toSlug(entry.getKey().getName()), weights);
+		}
+		node.put("centralWeights", centralWeights);
+
+		ObjectNode confidenceFactors = d_mapper.createObjectNode();
+		for (Map.Entry<Alternative, Double> entry : results.getConfidenceFactors().entrySet()) {
+			putNumber(confidenceFactors, SMAASerializer.toSlug(entry.getKey().getName()), entry.getValue());
+		}
+		node.put("confidenceFactors", confidenceFactors);
+		return node;
+	}
+
+	private <Alt extends Entity> ObjectNode runLyndOBrien(BenefitRiskAnalysis<Alt> analysis) throws InterruptedException {
+		LyndOBrienModelImpl model = new LyndOBrienModelImpl(
+				Collections.singletonList(new BenefitRiskDistributionImpl<Alt>(analysis)),
+				LyndOBrienModelImpl.SIMULATION_ITERATIONS, analysis.getSimulationSeed());
+		TaskUtil.run(model.getTask());
+
+		ObjectNode node = d_mapper.createObjectNode();
+		node.put("seed", model.getSeed());
+		node.put("iterations", model.getSimulationIterations());
+		node.put("benefit", model.getXAxisName());
+		node.put("risk", model.getYAxisName());
+		ArrayNode acceptability = d_mapper.createArrayNode();
+		for (int i = 1; i <= ACCEPTABILITY_POINTS; ++i) {
+			double mu = i * ACCEPTABILITY_STEP;
+			ObjectNode point = d_mapper.createObjectNode();
+			point.put("mu", mu);
+			point.put("p", model.getPValue(mu));
+			acceptability.add(point);
+		}
+		node.put("acceptability", acceptability);
+		return node;
+	}
+
+	/**
+	 * Run the baseline and consistency models of the analysis that need to be simulated, and wait for their results.
+	 * Models are shared between analyses, so a model that was started elsewhere is only waited for.
+	 */
+	private void runMeasurementModels(MetaBenefitRiskAnalysis analysis) throws InterruptedException {
+		for (OutcomeMeasure om : analysis.getCriteria()) {
+			if (analysis.isBaselineSimulationRequired(om)) {
+				MCMCModelWrapper wrapper = analysis.getBaselineModel(om);
+				AbstractBaselineModel<?> model = (AbstractBaselineModel<?>) wrapper.getModel();
+				runModel(wrapper, model.getChainTasks(), model.getSummary());
+			}
+		}
+		for (MetaAnalysis ma : analysis.getMetaAnalyses()) {
+			OutcomeMeasure om = ma.getOutcomeMeasure();
+			if (analysis.isRelativeEffectsSimulationRequired(om)) {
+				MCMCModelWrapper wrapper = ((NetworkMetaAnalysis) ma).getConsistencyModel();
+				runModel(wrapper, Collections.singletonList((Task) wrapper.getModel().getActivityTask()),
+						analysis.getRelativeEffectsSummary(om));
+			}
+		}
+	}
+
+	/**
+	 * Run the model, unless it was already started, and wait until all of its tasks have terminated. Chain-parallel
+	 * models schedule their other chains on the ThreadHandler, so those may still be running when the activity task
+	 * returns.
+	 * @throws IllegalStateException If the tasks did not finish within the timeout, or were aborted or failed.
+	 */
+	private void runModel(MCMCModelWrapper wrapper, List<Task> tasks, Summary summary) throws InterruptedException {
+		if (wrapper.isSaved()) {
+			return;
+		}
+		synchronized (wrapper) {
+			MCMCModel model = wrapper.getModel();
+			if (!model.getActivityTask().isStarted()) {
+				model.setExtendSimulation(ExtendSimulation.FINISH);
+				TaskUtil.run((Task) model.getActivityTask());
+			}
+		}
+
+		List<ValueModel> terminated = new ArrayList<ValueModel>();
+		for (Task task : tasks) {
+			terminated.add(new TaskTerminatedModel(task));
+		}
+		BooleanAndModel allTerminated = new BooleanAndModel(terminated);
+		final CountDownLatch latch = new CountDownLatch(1);
+		allTerminated.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent evt) {
+				if (Boolean.TRUE.equals(evt.getNewValue())) {
+					latch.countDown();
+				}
+			}
+		});
+		if (Boolean.TRUE.equals(allTerminated.getValue())) {
+			latch.countDown();
+		}
+		if (!latch.await(d_modelTimeout, TimeUnit.MILLISECONDS)) {
+			throw new IllegalStateException("MCMC model did not finish within " + d_modelTimeout + " ms");
+		}
+		for (Task task : tasks) {
+			if (!task.isFinished()) {
+				throw new IllegalStateException("MCMC model " + (task.isFailed() ? "failed" : "was aborted"));
+			}
+		}
+		if (!summary.getDefined()) {
+			throw new IllegalStateException("MCMC model finished without results");
+		}
+	}
+
+	private static void putNumber(ObjectNode node, String field, Double value) {
+		if (value == null || value.isNaN()) {
+			node.putNull(field);
+		} else {
+			node.put(field, value);
+		}
+	}
+}
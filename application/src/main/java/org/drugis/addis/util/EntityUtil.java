@@ -29,6 +29,7 @@ package org.drugis.addis.util;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,7 @@ import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
 
 import org.drugis.addis.entities.Entity;
+import org.drugis.addis.entities.IndexedByName;
 import org.drugis.addis.entities.TypeWithName;
 import org.drugis.common.EqualsUtil;
 
@@ -184,7 +186,11 @@ public class EntityUtil {
 		return type;
 	}
 
+	@SuppressWarnings("unchecked")
 	public static <T extends TypeWithName> T findByName(Collection<T> haystack, String needle) {
+		if (haystack instanceof IndexedByName) {
+			return ((IndexedByName<T>) haystack).findByName(needle);
+		}
 		for (T o : haystack) {
 			if (needle.equals(o.getName())) {
 				return o;
@@ -192,4 +198,18 @@ public class EntityUtil {
 		}
 		return null;
 	}
+
+	/**
+	 * Build a map from name to item, for repeated lookups in the same collection.
+	 * If several items share a name, the first one is retained (consistent with {@link #findByName(Collection, String)}).
+	 */
+	public static <T extends TypeWithName> Map<String, T> indexByName(Collection<T> items) {
+		Map<String, T> index = new HashMap<String, T>();
+		for (T o : items) {
+			if (!index.containsKey(o.getName())) {
+				index.put(o.getName(), o);
+			}
+		}
+		return index;
+	}
 }
@@ -27,30 +27,60 @@
 
 package org.drugis.addis.util.JSMAAintegration;
 
+import org.drugis.common.threading.ThreadHandler;
 import org.drugis.common.threading.status.TaskProgressModel;
 
-import fi.smaa.common.RandomUtil;
+import com.jgoodies.binding.value.ValueModel;
+
 import fi.smaa.jsmaa.gui.jfreechart.CentralWeightsDataset;
 import fi.smaa.jsmaa.gui.jfreechart.RankAcceptabilitiesDataset;
 import fi.smaa.jsmaa.gui.presentation.CentralWeightTableModel;
 import fi.smaa.jsmaa.gui.presentation.RankAcceptabilityTableModel;
 import fi.smaa.jsmaa.model.SMAAModel;
 import fi.smaa.jsmaa.simulator.SMAA2Results;
-import fi.smaa.jsmaa.simulator.SMAA2Simulation;
-import fi.smaa.jsmaa.simulator.SimulationBuilder;
 
-public class BRSMAASimulationBuilder extends SimulationBuilder<SMAAModel, SMAA2Results, SMAA2Simulation>{
+/**
+ * Runs the SMAA-2 simulation of a benefit-risk analysis, as a {@link ParallelSMAA2Simulation} with the analysis'
+ * seed, number of iterations and target error, and shows its results and their standard errors in the given
+ * views. Starting a new simulation aborts the previous one.
+ *
+ * If measurement samples are reused (see {@link #setReuseMeasurementSamples(boolean)}), the simulation is a
+ * {@link ReweightingSMAA2Simulation}, and the measurements sampled by one simulation are kept for the next, as long as
+ * the measurements of the model do not change.
+ */
+public class BRSMAASimulationBuilder {
 	private RankAcceptabilityTableModel d_resTableModel;
 	private RankAcceptabilitiesDataset d_resDataset;
 	private CentralWeightTableModel d_cwTableModel;
 	private CentralWeightsDataset d_cwDataset;
 	private TaskProgressModel d_progressModel;
 	private SMAAModel d_mutableModel;
+	private SMAAModel d_model;
+	private final long d_seed;
+	private final int d_iterations;
+	private Double d_targetError;
+	private final ValueModel d_raErrorModel;
+	private final ValueModel d_cwErrorModel;
+	private ParallelSMAA2Simulation d_simulation;
+	private boolean d_reuseSamples = false;
+	private MeasurementSampleBuffer d_samples;
 
-	public BRSMAASimulationBuilder(SMAAModel model, RankAcceptabilityTableModel resTableModel, RankAcceptabilitiesDataset dataSet,
-				CentralWeightTableModel cwTableModel, CentralWeightsDataset cwDataSet, TaskProgressModel progressModel) {
-		super(model);
+	/**
+	 * @param targetError The target standard error, or null to run all iterations.
+	 * @param raErrorModel Set to the standard error of the rank acceptabilities.
+	 * @param cwErrorModel Set to the standard error of the central weights.
+	 */
+	public BRSMAASimulationBuilder(SMAAModel model, long seed, int iterations, Double targetError,
+			RankAcceptabilityTableModel resTableModel, RankAcceptabilitiesDataset dataSet,
+			CentralWeightTableModel cwTableModel, CentralWeightsDataset cwDataSet, TaskProgressModel progressModel,
+			ValueModel raErrorModel, ValueModel cwErrorModel) {
 		d_mutableModel = model;
+		d_model = model;
+		d_seed = seed;
+		d_iterations = iterations;
+		d_targetError = targetError;
+		d_raErrorModel = raErrorModel;
+		d_cwErrorModel = cwErrorModel;
 		d_resTableModel = resTableModel;
 		d_resDataset = dataSet;
 		d_cwTableModel = cwTableModel;
@@ -65,24 +95,67 @@ public class BRSMAASimulationBuilder extends SimulationBuilder<SMAAModel, SMAA2R
 		d_cwDataset.setResults(results);
 	}
 
-	@Override
-	protected SMAA2Simulation generateSimulation() {
-		SMAA2Simulation simulation = new SMAA2Simulation(model, RandomUtil.createWithRandomSeed(), 10000);
+	/**
+	 * Abort the running simulation, if any, and start a new one on the current copy of the model.
+	 */
+	public synchronized void run() {
+		if (d_simulation != null) {
+			ThreadHandler.getInstance().abortTask(d_simulation.getTask());
+		}
+		d_raErrorModel.setValue(Double.POSITIVE_INFINITY);
+		d_cwErrorModel.setValue(Double.POSITIVE_INFINITY);
+		d_simulation = generateSimulation();
+		setResults(d_simulation.getResults());
+		ThreadHandler.getInstance().scheduleTask(d_simulation.getTask());
+	}
+
+	protected ParallelSMAA2Simulation generateSimulation() {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ParallelSMAA2Simulation simulation;
+		if (d_reuseSamples) {
+			if (d_samples == null || !d_samples.isCompatible(d_model, d_seed)) {
+				d_samples = new MeasurementSampleBuffer(d_model, d_seed, d_iterations, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+			}
+			simulation = new ReweightingSMAA2Simulation(d_model, d_seed, d_iterations, threads, d_samples);
+		} else {
+			simulation = new ParallelSMAA2Simulation(d_model, d_seed, d_iterations, threads);
+		}
+		if (d_targetError != null) {
+			simulation.setTargetError(d_targetError);
+		}
+		simulation.setErrorModels(d_raErrorModel, d_cwErrorModel);
 		d_progressModel.setTask(simulation.getTask());
 		return simulation;
 	}
 
-	@Override
-	protected void prepareSimulation(SMAA2Simulation simulation, SMAA2Results results) {
-		setResults(results);
+	/**
+	 * @param targetError The target standard error of the next simulation, or null to run all iterations.
+	 */
+	public synchronized void setTargetError(Double targetError) {
+		d_targetError = targetError;
 	}
 
 	public TaskProgressModel getTaskProgressModel() {
 		return d_progressModel;
 	}
 
-	public void resetModel() {
-		this.model = d_mutableModel.deepCopy();
+	/**
+	 * Keep the sampled measurements between simulations, so that a change of preferences only requires the weights
+	 * to be sampled again.
+	 */
+	public synchronized void setReuseMeasurementSamples(boolean reuse) {
+		d_reuseSamples = reuse;
+		if (!reuse) {
+			d_samples = null;
+		}
+	}
+
+	public synchronized ParallelSMAA2Simulation getSimulation() {
+		return d_simulation;
+	}
+
+	public synchronized void resetModel() {
+		d_model = d_mutableModel.deepCopy();
 	}
 
 }
@@ -0,0 +1,144 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.JSMAAintegration;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+import cern.jet.random.engine.MersenneTwister;
+import fi.smaa.common.RandomUtil;
+import fi.smaa.jsmaa.model.SMAAModel;
+
+/**
+ * Off-heap store of the measurements sampled by a {@link ReweightingSMAA2Simulation}, by block of
+ * {@link ParallelSMAA2Simulation#BLOCK_SIZE} iterations, so that a later simulation of the same model with other
+ * preferences does not need to sample them again. The size is bounded: blocks beyond the capacity are not stored, and
+ * are sampled again in each simulation.
+ *
+ * The samples are only valid for the measurements and seed they were drawn with; see
+ * {@link #isCompatible(SMAAModel, long)}.
+ */
+public class MeasurementSampleBuffer {
+	public static final long DEFAULT_MAX_SIZE = 32 * 1024 * 1024;
+	private static final int FINGERPRINT_SEED = 0x5eed;
+
+	private final int d_nCriteria;
+	private final int d_nAlternatives;
+	private final long d_seed;
+	private final double[][] d_fingerprint;
+	private final int d_capacity;
+	private final DoubleBuffer d_buffer;
+	private final boolean[] d_filled;
+
+	/**
+	 * @param model The model whose measurements are sampled.
+	 * @param seed The seed of the simulations.
+	 * @param maxIterations The largest number of iterations that needs to be stored.
+	 * @param maxSize The maximum size of the buffer, in bytes.
+	 */
+	public MeasurementSampleBuffer(SMAAModel model, long seed, int maxIterations, long maxSize) {
+		d_nCriteria = model.getCriteria().size();
+		d_nAlternatives = model.getAlternatives().size();
+		d_seed = seed;
+		d_fingerprint = fingerprint(model);
+		long blockBytes = 8L * ParallelSMAA2Simulation.BLOCK_SIZE * Math.max(1, d_nCriteria * d_nAlternatives);
+		int blocks = (maxIterations + ParallelSMAA2Simulation.BLOCK_SIZE - 1) / ParallelSMAA2Simulation.BLOCK_SIZE;
+		d_capacity = (int) Math.min(blocks, Math.min(maxSize, Integer.MAX_VALUE) / blockBytes);
+		d_buffer = d_capacity == 0 ? null :
+			ByteBuffer.allocateDirect((int) (d_capacity * blockBytes)).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+		d_filled = new boolean[d_capacity];
+	}
+
+	/**
+	 * @return Whether the samples are valid for the given model and seed: the measurements must have the same
+	 * dimensions and (judged from a fixed test sample) the same distributions.
+	 */
+	public boolean isCompatible(SMAAModel model, long seed) {
+		return seed == d_seed && model.getCriteria().size() == d_nCriteria &&
+			model.getAlternatives().size() == d_nAlternatives && Arrays.deepEquals(fingerprint(model), d_fingerprint);
+	}
+
+	/**
+	 * @return The number of blocks that can be stored.
+	 */
+	public int getCapacity() {
+		return d_capacity;
+	}
+
+	/**
+	 * @return Whether all samples of the given block are stored.
+	 */
+	public synchronized boolean contains(int block) {
+		return block < d_capacity && d_filled[block];
+	}
+
+	/**
+	 * Read the sample for an iteration of a stored block, by criterion and alternative.
+	 */
+	public void read(int block, int iteration, double[][] target) {
+		int offset = getOffset(block, iteration);
+		for (int c = 0; c < d_nCriteria; ++c) {
+			for (int a = 0; a < d_nAlternatives; ++a) {
+				target[c][a] = d_buffer.get(offset++);
+			}
+		}
+	}
+
+	/**
+	 * Store the samples of a block, by iteration, criterion and alternative. Does nothing if the block is beyond the
+	 * capacity.
+	 */
+	public void write(int block, double[][][] samples) {
+		if (block >= d_capacity) {
+			return;
+		}
+		for (int i = 0; i < samples.length; ++i) {
+			int offset = getOffset(block, i);
+			for (int c = 0; c < d_nCriteria; ++c) {
+				for (int a = 0; a < d_nAlternatives; ++a) {
+					d_buffer.put(offset++, samples[i][c][a]);
+				}
+			}
+		}
+		synchronized (this) {
+			d_filled[block] = true;
+		}
+	}
+
+	private int getOffset(int block, int iteration) {
+		return (block * ParallelSMAA2Simulation.BLOCK_SIZE + iteration) * d_nCriteria * d_nAlternatives;
+	}
+
+	private static double[][] fingerprint(SMAAModel model) {
+		double[][] sample = new double[model.getCriteria().size()][model.getAlternatives().size()];
+		model.getMeasurements().sample(new RandomUtil(new MersenneTwister(FINGERPRINT_SEED)), sample);
+		return sample;
+	}
+}
@@ -0,0 +1,664 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.JSMAAintegration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.drugis.common.threading.AbstractIterativeComputation;
+import org.drugis.common.threading.IterativeTask;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.TaskUtil;
+
+import com.jgoodies.binding.value.ValueModel;
+
+import cern.jet.random.engine.MersenneTwister;
+import fi.smaa.common.RandomUtil;
+import fi.smaa.jsmaa.model.Alternative;
+import fi.smaa.jsmaa.model.Criterion;
+import fi.smaa.jsmaa.model.Interval;
+import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.model.ScaleCriterion;
+import fi.smaa.jsmaa.simulator.SMAA2Results;
+import fi.smaa.jsmaa.simulator.SMAA2Simulation;
+
+/**
+ * SMAA-2 simulation that divides the iterations in blocks of {@link #BLOCK_SIZE}, and runs consecutive blocks in
+ * parallel, one per thread. Each block is an {@link SMAA2Simulation} on its own random stream, seeded from the seed
+ * and the block index. The block results are merged in block order, so the results for a given seed and number of
+ * iterations are the same regardless of the number of threads.
+ *
+ * Rank acceptabilities and central weights are merged exactly, from the rank counts and the first-rank weight sums
+ * of the blocks. While the simulation runs, confidence factors are the average over the blocks, each computed using
+ * the central weights of its own block. Once all blocks are done, they are computed again from the final central
+ * weights, in a second pass over the blocks (see {@link #countConfidenceHits(SMAAModel, int, int, double[][])}). This
+ * needs linear partial value functions, as in JSMAA, so it is only done if all criteria are {@link ScaleCriterion}s.
+ *
+ * If a target error is set, the simulation stops as soon as the Monte Carlo standard error of every rank
+ * acceptability and central weight is at most the target, or the maximum number of iterations is reached. The
+ * standard error of the rank acceptabilities is the binomial one, that of the central weights is estimated from the
+ * variation between blocks (batch means). Whether to stop is decided after merging each block, in block order, so
+ * that this too does not depend on the number of threads.
+ */
+public class ParallelSMAA2Simulation extends AbstractIterativeComputation {
+	public static final int BLOCK_SIZE = 1000;
+	private static final int INTERRUPT_CHECK_INTERVAL = 100;
+
+	/**
+	 * The counters of a finished block, by alternative (and rank or criterion) index.
+	 */
+	protected static class BlockResults {
+		private final int d_iterations;
+		private final long[][] d_rankHits;
+		private final double[][] d_weightSums;
+		private final double[] d_confidenceFactors;
+
+		/**
+		 * @param rankHits The number of iterations in which alternative i had rank r.
+		 * @param weightSums The sum of the weights of criterion j over the iterations in which alternative i ranked first.
+		 * @param confidenceFactors The confidence factor of each alternative, or NaN if it is not defined.
+		 */
+		public BlockResults(int iterations, long[][] rankHits, double[][] weightSums, double[] confidenceFactors) {
+			d_iterations = iterations;
+			d_rankHits = rankHits;
+			d_weightSums = weightSums;
+			d_confidenceFactors = confidenceFactors;
+		}
+
+		public static BlockResults create(SMAAModel model, SMAA2Results results, int iterations) {
+			List<Alternative> alts = model.getAlternatives();
+			List<Criterion> crits = model.getCriteria();
+			long[][] rankHits = new long[alts.size()][alts.size()];
+			double[][] weightSums = new double[alts.size()][crits.size()];
+			double[] confidenceFactors = new double[alts.size()];
+			for (int i = 0; i < alts.size(); ++i) {
+				Alternative alt = alts.get(i);
+				List<Double> ranks = results.getRankAcceptabilities().get(alt);
+				for (int r = 0; r < alts.size(); ++r) {
+					rankHits[i][r] = Math.round(ranks.get(r) * iterations);
+				}
+				Map<Criterion, Double> cw = results.getCentralWeightVectors().get(alt);
+				for (int j = 0; j < crits.size(); ++j) {
+					weightSums[i][j] = rankHits[i][0] == 0 ? 0.0 : cw.get(crits.get(j)) * rankHits[i][0];
+				}
+				Double cf = results.getConfidenceFactors().get(alt);
+				confidenceFactors[i] = cf == null ? Double.NaN : cf;
+			}
+			return new BlockResults(iterations, rankHits, weightSums, confidenceFactors);
+		}
+	}
+
+	/**
+	 * Results backed by the merged counters, rather than updated per iteration.
+	 */
+	private static class MergedResults extends SMAA2Results {
+		private final List<Alternative> d_alts;
+		private final List<Criterion> d_crits;
+		private volatile Map<Alternative, List<Double>> d_rankAcceptabilities;
+		private volatile Map<Alternative, Map<Criterion, Double>> d_centralWeights;
+		private volatile Map<Alternative, Double> d_confidenceFactors;
+
+		public MergedResults(List<Alternative> alts, List<Criterion> crits) {
+			super(alts, crits, 1);
+			d_alts = new ArrayList<Alternative>(alts);
+			d_crits = new ArrayList<Criterion>(crits);
+		}
+
+		@Override
+		public Map<Alternative, List<Double>> getRankAcceptabilities() {
+			Map<Alternative, List<Double>> ra = d_rankAcceptabilities;
+			return ra == null ? super.getRankAcceptabilities() : ra;
+		}
+
+		@Override
+		public Map<Alternative, Map<Criterion, Double>> getCentralWeightVectors() {
+			Map<Alternative, Map<Criterion, Double>> cw = d_centralWeights;
+			return cw == null ? super.getCentralWeightVectors() : cw;
+		}
+
+		@Override
+		public Map<Alternative, Double> getConfidenceFactors() {
+			Map<Alternative, Double> cf = d_confidenceFactors;
+			return cf == null ? super.getConfidenceFactors() : cf;
+		}
+
+		public void update(long iterations, long[][] rankHits, double[][] weightSums, double[] cfSums, long[] cfIterations) {
+			Map<Alternative, List<Double>> ra = new LinkedHashMap<Alternative, List<Double>>();
+			Map<Alternative, Map<Criterion, Double>> cw = new LinkedHashMap<Alternative, Map<Criterion, Double>>();
+			Map<Alternative, Double> cf = new LinkedHashMap<Alternative, Double>();
+			for (int i = 0; i < d_alts.size(); ++i) {
+				List<Double> ranks = new ArrayList<Double>();
+				for (int r = 0; r < d_alts.size(); ++r) {
+					ranks.add(((double) rankHits[i][r]) / iterations);
+				}
+				ra.put(d_alts.get(i), Collections.unmodifiableList(ranks));
+				Map<Criterion, Double> weights = new LinkedHashMap<Criterion, Double>();
+				for (int j = 0; j < d_crits.size(); ++j) {
+					weights.put(d_crits.get(j), rankHits[i][0] == 0 ? Double.NaN : weightSums[i][j] / rankHits[i][0]);
+				}
+				cw.put(d_alts.get(i), Collections.unmodifiableMap(weights));
+				cf.put(d_alts.get(i), cfIterations[i] == 0 ? Double.NaN : cfSums[i] / cfIterations[i]);
+			}
+			d_rankAcceptabilities = Collections.unmodifiableMap(ra);
+			d_centralWeights = Collections.unmodifiableMap(cw);
+			d_confidenceFactors = Collections.unmodifiableMap(cf);
+			fireResultsChanged();
+		}
+	}
+
+	private final List<SMAAModel> d_models;
+	private final long d_seed;
+	private final int d_iterations;
+	private final int d_nBlocks;
+	private final BlockResults[] d_blocks;
+	private final MergedResults d_results;
+	private final IterativeTask d_task;
+	private ThreadPoolExecutor d_executor;
+
+	private int d_computed = 0;
+	private int d_merged = 0;
+	private long d_mergedIterations = 0;
+	private final long[][] d_rankHits;
+	private final double[][] d_weightSums;
+	private final double[] d_cfSums;
+	private final long[] d_cfIterations;
+
+	/**
+	 * Sums over the blocks of the squared weight sums, of the weight sums times the first-rank hits, and of the
+	 * squared first-rank hits, to estimate the standard error of the central weights.
+	 */
+	private final double[][] d_weightSumSquares;
+	private final double[][] d_weightSumHits;
+	private final double[] d_hitSquares;
+
+	private double d_targetError = 0.0;
+	private boolean d_converged = false;
+	private double d_rankAcceptabilityError = Double.POSITIVE_INFINITY;
+	private double d_centralWeightError = Double.POSITIVE_INFINITY;
+	private ValueModel d_rankAcceptabilityErrorModel;
+	private ValueModel d_centralWeightErrorModel;
+
+	/**
+	 * @param model The model to simulate. It should not be changed while the simulation runs.
+	 * @param seed Seed from which the random streams are derived.
+	 * @param iterations Number of iterations, or the maximum number if a target error is set.
+	 * @param threads Number of blocks to run in parallel.
+	 */
+	public ParallelSMAA2Simulation(SMAAModel model, long seed, int iterations, int threads) {
+		super((iterations + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		if (iterations < 1 || threads < 1) {
+			throw new IllegalArgumentException("Iterations and threads must be positive");
+		}
+		d_seed = seed;
+		d_iterations = iterations;
+		d_nBlocks = (iterations + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		d_blocks = new BlockResults[d_nBlocks];
+
+		// SMAAModels need not be thread-safe, so each thread simulates its own copy
+		d_models = new ArrayList<SMAAModel>();
+		d_models.add(model);
+		for (int i = 1; i < Math.min(threads, d_nBlocks); ++i) {
+			d_models.add(model.deepCopy());
+		}
+
+		int nAlts = model.getAlternatives().size();
+		d_rankHits = new long[nAlts][nAlts];
+		d_weightSums = new double[nAlts][model.getCriteria().size()];
+		d_cfSums = new double[nAlts];
+		d_cfIterations = new long[nAlts];
+		d_weightSumSquares = new double[nAlts][model.getCriteria().size()];
+		d_weightSumHits = new double[nAlts][model.getCriteria().size()];
+		d_hitSquares = new double[nAlts];
+		d_results = new MergedResults(model.getAlternatives(), model.getCriteria());
+
+		d_task = new IterativeTask(this, "SMAA-2 Simulation");
+		d_task.setReportingInterval(1);
+	}
+
+	public Task getTask() {
+		return d_task;
+	}
+
+	/**
+	 * @return The results, updated as blocks complete.
+	 */
+	public SMAA2Results getResults() {
+		return d_results;
+	}
+
+	public long getSeed() {
+		return d_seed;
+	}
+
+	public int getSimulationIterations() {
+		return d_iterations;
+	}
+
+	/**
+	 * Stop once the standard errors are at most the given target. A target of 0 runs all iterations.
+	 */
+	public void setTargetError(double targetError) {
+		if (targetError < 0.0 || Double.isNaN(targetError)) {
+			throw new IllegalArgumentException("The target error must be non-negative, got " + targetError);
+		}
+		d_targetError = targetError;
+	}
+
+	public double getTargetError() {
+		return d_targetError;
+	}
+
+	/**
+	 * Models that are set to the standard errors of the rank acceptabilities and central weights as blocks complete.
+	 */
+	public void setErrorModels(ValueModel rankAcceptabilityError, ValueModel centralWeightError) {
+		d_rankAcceptabilityErrorModel = rankAcceptabilityError;
+		d_centralWeightErrorModel = centralWeightError;
+	}
+
+	/**
+	 * @return The number of iterations in the current results.
+	 */
+	public synchronized long getIterationsDone() {
+		return d_mergedIterations;
+	}
+
+	/**
+	 * @return The largest Monte Carlo standard error of the rank acceptabilities.
+	 */
+	public synchronized double getRankAcceptabilityError() {
+		return d_rankAcceptabilityError;
+	}
+
+	/**
+	 * @return The largest Monte Carlo standard error of the (defined) central weights, or infinity if it can not be
+	 * estimated yet.
+	 */
+	public synchronized double getCentralWeightError() {
+		return d_centralWeightError;
+	}
+
+	/**
+	 * @return Whether the target error has been met, so that the remaining blocks are skipped.
+	 */
+	public synchronized boolean isConverged() {
+		return d_converged;
+	}
+
+	@Override
+	public void doStep() {
+		if (d_converged) {
+			return;
+		}
+		if (d_merged == d_computed) {
+			runBlocks();
+		}
+		merge(d_blocks[d_merged]);
+		d_blocks[d_merged] = null;
+		++d_merged;
+		if (d_merged == d_nBlocks || d_converged) {
+			finish();
+		}
+	}
+
+	private void finish() {
+		double[][] centralWeights = new double[d_rankHits.length][];
+		for (int i = 0; i < d_rankHits.length; ++i) {
+			if (d_rankHits[i][0] > 0) {
+				centralWeights[i] = new double[d_weightSums[i].length];
+				for (int j = 0; j < d_weightSums[i].length; ++j) {
+					centralWeights[i][j] = d_weightSums[i][j] / d_rankHits[i][0];
+				}
+			}
+		}
+		double[] confidenceFactors;
+		try {
+			confidenceFactors = computeConfidenceFactors(d_merged, centralWeights);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+		if (confidenceFactors == null) {
+			return;
+		}
+		for (int i = 0; i < confidenceFactors.length; ++i) {
+			boolean defined = !Double.isNaN(confidenceFactors[i]);
+			d_cfSums[i] = defined ? confidenceFactors[i] * d_mergedIterations : 0.0;
+			d_cfIterations[i] = defined ? d_mergedIterations : 0;
+		}
+		d_results.update(d_mergedIterations, d_rankHits, d_weightSums, d_cfSums, d_cfIterations);
+	}
+
+	/**
+	 * Compute the confidence factors of the complete simulation, using its central weights, once all blocks have been
+	 * merged. The blocks are processed in parallel, as in the first pass, and the counts summed in block order.
+	 * @param blocks The number of blocks that were run (fewer than all if the target error was met).
+	 * @param centralWeights The central weight vector of each alternative, or null if it never ranked first.
+	 * @return The confidence factor of each alternative (NaN if not defined), or null if the value functions are not
+	 * linear, in which case the average of the per-block confidence factors is kept.
+	 */
+	private double[] computeConfidenceFactors(int blocks, final double[][] centralWeights) throws InterruptedException {
+		for (Criterion c : d_models.get(0).getCriteria()) {
+			if (!(c instanceof ScaleCriterion)) {
+				return null;
+			}
+		}
+
+		int nAlts = centralWeights.length;
+		long[] hits = new long[nAlts];
+		long iterations = 0;
+		for (int firstBlock = 0; firstBlock < blocks; firstBlock += d_models.size()) {
+			List<Callable<long[]>> jobs = new ArrayList<Callable<long[]>>();
+			for (int i = 0; i < Math.min(d_models.size(), blocks - firstBlock); ++i) {
+				final SMAAModel model = d_models.get(i);
+				final int block = firstBlock + i;
+				jobs.add(new Callable<long[]>() {
+					public long[] call() throws InterruptedException {
+						return countConfidenceHits(model, block, getBlockIterations(block), centralWeights);
+					}
+				});
+			}
+			List<long[]> results = runParallel(jobs);
+			for (int i = 0; i < results.size(); ++i) {
+				for (int a = 0; a < nAlts; ++a) {
+					hits[a] += results.get(i)[a];
+				}
+				iterations += getBlockIterations(firstBlock + i);
+			}
+		}
+
+		double[] confidenceFactors = new double[nAlts];
+		for (int a = 0; a < nAlts; ++a) {
+			confidenceFactors[a] = centralWeights[a] == null ? Double.NaN : ((double) hits[a]) / iterations;
+		}
+		return confidenceFactors;
+	}
+
+	/**
+	 * Count, for the second pass, how often each alternative ranks first when using its central weights, on the
+	 * measurements of the given block. Called concurrently for different blocks, each with its own copy of the model.
+	 * The default implementation samples the measurements again from the block's random stream, as JSMAA samples
+	 * fresh measurements for its confidence factors.
+	 * @param centralWeights The central weight vector of each alternative, or null if it never ranked first.
+	 * @return The number of iterations in which each alternative ranked first.
+	 */
+	protected long[] countConfidenceHits(SMAAModel model, int block, int iterations, double[][] centralWeights) throws InterruptedException {
+		int nAlts = model.getAlternatives().size();
+		int nCrits = model.getCriteria().size();
+		double[] offset = new double[nCrits];
+		double[] slope = new double[nCrits];
+		getPartialValueFunctions(model, offset, slope);
+
+		RandomUtil random = new RandomUtil(new MersenneTwister(blockSeed(d_seed, block)));
+		double[][] measurements = new double[nCrits][nAlts];
+		double[] utilities = new double[nAlts];
+		long[] hits = new long[nAlts];
+		for (int i = 0; i < iterations; ++i) {
+			model.getMeasurements().sample(random, measurements);
+			countFirstRanks(measurements, centralWeights, offset, slope, utilities, hits);
+			checkInterrupted(i);
+		}
+		return hits;
+	}
+
+	/**
+	 * @return The number of iterations in the given block.
+	 */
+	protected int getBlockIterations(int block) {
+		return Math.min(BLOCK_SIZE, d_iterations - block * BLOCK_SIZE);
+	}
+
+	private void merge(BlockResults block) {
+		synchronized (this) {
+			d_mergedIterations += block.d_iterations;
+		}
+		for (int i = 0; i < d_rankHits.length; ++i) {
+			for (int r = 0; r < d_rankHits[i].length; ++r) {
+				d_rankHits[i][r] += block.d_rankHits[i][r];
+			}
+			double hits = block.d_rankHits[i][0];
+			for (int j = 0; j < d_weightSums[i].length; ++j) {
+				double sum = block.d_weightSums[i][j];
+				d_weightSums[i][j] += sum;
+				d_weightSumSquares[i][j] += sum * sum;
+				d_weightSumHits[i][j] += sum * hits;
+			}
+			d_hitSquares[i] += hits * hits;
+			if (!Double.isNaN(block.d_confidenceFactors[i])) {
+				d_cfSums[i] += block.d_confidenceFactors[i] * block.d_iterations;
+				d_cfIterations[i] += block.d_iterations;
+			}
+		}
+		updateErrors();
+		d_results.update(d_mergedIterations, d_rankHits, d_weightSums, d_cfSums, d_cfIterations);
+	}
+
+	private void updateErrors() {
+		int nBlocks = d_merged + 1;
+		double raError = 0.0;
+		double cwError = 0.0;
+		for (int i = 0; i < d_rankHits.length; ++i) {
+			for (int r = 0; r < d_rankHits[i].length; ++r) {
+				double p = ((double) d_rankHits[i][r]) / d_mergedIterations;
+				raError = Math.max(raError, Math.sqrt(p * (1.0 - p) / d_mergedIterations));
+			}
+			double hits = d_rankHits[i][0];
+			if (hits > 0) {
+				for (int j = 0; j < d_weightSums[i].length; ++j) {
+					double w = d_weightSums[i][j] / hits;
+					// sum over the blocks of (weightSum - w * hits)^2
+					double ss = d_weightSumSquares[i][j] - 2 * w * d_weightSumHits[i][j] + w * w * d_hitSquares[i];
+					double se = nBlocks < 2 ? Double.POSITIVE_INFINITY :
+						Math.sqrt(Math.max(ss, 0.0) * nBlocks / (nBlocks - 1)) / hits;
+					cwError = Math.max(cwError, se);
+				}
+			}
+		}
+		synchronized (this) {
+			d_rankAcceptabilityError = raError;
+			d_centralWeightError = cwError;
+			d_converged = d_targetError > 0.0 && raError <= d_targetError && cwError <= d_targetError;
+		}
+		if (d_rankAcceptabilityErrorModel != null) {
+			d_rankAcceptabilityErrorModel.setValue(raError);
+		}
+		if (d_centralWeightErrorModel != null) {
+			d_centralWeightErrorModel.setValue(cwError);
+		}
+	}
+
+	/**
+	 * Run the next blocks, one for each model copy, in parallel.
+	 */
+	private void runBlocks() {
+		int firstBlock = d_computed;
+		int nBlocks = Math.min(d_models.size(), d_nBlocks - firstBlock);
+		List<Callable<BlockResults>> jobs = new ArrayList<Callable<BlockResults>>();
+		for (int i = 0; i < nBlocks; ++i) {
+			jobs.add(createBlock(d_models.get(i), firstBlock + i));
+		}
+		List<BlockResults> results = runParallel(jobs);
+		for (int i = 0; i < nBlocks; ++i) {
+			d_blocks[firstBlock + i] = results.get(i);
+		}
+		d_computed = firstBlock + nBlocks;
+	}
+
+	/**
+	 * Run the jobs in parallel: the first on the current thread, the others on the executor.
+	 * @return The results, in the order of the jobs.
+	 */
+	private <T> List<T> runParallel(List<Callable<T>> jobs) {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for (int i = 1; i < jobs.size(); ++i) {
+			futures.add(getExecutor().submit(jobs.get(i)));
+		}
+		List<T> results = new ArrayList<T>();
+		try {
+			results.add(jobs.get(0).call());
+			for (Future<T> f : futures) {
+				results.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			for (Future<?> f : futures) {
+				f.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+		return results;
+	}
+
+	private Callable<BlockResults> createBlock(final SMAAModel model, final int block) {
+		return new Callable<BlockResults>() {
+			public BlockResults call() throws InterruptedException {
+				return runBlock(model, block, getBlockIterations(block));
+			}
+		};
+	}
+
+	/**
+	 * Simulate one block. Called concurrently for different blocks, each with its own copy of the model. The results
+	 * must depend only on the model, the seed and the block.
+	 */
+	protected BlockResults runBlock(SMAAModel model, int block, int iterations) throws InterruptedException {
+		RandomUtil random = new RandomUtil(new MersenneTwister(blockSeed(d_seed, block)));
+		SMAA2Simulation simulation = new SMAA2Simulation(model, random, iterations);
+		TaskUtil.run(simulation.getTask());
+		return BlockResults.create(model, simulation.getResults(), iterations);
+	}
+
+	/**
+	 * Seed of a block's random stream, derived as for the Lynd & O'Brien blocks (a SplitMix64 finalizer of the seed
+	 * and block index).
+	 */
+	static int blockSeed(long seed, int block) {
+		long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+		return (int) (z ^ (z >>> 32));
+	}
+
+	/**
+	 * Linear partial value functions: value = (x - offset[c]) * slope[c]. All criteria must be ScaleCriterions.
+	 */
+	static void getPartialValueFunctions(SMAAModel model, double[] offset, double[] slope) {
+		List<Criterion> crits = model.getCriteria();
+		for (int c = 0; c < crits.size(); ++c) {
+			ScaleCriterion crit = (ScaleCriterion) crits.get(c);
+			Interval scale = crit.getScale();
+			double length = scale.getEnd() - scale.getStart();
+			boolean ascending = crit.getAscending();
+			offset[c] = ascending ? scale.getStart() : scale.getEnd();
+			slope[c] = length == 0.0 ? 0.0 : (ascending ? 1.0 : -1.0) / length;
+		}
+	}
+
+	/**
+	 * @param measurements Sampled measurements, by criterion and alternative.
+	 */
+	static void computeUtilities(double[][] measurements, double[] weights, double[] offset, double[] slope,
+			double[] utilities) {
+		for (int a = 0; a < utilities.length; ++a) {
+			double u = 0.0;
+			for (int c = 0; c < weights.length; ++c) {
+				u += weights[c] * (measurements[c][a] - offset[c]) * slope[c];
+			}
+			utilities[a] = u;
+		}
+	}
+
+	/**
+	 * Increment the hits of each alternative that ranks first on the given measurements with its central weights.
+	 * @param centralWeights The central weight vector of each alternative, or null to skip it.
+	 */
+	static void countFirstRanks(double[][] measurements, double[][] centralWeights, double[] offset, double[] slope,
+			double[] utilities, long[] hits) {
+		for (int a = 0; a < hits.length; ++a) {
+			if (centralWeights[a] != null) {
+				computeUtilities(measurements, centralWeights[a], offset, slope, utilities);
+				if (rank(utilities, a) == 0) {
+					++hits[a];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The rank of alternative a (0 is best): the number of alternatives with a higher utility, plus the number
+	 * of alternatives before a with the same utility.
+	 */
+	static int rank(double[] utilities, int a) {
+		int rank = 0;
+		for (int b = 0; b < utilities.length; ++b) {
+			if (utilities[b] > utilities[a] || (b < a && utilities[b] == utilities[a])) {
+				++rank;
+			}
+		}
+		return rank;
+	}
+
+	static void checkInterrupted(int iteration) throws InterruptedException {
+		if (iteration % INTERRUPT_CHECK_INTERVAL == 0 && Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (d_executor == null) {
+			// Idle worker threads time out, so that no clean-up is needed when the task finishes or is aborted.
+			d_executor = new ThreadPoolExecutor(d_models.size() - 1, d_models.size() - 1, 1, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SMAA-2 worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			d_executor.allowCoreThreadTimeOut(true);
+		}
+		return d_executor;
+	}
+}
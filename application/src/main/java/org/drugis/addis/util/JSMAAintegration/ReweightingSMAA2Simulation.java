@@ -0,0 +1,167 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.JSMAAintegration;
+
+import cern.jet.random.engine.MersenneTwister;
+import fi.smaa.common.RandomUtil;
+import fi.smaa.jsmaa.model.Criterion;
+import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.model.ScaleCriterion;
+
+/**
+ * SMAA-2 simulation that takes the sampled measurements from a {@link MeasurementSampleBuffer} where it can, so that
+ * after a change of preferences only the weights are sampled again and the alternatives re-ranked.
+ *
+ * The measurements and the weights of a block are drawn from separate random streams, both derived from the seed and
+ * the block index, so the results are the same whether or not the measurements were stored. They differ from those of
+ * a {@link ParallelSMAA2Simulation} with the same seed, which uses a single stream per block.
+ * Partial value functions are linear on the scale of each criterion, as in JSMAA; only {@link ScaleCriterion}s are
+ * supported. Tied alternatives are ranked in model order, so that every rank is taken by exactly one alternative.
+ *
+ * As in the parallel simulation, the confidence factors are computed again from the final central weights once all
+ * blocks are done; here on the same measurement samples as the first pass.
+ */
+public class ReweightingSMAA2Simulation extends ParallelSMAA2Simulation {
+	private final MeasurementSampleBuffer d_samples;
+
+	/**
+	 * @param samples Buffer for the sampled measurements, compatible with the model and seed.
+	 * @see ParallelSMAA2Simulation#ParallelSMAA2Simulation(SMAAModel, long, int, int)
+	 */
+	public ReweightingSMAA2Simulation(SMAAModel model, long seed, int iterations, int threads, MeasurementSampleBuffer samples) {
+		super(model, seed, iterations, threads);
+		for (Criterion c : model.getCriteria()) {
+			if (!(c instanceof ScaleCriterion)) {
+				throw new IllegalArgumentException("Criterion " + c + " is not a ScaleCriterion");
+			}
+		}
+		d_samples = samples;
+	}
+
+	@Override
+	protected BlockResults runBlock(SMAAModel model, int block, int iterations) throws InterruptedException {
+		int nAlts = model.getAlternatives().size();
+		int nCrits = model.getCriteria().size();
+		double[][][] samples = getSamples(model, block, iterations);
+		double[] offset = new double[nCrits];
+		double[] slope = new double[nCrits];
+		getPartialValueFunctions(model, offset, slope);
+
+		RandomUtil random = new RandomUtil(new MersenneTwister(blockSeed(~getSeed(), block)));
+		long[][] rankHits = new long[nAlts][nAlts];
+		double[][] weightSums = new double[nAlts][nCrits];
+		double[] utilities = new double[nAlts];
+		for (int i = 0; i < iterations; ++i) {
+			double[] weights = sampleWeights(model, random);
+			computeUtilities(samples[i], weights, offset, slope, utilities);
+			for (int a = 0; a < nAlts; ++a) {
+				int rank = rank(utilities, a);
+				++rankHits[a][rank];
+				if (rank == 0) {
+					for (int c = 0; c < nCrits; ++c) {
+						weightSums[a][c] += weights[c];
+					}
+				}
+			}
+			checkInterrupted(i);
+		}
+
+		// Provisional confidence factors: how often each alternative ranks first with the central weights of the block
+		double[] confidenceFactors = new double[nAlts];
+		for (int a = 0; a < nAlts; ++a) {
+			if (rankHits[a][0] == 0) {
+				confidenceFactors[a] = Double.NaN;
+				continue;
+			}
+			double[] centralWeights = new double[nCrits];
+			for (int c = 0; c < nCrits; ++c) {
+				centralWeights[c] = weightSums[a][c] / rankHits[a][0];
+			}
+			int hits = 0;
+			for (int i = 0; i < iterations; ++i) {
+				computeUtilities(samples[i], centralWeights, offset, slope, utilities);
+				if (rank(utilities, a) == 0) {
+					++hits;
+				}
+			}
+			confidenceFactors[a] = ((double) hits) / iterations;
+			checkInterrupted(0);
+		}
+
+		return new BlockResults(iterations, rankHits, weightSums, confidenceFactors);
+	}
+
+	@Override
+	protected long[] countConfidenceHits(SMAAModel model, int block, int iterations, double[][] centralWeights) throws InterruptedException {
+		int nAlts = model.getAlternatives().size();
+		int nCrits = model.getCriteria().size();
+		double[] offset = new double[nCrits];
+		double[] slope = new double[nCrits];
+		getPartialValueFunctions(model, offset, slope);
+
+		double[][][] samples = getSamples(model, block, iterations);
+		double[] utilities = new double[nAlts];
+		long[] hits = new long[nAlts];
+		for (int i = 0; i < iterations; ++i) {
+			countFirstRanks(samples[i], centralWeights, offset, slope, utilities, hits);
+			checkInterrupted(i);
+		}
+		return hits;
+	}
+
+	/**
+	 * @return The measurements of the block, by iteration, criterion and alternative: from the buffer if they were
+	 * stored, otherwise sampled (and stored if the buffer has room).
+	 */
+	private double[][][] getSamples(SMAAModel model, int block, int iterations) throws InterruptedException {
+		double[][][] samples = new double[iterations][model.getCriteria().size()][model.getAlternatives().size()];
+		if (d_samples.contains(block)) {
+			for (int i = 0; i < iterations; ++i) {
+				d_samples.read(block, i, samples[i]);
+			}
+		} else {
+			RandomUtil random = new RandomUtil(new MersenneTwister(blockSeed(getSeed(), block)));
+			for (int i = 0; i < iterations; ++i) {
+				model.getMeasurements().sample(random, samples[i]);
+				checkInterrupted(i);
+			}
+			d_samples.write(block, samples);
+		}
+		return samples;
+	}
+
+	private static double[] sampleWeights(SMAAModel model, RandomUtil random) {
+		try {
+			return model.getPreferenceInformation().sampleWeights(random);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException("Could not sample weights", e);
+		}
+	}
+}
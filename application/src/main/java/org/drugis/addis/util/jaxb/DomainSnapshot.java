@@ -0,0 +1,379 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.UnmarshallerHandler;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
+
+import org.drugis.addis.entities.data.AddisData;
+import org.drugis.addis.util.jaxb.JAXBHandler.AddisDataValidationEventHandler;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compact binary snapshot of an .addis file, stored in a cache directory, that can be read back without XML parsing
+ * or schema migration.
+ *
+ * A snapshot records the SHA-1 hash of the file it was made from, and is only used if the file still has that hash.
+ * The content is the AddisData document in the current schema version, encoded as a sequence of length-prefixed
+ * SAX events, with element and attribute names (and attribute values, which are mostly name references) stored in a
+ * string table. Reading it replays the events into a JAXB unmarshaller.
+ */
+public class DomainSnapshot {
+	public static final String EXTENSION = ".snapshot";
+
+	private static final byte[] MAGIC = "ADDISSNP".getBytes();
+	private static final int FORMAT_VERSION = 1;
+
+	private static final byte END_DOCUMENT = 0;
+	private static final byte START_ELEMENT = 1;
+	private static final byte END_ELEMENT = 2;
+	private static final byte CHARACTERS = 3;
+	private static final byte START_PREFIX_MAPPING = 4;
+
+	private static final int NEW_STRING = -1;
+
+	private final AddisData d_data;
+	private final XmlFormatType d_sourceType;
+
+	private DomainSnapshot(AddisData data, int sourceVersion) {
+		d_data = data;
+		d_sourceType = new XmlFormatType(sourceVersion);
+	}
+
+	public AddisData getData() {
+		return d_data;
+	}
+
+	/**
+	 * @return The format of the file the snapshot was made from.
+	 */
+	public XmlFormatType getSourceType() {
+		return d_sourceType;
+	}
+
+	/**
+	 * @param dir The snapshot directory.
+	 * @param source The .addis file.
+	 * @return The location of the snapshot for the given .addis file, named after the hash of its absolute path.
+	 */
+	public static File getSnapshotFile(File dir, File source) {
+		MessageDigest digest = createDigest();
+		try {
+			digest.update(source.getAbsolutePath().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+		StringBuilder name = new StringBuilder();
+		for (byte b : digest.digest()) {
+			name.append(String.format("%02x", b));
+		}
+		return new File(dir, name + EXTENSION);
+	}
+
+	/**
+	 * @return SHA-1 hash of the file's contents.
+	 */
+	public static byte[] hash(File file) throws IOException {
+		MessageDigest digest = createDigest();
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int n;
+			while ((n = is.read(buffer)) >= 0) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			is.close();
+		}
+		return digest.digest();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write a snapshot of the given data.
+	 * @param data The domain, in the current schema version.
+	 * @param sourceHash Hash of the file the data was read from (or written to).
+	 * @param sourceVersion Schema version of that file.
+	 * @param os Stream to write to. It is not closed.
+	 */
+	public static void write(AddisData data, byte[] sourceHash, int sourceVersion, OutputStream os) throws IOException, JAXBException {
+		DataOutputStream out = writeHeader(sourceHash, sourceVersion, os);
+		Marshaller marshaller = JAXBHandler.JAXB.getInstance().createMarshaller();
+		marshaller.marshal(data, new Encoder(out));
+		out.flush();
+	}
+
+	/**
+	 * Write a snapshot of the given XML, upgrading it to the current schema version on the fly.
+	 * Unlike {@link #write(AddisData, byte[], int, OutputStream)}, this does not need a Domain or AddisData tree.
+	 * @param xml The contents of an .addis file.
+	 * @param sourceHash Hash of the file.
+	 * @param sourceVersion Schema version of the file.
+	 * @param os Stream to write to. It is not closed.
+	 */
+	public static void write(InputStream xml, byte[] sourceHash, int sourceVersion, OutputStream os) throws IOException, TransformerException {
+		DataOutputStream out = writeHeader(sourceHash, sourceVersion, os);
+		JAXBConvertor.transformToVersion(xml, sourceVersion, XmlFormatType.CURRENT_VERSION, new SAXResult(new Encoder(out)));
+		out.flush();
+	}
+
+	private static DataOutputStream writeHeader(byte[] sourceHash, int sourceVersion, OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+		out.write(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(XmlFormatType.CURRENT_VERSION);
+		out.writeInt(sourceVersion);
+		out.writeInt(sourceHash.length);
+		out.write(sourceHash);
+		return out;
+	}
+
+	/**
+	 * Read a snapshot, if it is still valid for the file with the given hash.
+	 * @return The snapshot, or null if it was made by a different version of ADDIS or from different file contents.
+	 */
+	public static DomainSnapshot read(InputStream is, byte[] sourceHash) throws IOException, JAXBException, SAXException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT_VERSION || in.readInt() != XmlFormatType.CURRENT_VERSION) {
+			return null;
+		}
+		int sourceVersion = in.readInt();
+		byte[] hash = new byte[in.readInt()];
+		in.readFully(hash);
+		if (!Arrays.equals(hash, sourceHash)) {
+			return null;
+		}
+
+		Unmarshaller unmarshaller = JAXBHandler.JAXB.getInstance().createUnmarshaller();
+		unmarshaller.setEventHandler(new AddisDataValidationEventHandler());
+		UnmarshallerHandler handler = unmarshaller.getUnmarshallerHandler();
+		new Decoder(in).replay(handler);
+		return new DomainSnapshot((AddisData) handler.getResult(), sourceVersion);
+	}
+
+	/**
+	 * Serializes SAX events to the snapshot format.
+	 */
+	private static class Encoder extends DefaultHandler {
+		private final DataOutputStream d_out;
+		private final Map<String, Integer> d_strings = new HashMap<String, Integer>();
+
+		public Encoder(DataOutputStream out) {
+			d_out = out;
+		}
+
+		@Override
+		public void startPrefixMapping(String prefix, String uri) throws SAXException {
+			try {
+				d_out.writeByte(START_PREFIX_MAPPING);
+				writeString(prefix);
+				writeString(uri);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			try {
+				d_out.writeByte(START_ELEMENT);
+				writeString(uri);
+				writeString(localName);
+				writeString(qName);
+				d_out.writeInt(attributes.getLength());
+				for (int i = 0; i < attributes.getLength(); ++i) {
+					writeString(attributes.getURI(i));
+					writeString(attributes.getLocalName(i));
+					writeString(attributes.getQName(i));
+					writeString(attributes.getType(i));
+					writeString(attributes.getValue(i));
+				}
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			try {
+				d_out.writeByte(END_ELEMENT);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			try {
+				d_out.writeByte(CHARACTERS);
+				writeBytes(new String(ch, start, length));
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			try {
+				d_out.writeByte(END_DOCUMENT);
+			} catch (IOException e) {
+				throw new SAXException(e);
+			}
+		}
+
+		/**
+		 * Write a reference into the string table, adding the string if it was not seen before.
+		 */
+		private void writeString(String str) throws IOException {
+			if (str == null) {
+				str = "";
+			}
+			Integer index = d_strings.get(str);
+			if (index == null) {
+				d_strings.put(str, d_strings.size());
+				d_out.writeInt(NEW_STRING);
+				writeBytes(str);
+			} else {
+				d_out.writeInt(index);
+			}
+		}
+
+		private void writeBytes(String str) throws IOException {
+			byte[] bytes = str.getBytes("UTF-8");
+			d_out.writeInt(bytes.length);
+			d_out.write(bytes);
+		}
+	}
+
+	/**
+	 * Replays a serialized event sequence into a ContentHandler.
+	 */
+	private static class Decoder {
+		private final DataInputStream d_in;
+		private final List<String> d_strings = new ArrayList<String>();
+
+		public Decoder(DataInputStream in) {
+			d_in = in;
+		}
+
+		public void replay(ContentHandler handler) throws IOException, SAXException {
+			List<String[]> stack = new ArrayList<String[]>();
+			handler.startDocument();
+			while (true) {
+				byte event = d_in.readByte();
+				switch (event) {
+				case END_DOCUMENT:
+					if (!stack.isEmpty()) {
+						throw new EOFException("Unexpected end of snapshot");
+					}
+					handler.endDocument();
+					return;
+				case START_PREFIX_MAPPING:
+					handler.startPrefixMapping(readString(), readString());
+					break;
+				case START_ELEMENT:
+					String[] name = { readString(), readString(), readString() };
+					int nAttributes = d_in.readInt();
+					AttributesImpl attributes = new AttributesImpl();
+					for (int i = 0; i < nAttributes; ++i) {
+						attributes.addAttribute(readString(), readString(), readString(), readString(), readString());
+					}
+					stack.add(name);
+					handler.startElement(name[0], name[1], name[2], attributes);
+					break;
+				case END_ELEMENT:
+					if (stack.isEmpty()) {
+						throw new IOException("Corrupt snapshot: unbalanced end tag");
+					}
+					String[] open = stack.remove(stack.size() - 1);
+					handler.endElement(open[0], open[1], open[2]);
+					break;
+				case CHARACTERS:
+					char[] chars = readBytes().toCharArray();
+					handler.characters(chars, 0, chars.length);
+					break;
+				default:
+					throw new IOException("Corrupt snapshot: unknown event " + event);
+				}
+			}
+		}
+
+		private String readString() throws IOException {
+			int index = d_in.readInt();
+			if (index == NEW_STRING) {
+				String str = readBytes();
+				d_strings.add(str);
+				return str;
+			}
+			return d_strings.get(index);
+		}
+
+		private String readBytes() throws IOException {
+			byte[] bytes = new byte[d_in.readInt()];
+			d_in.readFully(bytes);
+			return new String(bytes, "UTF-8");
+		}
+	}
+}
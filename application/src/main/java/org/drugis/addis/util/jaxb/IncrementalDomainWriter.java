@@ -0,0 +1,345 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.namespace.QName;
+
+import org.drugis.addis.entities.Arm;
+import org.drugis.addis.entities.BasicMeasurement;
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.Entity;
+import org.drugis.addis.entities.Epoch;
+import org.drugis.addis.entities.MeasurementKey;
+import org.drugis.addis.entities.Study;
+import org.drugis.addis.entities.StudyActivity;
+import org.drugis.addis.entities.StudyOutcomeMeasure;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
+import org.drugis.addis.entities.analysis.MetaAnalysis;
+import org.drugis.addis.entities.data.AddisData;
+import org.drugis.addis.util.jaxb.JAXBConvertor.ConversionException;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+
+import com.jgoodies.binding.beans.Observable;
+import com.jgoodies.binding.list.ObservableList;
+
+/**
+ * Writes a Domain to XML (current format, .addis), re-using the serialized form of studies and analyses that did
+ * not change since the previous write.
+ *
+ * Each study and analysis that is written is kept as a marshalled XML fragment, together with listeners on the
+ * entity (and for studies, its arms, epochs, activities, outcome measures and measurements). Any change event marks
+ * the fragment dirty, so that it is converted and marshalled again on the next write. The other entities (units
+ * through population characteristics) are always re-marshalled; when their XML changes (e.g. a drug was renamed),
+ * all fragments are discarded, as studies and analyses refer to them by name. Likewise, the analyses that depend on a
+ * re-marshalled study or meta-analysis (according to {@link Domain#getDependents(Entity)}) are re-marshalled, as
+ * they refer to its name and those of its arms.
+ *
+ * Changes that do not fire events (other than replacing measurements, which is detected) are not tracked; call
+ * {@link #invalidate()} after such modifications.
+ */
+public class IncrementalDomainWriter {
+	private static final String ROOT = "addis-data";
+	private static final Map<Class<?>, String> s_elementNames = new HashMap<Class<?>, String>();
+	static {
+		s_elementNames.put(org.drugis.addis.entities.data.Study.class, "study");
+		s_elementNames.put(org.drugis.addis.entities.data.PairwiseMetaAnalysis.class, "pairwiseMetaAnalysis");
+		s_elementNames.put(org.drugis.addis.entities.data.NetworkMetaAnalysis.class, "networkMetaAnalysis");
+		s_elementNames.put(org.drugis.addis.entities.data.StudyBenefitRiskAnalysis.class, "studyBenefitRiskAnalysis");
+		s_elementNames.put(org.drugis.addis.entities.data.MetaBenefitRiskAnalysis.class, "metaBenefitRiskAnalysis");
+	}
+
+	private final Domain d_domain;
+	private final Marshaller d_marshaller;
+	private byte[] d_sharedXml = new byte[0];
+	private Map<Entity, Fragment> d_studies = new IdentityHashMap<Entity, Fragment>();
+	private Map<Entity, Fragment> d_metaAnalyses = new IdentityHashMap<Entity, Fragment>();
+	private Map<Entity, Fragment> d_benefitRiskAnalyses = new IdentityHashMap<Entity, Fragment>();
+	private int d_marshalled;
+
+	public IncrementalDomainWriter(Domain domain) throws JAXBException {
+		d_domain = domain;
+		d_marshaller = JAXBHandler.JAXB.getInstance().createMarshaller();
+		d_marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+		d_marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+		d_marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+	}
+
+	public Domain getDomain() {
+		return d_domain;
+	}
+
+	/**
+	 * Discard all cached fragments, so that the next write converts the complete domain.
+	 */
+	public void invalidate() {
+		clear(d_studies);
+		clear(d_metaAnalyses);
+		clear(d_benefitRiskAnalyses);
+	}
+
+	/**
+	 * @return The number of studies and analyses that were (re-)marshalled by the last call to {@link #write(OutputStream)}.
+	 */
+	public int getMarshalledCount() {
+		return d_marshalled;
+	}
+
+	/**
+	 * Write the domain to the given stream. The stream is not closed.
+	 */
+	public void write(OutputStream os) throws JAXBException, ConversionException, IOException {
+		d_marshalled = 0;
+
+		byte[] shared = marshalSharedEntities();
+		if (!Arrays.equals(shared, d_sharedXml)) {
+			invalidate();
+			d_sharedXml = shared;
+		}
+
+		os.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n" +
+				"<" + ROOT + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
+				"xsi:noNamespaceSchemaLocation=\"http://drugis.org/files/addis-" + XmlFormatType.CURRENT_VERSION + ".xsd\">\n").getBytes("UTF-8"));
+		os.write(shared);
+
+		Set<Entity> stale = Collections.newSetFromMap(new IdentityHashMap<Entity, Boolean>());
+		d_studies = writeSection("studies", d_domain.getStudies(), d_studies, stale, os);
+		d_metaAnalyses = writeSection("metaAnalyses", d_domain.getMetaAnalyses(), d_metaAnalyses, stale, os);
+		d_benefitRiskAnalyses = writeSection("benefitRiskAnalyses", d_domain.getBenefitRiskAnalyses(), d_benefitRiskAnalyses, stale, os);
+
+		os.write(("</" + ROOT + ">\n").getBytes("UTF-8"));
+	}
+
+	private byte[] marshalSharedEntities() throws ConversionException, JAXBException {
+		AddisData data = JAXBConvertor.convertSharedEntitiesToAddisData(d_domain);
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		marshal("units", data.getUnits(), os);
+		marshal("indications", data.getIndications(), os);
+		marshal("drugs", data.getDrugs(), os);
+		marshal("treatmentCategorizations", data.getTreatmentCategorizations(), os);
+		marshal("endpoints", data.getEndpoints(), os);
+		marshal("adverseEvents", data.getAdverseEvents(), os);
+		marshal("populationCharacteristics", data.getPopulationCharacteristics(), os);
+		return os.toByteArray();
+	}
+
+	/**
+	 * Write a section, using cached fragments where they are still valid.
+	 * @param stale Entities whose fragments must not be re-used. The dependents of the entities that are
+	 * (re-)marshalled are added to it.
+	 * @return The fragments for the entities that are currently in the section; fragments of removed entities are released.
+	 */
+	private Map<Entity, Fragment> writeSection(String section, Collection<? extends Entity> entities, Map<Entity, Fragment> cache,
+			Set<Entity> stale, OutputStream os)
+	throws JAXBException, ConversionException, IOException {
+		Map<Entity, Fragment> current = new IdentityHashMap<Entity, Fragment>();
+		boolean completed = false;
+		try {
+			os.write(("<" + section + ">\n").getBytes("UTF-8"));
+			for (Entity e : entities) {
+				Fragment fragment = cache.remove(e);
+				if (fragment == null || !fragment.isValid() || stale.contains(e)) {
+					if (fragment != null) {
+						fragment.release();
+					}
+					fragment = new Fragment(e, marshal(e));
+					++d_marshalled;
+					stale.addAll(d_domain.getDependents(e));
+				}
+				current.put(e, fragment);
+				os.write(fragment.getXml());
+			}
+			os.write(("</" + section + ">\n").getBytes("UTF-8"));
+			completed = true;
+		} finally {
+			clear(completed ? cache : current);
+		}
+		return current;
+	}
+
+	private byte[] marshal(Entity e) throws ConversionException, JAXBException {
+		Object converted;
+		if (e instanceof Study) {
+			converted = JAXBConvertor.convertStudy((Study) e);
+		} else if (e instanceof MetaAnalysis) {
+			converted = JAXBConvertor.convertMetaAnalyses(Collections.singletonList((MetaAnalysis) e)).getPairwiseMetaAnalysisOrNetworkMetaAnalysis().get(0);
+		} else if (e instanceof BenefitRiskAnalysis) {
+			List<BenefitRiskAnalysis<?>> list = new ArrayList<BenefitRiskAnalysis<?>>();
+			list.add((BenefitRiskAnalysis<?>) e);
+			converted = JAXBConvertor.convertBenefitRiskAnalyses(list).getStudyBenefitRiskAnalysisOrMetaBenefitRiskAnalysis().get(0);
+		} else {
+			throw new ConversionException("Unsupported entity type " + e);
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		marshal(s_elementNames.get(converted.getClass()), converted, os);
+		return os.toByteArray();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void marshal(String name, Object value, OutputStream os) throws JAXBException {
+		d_marshaller.marshal(new JAXBElement(new QName(name), value.getClass(), value), os);
+		try {
+			os.write('\n');
+		} catch (IOException e) {
+			throw new RuntimeException(e); // can not happen for a ByteArrayOutputStream
+		}
+	}
+
+	private static void clear(Map<Entity, Fragment> cache) {
+		for (Fragment f : cache.values()) {
+			f.release();
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Marshalled XML of a single study or analysis, which is marked dirty as soon as a change is detected.
+	 */
+	private static class Fragment implements PropertyChangeListener, ListDataListener {
+		private final byte[] d_xml;
+		private final List<Observable> d_beans = new ArrayList<Observable>();
+		private final List<ObservableList<?>> d_lists = new ArrayList<ObservableList<?>>();
+		private Map<MeasurementKey, BasicMeasurement> d_measurements = Collections.emptyMap();
+		private Map<MeasurementKey, BasicMeasurement> d_snapshot = Collections.emptyMap();
+		private boolean d_dirty = false;
+
+		public Fragment(Entity entity, byte[] xml) {
+			d_xml = xml;
+			watch(entity);
+			if (entity instanceof Study) {
+				Study study = (Study) entity;
+				watch(study.getArms());
+				for (Arm a : study.getArms()) {
+					watch(a);
+				}
+				watch(study.getEpochs());
+				for (Epoch e : study.getEpochs()) {
+					watch(e);
+				}
+				watch(study.getStudyActivities());
+				for (StudyActivity sa : study.getStudyActivities()) {
+					watch(sa);
+				}
+				watch(study.getStudyOutcomeMeasures());
+				for (StudyOutcomeMeasure<?> som : study.getStudyOutcomeMeasures()) {
+					watch(som);
+				}
+				watch(study.getNotes());
+				for (BasicMeasurement m : study.getMeasurements().values()) {
+					watch(m);
+				}
+				d_measurements = study.getMeasurements();
+				d_snapshot = new HashMap<MeasurementKey, BasicMeasurement>(d_measurements);
+			}
+		}
+
+		public byte[] getXml() {
+			return d_xml;
+		}
+
+		/**
+		 * @return true if no changes were detected since the fragment was created.
+		 */
+		public boolean isValid() {
+			return !d_dirty && measurementsUnchanged();
+		}
+
+		/**
+		 * Measurements are stored in a plain map, so replacing one fires no events.
+		 */
+		private boolean measurementsUnchanged() {
+			if (d_measurements.size() != d_snapshot.size()) {
+				return false;
+			}
+			for (Map.Entry<MeasurementKey, BasicMeasurement> entry : d_measurements.entrySet()) {
+				if (d_snapshot.get(entry.getKey()) != entry.getValue()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void release() {
+			for (Observable bean : d_beans) {
+				bean.removePropertyChangeListener(this);
+			}
+			for (ObservableList<?> list : d_lists) {
+				list.removeListDataListener(this);
+			}
+			d_beans.clear();
+			d_lists.clear();
+		}
+
+		private void watch(Object bean) {
+			if (bean instanceof Observable) {
+				((Observable) bean).addPropertyChangeListener(this);
+				d_beans.add((Observable) bean);
+			}
+		}
+
+		private void watch(ObservableList<?> list) {
+			list.addListDataListener(this);
+			d_lists.add(list);
+		}
+
+		public void propertyChange(PropertyChangeEvent evt) {
+			d_dirty = true;
+		}
+
+		public void intervalAdded(ListDataEvent e) {
+			d_dirty = true;
+		}
+
+		public void intervalRemoved(ListDataEvent e) {
+			d_dirty = true;
+		}
+
+		public void contentsChanged(ListDataEvent e) {
+			d_dirty = true;
+		}
+	}
+}
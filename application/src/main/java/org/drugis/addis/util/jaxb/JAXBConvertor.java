@@ -47,12 +47,26 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
 
 import org.drugis.addis.entities.AbstractDose;
 import org.drugis.addis.entities.AbstractNamedEntity;
@@ -151,6 +165,7 @@ import org.drugis.addis.entities.data.TreatmentCategorizations;
 import org.drugis.addis.entities.data.Units;
 import org.drugis.addis.entities.treatment.TreatmentCategorization;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.addis.util.EntityUtil;
 import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
 import org.drugis.common.Interval;
 import org.drugis.common.beans.SortedSetModel;
@@ -167,12 +182,24 @@ public class JAXBConvertor {
 		}
 	}
 
+	private static final Map<String, Templates> s_templates = new HashMap<String, Templates>();
+	private static SAXTransformerFactory s_transformerFactory;
+
 	private JAXBConvertor() {}
 
 	public static Domain convertAddisDataToDomain(AddisData addisData) throws ConversionException {
+		return convertAddisDataToDomain(addisData, 1);
+	}
+
+	/**
+	 * Convert AddisData to a Domain, converting studies in parallel.
+	 * @param addisData The data to convert.
+	 * @param nThreads Number of threads used to convert studies; 1 converts them on the calling thread.
+	 */
+	public static Domain convertAddisDataToDomain(AddisData addisData, int nThreads) throws ConversionException {
 		Domain newDomain = new org.drugis.addis.entities.DomainImpl();
 		for (org.drugis.addis.entities.data.Unit u : addisData.getUnits().getUnit()) {
-			Unit unit = new Unit(u.getName(), u.getSymbol());
+			Unit unit = convertUnit(u);
 			if (!newDomain.getUnits().contains(unit)) {
 				newDomain.getUnits().add(unit);
 			}
@@ -195,9 +222,7 @@ public class JAXBConvertor {
 		for(org.drugis.addis.entities.data.OutcomeMeasure ae : addisData.getPopulationCharacteristics().getPopulationCharacteristic()) {
 			newDomain.getPopulationCharacteristics().add(((PopulationCharacteristic) convertPopulationCharacteristic(ae)));
 		}
-		for(org.drugis.addis.entities.data.Study s : addisData.getStudies().getStudy()) {
-			newDomain.getStudies().add(convertStudy(s, newDomain));
-		}
+		newDomain.getStudies().addAll(convertStudies(addisData.getStudies().getStudy(), newDomain, nThreads));
 		// Meta-analyses
 		for(MetaAnalysis ma : convertMetaAnalyses(addisData.getMetaAnalyses(), newDomain)) {
 			newDomain.getMetaAnalyses().add(ma);
@@ -210,6 +235,24 @@ public class JAXBConvertor {
 	}
 
 	public static AddisData convertDomainToAddisData(Domain domain) throws ConversionException {
+		AddisData addisData = convertSharedEntitiesToAddisData(domain);
+		addisData.setStudies(new Studies());
+		for (Study s : domain.getStudies()) {
+			addisData.getStudies().getStudy().add(convertStudy(s));
+		}
+		List<MetaAnalysis> metaAnalyses = new ArrayList<MetaAnalysis>(domain.getMetaAnalyses());
+		addisData.setMetaAnalyses(convertMetaAnalyses(metaAnalyses));
+		ArrayList<BenefitRiskAnalysis<?>> brAnalyses = new ArrayList<BenefitRiskAnalysis<?>>(domain.getBenefitRiskAnalyses());
+		addisData.setBenefitRiskAnalyses(convertBenefitRiskAnalyses(brAnalyses));
+
+		return addisData;
+	}
+
+	/**
+	 * Convert the entities that studies and analyses refer to (units up to population characteristics).
+	 * Studies, meta-analyses and benefit-risk analyses are left unset.
+	 */
+	static AddisData convertSharedEntitiesToAddisData(Domain domain) throws ConversionException {
 		AddisData addisData = new AddisData();
 		addisData.setUnits(new Units());
 		for (Unit u : domain.getUnits()) {
@@ -239,18 +282,13 @@ public class JAXBConvertor {
 		for (PopulationCharacteristic e : domain.getPopulationCharacteristics()) {
 			addisData.getPopulationCharacteristics().getPopulationCharacteristic().add(convertPopulationCharacteristic(e));
 		}
-		addisData.setStudies(new Studies());
-		for (Study s : domain.getStudies()) {
-			addisData.getStudies().getStudy().add(convertStudy(s));
-		}
-		List<MetaAnalysis> metaAnalyses = new ArrayList<MetaAnalysis>(domain.getMetaAnalyses());
-		addisData.setMetaAnalyses(convertMetaAnalyses(metaAnalyses));
-		ArrayList<BenefitRiskAnalysis<?>> brAnalyses = new ArrayList<BenefitRiskAnalysis<?>>(domain.getBenefitRiskAnalyses());
-		addisData.setBenefitRiskAnalyses(convertBenefitRiskAnalyses(brAnalyses));
-
 		return addisData;
 	}
 
+	static Unit convertUnit(org.drugis.addis.entities.data.Unit u) {
+		return new Unit(u.getName(), u.getSymbol());
+	}
+
 	private static org.drugis.addis.entities.data.Unit convertUnit(Unit u) {
 		org.drugis.addis.entities.data.Unit newUnit = new org.drugis.addis.entities.data.Unit();
 		newUnit.setName(u.getName());
@@ -354,12 +392,7 @@ public class JAXBConvertor {
 	}
 
 	public static <T extends AbstractNamedEntity<?>> T findNamedItem(Collection<T> items, String name) {
-		for (T t: items) {
-			if (t.getName().equals(name)) {
-				return t;
-			}
-		}
-		return null;
+		return name == null ? null : EntityUtil.findByName(items, name);
 	}
 
 	public static void convertNotes(List<org.drugis.addis.entities.data.Note> source, List<Note> target) {
@@ -376,21 +409,26 @@ public class JAXBConvertor {
 
 
 	public static StudyActivity convertStudyActivity(org.drugis.addis.entities.data.StudyActivity saData, Study s, Domain domain) throws ConversionException {
+		return convertStudyActivity(saData, s, EntityUtil.indexByName(s.getArms()), EntityUtil.indexByName(s.getEpochs()), domain);
+	}
+
+	private static StudyActivity convertStudyActivity(org.drugis.addis.entities.data.StudyActivity saData, Study s,
+			Map<String, Arm> arms, Map<String, Epoch> epochs, Domain domain) throws ConversionException {
 		StudyActivity newStudyActivity = new StudyActivity(saData.getName(), convertActivity(saData.getActivity(), domain));
 
 		List<ActivityUsedBy> usedByData = saData.getUsedBy();
 		Set<UsedBy> usedBy = new HashSet<UsedBy>(newStudyActivity.getUsedBy());
 		for(ActivityUsedBy aub: usedByData) {
-			usedBy.add(convertUsedBy(aub, s));
+			usedBy.add(convertUsedBy(aub, s, arms, epochs));
 		}
 		newStudyActivity.setUsedBy(usedBy);
 		return newStudyActivity;
 	}
 
-	private static UsedBy convertUsedBy(ActivityUsedBy aub, Study s) throws ConversionException {
+	private static UsedBy convertUsedBy(ActivityUsedBy aub, Study s, Map<String, Arm> arms, Map<String, Epoch> epochs) throws ConversionException {
 		try {
-			Arm a = findArm(aub.getArm(), s);
-			Epoch e = findEpoch(aub.getEpoch(), s);
+			Arm a = findArm(aub.getArm(), arms);
+			Epoch e = findEpoch(aub.getEpoch(), epochs);
 			return new UsedBy(a, e);
 		} catch (ConversionException e) {
 			throw new ConversionException("Could not parse activities in study \"" + s + "\"", e);
@@ -863,16 +901,22 @@ public class JAXBConvertor {
 			List<Epoch> epochs, Map<String, org.drugis.addis.entities.StudyOutcomeMeasure<?>> outcomeMeasures)
 	throws ConversionException {
 		Map<MeasurementKey, BasicMeasurement> map = new HashMap<MeasurementKey, BasicMeasurement>();
+		Map<String, Arm> armIndex = EntityUtil.indexByName(arms);
+		Map<String, Epoch> epochIndex = EntityUtil.indexByName(epochs);
 		for(org.drugis.addis.entities.data.Measurement m : measurements.getMeasurement()) {
 			String omId = m.getStudyOutcomeMeasure().getId();
-			Arm arm = m.getArm() != null ? findArm(m.getArm().getName(), arms) : null;
-			map.put(new MeasurementKey(outcomeMeasures.get(omId), arm, convertWhenTaken(m.getWhenTaken(), epochs)), convertMeasurement(m));
+			Arm arm = m.getArm() != null ? findArm(m.getArm().getName(), armIndex) : null;
+			map.put(new MeasurementKey(outcomeMeasures.get(omId), arm, convertWhenTaken(m.getWhenTaken(), epochIndex)), convertMeasurement(m));
 		}
 		return map;
 	}
 
 	private static WhenTaken convertWhenTaken(RelativeTime rt, List<Epoch> epochs) {
-		WhenTaken whenTaken = new WhenTaken(rt.getHowLong(), rt.getRelativeTo(), findNamedItem(epochs, rt.getEpoch().getName()));
+		return convertWhenTaken(rt, EntityUtil.indexByName(epochs));
+	}
+
+	private static WhenTaken convertWhenTaken(RelativeTime rt, Map<String, Epoch> epochs) {
+		WhenTaken whenTaken = new WhenTaken(rt.getHowLong(), rt.getRelativeTo(), epochs.get(rt.getEpoch().getName()));
 		whenTaken.commit();
 		return whenTaken;
 	}
@@ -936,10 +980,69 @@ public class JAXBConvertor {
 		return newStudy;
 	}
 
+	/**
+	 * Convert a list of studies. Studies only refer to entities already in the domain, so they can be
+	 * converted independently; the domain must not be modified while the conversion is running.
+	 * @param studies The studies to convert.
+	 * @param domain The domain containing the shared entities the studies refer to.
+	 * @param nThreads Number of threads to use; 1 converts the studies on the calling thread.
+	 * @return The converted studies, in the order of the input.
+	 */
+	public static List<Study> convertStudies(List<org.drugis.addis.entities.data.Study> studies, final Domain domain, int nThreads) throws ConversionException {
+		List<Study> converted = new ArrayList<Study>(studies.size());
+		if (nThreads <= 1 || studies.size() <= 1) {
+			for (org.drugis.addis.entities.data.Study s : studies) {
+				converted.add(convertStudy(s, domain));
+			}
+			return converted;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, studies.size()));
+		try {
+			return convertStudies(studies, domain, executor);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Convert a list of studies on the given executor.
+	 * @see #convertStudies(List, Domain, int)
+	 */
+	public static List<Study> convertStudies(List<org.drugis.addis.entities.data.Study> studies, final Domain domain, ExecutorService executor) throws ConversionException {
+		List<Study> converted = new ArrayList<Study>(studies.size());
+		try {
+			List<Future<Study>> futures = new ArrayList<Future<Study>>(studies.size());
+			for (final org.drugis.addis.entities.data.Study s : studies) {
+				futures.add(executor.submit(new Callable<Study>() {
+					public Study call() throws ConversionException {
+						return convertStudy(s, domain);
+					}
+				}));
+			}
+			for (Future<Study> f : futures) {
+				converted.add(f.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ConversionException("Interrupted while converting studies", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ConversionException) {
+				throw (ConversionException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new ConversionException("Failed to convert study", e.getCause());
+		}
+		return converted;
+	}
+
 	public static Collection<? extends StudyActivity> convertStudyActivities(org.drugis.addis.entities.data.StudyActivities activities, Study s, Domain domain) throws ConversionException {
 		List<StudyActivity> l = new ArrayList<StudyActivity>();
+		Map<String, Arm> arms = EntityUtil.indexByName(s.getArms());
+		Map<String, Epoch> epochs = EntityUtil.indexByName(s.getEpochs());
 		for(org.drugis.addis.entities.data.StudyActivity sa: activities.getStudyActivity()) {
-			l.add(convertStudyActivity(sa, s, domain));
+			l.add(convertStudyActivity(sa, s, arms, epochs, domain));
 		}
 		return l;
 	}
@@ -1100,6 +1203,14 @@ public class JAXBConvertor {
 		throw new ConversionException("Undefined epoch name \"" + name + "\"");
 	}
 
+	private static Epoch findEpoch(String name, Map<String, Epoch> epochs) throws ConversionException {
+		Epoch epoch = epochs.get(name);
+		if (epoch == null) {
+			throw new ConversionException("Undefined epoch name \"" + name + "\"");
+		}
+		return epoch;
+	}
+
 	static Arm findArm(String name, Study study) throws ConversionException {
 		return findArm(name, study.getArms());
 	}
@@ -1113,6 +1224,14 @@ public class JAXBConvertor {
 		throw new ConversionException("Undefined arm name \"" + name + "\"");
 	}
 
+	private static Arm findArm(String name, Map<String, Arm> arms) throws ConversionException {
+		Arm arm = arms.get(name);
+		if (arm == null) {
+			throw new ConversionException("Undefined arm name \"" + name + "\"");
+		}
+		return arm;
+	}
+
 	public static org.drugis.addis.entities.OutcomeMeasure findOutcomeMeasure(Domain domain,
 			org.drugis.addis.entities.data.MetaAnalysis ma)
 	throws ConversionException {
@@ -1178,7 +1297,9 @@ public class JAXBConvertor {
 
 		Arm baseline = findArm(br.getBaseline().getArm().getName(), study.getArms());
 
-		return new StudyBenefitRiskAnalysis(br.getName(), indication, study, criteria, baseline, alternatives, br.getAnalysisType(), convertDecisionContext(br.getDecisionContext()));
+		StudyBenefitRiskAnalysis analysis = new StudyBenefitRiskAnalysis(br.getName(), indication, study, criteria, baseline, alternatives, br.getAnalysisType(), convertDecisionContext(br.getDecisionContext()));
+		analysis.setSimulationTargetError(br.getSimulationTargetError());
+		return analysis;
 	}
 
 	public static org.drugis.addis.entities.data.StudyBenefitRiskAnalysis convertStudyBenefitRiskAnalysis(StudyBenefitRiskAnalysis br) throws ConversionException {
@@ -1186,6 +1307,7 @@ public class JAXBConvertor {
 
 		newBr.setName(br.getName());
 		newBr.setAnalysisType(br.getAnalysisType());
+		newBr.setSimulationTargetError(br.getSimulationTargetError());
 		newBr.setIndication(nameReference(br.getIndication().getName()));
 		newBr.setStudy(nameReference(br.getStudy().getName()));
 
@@ -1228,7 +1350,9 @@ public class JAXBConvertor {
 			metaAnalysis.add(findMetaAnalysis(domain, ref.getName()));
 		}
 		treatmentAlternative.remove(baseline);
-		return new MetaBenefitRiskAnalysis(br.getName(), indication, metaAnalysis, baseline, treatmentAlternative, br.getAnalysisType(), convertDecisionContext(br.getDecisionContext()));
+		MetaBenefitRiskAnalysis analysis = new MetaBenefitRiskAnalysis(br.getName(), indication, metaAnalysis, baseline, treatmentAlternative, br.getAnalysisType(), convertDecisionContext(br.getDecisionContext()));
+		analysis.setSimulationTargetError(br.getSimulationTargetError());
+		return analysis;
 	}
 
 
@@ -1236,6 +1360,7 @@ public class JAXBConvertor {
 		org.drugis.addis.entities.data.MetaBenefitRiskAnalysis newBr = new org.drugis.addis.entities.data.MetaBenefitRiskAnalysis();
 		newBr.setName(br.getName());
 		newBr.setAnalysisType(br.getAnalysisType());
+		newBr.setSimulationTargetError(br.getSimulationTargetError());
 		Baseline baseline = new Baseline();
 		baseline.setTreatmentDefinition(TreatmentDefinitionConverter.save((br.getBaseline())));
 		newBr.setBaseline(baseline);
@@ -1287,12 +1412,7 @@ public class JAXBConvertor {
 	}
 
 	private static MetaAnalysis findMetaAnalysis(Domain domain, String name) {
-		for (MetaAnalysis ma : domain.getMetaAnalyses()) {
-			if (ma.getName().equals(name)) {
-				return ma;
-			}
-		}
-		return null;
+		return EntityUtil.findByName(domain.getMetaAnalyses(), name);
 	}
 
 
@@ -1422,21 +1542,12 @@ public class JAXBConvertor {
 	 */
 	public static InputStream transformLegacyXML(InputStream xml)
 	throws TransformerException, IOException {
-		System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
-		TransformerFactory tFactory = TransformerFactory.newInstance();
-		InputStream xsltFile = JAXBConvertor.class.getResourceAsStream("transform-0-1.xslt");
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Transformer trans = getTemplates("transform-0-1.xslt").newTransformer();
+		trans.transform(new StreamSource(xml), new StreamResult(os));
+		os.close();
 
-	    javax.xml.transform.Source xmlSource = new javax.xml.transform.stream.StreamSource(xml);
-	    javax.xml.transform.Source xsltSource = new javax.xml.transform.stream.StreamSource(xsltFile);
-	    javax.xml.transform.Result result = new javax.xml.transform.stream.StreamResult(os);
-
-	    javax.xml.transform.Transformer trans = tFactory.newTransformer(xsltSource);
-	    trans.transform(xmlSource, result);
-
-	    os.close();
-
-	    return new ByteArrayInputStream(os.toByteArray());
+		return new ByteArrayInputStream(os.toByteArray());
 	}
 
 	/**
@@ -1461,28 +1572,62 @@ public class JAXBConvertor {
 	throws TransformerException, IOException {
 		if (sourceVersion == targetVersion) {
 			return xml;
-		} else if (sourceVersion > targetVersion) {
-			throw new RuntimeException("XML version from the future detected");
 		}
-		System.setProperty("javax.xml.transform.TransformerFactory", "net.sf.saxon.TransformerFactoryImpl");
-
-		TransformerFactory tFactory = TransformerFactory.newInstance();
-		for (int v = sourceVersion; v < targetVersion; ++v) {
-			InputStream xsltFile = JAXBConvertor.class.getResourceAsStream("transform-" + v + "-" + (v + 1) + ".xslt");
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		transformToVersion(xml, sourceVersion, targetVersion, new StreamResult(os));
+		os.close();
 
-			javax.xml.transform.Source xmlSource = new javax.xml.transform.stream.StreamSource(xml);
-			javax.xml.transform.Source xsltSource = new javax.xml.transform.stream.StreamSource(xsltFile);
-			javax.xml.transform.Result result = new javax.xml.transform.stream.StreamResult(os);
+		return new ByteArrayInputStream(os.toByteArray());
+	}
 
-			javax.xml.transform.Transformer trans = tFactory.newTransformer(xsltSource);
-			trans.transform(xmlSource, result);
+	/**
+	 * Convert an XML stream to a specific XML version, writing the result to the given Result.
+	 * The upgrade stylesheets are chained as SAX stages, so the document is parsed once and
+	 * never serialized between versions. Use a SAXResult to feed the upgraded document directly
+	 * into a consumer such as a JAXB UnmarshallerHandler.
+	 * @param xml An XML input stream
+	 * @param sourceVersion The schema version of the source.
+	 * @param targetVersion The schema version to convert to.
+	 * @param result Receives XML compliant with the specified schema.
+	 */
+	public static void transformToVersion(InputStream xml, int sourceVersion, int targetVersion, Result result)
+	throws TransformerException {
+		if (sourceVersion > targetVersion) {
+			throw new RuntimeException("XML version from the future detected");
+		}
 
-			os.close();
+		SAXTransformerFactory factory = getTransformerFactory();
+		Result next = result;
+		for (int v = targetVersion - 1; v >= sourceVersion; --v) {
+			TransformerHandler stage = factory.newTransformerHandler(getTemplates("transform-" + v + "-" + (v + 1) + ".xslt"));
+			stage.setResult(next);
+			SAXResult stageInput = new SAXResult(stage);
+			stageInput.setLexicalHandler(stage);
+			next = stageInput;
+		}
+		factory.newTransformer().transform(new StreamSource(xml), next);
+	}
 
-			xml = new ByteArrayInputStream(os.toByteArray()); // next version XML
+	private static synchronized SAXTransformerFactory getTransformerFactory() {
+		if (s_transformerFactory == null) {
+			s_transformerFactory = (SAXTransformerFactory) TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
 		}
+		return s_transformerFactory;
+	}
 
-		return xml;
+	/**
+	 * Get a compiled stylesheet. Each stylesheet is compiled only once; Templates are thread-safe and can be shared.
+	 */
+	private static synchronized Templates getTemplates(String xsltName) throws TransformerConfigurationException {
+		Templates templates = s_templates.get(xsltName);
+		if (templates == null) {
+			InputStream xsltFile = JAXBConvertor.class.getResourceAsStream(xsltName);
+			if (xsltFile == null) {
+				throw new TransformerConfigurationException("Stylesheet " + xsltName + " not found");
+			}
+			templates = getTransformerFactory().newTemplates(new StreamSource(xsltFile));
+			s_templates.put(xsltName, templates);
+		}
+		return templates;
 	}
 }
@@ -39,9 +39,12 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.UnmarshallerHandler;
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
 import javax.xml.bind.ValidationEventLocator;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXResult;
 
 import org.drugis.addis.entities.Domain;
 import org.drugis.addis.entities.data.AddisData;
@@ -121,6 +124,23 @@ public class JAXBHandler {
 		return (AddisData) unmarshaller.unmarshal(is);
 	}
 
+	/**
+	 * Unmarshal XML of the given schema version, upgrading it to the current version on the fly.
+	 * The upgraded document is fed directly to JAXB, without serializing it in between.
+	 * @param is XML stream to read.
+	 * @param version Schema version the XML is in.
+	 */
+	public static AddisData unmarshallAddisData(InputStream is, int version) throws JAXBException, TransformerException {
+		if (version == XmlFormatType.CURRENT_VERSION) {
+			return unmarshallAddisData(is);
+		}
+		Unmarshaller unmarshaller = JAXB.getInstance().createUnmarshaller();
+		unmarshaller.setEventHandler(new AddisDataValidationEventHandler());
+		UnmarshallerHandler handler = unmarshaller.getUnmarshallerHandler();
+		JAXBConvertor.transformToVersion(is, version, XmlFormatType.CURRENT_VERSION, new SAXResult(handler));
+		return (AddisData) handler.getResult();
+	}
+
 	// should be moved somewhere else and changed
 	public static class AddisDataValidationEventHandler implements ValidationEventHandler  {
 		public boolean handleEvent(ValidationEvent ve) {
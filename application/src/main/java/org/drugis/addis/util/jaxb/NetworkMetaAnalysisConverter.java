@@ -88,7 +88,6 @@ public class NetworkMetaAnalysisConverter {
 		String name = nma.getName();
 		Indication indication = JAXBConvertor.findNamedItem(domain.getIndications(), nma.getIndication().getName());
 		org.drugis.addis.entities.OutcomeMeasure om = JAXBConvertor.findOutcomeMeasure(domain, nma);
-		List<Study> studies = new ArrayList<Study>();
 		List<TreatmentDefinition> defs = new ArrayList<TreatmentDefinition>();
 		Map<Study, Map<TreatmentDefinition, Arm>> armMap = new HashMap<Study, Map<TreatmentDefinition, Arm>>();
 		for (MetaAnalysisAlternative a : nma.getAlternative()) {
@@ -96,8 +95,7 @@ public class NetworkMetaAnalysisConverter {
 			defs.add(def);
 			for (ArmReference armRef : a.getArms().getArm()) {
 				Study study = JAXBConvertor.findNamedItem(domain.getStudies(), armRef.getStudy());
-				if (!studies.contains(study)) {
-					studies.add(study);
+				if (!armMap.containsKey(study)) {
 					armMap.put(study, new HashMap<TreatmentDefinition, Arm>());
 				}
 				Arm arm = JAXBConvertor.findArm(armRef.getName(), study.getArms());
@@ -0,0 +1,294 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.DomainImpl;
+import org.drugis.addis.entities.PopulationCharacteristic;
+import org.drugis.addis.entities.Unit;
+import org.drugis.addis.entities.data.PairwiseMetaAnalysis;
+import org.drugis.addis.util.jaxb.JAXBConvertor.ConversionException;
+import org.drugis.addis.util.jaxb.JAXBHandler.AddisDataValidationEventHandler;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+
+/**
+ * Loads a Domain from XML in the current schema version without materializing the complete AddisData tree.
+ * The document is read section by section (units, indications, drugs, ..., benefit-risk analyses) using StAX, and
+ * each top-level item is unmarshalled and converted to a domain entity as soon as its element completes.
+ * Only a single item's JAXB representation is alive at any time, so peak memory is roughly that of the resulting Domain.
+ * Documents in an older schema version are upgraded on a separate thread, and the upgraded XML is read through a
+ * pipe as it is produced, rather than buffered in full.
+ * Studies can be converted in parallel, in batches, so that only a bounded number of them is held in JAXB form.
+ * @see JAXBConvertor#convertAddisDataToDomain(org.drugis.addis.entities.data.AddisData)
+ */
+public class StreamingDomainLoader {
+	private static final String ROOT = "addis-data";
+	private static final int PIPE_SIZE = 64 * 1024;
+	private static final int STUDIES_PER_THREAD = 16;
+
+	private final XMLStreamReader d_reader;
+	private final Unmarshaller d_unmarshaller;
+	private final Domain d_domain = new DomainImpl();
+	private final ExecutorService d_executor;
+	private final List<org.drugis.addis.entities.data.Study> d_pendingStudies = new ArrayList<org.drugis.addis.entities.data.Study>();
+	private final int d_batchSize;
+
+	private StreamingDomainLoader(InputStream is, int nThreads) throws XMLStreamException, JAXBException {
+		d_reader = XMLInputFactory.newInstance().createXMLStreamReader(is);
+		d_unmarshaller = JAXBHandler.JAXB.getInstance().createUnmarshaller();
+		d_unmarshaller.setEventHandler(new AddisDataValidationEventHandler());
+		d_executor = nThreads > 1 ? Executors.newFixedThreadPool(nThreads) : null;
+		d_batchSize = nThreads * STUDIES_PER_THREAD;
+	}
+
+	/**
+	 * Read a Domain from an XML stream that conforms to the current schema version.
+	 * @param is XML stream, already transformed to the current version.
+	 * @return The loaded Domain.
+	 */
+	public static Domain load(InputStream is) throws XMLStreamException, JAXBException, ConversionException {
+		return read(is, 1);
+	}
+
+	private static Domain read(InputStream is, int nThreads) throws XMLStreamException, JAXBException, ConversionException {
+		StreamingDomainLoader loader = new StreamingDomainLoader(is, nThreads);
+		try {
+			return loader.readDomain();
+		} finally {
+			loader.d_reader.close();
+			if (loader.d_executor != null) {
+				loader.d_executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Read a Domain from an XML stream of the given schema version.
+	 * @param is XML stream to read.
+	 * @param version Schema version the XML is in.
+	 * @return The loaded Domain.
+	 */
+	public static Domain load(InputStream is, int version) throws XMLStreamException, JAXBException, ConversionException, TransformerException, IOException {
+		return load(is, version, 1);
+	}
+
+	/**
+	 * Read a Domain from an XML stream of the given schema version.
+	 * @param is XML stream to read.
+	 * @param version Schema version the XML is in.
+	 * @param nThreads Number of threads used to convert studies; 1 converts them on the calling thread.
+	 * @return The loaded Domain.
+	 */
+	public static Domain load(InputStream is, int version, int nThreads) throws XMLStreamException, JAXBException, ConversionException, TransformerException, IOException {
+		if (version == XmlFormatType.CURRENT_VERSION) {
+			return read(is, nThreads);
+		}
+		PipedInputStream upgraded = new PipedInputStream(PIPE_SIZE);
+		Upgrader upgrader = new Upgrader(is, version, new PipedOutputStream(upgraded));
+		Thread thread = new Thread(upgrader, "Schema upgrade");
+		thread.start();
+		Domain domain;
+		try {
+			domain = read(upgraded, nThreads);
+			byte[] rest = new byte[1024];
+			while (upgraded.read(rest) >= 0) {
+				// wait for the upgrade to write the rest of the document
+			}
+		} catch (XMLStreamException e) {
+			upgrader.rethrow(); // if the upgrade failed, that is why the document ended early
+			throw e;
+		} finally {
+			upgraded.close(); // make the upgrade fail instead of blocking if the domain could not be read
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		upgrader.rethrow();
+		return domain;
+	}
+
+	/**
+	 * Writes the upgraded XML to the pipe, remembering the exception if the upgrade fails.
+	 */
+	private static class Upgrader implements Runnable {
+		private final InputStream d_is;
+		private final int d_version;
+		private final PipedOutputStream d_os;
+		private volatile Exception d_exception;
+
+		public Upgrader(InputStream is, int version, PipedOutputStream os) {
+			d_is = is;
+			d_version = version;
+			d_os = os;
+		}
+
+		public void run() {
+			try {
+				JAXBConvertor.transformToVersion(d_is, d_version, XmlFormatType.CURRENT_VERSION, new StreamResult(d_os));
+			} catch (Exception e) {
+				d_exception = e;
+			} finally {
+				try {
+					d_os.close();
+				} catch (IOException e) {
+					// the reader went away
+				}
+			}
+		}
+
+		/**
+		 * Throw the exception of the upgrade, if it failed.
+		 */
+		public void rethrow() throws TransformerException {
+			if (d_exception instanceof TransformerException) {
+				throw (TransformerException) d_exception;
+			} else if (d_exception != null) {
+				throw new RuntimeException(d_exception);
+			}
+		}
+	}
+
+	private Domain readDomain() throws XMLStreamException, JAXBException, ConversionException {
+		if (currentTag() != XMLStreamConstants.START_ELEMENT || !ROOT.equals(d_reader.getLocalName())) {
+			throw new ConversionException("Expected <" + ROOT + "> as document element");
+		}
+		d_reader.next();
+		while (currentTag() == XMLStreamConstants.START_ELEMENT) {
+			readSection(d_reader.getLocalName());
+		}
+		return d_domain;
+	}
+
+	private void readSection(String section) throws XMLStreamException, JAXBException, ConversionException {
+		d_reader.next();
+		while (currentTag() == XMLStreamConstants.START_ELEMENT) {
+			readItem(section, d_reader.getLocalName());
+		}
+		convertPendingStudies();
+		d_reader.next(); // skip the section's end tag
+	}
+
+	/**
+	 * Unmarshal the element the reader is positioned at and add the converted entity to the domain.
+	 * Sections are ordered by the schema such that all references point to items that were read before.
+	 */
+	private void readItem(String section, String element) throws JAXBException, ConversionException, XMLStreamException {
+		if (section.equals("units")) {
+			Unit unit = JAXBConvertor.convertUnit(unmarshal(org.drugis.addis.entities.data.Unit.class));
+			if (!d_domain.getUnits().contains(unit)) {
+				d_domain.getUnits().add(unit);
+			}
+		} else if (section.equals("indications")) {
+			d_domain.getIndications().add(JAXBConvertor.convertIndication(unmarshal(org.drugis.addis.entities.data.Indication.class)));
+		} else if (section.equals("drugs")) {
+			d_domain.getDrugs().add(JAXBConvertor.convertDrug(unmarshal(org.drugis.addis.entities.data.Drug.class)));
+		} else if (section.equals("treatmentCategorizations")) {
+			d_domain.getTreatmentCategorizations().add(TreatmentCategorizationsConverter.load(
+					unmarshal(org.drugis.addis.entities.data.TreatmentCategorization.class), d_domain));
+		} else if (section.equals("endpoints")) {
+			d_domain.getEndpoints().add(JAXBConvertor.convertEndpoint(unmarshal(org.drugis.addis.entities.data.OutcomeMeasure.class)));
+		} else if (section.equals("adverseEvents")) {
+			d_domain.getAdverseEvents().add(JAXBConvertor.convertAdverseEvent(unmarshal(org.drugis.addis.entities.data.OutcomeMeasure.class)));
+		} else if (section.equals("populationCharacteristics")) {
+			d_domain.getPopulationCharacteristics().add((PopulationCharacteristic) JAXBConvertor.convertPopulationCharacteristic(
+					unmarshal(org.drugis.addis.entities.data.OutcomeMeasure.class)));
+		} else if (section.equals("studies") && d_executor != null) {
+			d_pendingStudies.add(unmarshal(org.drugis.addis.entities.data.Study.class));
+			if (d_pendingStudies.size() >= d_batchSize) {
+				convertPendingStudies();
+			}
+		} else if (section.equals("studies")) {
+			d_domain.getStudies().add(JAXBConvertor.convertStudy(unmarshal(org.drugis.addis.entities.data.Study.class), d_domain));
+		} else if (section.equals("metaAnalyses") && element.equals("pairwiseMetaAnalysis")) {
+			d_domain.getMetaAnalyses().add(JAXBConvertor.convertPairWiseMetaAnalysis(unmarshal(PairwiseMetaAnalysis.class), d_domain));
+		} else if (section.equals("metaAnalyses") && element.equals("networkMetaAnalysis")) {
+			d_domain.getMetaAnalyses().add(NetworkMetaAnalysisConverter.load(
+					unmarshal(org.drugis.addis.entities.data.NetworkMetaAnalysis.class), d_domain));
+		} else if (section.equals("benefitRiskAnalyses") && element.equals("studyBenefitRiskAnalysis")) {
+			d_domain.getBenefitRiskAnalyses().add(JAXBConvertor.convertStudyBenefitRiskAnalysis(
+					unmarshal(org.drugis.addis.entities.data.StudyBenefitRiskAnalysis.class), d_domain));
+		} else if (section.equals("benefitRiskAnalyses") && element.equals("metaBenefitRiskAnalysis")) {
+			d_domain.getBenefitRiskAnalyses().add(JAXBConvertor.convertMetaBenefitRiskAnalysis(
+					unmarshal(org.drugis.addis.entities.data.MetaBenefitRiskAnalysis.class), d_domain));
+		} else {
+			throw new ConversionException("Unsupported element <" + element + "> in <" + section + ">");
+		}
+	}
+
+	/**
+	 * Convert the studies read since the last batch, and add them to the domain in document order.
+	 */
+	private void convertPendingStudies() throws ConversionException {
+		if (!d_pendingStudies.isEmpty()) {
+			d_domain.getStudies().addAll(JAXBConvertor.convertStudies(d_pendingStudies, d_domain, d_executor));
+			d_pendingStudies.clear();
+		}
+	}
+
+	/**
+	 * Unmarshal the current element; afterwards the reader points at the event following its end tag.
+	 */
+	private <T> T unmarshal(Class<T> type) throws JAXBException {
+		return d_unmarshaller.unmarshal(d_reader, type).getValue();
+	}
+
+	/**
+	 * Skip whitespace, comments and processing instructions up to the next start or end tag.
+	 * Unlike {@link XMLStreamReader#nextTag()}, does not move past the current event if it is a tag.
+	 */
+	private int currentTag() throws XMLStreamException {
+		int event = d_reader.getEventType();
+		while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+			if (event == XMLStreamConstants.END_DOCUMENT) {
+				throw new XMLStreamException("Unexpected end of document");
+			}
+			event = d_reader.next();
+		}
+		return event;
+	}
+}
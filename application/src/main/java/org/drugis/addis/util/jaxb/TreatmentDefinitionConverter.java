@@ -45,9 +45,9 @@ public class TreatmentDefinitionConverter {
 				td.getContents().add(Category.createTrivial(JAXBConvertor.findNamedItem(domain.getDrugs(), trivial.getDrug())));
 			} else if(category instanceof org.drugis.addis.entities.data.TreatmentCategoryRef) {
 				final org.drugis.addis.entities.data.TreatmentCategoryRef rich = (org.drugis.addis.entities.data.TreatmentCategoryRef) category;
+				final Drug drug = JAXBConvertor.findNamedItem(domain.getDrugs(), rich.getDrug());
 				TreatmentCategorization tc = CollectionUtils.find(domain.getTreatmentCategorizations(), new Predicate<TreatmentCategorization>() {
 					public boolean evaluate(TreatmentCategorization object) {
-						Drug drug = JAXBConvertor.findNamedItem(domain.getDrugs(), rich.getDrug());
 						return object.getName().equals(rich.getName()) && object.getDrug().equals(drug);
 					}
 				});
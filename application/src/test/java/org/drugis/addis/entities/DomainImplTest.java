@@ -28,21 +28,31 @@
 package org.drugis.addis.entities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.commons.collections15.Predicate;
 import org.drugis.addis.ExampleData;
+import org.drugis.addis.entities.analysis.MetaBenefitRiskAnalysis;
 import org.drugis.addis.entities.analysis.RandomEffectsMetaAnalysis;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.addis.util.EntityUtil;
 import org.drugis.common.JUnitUtil;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.jgoodies.binding.list.ObservableList;
+
 public class DomainImplTest {
 
 	private DomainImpl d_domain;
@@ -84,4 +94,177 @@ public class DomainImplTest {
 		Set<Entity> deps = d_domain.getDependents(ExampleData.buildDrugFluoxetine());
 		assertTrue(deps.contains(ma));
 	}
+
+	@Test
+	public void testFindByNameUsesIndex() {
+		ExampleData.initDefaultData(d_domain);
+		assertTrue(d_domain.getDrugs() instanceof IndexedByName);
+		assertSame(ExampleData.buildDrugFluoxetine(), EntityUtil.findByName(d_domain.getDrugs(), ExampleData.buildDrugFluoxetine().getName()));
+		assertNull(EntityUtil.findByName(d_domain.getDrugs(), "Aspirin"));
+	}
+
+	@Test
+	public void testFindByNameFollowsRename() {
+		Drug drug = new Drug("Aspirin", "B01AC06");
+		d_domain.getDrugs().add(drug);
+		drug.setName("Acetylsalicylic acid");
+		assertNull(EntityUtil.findByName(d_domain.getDrugs(), "Aspirin"));
+		assertSame(drug, EntityUtil.findByName(d_domain.getDrugs(), "Acetylsalicylic acid"));
+	}
+
+	@Test
+	public void testFindByNameReturnsFirstOfSameName() {
+		Drug aspirin = new Drug("Aspirin", "B01AC06");
+		Drug paracetamol = new Drug("Paracetamol", "N02BE01");
+		d_domain.getDrugs().add(aspirin);
+		d_domain.getDrugs().add(paracetamol);
+		paracetamol.setName("Aspirin");
+		assertSame(aspirin, EntityUtil.findByName(d_domain.getDrugs(), "Aspirin"));
+
+		d_domain.getDrugs().remove(0);
+		assertSame(paracetamol, EntityUtil.findByName(d_domain.getDrugs(), "Aspirin"));
+	}
+
+	@Test
+	public void testFindByNameAfterRemove() {
+		Drug drug = new Drug("Aspirin", "B01AC06");
+		d_domain.getDrugs().add(drug);
+		d_domain.getDrugs().remove(drug);
+		assertNull(EntityUtil.findByName(d_domain.getDrugs(), "Aspirin"));
+		drug.setName("Acetylsalicylic acid");
+		assertNull(EntityUtil.findByName(d_domain.getDrugs(), "Acetylsalicylic acid"));
+	}
+
+	@Test
+	public void testStudyIndexFollowsEndpointChanges() {
+		ExampleData.initDefaultData(d_domain);
+		Endpoint cgi = ExampleData.buildEndpointCgi();
+		Study s = ExampleData.buildStudyDeWilde();
+		ObservableList<Study> studies = d_domain.getStudies(cgi);
+		assertEquals(filter(new DomainImpl.EndpointFilter(cgi)), new ArrayList<Study>(studies));
+		assertFalse(studies.contains(s));
+
+		s.getEndpoints().add(new StudyOutcomeMeasure<Endpoint>(cgi));
+		assertTrue(studies.contains(s));
+		assertEquals(filter(new DomainImpl.EndpointFilter(cgi)), new ArrayList<Study>(studies));
+	}
+
+	@Test
+	public void testStudyIndexFollowsIndicationChange() {
+		ExampleData.initDefaultData(d_domain);
+		Indication depression = ExampleData.buildIndicationDepression();
+		Indication chf = ExampleData.buildIndicationChronicHeartFailure();
+		Study s = ExampleData.buildStudyChouinard();
+		ObservableList<Study> depressionStudies = d_domain.getStudies(depression);
+		ObservableList<Study> chfStudies = d_domain.getStudies(chf);
+		assertTrue(depressionStudies.contains(s));
+
+		s.setIndication(chf);
+		assertFalse(depressionStudies.contains(s));
+		assertTrue(chfStudies.contains(s));
+		assertEquals(filter(new DomainImpl.IndicationFilter(chf)), new ArrayList<Study>(chfStudies));
+	}
+
+	@Test
+	public void testStudyIndexAfterRemove() {
+		ExampleData.initDefaultData(d_domain);
+		Study s = ExampleData.buildStudyChouinard();
+		Drug fluox = ExampleData.buildDrugFluoxetine();
+		ObservableList<Study> studies = d_domain.getStudies(fluox);
+		assertEquals(filter(d_domain.new TreatmentDefinitionFilter(TreatmentDefinition.createTrivial(fluox))), new ArrayList<Study>(studies));
+		assertTrue(studies.contains(s));
+
+		d_domain.getStudies().remove(s);
+		assertFalse(studies.contains(s));
+		s.setIndication(ExampleData.buildIndicationChronicHeartFailure());
+		assertFalse(d_domain.getStudies(ExampleData.buildIndicationChronicHeartFailure()).contains(s));
+	}
+
+	@Test
+	public void testDependentsFollowStudyChanges() {
+		ExampleData.initDefaultData(d_domain);
+		Study s = ExampleData.buildStudyDeWilde();
+		Endpoint cgi = ExampleData.buildEndpointCgi();
+		assertFalse(d_domain.getDependents(cgi).contains(s));
+
+		s.getEndpoints().add(new StudyOutcomeMeasure<Endpoint>(cgi));
+		assertTrue(d_domain.getDependents(cgi).contains(s));
+		assertTrue(d_domain.hasDependents(cgi));
+
+		s.getEndpoints().remove(s.findStudyOutcomeMeasure(cgi));
+		assertFalse(d_domain.getDependents(cgi).contains(s));
+	}
+
+	@Test
+	public void testDeleteEntities() {
+		ExampleData.initDefaultData(d_domain);
+		List<Study> studies = new ArrayList<Study>();
+		studies.add(ExampleData.buildStudyChouinard());
+		studies.add(ExampleData.buildStudyDeWilde());
+		RandomEffectsMetaAnalysis ma = ExampleData.buildRandomEffectsMetaAnalysis("meta", ExampleData.buildEndpointHamd(), studies, TreatmentDefinition.createTrivial(ExampleData.buildDrugFluoxetine()), TreatmentDefinition.createTrivial(ExampleData.buildDrugParoxetine()));
+		d_domain.getMetaAnalyses().add(ma);
+
+		List<Entity> toDelete = new ArrayList<Entity>(studies);
+		toDelete.add(0, ma);
+		d_domain.deleteEntities(toDelete);
+		assertFalse(d_domain.getStudies().contains(ExampleData.buildStudyChouinard()));
+		assertFalse(d_domain.getStudies().contains(ExampleData.buildStudyDeWilde()));
+		assertFalse(d_domain.getMetaAnalyses().contains(ma));
+		assertFalse(d_domain.getDependents(ExampleData.buildStudyChouinard()).contains(ma));
+	}
+
+	@Test
+	public void testDeleteEntitiesWithTheirDependents() {
+		ExampleData.initDefaultData(d_domain);
+		Drug candesartan = ExampleData.buildDrugCandesartan();
+		Study mcMurray = ExampleData.buildStudyMcMurray();
+		d_domain.deleteEntities(Arrays.<Entity>asList(candesartan, mcMurray));
+		assertFalse(d_domain.getDrugs().contains(candesartan));
+		assertFalse(d_domain.getStudies().contains(mcMurray));
+		assertFalse(d_domain.hasDependents(candesartan));
+	}
+
+	@Test
+	public void testDependentsFollowAnalysisChanges() {
+		ExampleData.initDefaultData(d_domain);
+		d_domain.getMetaAnalyses().add(ExampleData.buildMetaAnalysisHamd());
+		d_domain.getMetaAnalyses().add(ExampleData.buildMetaAnalysisConv());
+		MetaBenefitRiskAnalysis br = ExampleData.buildMetaBenefitRiskAnalysis();
+		d_domain.getBenefitRiskAnalyses().add(br);
+		Drug candesartan = ExampleData.buildDrugCandesartan();
+		assertFalse(d_domain.getDependents(candesartan).contains(br));
+
+		TreatmentDefinition alternative = TreatmentDefinition.createTrivial(candesartan);
+		br.getAlternatives().add(alternative);
+		assertTrue(d_domain.getDependents(candesartan).contains(br));
+
+		br.getAlternatives().remove(alternative);
+		assertFalse(d_domain.getDependents(candesartan).contains(br));
+	}
+
+	@Test
+	public void testDeleteEntitiesChecksOutsideDependents() {
+		ExampleData.initDefaultData(d_domain);
+		Study s = ExampleData.buildStudyChouinard();
+		Drug fluox = ExampleData.buildDrugFluoxetine();
+		try {
+			d_domain.deleteEntities(Arrays.<Entity>asList(s, fluox));
+			fail();
+		} catch (DependentEntitiesException e) {
+			assertFalse(e.getDependents().contains(s));
+			assertTrue(e.getDependents().contains(ExampleData.buildStudyDeWilde()));
+		}
+		assertTrue(d_domain.getStudies().contains(s));
+		assertTrue(d_domain.getDrugs().contains(fluox));
+	}
+
+	private List<Study> filter(Predicate<Study> predicate) {
+		List<Study> result = new ArrayList<Study>();
+		for (Study s : d_domain.getStudies()) {
+			if (predicate.evaluate(s)) {
+				result.add(s);
+			}
+		}
+		return result;
+	}
 }
@@ -30,6 +30,8 @@ package org.drugis.addis.entities;
 import static org.drugis.addis.entities.AssertEntityEquals.assertEntityEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -180,6 +182,19 @@ public class DomainTest {
 		assertFalse(d_domain.getBenefitRiskAnalyses().contains(mbr));
 	}
 
+	@Test
+	public void testMetaBenefitRiskAnalysisSharesBaselineModels() throws DependentEntitiesException {
+		MetaBenefitRiskAnalysis mbr = ExampleData.buildMetaBenefitRiskAnalysis();
+		ExampleData.initDefaultData(d_domain);
+		d_domain.getMetaAnalyses().add(ExampleData.buildMetaAnalysisHamd());
+		d_domain.getMetaAnalyses().add(ExampleData.buildMetaAnalysisConv());
+		d_domain.getBenefitRiskAnalyses().add(mbr);
+		assertNotNull(mbr.getBaselineModelRegistry());
+
+		d_domain.deleteEntity(mbr);
+		assertNull(mbr.getBaselineModelRegistry());
+	}
+
 	@Test
 	public void testAddMetaAnalysis() throws Exception {
 		assertEquals(0, d_domain.getMetaAnalyses().size());
@@ -0,0 +1,69 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.drugis.addis.ExampleData;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.jgoodies.binding.list.ObservableList;
+
+public class StudyIndexTest {
+	private StudyIndex d_index;
+	private Study d_study;
+	private Drug d_fluox;
+
+	@Before
+	public void setUp() {
+		d_index = new StudyIndex();
+		d_study = ExampleData.buildStudyChouinard();
+		d_fluox = ExampleData.buildDrugFluoxetine();
+		d_index.add(d_study);
+	}
+
+	@Test
+	public void testRemovePrunesEmptyKeys() {
+		assertTrue(d_index.getIndexedDrugs().contains(d_fluox));
+		d_index.remove(d_study);
+		assertFalse(d_index.getIndexedDrugs().contains(d_fluox));
+	}
+
+	@Test
+	public void testRemoveKeepsKeysWithViews() {
+		ObservableList<Study> studies = d_index.getStudies(d_fluox);
+		d_index.remove(d_study);
+		assertTrue(d_index.getIndexedDrugs().contains(d_fluox));
+		assertFalse(studies.contains(d_study));
+
+		d_index.add(d_study);
+		assertTrue(studies.contains(d_study));
+	}
+}
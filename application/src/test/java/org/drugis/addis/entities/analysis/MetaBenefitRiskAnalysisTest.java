@@ -29,9 +29,12 @@ package org.drugis.addis.entities.analysis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -42,6 +45,7 @@ import org.drugis.addis.entities.Entity;
 import org.drugis.addis.entities.Indication;
 import org.drugis.addis.entities.OutcomeMeasure;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis.AnalysisType;
+import org.drugis.addis.entities.relativeeffect.Distribution;
 import org.drugis.addis.entities.relativeeffect.Gaussian;
 import org.drugis.addis.entities.relativeeffect.GaussianBase;
 import org.drugis.addis.entities.relativeeffect.LogGaussian;
@@ -49,6 +53,7 @@ import org.drugis.addis.entities.relativeeffect.LogitGaussian;
 import org.drugis.addis.entities.treatment.Category;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
 import org.drugis.addis.util.EntityUtil;
+import org.drugis.mtc.presentation.MCMCModelWrapper;
 import org.drugis.mtc.summary.MultivariateNormalSummary;
 import org.junit.Before;
 import org.junit.Test;
@@ -85,6 +90,45 @@ public class MetaBenefitRiskAnalysisTest {
 		assertTrue(d_BRAnalysis.compareTo(otherBRAnalysis) > 0);
 	}
 	
+	@Test
+	public void testSharedBaselineModels() {
+		OutcomeMeasure om = ExampleData.buildEndpointHamd();
+		MetaBenefitRiskAnalysis other = ExampleData.buildMetaBenefitRiskAnalysis();
+		BaselineModelRegistry registry = new BaselineModelRegistry();
+		d_BRAnalysis.setBaselineModelRegistry(registry);
+		other.setBaselineModelRegistry(registry);
+
+		MCMCModelWrapper model = d_BRAnalysis.getBaselineModel(om);
+		assertSame(model, other.getBaselineModel(om));
+		assertEquals(2, registry.getReferenceCount(model));
+		assertNotSame(model, other.getBaselineModel(ExampleData.buildAdverseEventConvulsion()));
+		assertEquals(2, registry.getModelCount());
+
+		d_BRAnalysis.setBaselineModelRegistry(null);
+		assertEquals(1, registry.getReferenceCount(model));
+		assertNotSame(model, d_BRAnalysis.getBaselineModel(om));
+		other.setBaselineModelRegistry(null);
+		assertEquals(0, registry.getModelCount());
+	}
+
+	@Test
+	public void testBaselineModelCreatedOutsideRegistryLock() {
+		final BaselineModelRegistry registry = new BaselineModelRegistry();
+		final List<Boolean> lockHeld = new ArrayList<Boolean>();
+		MetaBenefitRiskAnalysis analysis = new MetaBenefitRiskAnalysis(d_BRAnalysis.getName(), d_BRAnalysis.getIndication(),
+				d_BRAnalysis.getMetaAnalyses(), d_BRAnalysis.getBaseline(), d_BRAnalysis.getAlternatives(), AnalysisType.SMAA) {
+			@Override
+			MCMCModelWrapper createBaselineModel(OutcomeMeasure om) {
+				lockHeld.add(Thread.holdsLock(registry));
+				return super.createBaselineModel(om);
+			}
+		};
+		analysis.setBaselineModelRegistry(registry);
+
+		analysis.getBaselineModel(ExampleData.buildEndpointHamd());
+		assertEquals(Collections.singletonList(false), lockHeld);
+	}
+
 	@Test
 	public void testToString() {
 		assertEquals(d_BRAnalysis.getName(), d_BRAnalysis.toString());
@@ -139,6 +183,44 @@ public class MetaBenefitRiskAnalysisTest {
 		assertEquals(baseline.getSigma(), absoluteP.getSigma(), 0.0001);
 	}
 	
+	@Test
+	public void testCachedViews() {
+		OutcomeMeasure om = ExampleData.buildEndpointHamd();
+		TreatmentDefinition fluox = TreatmentDefinition.createTrivial(ExampleData.buildDrugFluoxetine());
+
+		List<OutcomeMeasure> criteria = d_BRAnalysis.getCriteria();
+		assertSame(criteria, d_BRAnalysis.getCriteria());
+		assertSame(d_BRAnalysis.getMetaAnalyses(), d_BRAnalysis.getMetaAnalyses());
+		assertSame(d_BRAnalysis.getNonBaselineAlternatives(), d_BRAnalysis.getNonBaselineAlternatives());
+
+		GaussianBase relative = d_BRAnalysis.getRelativeEffectDistribution(om, fluox);
+		assertSame(relative, d_BRAnalysis.getRelativeEffectDistribution(om, fluox));
+		Distribution measurement = d_BRAnalysis.getMeasurement(om, fluox);
+		assertSame(measurement, d_BRAnalysis.getMeasurement(om, fluox));
+
+		// changing the baseline mode invalidates the distributions
+		d_BRAnalysis.setAnalyticBaseline(!d_BRAnalysis.isAnalyticBaseline());
+		assertNotSame(measurement, d_BRAnalysis.getMeasurement(om, fluox));
+		assertNotSame(relative, d_BRAnalysis.getRelativeEffectDistribution(om, fluox));
+		assertSame(criteria, d_BRAnalysis.getCriteria());
+
+		// changing the meta-analyses invalidates the criteria
+		d_BRAnalysis.setMetaAnalyses(new ArrayList<MetaAnalysis>(d_BRAnalysis.getMetaAnalyses()));
+		assertNotSame(criteria, d_BRAnalysis.getCriteria());
+		assertEquals(criteria, d_BRAnalysis.getCriteria());
+	}
+
+	@Test
+	public void testNonBaselineAlternativesFollowAlternatives() {
+		List<TreatmentDefinition> expected = new ArrayList<TreatmentDefinition>(d_BRAnalysis.getAlternatives());
+		expected.remove(d_BRAnalysis.getBaseline());
+		assertEquals(expected, d_BRAnalysis.getNonBaselineAlternatives());
+
+		TreatmentDefinition sertr = TreatmentDefinition.createTrivial(ExampleData.buildDrugSertraline());
+		d_BRAnalysis.getAlternatives().add(sertr);
+		assertTrue(d_BRAnalysis.getNonBaselineAlternatives().contains(sertr));
+	}
+
 	@Test
 	public void testGetMeasurementContinuous() {
 		OutcomeMeasure om = ExampleData.buildEndpointCgi();
@@ -29,6 +29,7 @@ package org.drugis.addis.entities.analysis;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -39,6 +40,7 @@ import org.drugis.addis.entities.Study;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
 import org.drugis.addis.mocks.MockNetworkMetaAnalysis;
 import org.drugis.common.JUnitUtil;
+import org.drugis.mtc.DefaultModelFactory;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -77,6 +79,13 @@ public class NetworkMetaAnalysisTest {
 		);
 		assertEquals(expected, d_analysis.getConsistencyModel().getRelativeEffectsList());
 	}
+
+	@Test
+	public void testNetworkCached() {
+		assertSame(d_analysis.getNetwork(), d_analysis.getNetwork());
+		assertSame(d_analysis.getSplitParameters(), d_analysis.getSplitParameters());
+		assertEquals(DefaultModelFactory.instance().getSplittableNodes(d_analysis.getBuilder().buildNetwork()), d_analysis.getSplitParameters());
+	}
 	
 	@Test
 	public void testIsContinuous() {
@@ -0,0 +1,99 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.drugis.addis.ExampleData;
+import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.common.stat.EstimateWithPrecision;
+import org.drugis.mtc.parameterization.BasicParameter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodeSplitBatchTest {
+	private NetworkMetaAnalysis d_analysis;
+
+	@Before
+	public void setUp() {
+		d_analysis = ExampleData.buildNetworkMetaAnalysisHamD();
+	}
+
+	@Test
+	public void testBatch() {
+		NodeSplitBatch batch = d_analysis.getNodeSplitBatch();
+		List<BasicParameter> parameters = batch.getParameters();
+		assertEquals(d_analysis.getSplitParameters().size(), parameters.size());
+		assertFalse(parameters.isEmpty());
+		for (int i = 1; i < parameters.size(); ++i) {
+			assertTrue(batch.getScore(parameters.get(i - 1)) >= batch.getScore(parameters.get(i)));
+		}
+		assertEquals(parameters.size(), batch.getTasks().size());
+		for (int i = 0; i < parameters.size(); ++i) {
+			assertSame(d_analysis.getNodeSplitModel(parameters.get(i)).getModel().getActivityTask(), batch.getTasks().get(i));
+		}
+		assertEquals(0, batch.getFinished());
+		assertEquals(0.0, batch.getProgress(), 0.0);
+		assertFalse(batch.isStarted());
+		assertFalse(batch.isFinished());
+	}
+
+	@Test
+	public void testOneBatchPerAnalysis() {
+		NodeSplitBatch batch = d_analysis.getNodeSplitBatch();
+		assertSame(batch, d_analysis.getNodeSplitBatch());
+
+		d_analysis.resetNodeSplitModels();
+		NodeSplitBatch reset = d_analysis.getNodeSplitBatch();
+		assertNotSame(batch, reset);
+		assertSame(d_analysis.getNodeSplitModel(reset.getParameters().get(0)).getModel().getActivityTask(), reset.getTasks().get(0));
+	}
+
+	@Test
+	public void testPreScreen() {
+		NodeSplitPreScreen screen = new NodeSplitPreScreen(d_analysis);
+		TreatmentDefinition fluox = TreatmentDefinition.createTrivial(ExampleData.buildDrugFluoxetine());
+		TreatmentDefinition parox = TreatmentDefinition.createTrivial(ExampleData.buildDrugParoxetine());
+		EstimateWithPrecision fp = screen.getDirect(fluox, parox);
+		EstimateWithPrecision pf = screen.getDirect(parox, fluox);
+		assertEquals(fp.getPointEstimate(), -pf.getPointEstimate(), 1e-12);
+		assertEquals(fp.getStandardError(), pf.getStandardError(), 1e-12);
+
+		for (BasicParameter p : d_analysis.getSplitParameters()) {
+			double score = screen.getScore(p);
+			assertTrue(score >= 0.0);
+			assertFalse(Double.isNaN(score));
+		}
+	}
+}
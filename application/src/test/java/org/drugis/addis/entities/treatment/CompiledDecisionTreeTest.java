@@ -0,0 +1,134 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.entities.treatment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.drugis.addis.ExampleData;
+import org.drugis.addis.entities.AbstractDose;
+import org.drugis.addis.entities.DoseUnit;
+import org.drugis.addis.entities.FixedDose;
+import org.drugis.addis.entities.FlexibleDose;
+import org.drugis.addis.entities.ScaleModifier;
+import org.drugis.addis.entities.UnknownDose;
+import org.junit.Test;
+
+public class CompiledDecisionTreeTest {
+	private final TreatmentCategorization d_tc = TreatmentCategorization.createDefault();
+
+	@Test
+	public void testTrivialDecision() {
+		final LeafNode root = new LeafNode();
+		assertSame(root, new CompiledDecisionTree(new DecisionTree(root)).decide("Tomato"));
+	}
+
+	@Test
+	public void testTypeSwitch() {
+		final DecisionTreeNode root = new ChoiceNode(Object.class, "class");
+		final DecisionTree tree = new DecisionTree(root);
+		tree.addEdge(new TypeEdge(String.class), root, new LeafNode(new Category(d_tc, "str")));
+		tree.addEdge(new TypeEdge(Integer.class), root, new LeafNode(new Category(d_tc, "int")));
+		final CompiledDecisionTree compiled = new CompiledDecisionTree(tree);
+		assertEquals("str", compiled.decide("Tomato").getName());
+		assertEquals("int", compiled.decide(42).getName());
+	}
+
+	@Test(expected=IllegalStateException.class)
+	public void testUnclassifiable() {
+		final DecisionTreeNode root = new ChoiceNode(Object.class, "class");
+		final DecisionTree tree = new DecisionTree(root);
+		tree.addEdge(new TypeEdge(String.class), root, new LeafNode(new Category(d_tc, "str")));
+		new CompiledDecisionTree(tree).decide(3.0);
+	}
+
+	@Test
+	public void testRangeBoundaries() {
+		final DoseUnit unit = DoseUnit.createMilliGramsPerDay();
+		final DecisionTreeNode root = new DoseQuantityChoiceNode(FixedDose.class, FixedDose.PROPERTY_QUANTITY, unit);
+		final DecisionTree tree = new DecisionTree(root);
+		// added out of order on purpose
+		tree.addEdge(new RangeEdge(80.0, true, Double.POSITIVE_INFINITY, true), root, new LeafNode(new Category(d_tc, "high")));
+		tree.addEdge(new RangeEdge(0.0, false, 20.0, false), root, new LeafNode(new Category(d_tc, "low")));
+		tree.addEdge(new RangeEdge(20.0, true, 80.0, true), root, new LeafNode(new Category(d_tc, "medium")));
+		tree.addEdge(new RangeEdge(80.0, false, 80.0, false), root, new LeafNode(new Category(d_tc, "eighty")));
+		final CompiledDecisionTree compiled = new CompiledDecisionTree(tree);
+
+		for (double q : new double[] { 0.0, 10.0, 20.0, 20.5, 79.9, 80.0, 80.1, 1000.0 }) {
+			final FixedDose dose = new FixedDose(q, unit);
+			assertSame(tree.decide(dose), compiled.decide(dose));
+		}
+		assertEquals("low", compiled.decide(new FixedDose(20.0, unit)).getName());
+		assertEquals("eighty", compiled.decide(new FixedDose(80.0, unit)).getName());
+		assertEquals("high", compiled.decide(new FixedDose(80.1, unit)).getName());
+	}
+
+	@Test
+	public void testUnitConversion() {
+		final DoseUnit mg = DoseUnit.createMilliGramsPerDay();
+		final DoseUnit g = new DoseUnit(mg.getUnit(), ScaleModifier.UNIT, mg.getPerTime());
+		final DecisionTreeNode root = new DoseQuantityChoiceNode(FixedDose.class, FixedDose.PROPERTY_QUANTITY, mg);
+		final DecisionTree tree = new DecisionTree(root);
+		tree.addEdge(new RangeEdge(0.0, false, 20.0, false), root, new LeafNode(new Category(d_tc, "low")));
+		tree.addEdge(new RangeEdge(20.0, true, Double.POSITIVE_INFINITY, true), root, new LeafNode(new Category(d_tc, "high")));
+		final CompiledDecisionTree compiled = new CompiledDecisionTree(tree);
+		assertEquals("low", compiled.decide(new FixedDose(0.015, g)).getName());
+		assertEquals("high", compiled.decide(new FixedDose(0.025, g)).getName());
+	}
+
+	@Test
+	public void testEquivalentOnExampleCategorizations() {
+		final List<TreatmentCategorization> categorizations = new ArrayList<TreatmentCategorization>();
+		categorizations.add(ExampleData.buildCategorizationFixedDose(ExampleData.buildDrugFluoxetine()));
+		categorizations.add(ExampleData.buildCategorizationKnownDose(ExampleData.buildDrugFluoxetine()));
+		categorizations.add(ExampleData.buildCategorizationUpto20mg(ExampleData.buildDrugFluoxetine()));
+		categorizations.add(ExampleData.buildCategorizationFixedFlexible(ExampleData.buildDrugFluoxetine()));
+
+		final DoseUnit unit = DoseUnit.createMilliGramsPerDay();
+		final Random random = new Random(42);
+		final List<AbstractDose> doses = new ArrayList<AbstractDose>();
+		doses.add(new UnknownDose());
+		for (int i = 0; i < 200; ++i) {
+			final double a = Math.round(random.nextDouble() * 400.0) / 10.0;
+			final double b = a + Math.round(random.nextDouble() * 400.0) / 10.0;
+			doses.add(new FixedDose(a, unit));
+			doses.add(new FlexibleDose(a, b, unit));
+		}
+
+		for (final TreatmentCategorization tc : categorizations) {
+			final CompiledDecisionTree compiled = new CompiledDecisionTree(tc.getDecisionTree());
+			for (final AbstractDose dose : doses) {
+				assertSame(tc.getDecisionTree().decide(dose), compiled.decide(dose));
+			}
+		}
+	}
+}
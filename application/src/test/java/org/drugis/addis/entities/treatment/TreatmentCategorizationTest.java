@@ -47,6 +47,7 @@ import org.drugis.addis.entities.Drug;
 import org.drugis.addis.entities.Entity;
 import org.drugis.addis.entities.FixedDose;
 import org.drugis.addis.entities.FlexibleDose;
+import org.drugis.addis.entities.ScaleModifier;
 import org.drugis.addis.entities.UnknownDose;
 import org.drugis.common.Interval;
 import org.junit.Before;
@@ -129,6 +130,39 @@ public class TreatmentCategorizationTest {
 		assertEquals(medium, tree.decide(new FixedDose(18.0, DoseUnit.createMilliGramsPerDay())));
 	}
 
+	@Test
+	public void testGetCategoryFollowsTreeChanges() {
+		final DecisionTree tree = d_treatment.getDecisionTree();
+		final ChoiceNode choice = new DoseQuantityChoiceNode(FixedDose.class, FixedDose.PROPERTY_QUANTITY, DoseUnit.createMilliGramsPerDay());
+		tree.replaceChild(tree.findMatchingEdge(tree.getRoot(), FixedDose.class), choice);
+		final Category low = new Category(d_treatment, "Low Dose");
+		tree.addChild(new RangeEdge(0.0, false, Double.POSITIVE_INFINITY, false), choice, new LeafNode(low));
+
+		final FixedDose dose = new FixedDose(30.0, DoseUnit.createMilliGramsPerDay());
+		assertEquals(low, d_treatment.getCategory(dose));
+		d_treatment.splitRange(choice, 20.0, false);
+		assertNull(d_treatment.getCategory(dose));
+
+		dose.setQuantity(15.0);
+		assertEquals(low, d_treatment.getCategory(dose));
+		assertEquals(low, d_treatment.getCategory(new FixedDose(15.0, DoseUnit.createMilliGramsPerDay())));
+	}
+
+	@Test
+	public void testGetCategoryFollowsDoseUnitChanges() {
+		final DecisionTree tree = d_treatment.getDecisionTree();
+		final ChoiceNode choice = new DoseQuantityChoiceNode(FixedDose.class, FixedDose.PROPERTY_QUANTITY, d_treatment.getDoseUnit());
+		tree.replaceChild(tree.findMatchingEdge(tree.getRoot(), FixedDose.class), choice);
+		final Category high = new Category(d_treatment, "High Dose");
+		tree.addChild(new RangeEdge(10.0, false, Double.POSITIVE_INFINITY, false), choice, new LeafNode(high));
+		tree.addChild(new RangeEdge(0.0, false, 10.0, true), choice, new LeafNode());
+
+		final FixedDose dose = new FixedDose(15.0, DoseUnit.createMilliGramsPerDay());
+		assertEquals(high, d_treatment.getCategory(dose));
+		d_treatment.getDoseUnit().setScaleModifier(ScaleModifier.UNIT);
+		assertNull(d_treatment.getCategory(dose));
+	}
+
 	@Test
 	public void testMultipleTypes() {
 		final LeafNode excludeNode = new LeafNode();
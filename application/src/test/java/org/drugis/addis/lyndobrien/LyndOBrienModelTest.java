@@ -31,6 +31,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.drugis.addis.lyndobrien.BenefitRiskDistribution.Sample;
 import org.drugis.common.threading.Task;
@@ -42,6 +44,8 @@ import org.drugis.common.threading.event.TaskEvent.EventType;
 import org.junit.Before;
 import org.junit.Test;
 
+import fi.smaa.common.RandomUtil;
+
 public class LyndOBrienModelTest {
 	private static final double EPSILON = 0.00000000001;
 	private MockBenefitRiskDistr d_mockDistr;
@@ -73,6 +77,87 @@ public class LyndOBrienModelTest {
 		}
 	}
 	
+	@Test
+	public void testPValuesMatchDirectCount() throws InterruptedException {
+		LyndOBrienModel model = new LyndOBrienModelImpl(d_mockDistr);
+		TaskUtil.run(model.getTask());
+		double[][] samples = d_mockDistr.getSamples();
+		for (double mu = 0.01; mu < 4; mu += 0.01) {
+			assertEquals(directPValue(samples, mu), model.getPValue(mu), EPSILON);
+		}
+		assertEquals(directPValue(samples, 0.0), model.getPValue(0.0), EPSILON);
+		assertEquals(directPValue(samples, -1.0), model.getPValue(-1.0), EPSILON);
+	}
+
+	@Test
+	public void testCustomIterations() throws InterruptedException {
+		LyndOBrienModel model = new LyndOBrienModelImpl(d_mockDistr, 100);
+		assertEquals(100, model.getSimulationIterations());
+		TaskUtil.run(model.getTask());
+		assertEquals(d_mockDistr.getSamples()[0][99], model.getData(99).benefit, EPSILON);
+	}
+
+	private static class GaussianDistr implements BenefitRiskDistribution {
+		public void nextSample(RandomUtil random, double[] sample) {
+			sample[0] = random.createGaussian(1.0, 1.0);
+			sample[1] = random.createGaussian(0.5, 2.0);
+		}
+
+		public String getBenefitAxisName() {
+			return "Benefit";
+		}
+
+		public String getRiskAxisName() {
+			return "Risk";
+		}
+	}
+
+	private static LyndOBrienModel runParallel(int nThreads, int iterations, long seed) throws InterruptedException {
+		List<BenefitRiskDistribution> brds = new ArrayList<BenefitRiskDistribution>();
+		for (int i = 0; i < nThreads; ++i) {
+			brds.add(new GaussianDistr());
+		}
+		LyndOBrienModel model = new LyndOBrienModelImpl(brds, iterations, seed);
+		TaskUtil.run(model.getTask());
+		return model;
+	}
+
+	@Test
+	public void testParallelIndependentOfThreadCount() throws InterruptedException {
+		final int iterations = 3 * LyndOBrienModelImpl.BLOCK_SIZE + 17;
+		LyndOBrienModel expected = runParallel(1, iterations, 1337L);
+		for (int nThreads : new int[] { 2, 3, 8 }) {
+			LyndOBrienModel actual = runParallel(nThreads, iterations, 1337L);
+			for (int i = 0; i < iterations; ++i) {
+				assertEquals(expected.getData(i).benefit, actual.getData(i).benefit, 0.0);
+				assertEquals(expected.getData(i).risk, actual.getData(i).risk, 0.0);
+			}
+			assertEquals(expected.getPValue(0.5), actual.getPValue(0.5), 0.0);
+		}
+	}
+
+	@Test
+	public void testSeedMatters() throws InterruptedException {
+		LyndOBrienModel model1 = runParallel(2, 1000, 1L);
+		LyndOBrienModel model2 = runParallel(2, 1000, 2L);
+		assertTrue(model1.getData(0).benefit != model2.getData(0).benefit);
+		assertTrue(model1.getData(LyndOBrienModelImpl.BLOCK_SIZE).benefit != model2.getData(LyndOBrienModelImpl.BLOCK_SIZE).benefit);
+		assertTrue(LyndOBrienModelImpl.blockSeed(1L, 0) != LyndOBrienModelImpl.blockSeed(1L, 1));
+	}
+
+	private static double directPValue(double[][] samples, double mu) {
+		double belowMu = 0;
+		int n = samples[0].length;
+		for (int i = 0; i < n; ++i) {
+			double benefit = samples[0][i];
+			double risk = samples[1][i];
+			if ((benefit < 0 && risk / benefit > mu) || (benefit > 0 && risk / benefit < mu) || (benefit == 0 && risk < 0)) {
+				++belowMu;
+			}
+		}
+		return belowMu / n;
+	}
+
 	@Test
 	public void testDataAfterEachInterval() throws InterruptedException {
 		final LyndOBrienModel model = new LyndOBrienModelImpl(d_mockDistr);
@@ -68,10 +68,11 @@ public class MockBenefitRiskDistr implements BenefitRiskDistribution {
 		return AxisType.LINEAR;
 	}
 
-	public Sample nextSample(RandomUtil random) {
+	public void nextSample(RandomUtil random, double[] sample) {
 		int idx = d_currentSample;
 		++d_currentSample;
-		return new Sample(d_samples[0][idx], d_samples[1][idx]); 
+		sample[0] = d_samples[0][idx];
+		sample[1] = d_samples[1][idx];
 	}
 	
 	double[][] getSamples() {
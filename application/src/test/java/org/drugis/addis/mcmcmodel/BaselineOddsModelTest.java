@@ -28,11 +28,23 @@
 package org.drugis.addis.mcmcmodel;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 
+import org.drugis.addis.entities.BasicRateMeasurement;
 import org.drugis.addis.entities.RateMeasurement;
+import org.drugis.common.stat.DichotomousDescriptives;
+import org.drugis.common.stat.EstimateWithPrecision;
+import org.drugis.common.threading.Task;
+import org.drugis.mtc.Parameter;
+import org.drugis.mtc.summary.NormalSummary;
+import org.drugis.mtc.util.DerSimonianLairdPooling;
 import org.junit.Test;
 
 public class BaselineOddsModelTest {
@@ -53,4 +65,114 @@ public class BaselineOddsModelTest {
 		model.setSimulationIterations(newIter);
 		assertEquals(newIter, (int)model.getSettings().getSimulationIterations());
 	}
+	
+	@Test
+	public void testAdaptive() {
+		BaselineOddsModel model = new BaselineOddsModel(new ArrayList<RateMeasurement>());
+		assertFalse(model.isAdaptive());
+		model.setAdaptive(true);
+		assertTrue(model.isAdaptive());
+		assertEquals(AbstractBaselineModel.ADAPTIVE_SIMULATION_ITERATIONS, (int)model.getSettings().getSimulationIterations());
+		assertTrue(Double.isNaN(model.getScaleReduction()));
+		assertEquals(0, model.getSimulatedIterations());
+		model.setAdaptive(false);
+		assertEquals(AbstractBaselineModel.SIMULATION_ITERATIONS, (int)model.getSettings().getSimulationIterations());
+	}
+	
+	@Test
+	public void testPsrf() {
+		double[][] same = { {1.0, 2.0, 3.0, 4.0}, {4.0, 3.0, 2.0, 1.0} };
+		// identical chain means: B = 0, W = 5/3, so PSRF = sqrt((n - 1) / n)
+		assertEquals(Math.sqrt(0.75), AbstractBaselineModel.calculatePsrf(same), 1e-12);
+		
+		double[][] apart = { {1.0, 2.0, 3.0, 4.0}, {11.0, 12.0, 13.0, 14.0} };
+		// W = 5/3, B/n = 50, PSRF = sqrt((3/4 W + 3/2 * 50) / W)
+		double w = 5.0 / 3.0;
+		assertEquals(Math.sqrt((0.75 * w + 1.5 * 50.0) / w), AbstractBaselineModel.calculatePsrf(apart), 1e-12);
+		
+		assertTrue(Double.isNaN(AbstractBaselineModel.calculatePsrf(new double[][] { {1.0, 2.0} })));
+	}
+	
+	@Test
+	public void testStandardDeviationPrior() {
+		List<RateMeasurement> measurements = Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144), new BasicRateMeasurement(9, 52),
+				new BasicRateMeasurement(20, 40));
+		BaselineOddsModel model = new BaselineOddsModel(measurements);
+		double maxDev = 0.0;
+		for (int i = 0; i < measurements.size(); ++i) {
+			for (int j = 0; j < measurements.size(); ++j) {
+				maxDev = Math.max(maxDev, Math.abs(model.estimateTreatmentEffect(i).getPointEstimate() - model.estimateTreatmentEffect(j).getPointEstimate()));
+			}
+		}
+		assertEquals(2 * maxDev, model.getStandardDeviationPrior(), 1e-12);
+		assertEquals(0.0, new BaselineOddsModel(measurements.subList(0, 1)).getStandardDeviationPrior(), 0.0);
+	}
+	
+	@Test
+	public void testAnalyticSummary() {
+		List<RateMeasurement> measurements = Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144), new BasicRateMeasurement(9, 52));
+		BaselineOddsModel model = new BaselineOddsModel(measurements);
+		
+		DichotomousDescriptives descriptives = new DichotomousDescriptives(true);
+		List<EstimateWithPrecision> estimates = new ArrayList<EstimateWithPrecision>();
+		for (RateMeasurement m : measurements) {
+			estimates.add(new EstimateWithPrecision(descriptives.logOdds(m.getRate(), m.getSampleSize()),
+					descriptives.logOddsError(m.getRate(), m.getSampleSize())));
+		}
+		EstimateWithPrecision expected = new DerSimonianLairdPooling(estimates).getPooled();
+		
+		NormalSummary summary = model.getAnalyticSummary();
+		assertTrue(summary.getDefined());
+		assertEquals(expected.getPointEstimate(), summary.getMean(), 1e-12);
+		assertEquals(expected.getStandardError(), summary.getStandardDeviation(), 1e-12);
+		assertTrue(model.isAnalyticSummaryAdequate());
+		assertTrue(Double.isNaN(model.getAnalyticError()));
+	}
+	
+	@Test
+	public void testAnalyticSummaryAdequacy() {
+		assertFalse(new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144))).isAnalyticSummaryAdequate());
+		assertFalse(new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144),
+				new BasicRateMeasurement(2, 52))).isAnalyticSummaryAdequate());
+		assertFalse(new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144),
+				new BasicRateMeasurement(48, 52))).isAnalyticSummaryAdequate());
+	}
+	
+	@Test
+	public void testChainParallel() {
+		BaselineOddsModel model = new BaselineOddsModel(new ArrayList<RateMeasurement>(), true);
+		assertTrue(model.isChainParallel());
+		assertEquals(1, (int)model.getSettings().getNumberOfChains());
+		assertEquals(AbstractBaselineModel.NUMBER_OF_CHAINS, model.getChainTasks().size());
+		assertEquals(AbstractBaselineModel.NUMBER_OF_CHAINS, new HashSet<Task>(model.getChainTasks()).size());
+		assertTrue(model.getChainTasks().contains(model.getActivityTask()));
+		assertFalse(model.getSummary().getDefined());
+		assertEquals(AbstractBaselineModel.NUMBER_OF_CHAINS * AbstractBaselineModel.SIMULATION_ITERATIONS, model.getSavedIterations());
+		
+		BaselineOddsModel sequential = new BaselineOddsModel(new ArrayList<RateMeasurement>());
+		assertFalse(sequential.isChainParallel());
+		assertEquals(AbstractBaselineModel.NUMBER_OF_CHAINS, (int)sequential.getSettings().getNumberOfChains());
+		assertEquals(Collections.singletonList(sequential.getActivityTask()), sequential.getChainTasks());
+	}
+	
+	@Test
+	public void testPooledSummary() {
+		PooledNormalSummary summary = new PooledNormalSummary(new Parameter() {
+			public String getName() {
+				return "mu";
+			}
+		});
+		assertFalse(summary.getDefined());
+		// second halves: {3, 4} and {13, 14} (truncated to the length of the shortest chain)
+		summary.update(new double[][] { {1.0, 2.0, 3.0, 4.0}, {11.0, 12.0, 13.0, 14.0, 15.0} });
+		assertTrue(summary.getDefined());
+		assertEquals(8.5, summary.getMean(), 1e-12);
+		double ss = 2 * 5.5 * 5.5 + 2 * 4.5 * 4.5;
+		assertEquals(Math.sqrt(ss / 3), summary.getStandardDeviation(), 1e-12);
+	}
 }
@@ -0,0 +1,168 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.mcmcmodel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+
+import org.drugis.addis.entities.BasicRateMeasurement;
+import org.drugis.addis.entities.RateMeasurement;
+import org.drugis.common.threading.Task;
+import org.drugis.common.threading.ThreadHandler;
+import org.drugis.mtc.summary.NormalSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MCMCResultCacheTest {
+	private static final int ENTRY_SIZE = 16 + 2 * 8; // header and two doubles
+
+	private File d_dir;
+
+	@Before
+	public void setUp() throws Exception {
+		d_dir = File.createTempFile("mcmc", ".cache");
+		d_dir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = d_dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		d_dir.delete();
+	}
+
+	@Test
+	public void testPutGet() {
+		MCMCResultCache cache = new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE);
+		assertNull(cache.get("a"));
+		cache.put("a", new double[] { 1.0, 2.5 });
+		assertArrayEquals(new double[] { 1.0, 2.5 }, cache.get("a"), 0.0);
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(ENTRY_SIZE, cache.getSize());
+
+		cache.put("a", new double[] { 3.0, 4.0 });
+		assertArrayEquals(new double[] { 3.0, 4.0 }, cache.get("a"), 0.0);
+		assertEquals(ENTRY_SIZE, cache.getSize());
+	}
+
+	@Test
+	public void testPersistent() {
+		new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE).put("a", new double[] { 1.0, 2.5 });
+		MCMCResultCache cache = new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE);
+		assertArrayEquals(new double[] { 1.0, 2.5 }, cache.get("a"), 0.0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		MCMCResultCache cache = new MCMCResultCache(d_dir, 3 * ENTRY_SIZE);
+		cache.put("a", new double[] { 1.0, 1.0 });
+		cache.put("b", new double[] { 2.0, 2.0 });
+		cache.put("c", new double[] { 3.0, 3.0 });
+		assertNotNull(cache.get("a"));
+		cache.put("d", new double[] { 4.0, 4.0 });
+
+		assertEquals(3, cache.getEntryCount());
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertNotNull(cache.get("d"));
+		assertFalse(new File(d_dir, "b" + MCMCResultCache.EXTENSION).exists());
+	}
+
+	@Test
+	public void testCorruptEntryIgnored() throws Exception {
+		MCMCResultCache cache = new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE);
+		cache.put("a", new double[] { 1.0, 2.5 });
+		new FileOutputStream(new File(d_dir, "a" + MCMCResultCache.EXTENSION)).close();
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testBaselineModel() {
+		MCMCResultCache cache = new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE);
+		BaselineOddsModel model = new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144)));
+		model.setResultCache(cache);
+		assertNull(model.getCachedSummary());
+
+		cache.put(model.getCacheKey(), new double[] { -0.5, 0.3 });
+		BaselineOddsModel other = new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144)), true);
+		other.setResultCache(cache);
+		NormalSummary summary = other.getCachedSummary();
+		assertEquals(-0.5, summary.getMean(), 0.0);
+		assertEquals(0.3, summary.getStandardDeviation(), 0.0);
+
+		other.setAdaptive(true);
+		other.setResultCache(cache);
+		assertNull(other.getCachedSummary());
+	}
+
+	@Test
+	public void testAbortedRunNotStored() throws InterruptedException {
+		MCMCResultCache cache = new MCMCResultCache(d_dir, MCMCResultCache.DEFAULT_MAX_SIZE);
+		BaselineOddsModel model = new BaselineOddsModel(Arrays.<RateMeasurement>asList(
+				new BasicRateMeasurement(30, 47), new BasicRateMeasurement(63, 144)));
+		model.setResultCache(cache);
+
+		Task task = model.getActivityTask();
+		ThreadHandler.getInstance().scheduleTask(task);
+		while (!task.isStarted()) {
+			Thread.sleep(1);
+		}
+		ThreadHandler.getInstance().abortTask(task);
+		while (!task.isAborted() && !task.isFinished()) {
+			Thread.sleep(10);
+		}
+		assumeTrue(task.isAborted());
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testKey() {
+		String hash = new MCMCResultCache.Key("model").add(3).add(new BasicRateMeasurement(10, 100)).getHash();
+		assertEquals(40, hash.length());
+		assertEquals(hash, new MCMCResultCache.Key("model").add(3).add(new BasicRateMeasurement(10, 100)).getHash());
+		assertFalse(hash.equals(new MCMCResultCache.Key("model").add(3).add(new BasicRateMeasurement(11, 100)).getHash()));
+		assertFalse(hash.equals(new MCMCResultCache.Key("other").add(3).add(new BasicRateMeasurement(10, 100)).getHash()));
+	}
+}
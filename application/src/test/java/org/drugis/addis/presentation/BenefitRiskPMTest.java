@@ -28,12 +28,16 @@
 package org.drugis.addis.presentation;
 
 import static org.drugis.common.JUnitUtil.assertAllAndOnly;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.drugis.addis.ExampleData;
 import org.drugis.addis.entities.Domain;
 import org.drugis.addis.entities.DomainImpl;
+import org.drugis.addis.entities.OutcomeMeasure;
 import org.drugis.addis.entities.analysis.MetaBenefitRiskAnalysis;
 import org.drugis.addis.entities.analysis.StudyBenefitRiskAnalysis;
+import org.drugis.addis.mcmcmodel.AbstractBaselineModel;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -59,4 +63,14 @@ public class BenefitRiskPMTest {
 	public void testGetAnalysesModel() {
 		assertAllAndOnly(d_mpm.getBean().getMetaAnalyses(), d_mpm.getAnalysesModel());
 	}
+
+	@Test
+	public void testAnalyticBaseline() {
+		assertTrue(d_mpm.getBean().isAnalyticBaseline());
+		for (OutcomeMeasure om : d_mpm.getBean().getCriteria()) {
+			AbstractBaselineModel<?> model = (AbstractBaselineModel<?>) d_mpm.getBean().getBaselineModel(om).getModel();
+			assertEquals(!model.isAnalyticSummaryAdequate() && model.getCachedSummary() == null,
+					d_mpm.getBean().isBaselineSimulationRequired(om));
+		}
+	}
 }
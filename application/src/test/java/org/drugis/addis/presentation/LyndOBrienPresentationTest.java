@@ -27,18 +27,24 @@
 
 package org.drugis.addis.presentation;
 
+import static org.junit.Assert.assertEquals;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.drugis.addis.ExampleData;
+import org.drugis.addis.entities.Arm;
 import org.drugis.addis.entities.Drug;
 import org.drugis.addis.entities.Indication;
 import org.drugis.addis.entities.OutcomeMeasure;
 import org.drugis.addis.entities.analysis.MetaAnalysis;
 import org.drugis.addis.entities.analysis.MetaBenefitRiskAnalysis;
+import org.drugis.addis.entities.analysis.StudyBenefitRiskAnalysis;
 import org.drugis.addis.entities.analysis.BenefitRiskAnalysis.AnalysisType;
 import org.drugis.addis.entities.treatment.TreatmentDefinition;
+import org.drugis.addis.lyndobrien.LyndOBrienModelImpl;
+import org.drugis.common.threading.ThreadHandler;
 import org.junit.Test;
 
 public class LyndOBrienPresentationTest {
@@ -48,6 +54,16 @@ public class LyndOBrienPresentationTest {
 		new LyndOBrienPresentation<TreatmentDefinition, MetaBenefitRiskAnalysis>(br);
 	}
 	
+	@Test
+	public void testUsesAnalysisSeed() {
+		StudyBenefitRiskAnalysis br = ExampleData.buildStudyLOBenefitRiskAnalysis();
+		br.setSimulationSeed(1234L);
+		LyndOBrienPresentation<Arm, StudyBenefitRiskAnalysis> pm = new LyndOBrienPresentation<Arm, StudyBenefitRiskAnalysis>(br);
+		pm.startLyndOBrien();
+		ThreadHandler.getInstance().abortTask(pm.getTask());
+		assertEquals(1234L, ((LyndOBrienModelImpl) pm.getModel()).getSeed());
+	}
+
 	public static MetaBenefitRiskAnalysis buildAnalysis() {
 		Indication indication = ExampleData.buildIndicationDepression();
 		
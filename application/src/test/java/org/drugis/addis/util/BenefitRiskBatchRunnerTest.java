@@ -0,0 +1,145 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.drugis.addis.ExampleData;
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.DomainImpl;
+import org.drugis.addis.entities.OutcomeMeasure;
+import org.drugis.addis.entities.Study;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis.AnalysisType;
+import org.drugis.addis.entities.analysis.StudyBenefitRiskAnalysis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BenefitRiskBatchRunnerTest {
+	private File d_dir;
+	private Domain d_domain;
+
+	@Before
+	public void setUp() throws Exception {
+		d_dir = File.createTempFile("batch", ".out");
+		d_dir.delete();
+		d_domain = new DomainImpl();
+		ExampleData.initDefaultData(d_domain);
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = d_dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		d_dir.delete();
+	}
+
+	@Test
+	public void testRun() throws Exception {
+		StudyBenefitRiskAnalysis analysis = ExampleData.buildStudyBenefitRiskAnalysis();
+		analysis.setSimulationIterations(1000);
+		d_domain.getBenefitRiskAnalyses().add(analysis);
+
+		assertEquals(0, new BenefitRiskBatchRunner(d_domain, 2).run(d_dir));
+
+		File file = BenefitRiskBatchRunner.getFiles(d_dir, Collections.<BenefitRiskAnalysis<?>>singletonList(analysis)).get(0);
+		assertTrue(file.isFile());
+		JsonNode root = new ObjectMapper().readTree(file);
+		assertEquals(analysis.getName(), root.get("title").getTextValue());
+		assertEquals(analysis.getName(), root.get("problem").get("title").getTextValue());
+		assertTrue(root.get("measurements").size() > 0);
+
+		JsonNode results = root.get("results");
+		assertEquals(1000, results.get("iterations").getLongValue());
+		assertEquals(analysis.getAlternatives().size(), results.get("rankAcceptabilities").size());
+		for (JsonNode ranks : results.get("rankAcceptabilities")) {
+			double sum = 0.0;
+			for (JsonNode ra : ranks) {
+				sum += ra.getDoubleValue();
+			}
+			assertEquals(1.0, sum, 0.0000001);
+		}
+		assertEquals(analysis.getAlternatives().size(), results.get("centralWeights").size());
+	}
+
+	@Test
+	public void testReproducible() throws Exception {
+		StudyBenefitRiskAnalysis analysis = ExampleData.buildStudyBenefitRiskAnalysis();
+		analysis.setSimulationIterations(1000);
+		BenefitRiskBatchRunner runner = new BenefitRiskBatchRunner(d_domain, 1);
+		assertEquals(runner.analyze(analysis), runner.analyze(analysis));
+	}
+
+	@Test
+	public void testLyndOBrien() throws Exception {
+		StudyBenefitRiskAnalysis analysis = ExampleData.buildStudyLOBenefitRiskAnalysis();
+		JsonNode results = new BenefitRiskBatchRunner(d_domain, 1).analyze(analysis).get("results");
+
+		JsonNode acceptability = results.get("acceptability");
+		assertEquals(399, acceptability.size());
+		assertEquals(0.01, acceptability.get(0).get("mu").getDoubleValue(), 0.0000001);
+		for (JsonNode point : acceptability) {
+			double p = point.get("p").getDoubleValue();
+			assertTrue(p >= 0.0 && p <= 1.0);
+		}
+	}
+
+	@Test
+	public void testFileNamesAreUnique() {
+		List<BenefitRiskAnalysis<?>> analyses = Arrays.<BenefitRiskAnalysis<?>>asList(
+				buildAnalysis("Study BR"), buildAnalysis("study-br"), buildAnalysis("Study-BR"), buildAnalysis("Other"));
+		List<File> files = BenefitRiskBatchRunner.getFiles(d_dir, analyses);
+		assertEquals(Arrays.asList(new File(d_dir, "study-br.json"), new File(d_dir, "study-br-2.json"),
+				new File(d_dir, "study-br-3.json"), new File(d_dir, "other.json")), files);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidThreads() {
+		new BenefitRiskBatchRunner(d_domain, 0);
+	}
+
+	private static StudyBenefitRiskAnalysis buildAnalysis(String name) {
+		Study study = ExampleData.buildStudyChouinard();
+		return new StudyBenefitRiskAnalysis(name, ExampleData.buildIndicationDepression(), study,
+				Arrays.<OutcomeMeasure>asList(ExampleData.buildEndpointHamd(), ExampleData.buildEndpointCgi()),
+				study.getArms(), AnalysisType.SMAA);
+	}
+}
@@ -28,19 +28,12 @@
 package org.drugis.addis.util.JSMAAintegration;
 
 
-import java.util.Collections;
-
 import org.drugis.addis.util.JSMAAintegration.NetworkBenefitRiskIT;
 import org.drugis.common.threading.TaskUtil;
 import org.junit.Test;
 
 import fi.smaa.common.RandomUtil;
-import fi.smaa.jsmaa.model.Alternative;
-import fi.smaa.jsmaa.model.Criterion;
-import fi.smaa.jsmaa.model.CriterionMeasurement;
-import fi.smaa.jsmaa.model.PerCriterionMeasurements;
 import fi.smaa.jsmaa.model.SMAAModel;
-import fi.smaa.jsmaa.model.ScaleCriterion;
 import fi.smaa.jsmaa.simulator.SMAA2Simulation;
 
 /**
@@ -55,23 +48,7 @@ public class NetworkBenefitRiskTest extends NetworkBenefitRiskTestBase {
 	 */
 	@Test
 	public void testSMAA() throws InterruptedException {
-		PerCriterionMeasurements measurements = new PerCriterionMeasurements(Collections.<Criterion>emptyList(), Collections.<Alternative>emptyList());
-		SMAAModel model = new SMAAModel("Test", measurements);
-		model.addAlternative(new Alternative("Placebo"));
-		model.addAlternative(new Alternative("Fluoxetine"));
-		model.addAlternative(new Alternative("Paroxetine"));
-		model.addAlternative(new Alternative("Sertraline"));
-		model.addAlternative(new Alternative("Venlafaxine"));
-		
-		addCriterion(model, measurements, new ScaleCriterion("Diarrhea", false), buildDiarrhea(model.getAlternatives()));
-		addCriterion(model, measurements, new ScaleCriterion("Dizziness", false), buildDizziness(model.getAlternatives()));
-		addCriterion(model, measurements, new ScaleCriterion("HAM-D Responders", true), buildHAMD(model.getAlternatives()));
-		addCriterion(model, measurements, new ScaleCriterion("Headache", false), buildHeadache(model.getAlternatives()));
-		addCriterion(model, measurements, new ScaleCriterion("Insomnia", false), buildInsomnia(model.getAlternatives()));
-		addCriterion(model, measurements, new ScaleCriterion("Nausea", false), buildNausea(model.getAlternatives()));
-		
-		// Reorder alternatives
-		model.reorderAlternatives(movePlacebo(model.getAlternatives(), 0, 2));
+		SMAAModel model = buildModel();
 		
 		RandomUtil random = RandomUtil.createWithRandomSeed();
 		SMAA2Simulation simulation = new SMAA2Simulation(model, random, 10000);
@@ -79,9 +56,4 @@ public class NetworkBenefitRiskTest extends NetworkBenefitRiskTestBase {
 		
 		checkResults(model, simulation, 1.0);
 	}
-
-	private void addCriterion(SMAAModel model, PerCriterionMeasurements measurements, final ScaleCriterion c, final CriterionMeasurement m) {
-		model.addCriterion(c);
-		measurements.setCriterionMeasurement(c, m);
-	}
 }
@@ -31,6 +31,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
@@ -42,9 +43,12 @@ import fi.smaa.jsmaa.model.Criterion;
 import fi.smaa.jsmaa.model.CriterionMeasurement;
 import fi.smaa.jsmaa.model.GaussianMeasurement;
 import fi.smaa.jsmaa.model.MultivariateGaussianCriterionMeasurement;
+import fi.smaa.jsmaa.model.PerCriterionMeasurements;
 import fi.smaa.jsmaa.model.RelativeGaussianCriterionMeasurement;
 import fi.smaa.jsmaa.model.RelativeLogitGaussianCriterionMeasurement;
 import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.model.ScaleCriterion;
+import fi.smaa.jsmaa.simulator.SMAA2Results;
 import fi.smaa.jsmaa.simulator.SMAA2Simulation;
 
 public class NetworkBenefitRiskTestBase {
@@ -172,7 +176,40 @@ public class NetworkBenefitRiskTestBase {
 		super();
 	}
 
+	/**
+	 * Build the SMAA model from the measurements derived in R, with the alternatives in the order of the paper.
+	 */
+	protected static SMAAModel buildModel() {
+		PerCriterionMeasurements measurements = new PerCriterionMeasurements(Collections.<Criterion>emptyList(), Collections.<Alternative>emptyList());
+		SMAAModel model = new SMAAModel("Test", measurements);
+		model.addAlternative(new Alternative("Placebo"));
+		model.addAlternative(new Alternative("Fluoxetine"));
+		model.addAlternative(new Alternative("Paroxetine"));
+		model.addAlternative(new Alternative("Sertraline"));
+		model.addAlternative(new Alternative("Venlafaxine"));
+		
+		addCriterion(model, measurements, new ScaleCriterion("Diarrhea", false), buildDiarrhea(model.getAlternatives()));
+		addCriterion(model, measurements, new ScaleCriterion("Dizziness", false), buildDizziness(model.getAlternatives()));
+		addCriterion(model, measurements, new ScaleCriterion("HAM-D Responders", true), buildHAMD(model.getAlternatives()));
+		addCriterion(model, measurements, new ScaleCriterion("Headache", false), buildHeadache(model.getAlternatives()));
+		addCriterion(model, measurements, new ScaleCriterion("Insomnia", false), buildInsomnia(model.getAlternatives()));
+		addCriterion(model, measurements, new ScaleCriterion("Nausea", false), buildNausea(model.getAlternatives()));
+		
+		// Reorder alternatives
+		model.reorderAlternatives(movePlacebo(model.getAlternatives(), 0, 2));
+		return model;
+	}
+
+	private static void addCriterion(SMAAModel model, PerCriterionMeasurements measurements, final ScaleCriterion c, final CriterionMeasurement m) {
+		model.addCriterion(c);
+		measurements.setCriterionMeasurement(c, m);
+	}
+
 	protected void checkResults(SMAAModel model, SMAA2Simulation simulation, double slack) {
+		checkResults(model, simulation.getResults(), slack);
+	}
+
+	protected void checkResults(SMAAModel model, SMAA2Results results, double slack) {
 		checkAlternativeOrder(model.getAlternatives(), false);
 		assertEquals("Diarrhea", model.getCriteria().get(0).getName());
 		assertEquals("HAM-D Responders", model.getCriteria().get(2).getName());
@@ -182,7 +219,7 @@ public class NetworkBenefitRiskTestBase {
 			Alternative alt = model.getAlternatives().get(i);
 			for (int j = 0; j < model.getCriteria().size(); ++j) {
 				Criterion crit = model.getCriteria().get(j);
-				final double actual = simulation.getResults().getCentralWeightVectors().get(alt).get(crit);
+				final double actual = results.getCentralWeightVectors().get(alt).get(crit);
 				final double expected = EXPECTED_CW[i][j];
 				if (Math.abs(actual - expected) > EPSILON_CW * slack) {
 					throw new AssertionFailedError(
@@ -190,7 +227,7 @@ public class NetworkBenefitRiskTestBase {
 							": expected <" + expected + ">, actual <" + actual + ">");
 				}
 			}
-			final double actual = simulation.getResults().getConfidenceFactors().get(alt);
+			final double actual = results.getConfidenceFactors().get(alt);
 			final double expected = EXPECTED_CF[i];
 			if (Math.abs(actual - expected) > EPSILON_CW * slack) {
 				throw new AssertionFailedError(
@@ -203,7 +240,7 @@ public class NetworkBenefitRiskTestBase {
 		for (int i = 0; i < model.getAlternatives().size(); ++i) {
 			for (int r = 0; r < model.getAlternatives().size(); ++r) {
 				Alternative alt = model.getAlternatives().get(i);
-				final double actual = simulation.getResults().getRankAcceptabilities().get(alt).get(r);
+				final double actual = results.getRankAcceptabilities().get(alt).get(r);
 				final double expected = EXPECTED_RA[i][r];
 				if (Math.abs(actual - expected) > EPSILON_RA * slack) {
 					throw new AssertionFailedError(
@@ -214,6 +251,12 @@ public class NetworkBenefitRiskTestBase {
 		}
 	}
 
+	protected static void assertResultsEqual(SMAA2Results expected, SMAA2Results actual) {
+		assertEquals(expected.getRankAcceptabilities().values().toString(), actual.getRankAcceptabilities().values().toString());
+		assertEquals(expected.getCentralWeightVectors().values().toString(), actual.getCentralWeightVectors().values().toString());
+		assertEquals(expected.getConfidenceFactors().values().toString(), actual.getConfidenceFactors().values().toString());
+	}
+
 	private static void checkAlternativeOrder(List<Alternative> alternatives, boolean placeboFirst) {
 		List<String> expected;
 		if (placeboFirst) {
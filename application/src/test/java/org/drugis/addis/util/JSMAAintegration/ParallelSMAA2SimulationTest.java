@@ -0,0 +1,144 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.JSMAAintegration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.drugis.common.threading.TaskUtil;
+import org.junit.Test;
+
+import fi.smaa.jsmaa.model.Alternative;
+import fi.smaa.jsmaa.model.Criterion;
+import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.simulator.SMAA2Results;
+
+public class ParallelSMAA2SimulationTest extends NetworkBenefitRiskTestBase {
+	@Test
+	public void testResults() throws InterruptedException {
+		SMAAModel model = buildModel();
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(model, 1234L, 10000, 4);
+		TaskUtil.run(simulation.getTask());
+		checkResults(model, simulation.getResults(), 1.0);
+
+		for (Alternative alt : model.getAlternatives()) {
+			double sum = 0.0;
+			for (double ra : simulation.getResults().getRankAcceptabilities().get(alt)) {
+				sum += ra;
+			}
+			assertEquals(1.0, sum, 0.0000001);
+		}
+	}
+
+	@Test
+	public void testSameResultsForAnyNumberOfThreads() throws InterruptedException {
+		// the last block is incomplete
+		SMAA2Results expected = run(buildModel(), 42L, 2500, 1);
+		assertResultsEqual(expected, run(buildModel(), 42L, 2500, 2));
+		assertResultsEqual(expected, run(buildModel(), 42L, 2500, 5));
+	}
+
+	@Test
+	public void testConfidenceFactorsUseMergedCentralWeights() throws InterruptedException {
+		final SMAAModel model = buildModel();
+		final Set<Integer> blocks = Collections.synchronizedSet(new HashSet<Integer>());
+		final List<double[][]> centralWeights = Collections.synchronizedList(new ArrayList<double[][]>());
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(model, 42L, 2500, 2) {
+			@Override
+			protected long[] countConfidenceHits(SMAAModel m, int block, int iterations, double[][] cw) throws InterruptedException {
+				blocks.add(block);
+				centralWeights.add(cw);
+				return super.countConfidenceHits(m, block, iterations, cw);
+			}
+		};
+		TaskUtil.run(simulation.getTask());
+
+		assertEquals(new HashSet<Integer>(Arrays.asList(0, 1, 2)), blocks);
+		assertEquals(3, centralWeights.size());
+		SMAA2Results results = simulation.getResults();
+		for (int i = 0; i < model.getAlternatives().size(); ++i) {
+			Alternative alt = model.getAlternatives().get(i);
+			for (int j = 0; j < model.getCriteria().size(); ++j) {
+				Criterion crit = model.getCriteria().get(j);
+				assertEquals(results.getCentralWeightVectors().get(alt).get(crit), centralWeights.get(0)[i][j], 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testSeed() throws InterruptedException {
+		SMAA2Results results1 = run(buildModel(), 42L, 1000, 1);
+		SMAA2Results results2 = run(buildModel(), 43L, 1000, 1);
+		assertFalse(results1.getRankAcceptabilities().equals(results2.getRankAcceptabilities()));
+	}
+
+	@Test
+	public void testTargetError() throws InterruptedException {
+		SMAAModel model = buildModel();
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(model, 42L, 100000, 3);
+		simulation.setTargetError(0.01);
+		TaskUtil.run(simulation.getTask());
+
+		assertTrue(simulation.isConverged());
+		assertTrue(simulation.getIterationsDone() < 100000);
+		assertEquals(0, simulation.getIterationsDone() % ParallelSMAA2Simulation.BLOCK_SIZE);
+		assertTrue(simulation.getRankAcceptabilityError() <= 0.01);
+		assertTrue(simulation.getCentralWeightError() <= 0.01);
+
+		ParallelSMAA2Simulation other = new ParallelSMAA2Simulation(buildModel(), 42L, 100000, 1);
+		other.setTargetError(0.01);
+		TaskUtil.run(other.getTask());
+		assertEquals(simulation.getIterationsDone(), other.getIterationsDone());
+		assertResultsEqual(simulation.getResults(), other.getResults());
+	}
+
+	@Test
+	public void testTargetErrorNotMet() throws InterruptedException {
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(buildModel(), 42L, 2000, 2);
+		simulation.setTargetError(0.001);
+		TaskUtil.run(simulation.getTask());
+
+		assertFalse(simulation.isConverged());
+		assertEquals(2000, simulation.getIterationsDone());
+		assertTrue(simulation.getRankAcceptabilityError() > 0.001);
+	}
+
+	private static SMAA2Results run(SMAAModel model, long seed, int iterations, int threads) throws InterruptedException {
+		ParallelSMAA2Simulation simulation = new ParallelSMAA2Simulation(model, seed, iterations, threads);
+		TaskUtil.run(simulation.getTask());
+		return simulation.getResults();
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.JSMAAintegration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.drugis.common.threading.TaskUtil;
+import org.junit.Test;
+
+import cern.jet.random.engine.MersenneTwister;
+import fi.smaa.common.RandomUtil;
+import fi.smaa.jsmaa.model.Alternative;
+import fi.smaa.jsmaa.model.Criterion;
+import fi.smaa.jsmaa.model.ExactMeasurement;
+import fi.smaa.jsmaa.model.OrdinalPreferenceInformation;
+import fi.smaa.jsmaa.model.SMAAModel;
+import fi.smaa.jsmaa.model.ScaleCriterion;
+import fi.smaa.jsmaa.simulator.SMAA2Results;
+import fi.smaa.jsmaa.simulator.SMAA2Simulation;
+
+public class ReweightingSMAA2SimulationTest extends NetworkBenefitRiskTestBase {
+	private static final double EPSILON = 0.0000001;
+
+	@Test
+	public void testResults() throws InterruptedException {
+		SMAAModel model = buildModel();
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 1234L, 10000, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+		checkResults(model, run(model, 1234L, 10000, 4, samples), 1.0);
+	}
+
+	@Test
+	public void testStoredSamplesGiveSameResults() throws InterruptedException {
+		SMAAModel model = buildModel();
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 42L, 2500, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+		assertEquals(3, samples.getCapacity());
+		SMAA2Results expected = run(model, 42L, 2500, 2, samples);
+		for (int i = 0; i < 3; ++i) {
+			assertTrue(samples.contains(i));
+		}
+
+		assertResultsEqual(expected, run(buildModel(), 42L, 2500, 3, samples));
+
+		MeasurementSampleBuffer none = new MeasurementSampleBuffer(model, 42L, 2500, 0);
+		assertEquals(0, none.getCapacity());
+		assertResultsEqual(expected, run(buildModel(), 42L, 2500, 1, none));
+	}
+
+	@Test
+	public void testTiesGetDistinctRanks() throws InterruptedException {
+		SMAAModel model = new SMAAModel("Ties");
+		Alternative a = new Alternative("A");
+		Alternative b = new Alternative("B");
+		Alternative c = new Alternative("C");
+		model.addAlternative(a);
+		model.addAlternative(b);
+		model.addAlternative(c);
+		ScaleCriterion c1 = new ScaleCriterion("c1", true);
+		ScaleCriterion c2 = new ScaleCriterion("c2", true);
+		model.addCriterion(c1);
+		model.addCriterion(c2);
+		model.setMeasurement(c1, a, new ExactMeasurement(1.0));
+		model.setMeasurement(c2, a, new ExactMeasurement(0.0));
+		model.setMeasurement(c1, b, new ExactMeasurement(1.0));
+		model.setMeasurement(c2, b, new ExactMeasurement(0.0));
+		model.setMeasurement(c1, c, new ExactMeasurement(0.0));
+		model.setMeasurement(c2, c, new ExactMeasurement(1.0));
+
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 42L, 10000, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+		SMAA2Results actual = run(model, 42L, 10000, 2, samples);
+		SMAA2Results expected = runSMAA2(model, 42L, 10000);
+
+		// every rank is taken by exactly one alternative
+		for (int r = 0; r < 3; ++r) {
+			double sum = 0.0;
+			for (List<Double> ranks : actual.getRankAcceptabilities().values()) {
+				sum += ranks.get(r);
+			}
+			assertEquals(1.0, sum, EPSILON);
+		}
+		assertEquals(0.5, actual.getRankAcceptabilities().get(a).get(0) + actual.getRankAcceptabilities().get(b).get(0), 0.02);
+		for (int r = 0; r < 3; ++r) {
+			assertEquals(expected.getRankAcceptabilities().get(c).get(r), actual.getRankAcceptabilities().get(c).get(r), 0.02);
+		}
+		assertEquals(expected.getConfidenceFactors().get(c), actual.getConfidenceFactors().get(c), 0.02);
+	}
+
+	@Test
+	public void testOrdinalPreferencesMatchSMAA2Simulation() throws InterruptedException {
+		SMAAModel model = buildModel();
+		model.setPreferenceInformation(new OrdinalPreferenceInformation(model.getCriteria()));
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 42L, 20000, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+		SMAA2Results actual = run(model, 42L, 20000, 4, samples);
+		SMAA2Results expected = runSMAA2(model, 42L, 20000);
+
+		for (Alternative alt : model.getAlternatives()) {
+			for (int r = 0; r < model.getAlternatives().size(); ++r) {
+				assertEquals(expected.getRankAcceptabilities().get(alt).get(r), actual.getRankAcceptabilities().get(alt).get(r), 0.02);
+			}
+			if (expected.getRankAcceptabilities().get(alt).get(0) > 0.05) {
+				for (Criterion crit : model.getCriteria()) {
+					assertEquals(expected.getCentralWeightVectors().get(alt).get(crit), actual.getCentralWeightVectors().get(alt).get(crit), 0.03);
+				}
+				assertEquals(expected.getConfidenceFactors().get(alt), actual.getConfidenceFactors().get(alt), 0.03);
+			}
+		}
+	}
+
+	@Test
+	public void testBufferBounded() {
+		SMAAModel model = buildModel();
+		int blockBytes = 8 * ParallelSMAA2Simulation.BLOCK_SIZE * model.getCriteria().size() * model.getAlternatives().size();
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 42L, 10000, 2 * blockBytes + 1);
+		assertEquals(2, samples.getCapacity());
+		samples.write(5, new double[ParallelSMAA2Simulation.BLOCK_SIZE][model.getCriteria().size()][model.getAlternatives().size()]);
+		assertFalse(samples.contains(5));
+	}
+
+	@Test
+	public void testBufferCompatible() {
+		SMAAModel model = buildModel();
+		MeasurementSampleBuffer samples = new MeasurementSampleBuffer(model, 42L, 1000, MeasurementSampleBuffer.DEFAULT_MAX_SIZE);
+		assertTrue(samples.isCompatible(model, 42L));
+		assertTrue(samples.isCompatible(model.deepCopy(), 42L));
+		assertFalse(samples.isCompatible(model, 43L));
+	}
+
+	private static SMAA2Results runSMAA2(SMAAModel model, long seed, int iterations) throws InterruptedException {
+		SMAA2Simulation simulation = new SMAA2Simulation(model, new RandomUtil(new MersenneTwister((int) seed)), iterations);
+		TaskUtil.run(simulation.getTask());
+		return simulation.getResults();
+	}
+
+	private static SMAA2Results run(SMAAModel model, long seed, int iterations, int threads, MeasurementSampleBuffer samples) throws InterruptedException {
+		ReweightingSMAA2Simulation simulation = new ReweightingSMAA2Simulation(model, seed, iterations, threads, samples);
+		TaskUtil.run(simulation.getTask());
+		return simulation.getResults();
+	}
+}
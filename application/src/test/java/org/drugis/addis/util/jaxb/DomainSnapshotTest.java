@@ -0,0 +1,199 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.drugis.addis.entities.AssertEntityEquals.assertDomainEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.drugis.addis.entities.DomainManager;
+import org.drugis.addis.entities.data.AddisData;
+import org.drugis.addis.util.jaxb.JAXBHandler.XmlFormatType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DomainSnapshotTest {
+	private static final byte[] HASH = { 1, 2, 3, 4 };
+
+	private AddisData d_data;
+	private File d_file;
+	private File d_snapshotDir;
+
+	@Before
+	public void setUp() throws Exception {
+		d_data = JAXBHandler.unmarshallAddisData(JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis"));
+		d_file = File.createTempFile("snapshot", ".addis");
+		d_snapshotDir = File.createTempFile("snapshots", "");
+		d_snapshotDir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		DomainSnapshot.getSnapshotFile(d_snapshotDir, d_file).delete();
+		d_snapshotDir.delete();
+		d_file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		DomainSnapshot snapshot = DomainSnapshot.read(new ByteArrayInputStream(write(d_data, HASH, 5)), HASH);
+		assertNotNull(snapshot);
+		assertEquals(d_data, snapshot.getData());
+		assertEquals(5, snapshot.getSourceType().getVersion());
+	}
+
+	@Test
+	public void testStaleHash() throws Exception {
+		assertNull(DomainSnapshot.read(new ByteArrayInputStream(write(d_data, HASH, 5)), new byte[] { 1, 2, 3, 5 }));
+	}
+
+	@Test
+	public void testNotASnapshot() throws Exception {
+		assertNull(DomainSnapshot.read(new ByteArrayInputStream("<?xml version=\"1.0\"?><addis-data/>".getBytes()), HASH));
+	}
+
+	@Test
+	public void testDomainManagerUsesValidSnapshot() throws Exception {
+		DomainManager expected = saveExample();
+		expected.saveSnapshot(d_file, XmlFormatType.CURRENT_VERSION);
+
+		DomainManager actual = new DomainManager();
+		actual.setSnapshotDirectory(d_snapshotDir);
+		XmlFormatType type = actual.loadSnapshot(d_file);
+		assertNotNull(type);
+		assertEquals(XmlFormatType.CURRENT_VERSION, type.getVersion());
+		assertDomainEquals(expected.getDomain(), actual.getDomain());
+	}
+
+	@Test
+	public void testDomainManagerSnapshotsOldVersion() throws Exception {
+		String fileName = JAXBConvertorTest.TEST_DATA_PATH + "testData-5.addis";
+		copy(JAXBConvertorTest.class.getResourceAsStream(fileName), d_file);
+		DomainManager expected = new DomainManager();
+		expected.loadXMLDomain(JAXBConvertorTest.class.getResourceAsStream(fileName), 5);
+
+		DomainManager actual = new DomainManager();
+		actual.setSnapshotDirectory(d_snapshotDir);
+		actual.saveSnapshot(d_file, 5);
+		XmlFormatType type = actual.loadSnapshot(d_file);
+		assertNotNull(type);
+		assertEquals(5, type.getVersion());
+		assertDomainEquals(expected.getDomain(), actual.getDomain());
+	}
+
+	@Test
+	public void testDomainManagerWritesToSnapshotDirectory() throws Exception {
+		DomainManager expected = saveExample();
+		expected.saveSnapshot(d_file, XmlFormatType.CURRENT_VERSION);
+
+		assertTrue(DomainSnapshot.getSnapshotFile(d_snapshotDir, d_file).isFile());
+		assertFalse(new File(d_file.getPath() + DomainSnapshot.EXTENSION).exists());
+	}
+
+	@Test
+	public void testDomainManagerDeletesBrokenSnapshot() throws Exception {
+		saveExample();
+		File snapshotFile = DomainSnapshot.getSnapshotFile(d_snapshotDir, d_file);
+		d_snapshotDir.mkdirs();
+		FileOutputStream os = new FileOutputStream(snapshotFile);
+		os.write("ADDISSNP".getBytes()); // truncated after the header
+		os.close();
+
+		DomainManager actual = new DomainManager();
+		actual.setSnapshotDirectory(d_snapshotDir);
+		try {
+			actual.loadSnapshot(d_file);
+			fail("expected IOException");
+		} catch (IOException e) {
+		}
+		assertFalse(snapshotFile.exists());
+		assertEquals(0, actual.getDomain().getStudies().size());
+	}
+
+	@Test
+	public void testDomainManagerIgnoresStaleSnapshot() throws Exception {
+		DomainManager expected = saveExample();
+		expected.saveSnapshot(d_file, XmlFormatType.CURRENT_VERSION);
+		FileOutputStream os = new FileOutputStream(d_file, true);
+		os.write('\n');
+		os.close();
+
+		DomainManager actual = new DomainManager();
+		actual.setSnapshotDirectory(d_snapshotDir);
+		assertNull(actual.loadSnapshot(d_file));
+		assertEquals(0, actual.getDomain().getStudies().size());
+	}
+
+	@Test
+	public void testDomainManagerIgnoresSnapshotsWhenDisabled() throws Exception {
+		DomainManager expected = saveExample();
+		expected.saveSnapshot(d_file, XmlFormatType.CURRENT_VERSION);
+
+		assertNull(new DomainManager().loadSnapshot(d_file));
+	}
+
+	private static void copy(InputStream is, File file) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			byte[] buf = new byte[8192];
+			for (int n = is.read(buf); n >= 0; n = is.read(buf)) {
+				os.write(buf, 0, n);
+			}
+		} finally {
+			os.close();
+			is.close();
+		}
+	}
+
+	private DomainManager saveExample() throws Exception {
+		DomainManager manager = new DomainManager();
+		manager.setSnapshotDirectory(d_snapshotDir);
+		manager.loadXMLDomain(JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis"), XmlFormatType.CURRENT_VERSION);
+		manager.saveXMLDomain(d_file);
+		return manager;
+	}
+
+	private static byte[] write(AddisData data, byte[] hash, int version) throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		DomainSnapshot.write(data, hash, version, bos);
+		return bos.toByteArray();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Map.Entry;
+
+import org.drugis.addis.entities.BasicMeasurement;
+import org.drugis.addis.entities.BasicStudyCharacteristic;
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.MeasurementKey;
+import org.drugis.addis.entities.Study;
+import org.drugis.addis.entities.analysis.BenefitRiskAnalysis;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IncrementalDomainWriterTest {
+	private Domain d_domain;
+	private IncrementalDomainWriter d_writer;
+	private int d_nAnalyses;
+
+	@Before
+	public void setUp() throws Exception {
+		d_domain = JAXBConvertor.convertAddisDataToDomain(JAXBHandler.unmarshallAddisData(
+				JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis")));
+		d_writer = new IncrementalDomainWriter(d_domain);
+		d_nAnalyses = d_domain.getMetaAnalyses().size() + d_domain.getBenefitRiskAnalyses().size();
+	}
+
+	@Test
+	public void testWriteEqualsFullConversion() throws Exception {
+		assertWritesDomain();
+		assertEquals(d_domain.getStudies().size() + d_nAnalyses, d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testUnchangedDomainIsNotMarshalledAgain() throws Exception {
+		byte[] first = write();
+		byte[] second = write();
+		assertEquals(0, d_writer.getMarshalledCount());
+		assertArrayEquals(first, second);
+	}
+
+	@Test
+	public void testChangedStudyIsMarshalledAgain() throws Exception {
+		write();
+		Study study = d_domain.getStudies().get(0);
+		study.setCharacteristic(BasicStudyCharacteristic.TITLE, "A new title");
+		assertWritesDomain();
+		assertEquals(1 + d_domain.getDependents(study).size(), d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testChangedStudyWithoutDependentsDoesNotInvalidateAnalyses() throws Exception {
+		Study study = new Study("New study", d_domain.getIndications().get(0));
+		d_domain.getStudies().add(study);
+		write();
+		study.setCharacteristic(BasicStudyCharacteristic.TITLE, "A new title");
+		assertWritesDomain();
+		assertEquals(1, d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testReplacedMeasurementIsDetected() throws Exception {
+		write();
+		Study study = d_domain.getStudies().get(0);
+		Entry<MeasurementKey, BasicMeasurement> entry = study.getMeasurements().entrySet().iterator().next();
+		BasicMeasurement m = entry.getValue().clone();
+		m.setSampleSize(m.getSampleSize() + 1);
+		study.getMeasurements().put(entry.getKey(), m);
+		assertWritesDomain();
+		assertEquals(1 + d_domain.getDependents(study).size(), d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testChangedMeasurementIsDetected() throws Exception {
+		write();
+		Study study = d_domain.getStudies().get(0);
+		BasicMeasurement m = study.getMeasurements().values().iterator().next();
+		m.setSampleSize(m.getSampleSize() + 1);
+		assertWritesDomain();
+		assertEquals(1 + d_domain.getDependents(study).size(), d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testRenamedDrugInvalidatesAll() throws Exception {
+		write();
+		d_domain.getDrugs().get(0).setName("Renamed");
+		assertWritesDomain();
+		assertEquals(d_domain.getStudies().size() + d_nAnalyses, d_writer.getMarshalledCount());
+	}
+
+	@Test
+	public void testChangedTargetErrorIsSaved() throws Exception {
+		write();
+		BenefitRiskAnalysis<?> analysis = d_domain.getBenefitRiskAnalyses().get(0);
+		analysis.setSimulationTargetError(0.005);
+		assertWritesDomain();
+		assertEquals(1, d_writer.getMarshalledCount());
+
+		Domain loaded = JAXBConvertor.convertAddisDataToDomain(JAXBHandler.unmarshallAddisData(new ByteArrayInputStream(write())));
+		assertEquals(Double.valueOf(0.005), loaded.getBenefitRiskAnalyses().get(0).getSimulationTargetError());
+	}
+
+	@Test
+	public void testRemovedStudy() throws Exception {
+		Study study = new Study("New study", d_domain.getIndications().get(0));
+		d_domain.getStudies().add(study);
+		write();
+		d_domain.getStudies().remove(study);
+		assertWritesDomain();
+		assertEquals(0, d_writer.getMarshalledCount());
+	}
+
+	private void assertWritesDomain() throws Exception {
+		assertEquals(JAXBConvertor.convertDomainToAddisData(d_domain),
+				JAXBHandler.unmarshallAddisData(new ByteArrayInputStream(write())));
+	}
+
+	private byte[] write() throws Exception {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		d_writer.write(bos);
+		return bos.toByteArray();
+	}
+}
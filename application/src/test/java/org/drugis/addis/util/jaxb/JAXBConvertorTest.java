@@ -1763,6 +1763,13 @@ public class JAXBConvertorTest {
 				JAXBConvertor.convertStudyBenefitRiskAnalysis(br, domain));
 		assertEquals(br,
 				JAXBConvertor.convertStudyBenefitRiskAnalysis(expected));
+
+		br.setSimulationTargetError(0.005);
+		expected.setSimulationTargetError(0.005);
+		assertEquals(Double.valueOf(0.005),
+				JAXBConvertor.convertStudyBenefitRiskAnalysis(br, domain).getSimulationTargetError());
+		assertEquals(br,
+				JAXBConvertor.convertStudyBenefitRiskAnalysis(expected));
 	}
 
 	private org.drugis.addis.entities.data.StudyBenefitRiskAnalysis buildStudyBR(
@@ -1857,6 +1864,12 @@ public class JAXBConvertorTest {
 		assertEntityEquals(expected,
 				JAXBConvertor.convertMetaBenefitRiskAnalysis(br, domain));
 		assertEquals(br, JAXBConvertor.convertMetaBenefitRiskAnalysis(expected));
+
+		br.setSimulationTargetError(0.005);
+		expected.setSimulationTargetError(0.005);
+		assertEntityEquals(expected,
+				JAXBConvertor.convertMetaBenefitRiskAnalysis(br, domain));
+		assertEquals(br, JAXBConvertor.convertMetaBenefitRiskAnalysis(expected));
 	}
 
 	private org.drugis.addis.entities.data.MetaBenefitRiskAnalysis buildMetaBR(
@@ -2023,6 +2036,22 @@ public class JAXBConvertorTest {
 		doRoundTripTest(getTestData(TEST_DATA_5), false);
 	}
 
+	@Test
+	public void testParallelStudyConversion() throws Exception {
+		final AddisData data = (AddisData) d_unmarshaller.unmarshal(getTransformedDefaultData());
+		final Domain sequential = JAXBConvertor.convertAddisDataToDomain(data);
+		final Domain parallel = JAXBConvertor.convertAddisDataToDomain(data, 4);
+		assertEquals(sequential, parallel);
+		assertEquals(JAXBConvertor.convertDomainToAddisData(sequential), JAXBConvertor.convertDomainToAddisData(parallel));
+	}
+
+	@Test(expected = ConversionException.class)
+	public void testParallelStudyConversionThrows() throws Exception {
+		final AddisData data = (AddisData) d_unmarshaller.unmarshal(getTransformedDefaultData());
+		data.getStudies().getStudy().get(1).getMeasurements().getMeasurement().get(0).setArm(nameReference("Unknown arm"));
+		JAXBConvertor.convertAddisDataToDomain(data, 4);
+	}
+
 	/**
 	 * @param sort Whether to sort the elements of the source XML to prevent order differences.
 	 */
@@ -38,6 +38,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import javax.xml.bind.JAXBException;
@@ -141,4 +142,20 @@ public class JAXBHandlerTest {
 		assertFalse(otherVersion.isValid());
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testUnmarshallWhileTransforming() throws JAXBException, TransformerException, IOException {
+		AddisData expected = JAXBHandler.unmarshallAddisData(JAXBConvertor.transformToLatest(JAXBHandlerTest.class.getResourceAsStream("schema_test.xml"), 1));
+		AddisData actual = JAXBHandler.unmarshallAddisData(JAXBHandlerTest.class.getResourceAsStream("schema_test.xml"), 1);
+		assertEquals(expected, actual);
+	}
+
+	@Test
+	public void testChainedTransformEqualsStepwise() throws JAXBException, TransformerException, IOException {
+		InputStream stepwise = JAXBHandlerTest.class.getResourceAsStream("schema_test.xml");
+		for (int v = 1; v < XmlFormatType.CURRENT_VERSION; ++v) {
+			stepwise = JAXBConvertor.transformToVersion(stepwise, v, v + 1);
+		}
+		InputStream chained = JAXBConvertor.transformToLatest(JAXBHandlerTest.class.getResourceAsStream("schema_test.xml"), 1);
+		assertEquals(JAXBHandler.unmarshallAddisData(stepwise), JAXBHandler.unmarshallAddisData(chained));
+	}
+}
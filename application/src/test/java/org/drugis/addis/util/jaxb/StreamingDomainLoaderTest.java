@@ -0,0 +1,113 @@
+/*
+ * This file is part of ADDIS (Aggregate Data Drug Information System).
+ * ADDIS is distributed from http://drugis.org/.
+ * Copyright © 2009 Gert van Valkenhoef, Tommi Tervonen.
+ * Copyright © 2010 Gert van Valkenhoef, Tommi Tervonen, Tijs Zwinkels,
+ * Maarten Jacobs, Hanno Koeslag, Florin Schimbinschi, Ahmad Kamal, Daniel
+ * Reid.
+ * Copyright © 2011 Gert van Valkenhoef, Ahmad Kamal, Daniel Reid, Florin
+ * Schimbinschi.
+ * Copyright © 2012 Gert van Valkenhoef, Daniel Reid, Joël Kuiper, Wouter
+ * Reckman.
+ * Copyright © 2013 Gert van Valkenhoef, Joël Kuiper.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.drugis.addis.util.jaxb;
+
+import static org.drugis.addis.entities.AssertEntityEquals.assertDomainEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.drugis.addis.entities.Domain;
+import org.drugis.addis.entities.DomainManager;
+import org.drugis.addis.util.jaxb.JAXBConvertor.ConversionException;
+import org.junit.Test;
+
+public class StreamingDomainLoaderTest {
+	@Test
+	public void testLoadDepressionExample() throws Exception {
+		assertSameAsUnmarshalled(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis");
+	}
+
+	@Test
+	public void testLoadHypertensionExample() throws Exception {
+		assertSameAsUnmarshalled(JAXBConvertorTest.TEST_DATA_PATH + "hypertensionExample.addis");
+	}
+
+	@Test
+	public void testLoadTreatmentCategorizations() throws Exception {
+		assertSameAsUnmarshalled(JAXBConvertorTest.TEST_DATA_PATH + "testDataWithTreatmentCategories.addis");
+	}
+
+	@Test
+	public void testLoadOldVersion() throws Exception {
+		String fileName = JAXBConvertorTest.TEST_DATA_PATH + "testData-5.addis";
+		InputStream is = JAXBConvertorTest.class.getResourceAsStream(fileName);
+		int version = JAXBHandler.determineXmlType(is).getVersion();
+		Domain expected = JAXBConvertor.convertAddisDataToDomain(JAXBHandler.unmarshallAddisData(JAXBConvertorTest.getTestData(fileName)));
+		Domain actual = StreamingDomainLoader.load(is, version);
+
+		assertDomainEquals(expected, actual);
+	}
+
+	@Test
+	public void testParallelStudyConversion() throws Exception {
+		String fileName = JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis";
+		Domain expected = StreamingDomainLoader.load(JAXBConvertorTest.getTestData(fileName));
+		Domain actual = StreamingDomainLoader.load(JAXBConvertorTest.getTestData(fileName), JAXBHandler.XmlFormatType.CURRENT_VERSION, 4);
+
+		assertDomainEquals(expected, actual);
+		assertEquals(expected.getStudies(), actual.getStudies());
+	}
+
+	@Test
+	public void testLoadEmptyDomain() throws Exception {
+		DomainManager manager = new DomainManager();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		manager.saveXMLDomain(bos);
+
+		Domain domain = StreamingDomainLoader.load(new ByteArrayInputStream(bos.toByteArray()));
+		assertDomainEquals(manager.getDomain(), domain);
+	}
+
+	@Test(expected=ConversionException.class)
+	public void testRejectsOtherDocuments() throws Exception {
+		StreamingDomainLoader.load(new ByteArrayInputStream("<?xml version=\"1.0\" ?>\n<oranges></oranges>".getBytes()));
+	}
+
+	@Test
+	public void testDomainManagerStreamingMode() throws Exception {
+		DomainManager expected = new DomainManager();
+		expected.loadXMLDomain(JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis"), JAXBHandler.XmlFormatType.CURRENT_VERSION);
+		DomainManager actual = new DomainManager();
+		actual.setStreamingLoad(true);
+		actual.loadXMLDomain(JAXBConvertorTest.getTestData(JAXBConvertorTest.TEST_DATA_PATH + "depressionExample.addis"), JAXBHandler.XmlFormatType.CURRENT_VERSION);
+
+		assertDomainEquals(expected.getDomain(), actual.getDomain());
+	}
+
+	private static void assertSameAsUnmarshalled(String fileName) throws Exception {
+		InputStream is = JAXBConvertorTest.getTestData(fileName);
+		Domain expected = JAXBConvertor.convertAddisDataToDomain(JAXBHandler.unmarshallAddisData(is));
+		Domain actual = StreamingDomainLoader.load(JAXBConvertorTest.getTestData(fileName));
+
+		assertDomainEquals(expected, actual);
+		assertEquals(JAXBConvertor.convertDomainToAddisData(expected), JAXBConvertor.convertDomainToAddisData(actual));
+	}
+}